@@ -26,6 +26,7 @@ public class TLong extends TNumber implements TComparable<TLong> {
     public static final Class<Long> TYPE = long.class;
     public static final int SIZE = 64;
     public static final int BYTES = SIZE / Byte.SIZE;
+    private static TLong[] longCache;
     private final long value;
 
     public TLong(long value) {
@@ -37,9 +38,22 @@ public class TLong extends TNumber implements TComparable<TLong> {
     }
 
     public static TLong valueOf(long value) {
+        if (value >= -128 && value <= 127) {
+            ensureLongCache();
+            return longCache[(int) value + 128];
+        }
         return new TLong(value);
     }
 
+    private static void ensureLongCache() {
+        if (longCache == null) {
+            longCache = new TLong[256];
+            for (int j = 0; j < longCache.length; ++j) {
+                longCache[j] = new TLong(j - 128);
+            }
+        }
+    }
+
     public static long parseLong(String s, int radix) throws TNumberFormatException {
         if (s == null) {
             throw new TNumberFormatException("String is null");
@@ -0,0 +1,106 @@
+/*
+ *  Copyright 2023 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.classlib.java.util.stream.impl;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import org.teavm.classlib.java.util.stream.TStream;
+
+/**
+ * Stream that applies a sequence of stateless operations ({@code map}, {@code filter} and {@code peek})
+ * to elements of source stream. Adjacent stateless operations are fused into a single stage, so that each element
+ * passes through one loop over operations rather than through a chain of wrapping consumers, and no intermediate
+ * stream is created per operation.
+ */
+public class TFusedStreamImpl<T> extends TWrappingStreamImpl<T, Object> {
+    static final byte MAP = 0;
+    static final byte FILTER = 1;
+    static final byte PEEK = 2;
+    private byte[] kinds;
+    private Object[] operations;
+
+    TFusedStreamImpl(TSimpleStreamImpl<?> sourceStream, byte kind, Object operation) {
+        this(sourceStream, new byte[] { kind }, new Object[] { operation });
+    }
+
+    @SuppressWarnings("unchecked")
+    private TFusedStreamImpl(TSimpleStreamImpl<?> sourceStream, byte[] kinds, Object[] operations) {
+        super((TSimpleStreamImpl<Object>) sourceStream);
+        this.kinds = kinds;
+        this.operations = operations;
+    }
+
+    @Override
+    public TStream<T> filter(Predicate<? super T> predicate) {
+        return append(FILTER, predicate);
+    }
+
+    @Override
+    public <R> TStream<R> map(Function<? super T, ? extends R> mapper) {
+        return append(MAP, mapper);
+    }
+
+    @Override
+    public TStream<T> peek(Consumer<? super T> action) {
+        return append(PEEK, action);
+    }
+
+    private <R> TFusedStreamImpl<R> append(byte kind, Object operation) {
+        byte[] newKinds = Arrays.copyOf(kinds, kinds.length + 1);
+        newKinds[kinds.length] = kind;
+        Object[] newOperations = Arrays.copyOf(operations, operations.length + 1);
+        newOperations[operations.length] = operation;
+        return new TFusedStreamImpl<>(sourceStream, newKinds, newOperations);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected Predicate<Object> wrap(Predicate<? super T> consumer) {
+        byte[] kinds = this.kinds;
+        Object[] operations = this.operations;
+        return e -> {
+            Object value = e;
+            for (int i = 0; i < kinds.length; ++i) {
+                switch (kinds[i]) {
+                    case MAP:
+                        value = ((Function<Object, Object>) operations[i]).apply(value);
+                        break;
+                    case FILTER:
+                        if (!((Predicate<Object>) operations[i]).test(value)) {
+                            return true;
+                        }
+                        break;
+                    case PEEK:
+                        ((Consumer<Object>) operations[i]).accept(value);
+                        break;
+                }
+            }
+            return consumer.test((T) value);
+        };
+    }
+
+    @Override
+    public long count() {
+        for (byte kind : kinds) {
+            if (kind != MAP) {
+                return super.count();
+            }
+        }
+        return sourceStream.count();
+    }
+}
@@ -1,36 +0,0 @@
-/*
- *  Copyright 2017 Alexey Andreev.
- *
- *  Licensed under the Apache License, Version 2.0 (the "License");
- *  you may not use this file except in compliance with the License.
- *  You may obtain a copy of the License at
- *
- *       http://www.apache.org/licenses/LICENSE-2.0
- *
- *  Unless required by applicable law or agreed to in writing, software
- *  distributed under the License is distributed on an "AS IS" BASIS,
- *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
- *  See the License for the specific language governing permissions and
- *  limitations under the License.
- */
-package org.teavm.classlib.java.util.stream.impl;
-
-import java.util.function.Consumer;
-import java.util.function.Predicate;
-
-public class TPeekingStreamImpl<T> extends TWrappingStreamImpl<T, T> {
-    private Consumer<? super T> elementConsumer;
-
-    public TPeekingStreamImpl(TSimpleStreamImpl<T> sourceStream, Consumer<? super T> elementConsumer) {
-        super(sourceStream);
-        this.elementConsumer = elementConsumer;
-    }
-
-    @Override
-    protected Predicate<T> wrap(Predicate<? super T> consumer) {
-        return e -> {
-            elementConsumer.accept(e);
-            return consumer.test(e);
-        };
-    }
-}
@@ -42,12 +42,12 @@ import org.teavm.classlib.java.util.stream.TStream;
 public abstract class TSimpleStreamImpl<T> implements TStream<T> {
     @Override
     public TStream<T> filter(Predicate<? super T> predicate) {
-        return new TFilteringStreamImpl<>(this, predicate);
+        return new TFusedStreamImpl<>(this, TFusedStreamImpl.FILTER, predicate);
     }
 
     @Override
     public <R> TStream<R> map(Function<? super T, ? extends R> mapper) {
-        return new TMappingStreamImpl<>(this, mapper);
+        return new TFusedStreamImpl<>(this, TFusedStreamImpl.MAP, mapper);
     }
 
     @Override
@@ -103,7 +103,7 @@ public abstract class TSimpleStreamImpl<T> implements TStream<T> {
 
     @Override
     public TStream<T> peek(Consumer<? super T> action) {
-        return new TPeekingStreamImpl<>(this, action);
+        return new TFusedStreamImpl<>(this, TFusedStreamImpl.PEEK, action);
     }
 
     @Override
@@ -0,0 +1,30 @@
+/*
+ *  Copyright 2023 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.backend.javascript;
+
+public enum JSModuleType {
+    /**
+     * Output is wrapped into function that can be loaded as AMD module, as CommonJS module
+     * or as a plain script that puts exports into global object.
+     */
+    UMD,
+
+    /**
+     * Output is an ES2015 module with top-level declarations, {@code import} statements for imported modules
+     * and {@code export} statements for entry points. Chunks are loaded with dynamic {@code import()}.
+     */
+    ES2015
+}
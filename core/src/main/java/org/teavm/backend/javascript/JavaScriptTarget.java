@@ -20,6 +20,7 @@ import com.carrotsearch.hppc.ObjectIntMap;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.StringWriter;
 import java.io.Writer;
 import java.lang.ref.Reference;
 import java.lang.ref.ReferenceQueue;
@@ -34,10 +35,15 @@ import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.function.Function;
 import org.teavm.ast.AsyncMethodNode;
 import org.teavm.ast.ControlFlowEntry;
@@ -62,6 +68,7 @@ import org.teavm.backend.javascript.rendering.Renderer;
 import org.teavm.backend.javascript.rendering.RenderingContext;
 import org.teavm.backend.javascript.rendering.RenderingUtil;
 import org.teavm.backend.javascript.rendering.RuntimeRenderer;
+import org.teavm.backend.javascript.runtime.ChunkLoader;
 import org.teavm.backend.javascript.spi.GeneratedBy;
 import org.teavm.backend.javascript.spi.Generator;
 import org.teavm.backend.javascript.spi.InjectedBy;
@@ -70,6 +77,11 @@ import org.teavm.backend.javascript.spi.ModuleImporter;
 import org.teavm.backend.javascript.spi.ModuleImporterContext;
 import org.teavm.backend.javascript.spi.VirtualMethodContributor;
 import org.teavm.backend.javascript.spi.VirtualMethodContributorContext;
+import org.teavm.backend.javascript.splitting.ChunkLoaderCallUpdater;
+import org.teavm.backend.javascript.splitting.ChunkLoaderGenerator;
+import org.teavm.backend.javascript.splitting.ChunkModule;
+import org.teavm.backend.javascript.splitting.ChunkPartitioner;
+import org.teavm.backend.javascript.splitting.SplitPointTransformer;
 import org.teavm.cache.AstCacheEntry;
 import org.teavm.cache.AstDependencyExtractor;
 import org.teavm.cache.CacheStatus;
@@ -110,7 +122,9 @@ import org.teavm.model.instructions.InvocationType;
 import org.teavm.model.instructions.InvokeInstruction;
 import org.teavm.model.instructions.RaiseInstruction;
 import org.teavm.model.instructions.StringConstantInstruction;
+import org.teavm.model.optimization.InliningFilterFactory;
 import org.teavm.model.transformation.BoundCheckInsertion;
+import org.teavm.model.transformation.LongNarrowing;
 import org.teavm.model.transformation.NullCheckFilter;
 import org.teavm.model.transformation.NullCheckInsertion;
 import org.teavm.model.util.AsyncMethodFinder;
@@ -147,13 +161,21 @@ public class JavaScriptTarget implements TeaVMTarget, TeaVMJavaScriptHost {
     private boolean strict;
     private BoundCheckInsertion boundCheckInsertion = new BoundCheckInsertion();
     private NullCheckInsertion nullCheckInsertion = new NullCheckInsertion(NullCheckFilter.EMPTY);
+    private LongNarrowing longNarrowing = new LongNarrowing();
     private final Map<String, String> importedModules = new LinkedHashMap<>();
+    private final Set<MethodReference> splitPoints = new LinkedHashSet<>();
+    private final Set<MethodReference> foundSplitPoints = new LinkedHashSet<>();
+    private Map<MethodReference, Integer> splitPointChunks = Collections.emptyMap();
+    private JSModuleType moduleType = JSModuleType.UMD;
+    private boolean asyncGenerators;
+    private boolean bigIntLongs;
 
     @Override
     public List<ClassHolderTransformer> getTransformers() {
         return List.of(
                 new WeakReferenceTransformer(),
-                new ReferenceQueueTransformer()
+                new ReferenceQueueTransformer(),
+                new SplitPointTransformer(splitPoints, foundSplitPoints)
         );
     }
 
@@ -175,6 +197,14 @@ public class JavaScriptTarget implements TeaVMTarget, TeaVMJavaScriptHost {
         var refQueueGenerator = new ReferenceQueueGenerator();
         methodGenerators.put(new MethodReference(ReferenceQueue.class, "<init>", void.class), refQueueGenerator);
         methodGenerators.put(new MethodReference(ReferenceQueue.class, "poll", Reference.class), refQueueGenerator);
+
+        methodGenerators.put(new MethodReference(ChunkLoader.class, "load", int.class, void.class),
+                new ChunkLoaderGenerator());
+    }
+
+    @Override
+    public void addSplitPoint(MethodReference method) {
+        splitPoints.add(method);
     }
 
     @Override
@@ -240,6 +270,39 @@ public class JavaScriptTarget implements TeaVMTarget, TeaVMJavaScriptHost {
         this.strict = strict;
     }
 
+    public void setModuleType(JSModuleType moduleType) {
+        this.moduleType = moduleType;
+    }
+
+    /**
+     * Specifies whether async methods are compiled to JavaScript generator functions instead of
+     * state machines that save and restore their locals on every suspension. Generated code requires
+     * ES2015 generators. In this mode async methods can only be entered from Java threads
+     * (i.e. from main method, {@link Thread#start()} or other async methods), calling them directly from
+     * JavaScript code does not run them.
+     *
+     * @param asyncGenerators whether TeaVM should produce generators for async methods.
+     */
+    public void setAsyncGenerators(boolean asyncGenerators) {
+        this.asyncGenerators = asyncGenerators;
+    }
+
+    /**
+     * Specifies whether arithmetic on <code>long</code> values is rendered as inline <code>BigInt</code>
+     * expressions instead of calls to <code>Long_*</code> runtime functions. Generated code requires
+     * an engine that supports <code>BigInt</code> (ES2020).
+     *
+     * @param bigIntLongs whether TeaVM should render long arithmetic as inline BigInt expressions.
+     */
+    public void setBigIntLongs(boolean bigIntLongs) {
+        this.bigIntLongs = bigIntLongs;
+    }
+
+    @Override
+    public InliningFilterFactory getInliningFilter() {
+        return method -> callee -> !foundSplitPoints.contains(callee);
+    }
+
     @Override
     public boolean requiresRegisterAllocation() {
         return true;
@@ -371,7 +434,7 @@ public class JavaScriptTarget implements TeaVMTarget, TeaVMJavaScriptHost {
     public void emit(ListableClassHolderSource classes, BuildTarget target, String outputName) {
         try (OutputStream output = target.createResource(outputName);
                 Writer writer = new OutputStreamWriter(output, StandardCharsets.UTF_8)) {
-            emit(classes, writer, target);
+            emit(classes, writer, target, outputName);
         } catch (IOException e) {
             throw new RenderingException(e);
         }
@@ -393,10 +456,12 @@ public class JavaScriptTarget implements TeaVMTarget, TeaVMJavaScriptHost {
 
     @Override
     public void afterOptimizations(Program program, MethodReader method) {
+        longNarrowing.transformProgram(program);
     }
 
-    private void emit(ListableClassHolderSource classes, Writer writer, BuildTarget target) {
+    private void emit(ListableClassHolderSource classes, Writer writer, BuildTarget target, String outputName) {
         List<PreparedClass> clsNodes = modelToAst(classes);
+        assignChunks(clsNodes);
         prepareModules(classes);
         if (controller.wasCancelled()) {
             return;
@@ -409,6 +474,8 @@ public class JavaScriptTarget implements TeaVMTarget, TeaVMJavaScriptHost {
         SourceWriterBuilder builder = new SourceWriterBuilder(naming);
         builder.setMinified(obfuscated);
         SourceWriter sourceWriter = builder.build(writer);
+        Map<Integer, Chunk> chunks = new LinkedHashMap<>();
+        Map<MethodReference, SourceWriter> chunkWriters = createChunkWriters(classes, builder, chunks);
 
         DebugInformationEmitter debugEmitterToUse = debugEmitter;
         if (debugEmitterToUse == null) {
@@ -427,12 +494,17 @@ public class JavaScriptTarget implements TeaVMTarget, TeaVMJavaScriptHost {
             }
         };
         renderingContext.setMinifying(obfuscated);
+        renderingContext.setAsyncGenerators(asyncGenerators);
+        renderingContext.setBigIntLongs(bigIntLongs);
         Renderer renderer = new Renderer(sourceWriter, asyncMethods, asyncFamilyMethods,
                 controller.getDiagnostics(), renderingContext);
         RuntimeRenderer runtimeRenderer = new RuntimeRenderer(classes, sourceWriter);
         renderer.setProperties(controller.getProperties());
         renderer.setMinifying(obfuscated);
         renderer.setProgressConsumer(controller::reportProgress);
+        renderer.setChunkWriters(chunkWriters);
+        renderer.setChunkModules(moduleType == JSModuleType.ES2015);
+        renderer.setThreadCount(controller.getThreadCount());
         if (debugEmitter != null) {
             for (PreparedClass preparedClass : clsNodes) {
                 for (PreparedMethod preparedMethod : preparedClass.getMethods()) {
@@ -476,33 +548,196 @@ public class JavaScriptTarget implements TeaVMTarget, TeaVMJavaScriptHost {
             }
             if (renderer.isThreadLibraryUsed()) {
                 runtimeRenderer.renderHandWrittenRuntime("thread.js");
+                if (asyncGenerators) {
+                    renderer.renderGeneratorSupport();
+                }
             } else {
                 runtimeRenderer.renderHandWrittenRuntime("simpleThread.js");
             }
+            if (!splitPointChunks.isEmpty()) {
+                if (moduleType == JSModuleType.ES2015) {
+                    createChunkModules(chunks, renderer, naming);
+                }
+                renderChunkSupport(sourceWriter, chunks, outputName);
+                runtimeRenderer.renderHandWrittenRuntime("chunk.js");
+            }
 
             for (var entry : controller.getEntryPoints().entrySet()) {
-                sourceWriter.append("$rt_exports.").append(entry.getKey()).ws().append("=").ws();
-                var ref = entry.getValue().getMethod();
-                sourceWriter.append("$rt_mainStarter(").appendMethodBody(ref);
-                sourceWriter.append(");").newLine();
-                sourceWriter.append("$rt_exports.").append(entry.getKey()).append(".").append("javaException")
-                        .ws().append("=").ws().append("$rt_javaException;").newLine();
+                printEntryPoint(sourceWriter, entry.getKey(), entry.getValue().getMethod());
             }
 
             for (var listener : rendererListeners) {
                 listener.complete();
             }
 
-            printWrapperEnd(sourceWriter);
+            printWrapperEnd(sourceWriter, chunks);
 
             int totalSize = sourceWriter.getOffset() - start;
             printStats(renderer, totalSize);
+
+            for (var entry : chunks.entrySet()) {
+                writeChunk(target, getChunkName(outputName, entry.getKey()), entry.getValue(), outputName);
+            }
         } catch (IOException e) {
             throw new RenderingException("IO Error occurred", e);
         }
     }
 
+    private void assignChunks(List<PreparedClass> clsNodes) {
+        // Ids only depend on set of split points, so that output file names are the same from build to build
+        var sortedSplitPoints = new ArrayList<>(foundSplitPoints);
+        sortedSplitPoints.sort(Comparator.comparing(MethodReference::toString));
+        splitPointChunks = new LinkedHashMap<>();
+        for (var splitPoint : sortedSplitPoints) {
+            splitPointChunks.put(splitPoint, splitPointChunks.size());
+        }
+
+        if (splitPointChunks.isEmpty()) {
+            return;
+        }
+        var updater = new ChunkLoaderCallUpdater();
+        for (var cls : clsNodes) {
+            for (var method : cls.getMethods()) {
+                var chunk = splitPointChunks.get(method.reference);
+                if (chunk != null && method.node != null) {
+                    updater.update(method.node, chunk);
+                }
+            }
+        }
+    }
+
+    private Map<MethodReference, SourceWriter> createChunkWriters(ListableClassHolderSource classes,
+            SourceWriterBuilder builder, Map<Integer, Chunk> chunks) {
+        if (splitPointChunks.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        var partitioner = new ChunkPartitioner(classes, controller.getDependencyInfo().getCallGraph());
+        for (var entryPoint : controller.getEntryPoints().values()) {
+            partitioner.exclude(entryPoint.getMethod());
+        }
+        partitioner.setStaticFieldWritesAllowed(moduleType != JSModuleType.ES2015);
+        Map<MethodReference, SourceWriter> chunkWriters = new HashMap<>();
+        for (var entry : partitioner.partition(splitPointChunks).entrySet()) {
+            var chunk = chunks.computeIfAbsent(entry.getValue(), k -> new Chunk());
+            if (chunk.writer == null) {
+                chunk.writer = builder.build(chunk.output);
+            }
+            chunkWriters.put(entry.getKey(), chunk.writer);
+        }
+        return chunkWriters;
+    }
+
+    private void createChunkModules(Map<Integer, Chunk> chunks, Renderer renderer, DefaultNamingStrategy naming) {
+        Set<String> topLevelNames = naming.getTopLevelNames();
+        for (var chunk : chunks.values()) {
+            chunk.module = new ChunkModule(chunk.output.toString(), renderer.getChunkFunctions(chunk.writer),
+                    name -> topLevelNames.contains(name) || isRuntimeName(name));
+        }
+    }
+
+    private static boolean isRuntimeName(String name) {
+        // Names of hand-written runtime are never renamed, see DefaultGlobalNameWriter
+        return name.startsWith("$rt_") || name.startsWith("Long_") || name.equals("Long");
+    }
+
+    private void renderChunkSupport(SourceWriter writer, Map<Integer, Chunk> chunks, String outputName)
+            throws IOException {
+        writer.append("var $rt_chunkFiles").ws().append("=").ws().append("[");
+        for (int i = 0; i < splitPointChunks.size(); ++i) {
+            if (i > 0) {
+                writer.append(",").ws();
+            }
+            if (!chunks.containsKey(i)) {
+                writer.append("null");
+            } else {
+                writer.append('"').append(RenderingUtil.escapeString(getChunkFileName(outputName, i)))
+                        .append('"');
+            }
+        }
+        writer.append("];").newLine();
+
+        if (moduleType == JSModuleType.ES2015) {
+            renderChunkModuleLoaders(writer, chunks, outputName);
+            return;
+        }
+
+        writer.append("var $rt_chunkModules").ws().append("=").ws().append("null;").newLine();
+        // Direct eval is used so that chunk code sees names declared in main output.
+        // Function has no named parameters and locals, so that chunk code can't accidentally refer to them
+        writer.append("function $rt_evalChunk()").ws().append("{").indent().softNewLine();
+        writer.append("eval(arguments[0]);").softNewLine();
+        writer.outdent().append("}").newLine();
+    }
+
+    private void renderChunkModuleLoaders(SourceWriter writer, Map<Integer, Chunk> chunks, String outputName)
+            throws IOException {
+        writer.append("var $rt_chunkModules").ws().append("=").ws().append("[").indent();
+        for (int i = 0; i < splitPointChunks.size(); ++i) {
+            if (i > 0) {
+                writer.append(",");
+            }
+            writer.softNewLine();
+            var chunk = chunks.get(i);
+            if (chunk == null) {
+                writer.append("null");
+                continue;
+            }
+            // Static import() expressions let bundlers discover chunks. Chunk exports its functions,
+            // which are then assigned to names that main module declares for them
+            writer.append("function()").ws().append("{").indent().softNewLine();
+            writer.append("return import(\"./").append(RenderingUtil.escapeString(getChunkFileName(outputName, i)))
+                    .append("\").then(function(m)").ws().append("{").indent().softNewLine();
+            for (var function : chunk.module.getFunctions()) {
+                writer.append(function).ws().append("=").ws().append("m.").append(function).append(";")
+                        .softNewLine();
+            }
+            writer.outdent().append("});").softNewLine();
+            writer.outdent().append("}");
+        }
+        writer.outdent().softNewLine().append("];").newLine();
+    }
+
+    private static String getChunkName(String outputName, int chunk) {
+        String baseName = outputName.endsWith(".js")
+                ? outputName.substring(0, outputName.length() - 3)
+                : outputName;
+        return baseName + "-" + chunk + ".js";
+    }
+
+    private static String getChunkFileName(String outputName, int chunk) {
+        return getFileName(getChunkName(outputName, chunk));
+    }
+
+    private static String getFileName(String path) {
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    private void writeChunk(BuildTarget target, String name, Chunk chunk, String outputName) throws IOException {
+        try (OutputStream output = target.createResource(name);
+                Writer writer = new OutputStreamWriter(output, StandardCharsets.UTF_8)) {
+            if (moduleType == JSModuleType.ES2015) {
+                chunk.module.write(writer, "./" + getFileName(outputName), this::getChunkExportName);
+            } else {
+                writer.write("\"use strict\";\n");
+                writer.write(chunk.output.toString());
+            }
+        }
+    }
+
+    /**
+     * Returns name under which main module exports its declaration to chunks. Usually it's the name
+     * of declaration itself, unless it clashes with a name of an entry point.
+     */
+    private String getChunkExportName(String name) {
+        return controller.getEntryPoints().containsKey(name) ? "$rt_chunk_" + name : name;
+    }
+
     private void printWrapperStart(SourceWriter writer) throws IOException {
+        if (moduleType == JSModuleType.ES2015) {
+            printModuleStart(writer);
+            return;
+        }
         writer.append("\"use strict\";").newLine();
         printUmdStart(writer);
         writer.append("function($rt_globals,").ws().append("$rt_exports");
@@ -555,10 +790,65 @@ public class JavaScriptTarget implements TeaVMTarget, TeaVMJavaScriptHost {
                 .ws();
     }
 
-    private void printWrapperEnd(SourceWriter writer) throws IOException {
+    private void printModuleStart(SourceWriter writer) throws IOException {
+        for (var entry : importedModules.entrySet()) {
+            writer.append("import").ws().append("*").ws().append("as ").appendFunction(entry.getValue())
+                    .append(" from").ws().append('"').append(RenderingUtil.escapeString(entry.getKey()))
+                    .append("\";").newLine();
+        }
+        writer.append("var $rt_globals").ws().append("=").ws().append("globalThis;").newLine();
+    }
+
+    private void printEntryPoint(SourceWriter writer, String name, MethodReference method) throws IOException {
+        if (moduleType == JSModuleType.ES2015) {
+            // Annotation allows bundlers to drop entry points that are never imported
+            writer.append("var ").appendFunction("$rt_export_" + name).ws().append("=").ws()
+                    .append("/*@__PURE__*/").ws();
+        } else {
+            writer.append("$rt_exports.").append(name).ws().append("=").ws();
+        }
+        writer.append("$rt_mainStarter(").appendMethodBody(method).append(");").newLine();
+    }
+
+    private void printWrapperEnd(SourceWriter writer, Map<Integer, Chunk> chunks) throws IOException {
+        if (moduleType == JSModuleType.ES2015) {
+            printModuleEnd(writer, chunks);
+            return;
+        }
         writer.outdent().append("}));").newLine();
     }
 
+    private void printModuleEnd(SourceWriter writer, Map<Integer, Chunk> chunks) throws IOException {
+        Set<String> chunkImports = new TreeSet<>();
+        for (var chunk : chunks.values()) {
+            chunkImports.addAll(chunk.module.getImportedNames());
+        }
+        if (controller.getEntryPoints().isEmpty() && chunkImports.isEmpty()) {
+            return;
+        }
+        writer.append("export").ws().append("{").ws();
+        boolean first = true;
+        for (var name : controller.getEntryPoints().keySet()) {
+            if (!first) {
+                writer.append(",").ws();
+            }
+            first = false;
+            writer.appendFunction("$rt_export_" + name).append(" as ").append(name);
+        }
+        for (var name : chunkImports) {
+            if (!first) {
+                writer.append(",").ws();
+            }
+            first = false;
+            writer.append(name);
+            String exportName = getChunkExportName(name);
+            if (!exportName.equals(name)) {
+                writer.append(" as ").append(exportName);
+            }
+        }
+        writer.ws().append("};").newLine();
+    }
+
     private void printStats(Renderer renderer, int totalSize) {
         if (!Boolean.parseBoolean(System.getProperty("teavm.js.stats", "false"))) {
             return;
@@ -618,6 +908,9 @@ public class JavaScriptTarget implements TeaVMTarget, TeaVMJavaScriptHost {
         Set<MethodReference> splitMethods = new HashSet<>(asyncMethods);
         splitMethods.addAll(asyncFamilyMethods);
 
+        if (controller.getThreadCount() > 1) {
+            return modelToAstConcurrently(classes, splitMethods);
+        }
         Decompiler decompiler = new Decompiler(classes, splitMethods, controller.isFriendlyToDebugger());
 
         List<PreparedClass> classNodes = new ArrayList<>();
@@ -634,6 +927,94 @@ public class JavaScriptTarget implements TeaVMTarget, TeaVMJavaScriptHost {
         return classNodes;
     }
 
+    /*
+     * Same as modelToAst, but methods that are missing in AST cache are decompiled on a pool of worker threads,
+     * each having its own decompiler. Native methods, cache lookups and cache updates are done by
+     * the calling thread, and methods are collected in the same order, so result does not depend
+     * on thread count.
+     */
+    private List<PreparedClass> modelToAstConcurrently(ListableClassHolderSource classes,
+            Set<MethodReference> splitMethods) {
+        List<String> classOrder = getClassOrdering(classes);
+        for (String className : classOrder) {
+            for (MethodHolder method : classes.get(className).getMethods()) {
+                preprocessNativeMethod(method);
+                if (controller.wasCancelled()) {
+                    break;
+                }
+            }
+        }
+
+        var decompilers = ThreadLocal.withInitial(() -> new Decompiler(classes, splitMethods,
+                controller.isFriendlyToDebugger()));
+        var pool = new ForkJoinPool(controller.getThreadCount());
+        try {
+            var classTasks = new ArrayList<List<DecompilationTask>>();
+            for (String className : classOrder) {
+                var tasks = new ArrayList<DecompilationTask>();
+                for (MethodHolder method : classes.get(className).getMethods()) {
+                    if (!shouldDecompile(method)) {
+                        continue;
+                    }
+                    var task = new DecompilationTask();
+                    if (method.hasModifier(ElementModifier.NATIVE)) {
+                        task.result = decompileNative(method);
+                    } else {
+                        task.result = getCachedMethod(method);
+                        if (task.result == null) {
+                            task.future = pool.submit(() -> decompileCacheMiss(decompilers.get(), method));
+                        }
+                    }
+                    tasks.add(task);
+                }
+                classTasks.add(tasks);
+            }
+
+            List<PreparedClass> classNodes = new ArrayList<>();
+            for (int i = 0; i < classOrder.size(); ++i) {
+                PreparedClass clsNode = new PreparedClass(classes.get(classOrder.get(i)));
+                for (DecompilationTask task : classTasks.get(i)) {
+                    if (task.future != null) {
+                        task.result = joinTask(task.future);
+                        storeCachedMethod(task.result);
+                    }
+                    clsNode.getMethods().add(task.result);
+                }
+                classNodes.add(clsNode);
+            }
+            return classNodes;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static class Chunk {
+        final StringWriter output = new StringWriter();
+        SourceWriter writer;
+        ChunkModule module;
+    }
+
+    private static class DecompilationTask {
+        PreparedMethod result;
+        Future<PreparedMethod> future;
+    }
+
+    private static <T> T joinTask(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            } else if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
     private List<String> getClassOrdering(ListableClassHolderSource classes) {
         List<String> sequence = new ArrayList<>();
         Set<String> visited = new HashSet<>();
@@ -663,14 +1044,7 @@ public class JavaScriptTarget implements TeaVMTarget, TeaVMJavaScriptHost {
     private PreparedClass decompile(Decompiler decompiler, ClassHolder cls) {
         PreparedClass clsNode = new PreparedClass(cls);
         for (MethodHolder method : cls.getMethods()) {
-            if (method.getModifiers().contains(ElementModifier.ABSTRACT)) {
-                continue;
-            }
-            if ((!isBootstrap() && method.getAnnotations().get(InjectedBy.class.getName()) != null)
-                    || methodInjectors.containsKey(method.getReference())) {
-                continue;
-            }
-            if (!method.hasModifier(ElementModifier.NATIVE) && !method.hasProgram()) {
+            if (!shouldDecompile(method)) {
                 continue;
             }
 
@@ -682,6 +1056,17 @@ public class JavaScriptTarget implements TeaVMTarget, TeaVMJavaScriptHost {
         return clsNode;
     }
 
+    private boolean shouldDecompile(MethodHolder method) {
+        if (method.getModifiers().contains(ElementModifier.ABSTRACT)) {
+            return false;
+        }
+        if ((!isBootstrap() && method.getAnnotations().get(InjectedBy.class.getName()) != null)
+                || methodInjectors.containsKey(method.getReference())) {
+            return false;
+        }
+        return method.hasModifier(ElementModifier.NATIVE) || method.hasProgram();
+    }
+
     private PreparedMethod decompileNative(MethodHolder method) {
         MethodReference reference = method.getReference();
         Generator generator = methodGenerators.get(reference);
@@ -706,55 +1091,67 @@ public class JavaScriptTarget implements TeaVMTarget, TeaVMJavaScriptHost {
     }
 
     private PreparedMethod decompile(Decompiler decompiler, MethodHolder method) {
-        MethodReference reference = method.getReference();
-        if (asyncMethods.contains(reference)) {
-            AsyncMethodNode node = decompileAsync(decompiler, method);
-            ControlFlowEntry[] cfg = ProgramUtils.getLocationCFG(method.getProgram());
-            return new PreparedMethod(method, node, null, false, cfg);
-        } else {
-            AstCacheEntry entry = decompileRegular(decompiler, method);
-            return new PreparedMethod(method, entry.method, null, false, entry.cfg);
+        PreparedMethod preparedMethod = getCachedMethod(method);
+        if (preparedMethod == null) {
+            preparedMethod = decompileCacheMiss(decompiler, method);
+            storeCachedMethod(preparedMethod);
         }
+        return preparedMethod;
     }
 
-    private AstCacheEntry decompileRegular(Decompiler decompiler, MethodHolder method) {
+    private PreparedMethod getCachedMethod(MethodHolder method) {
         if (astCache == null) {
-            return decompileRegularCacheMiss(decompiler, method);
+            return null;
         }
-
+        MethodReference reference = method.getReference();
         CacheStatus cacheStatus = controller.getCacheStatus();
-        AstCacheEntry entry = !cacheStatus.isStaleMethod(method.getReference())
-                ? astCache.get(method.getReference(), cacheStatus)
-                : null;
-        if (entry == null) {
-            entry = decompileRegularCacheMiss(decompiler, method);
-            RegularMethodNode finalNode = entry.method;
-            astCache.store(method.getReference(), entry, () -> dependencyExtractor.extract(finalNode));
+        if (cacheStatus.isStaleMethod(reference)) {
+            return null;
+        }
+        if (isAsyncNode(reference)) {
+            AsyncMethodNode node = astCache.getAsync(reference, cacheStatus);
+            return node != null
+                    ? new PreparedMethod(method, node, null, false, ProgramUtils.getLocationCFG(method.getProgram()))
+                    : null;
+        } else {
+            AstCacheEntry entry = astCache.get(reference, cacheStatus);
+            return entry != null
+                    ? new PreparedMethod(method, entry.method, null, asyncMethods.contains(reference), entry.cfg)
+                    : null;
         }
-        return entry;
     }
 
-    private AstCacheEntry decompileRegularCacheMiss(Decompiler decompiler, MethodHolder method) {
-        RegularMethodNode node = decompiler.decompileRegular(method);
-        ControlFlowEntry[] cfg = LocationGraphBuilder.build(node.getBody());
-        return new AstCacheEntry(node, cfg);
+    private PreparedMethod decompileCacheMiss(Decompiler decompiler, MethodHolder method) {
+        MethodReference reference = method.getReference();
+        if (isAsyncNode(reference)) {
+            AsyncMethodNode node = decompiler.decompileAsync(method);
+            ControlFlowEntry[] cfg = ProgramUtils.getLocationCFG(method.getProgram());
+            return new PreparedMethod(method, node, null, false, cfg);
+        } else {
+            // When async methods are rendered as generators, JavaScript engine keeps their frames,
+            // so regular AST is used
+            RegularMethodNode node = decompiler.decompileRegular(method);
+            ControlFlowEntry[] cfg = LocationGraphBuilder.build(node.getBody());
+            return new PreparedMethod(method, node, null, asyncMethods.contains(reference), cfg);
+        }
     }
 
-    private AsyncMethodNode decompileAsync(Decompiler decompiler, MethodHolder method) {
+    private void storeCachedMethod(PreparedMethod method) {
         if (astCache == null) {
-            return decompiler.decompileAsync(method);
+            return;
         }
+        if (method.node instanceof AsyncMethodNode) {
+            AsyncMethodNode node = (AsyncMethodNode) method.node;
+            astCache.storeAsync(method.reference, node, () -> dependencyExtractor.extract(node));
+        } else {
+            RegularMethodNode node = (RegularMethodNode) method.node;
+            astCache.store(method.reference, new AstCacheEntry(node, method.cfg),
+                    () -> dependencyExtractor.extract(node));
+        }
+    }
 
-        CacheStatus cacheStatus = controller.getCacheStatus();
-        AsyncMethodNode node = !cacheStatus.isStaleMethod(method.getReference())
-                ? astCache.getAsync(method.getReference(), cacheStatus)
-                : null;
-        if (node == null) {
-            node = decompiler.decompileAsync(method);
-            AsyncMethodNode finalNode = node;
-            astCache.storeAsync(method.getReference(), node, () -> dependencyExtractor.extract(finalNode));
-        }
-        return node;
+    private boolean isAsyncNode(MethodReference method) {
+        return !asyncGenerators && asyncMethods.contains(method);
     }
 
     private void preprocessNativeMethod(MethodHolder method) {
@@ -38,4 +38,13 @@ public interface TeaVMJavaScriptHost extends TeaVMHostExtension {
     void add(RendererListener listener);
 
     void addVirtualMethods(VirtualMethodContributor virtualMethods);
+
+    /**
+     * Declares split point, see {@link org.teavm.interop.SplitPoint}. Methods that are reachable only
+     * through split point are emitted into a separate file, which is loaded when split point is called
+     * for the first time.
+     *
+     * @param method a method to declare as split point.
+     */
+    void addSplitPoint(MethodReference method);
 }
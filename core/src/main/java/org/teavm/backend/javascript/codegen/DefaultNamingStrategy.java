@@ -15,8 +15,11 @@
  */
 package org.teavm.backend.javascript.codegen;
 
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 import org.teavm.model.AccessLevel;
 import org.teavm.model.ClassReader;
 import org.teavm.model.ClassReaderSource;
@@ -130,6 +133,31 @@ public class DefaultNamingStrategy implements NamingStrategy {
         return scopeName;
     }
 
+    /**
+     * Returns all names this strategy has produced so far that are declared at top level of output, i.e. names
+     * of classes, static methods and fields, class initializers and runtime functions that are not put
+     * into the scope object, as well as the name of the scope object itself.
+     */
+    public Set<String> getTopLevelNames() {
+        Set<String> result = new HashSet<>(functionAliases.values());
+        addTopLevelNames(result, privateAliases.values());
+        addTopLevelNames(result, classAliases.values());
+        addTopLevelNames(result, staticFieldAliases.values());
+        addTopLevelNames(result, classInitAliases.values());
+        if (scopeName != null) {
+            result.add(scopeName);
+        }
+        return result;
+    }
+
+    private static void addTopLevelNames(Set<String> target, Collection<ScopedName> names) {
+        for (ScopedName name : names) {
+            if (!name.scoped) {
+                target.add(name.value);
+            }
+        }
+    }
+
     private MethodReference getRealMethod(MethodReference methodRef) {
         String className = methodRef.getClassName();
         while (className != null) {
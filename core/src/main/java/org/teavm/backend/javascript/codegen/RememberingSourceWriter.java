@@ -0,0 +1,178 @@
+/*
+ *  Copyright 2023 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.backend.javascript.codegen;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.teavm.model.FieldReference;
+import org.teavm.model.MethodDescriptor;
+import org.teavm.model.MethodReference;
+
+/**
+ * Source writer that does not produce any output, but remembers everything written into it
+ * so that it can be replayed later into another writer. Names are not resolved until replay,
+ * as well as line breaks that depend on current column, so the replayed output is exactly the same
+ * as if it was written to the target writer directly. This allows to render code in any order
+ * (e.g. on several threads) and then put it together in a deterministic order.
+ */
+public class RememberingSourceWriter extends SourceWriter {
+    private final List<Command> commands = new ArrayList<>();
+    private final StringBuilder text = new StringBuilder();
+
+    public RememberingSourceWriter() {
+        super(null, null, 0);
+    }
+
+    @Override
+    public SourceWriter append(char value) {
+        text.append(value);
+        return this;
+    }
+
+    @Override
+    public SourceWriter append(CharSequence csq) {
+        text.append(csq);
+        return this;
+    }
+
+    @Override
+    public SourceWriter append(CharSequence csq, int start, int end) {
+        text.append(csq, start, end);
+        return this;
+    }
+
+    @Override
+    public SourceWriter appendClass(String cls) {
+        return add(w -> w.appendClass(cls));
+    }
+
+    @Override
+    public SourceWriter appendField(FieldReference field) {
+        return add(w -> w.appendField(field));
+    }
+
+    @Override
+    public SourceWriter appendStaticField(FieldReference field) {
+        return add(w -> w.appendStaticField(field));
+    }
+
+    @Override
+    public SourceWriter appendMethod(MethodDescriptor method) {
+        return add(w -> w.appendMethod(method));
+    }
+
+    @Override
+    public SourceWriter appendMethod(String name, Class<?>... params) {
+        return appendMethod(new MethodDescriptor(name, params));
+    }
+
+    @Override
+    public SourceWriter appendMethodBody(MethodReference method) {
+        return add(w -> w.appendMethodBody(method));
+    }
+
+    @Override
+    public SourceWriter appendFunction(String name) {
+        return add(w -> w.appendFunction(name));
+    }
+
+    @Override
+    public SourceWriter appendInit(MethodReference method) {
+        return add(w -> w.appendInit(method));
+    }
+
+    @Override
+    public SourceWriter appendClassInit(String className) {
+        return add(w -> w.appendClassInit(className));
+    }
+
+    @Override
+    public SourceWriter newLine() {
+        return add(SourceWriter::newLine);
+    }
+
+    @Override
+    public SourceWriter ws() {
+        return add(SourceWriter::ws);
+    }
+
+    @Override
+    public SourceWriter tokenBoundary() {
+        return add(SourceWriter::tokenBoundary);
+    }
+
+    @Override
+    public SourceWriter softNewLine() {
+        return add(SourceWriter::softNewLine);
+    }
+
+    @Override
+    public SourceWriter indent() {
+        return add(SourceWriter::indent);
+    }
+
+    @Override
+    public SourceWriter outdent() {
+        return add(SourceWriter::outdent);
+    }
+
+    @Override
+    public SourceWriter runInOrder(Command command) {
+        return add(command);
+    }
+
+    @Override
+    public NamingStrategy getNaming() {
+        throw new UnsupportedOperationException("Names are not available until remembered output is replayed");
+    }
+
+    @Override
+    public int getColumn() {
+        throw new UnsupportedOperationException("Position is not known until remembered output is replayed");
+    }
+
+    @Override
+    public int getLine() {
+        throw new UnsupportedOperationException("Position is not known until remembered output is replayed");
+    }
+
+    @Override
+    public int getOffset() {
+        throw new UnsupportedOperationException("Position is not known until remembered output is replayed");
+    }
+
+    public void replay(SourceWriter target) throws IOException {
+        flushText();
+        for (Command command : commands) {
+            command.run(target);
+        }
+    }
+
+    private SourceWriter add(Command command) {
+        flushText();
+        commands.add(command);
+        return this;
+    }
+
+    private void flushText() {
+        if (text.length() > 0) {
+            String chunk = text.toString();
+            text.setLength(0);
+            commands.add(w -> w.append(chunk));
+        }
+    }
+}
@@ -234,6 +234,16 @@ public class SourceWriter implements Appendable, LocationProvider {
         return this;
     }
 
+    /**
+     * Runs command at the point of output where it is called. Writers that postpone output run command
+     * when the text preceding it is actually written, so the command observes naming and locations in the same
+     * order as if the output was written directly.
+     */
+    public SourceWriter runInOrder(Command command) throws IOException {
+        command.run(this);
+        return this;
+    }
+
     public NamingStrategy getNaming() {
         return naming;
     }
@@ -252,4 +262,8 @@ public class SourceWriter implements Appendable, LocationProvider {
     public int getOffset() {
         return offset;
     }
+
+    public interface Command {
+        void run(SourceWriter writer) throws IOException;
+    }
 }
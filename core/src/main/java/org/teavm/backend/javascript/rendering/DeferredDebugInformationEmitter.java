@@ -0,0 +1,141 @@
+/*
+ *  Copyright 2023 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.backend.javascript.rendering;
+
+import java.io.IOException;
+import org.teavm.backend.javascript.codegen.LocationProvider;
+import org.teavm.backend.javascript.codegen.SourceWriter;
+import org.teavm.debugging.information.DebugInformationEmitter;
+import org.teavm.debugging.information.DeferredCallSite;
+import org.teavm.debugging.information.SourceLocation;
+import org.teavm.model.MethodDescriptor;
+import org.teavm.model.MethodReference;
+import org.teavm.vm.RenderingException;
+
+/**
+ * Passes debug information to the underlying emitter at the moment when the writer runs commands in order,
+ * i.e. when remembered output gets replayed. This keeps debug information in sync with generated locations.
+ */
+class DeferredDebugInformationEmitter implements DebugInformationEmitter {
+    private final DebugInformationEmitter emitter;
+    private final SourceWriter writer;
+
+    DeferredDebugInformationEmitter(DebugInformationEmitter emitter, SourceWriter writer) {
+        this.emitter = emitter;
+        this.writer = writer;
+    }
+
+    @Override
+    public void setLocationProvider(LocationProvider locationProvider) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void emitLocation(String fileName, int line) {
+        defer(w -> emitter.emitLocation(fileName, line));
+    }
+
+    @Override
+    public void enterLocation() {
+        defer(w -> emitter.enterLocation());
+    }
+
+    @Override
+    public void exitLocation() {
+        defer(w -> emitter.exitLocation());
+    }
+
+    @Override
+    public void emitStatementStart() {
+        defer(w -> emitter.emitStatementStart());
+    }
+
+    @Override
+    public void emitMethod(MethodDescriptor method) {
+        defer(w -> emitter.emitMethod(method));
+    }
+
+    @Override
+    public void emitClass(String className) {
+        defer(w -> emitter.emitClass(className));
+    }
+
+    @Override
+    public void emitVariable(String[] sourceNames, String generatedName) {
+        defer(w -> emitter.emitVariable(sourceNames, generatedName));
+    }
+
+    @Override
+    public DeferredCallSite emitCallSite() {
+        var callSite = new CallSiteProxy();
+        defer(w -> callSite.target = emitter.emitCallSite());
+        return callSite;
+    }
+
+    @Override
+    public void addClass(String jsName, String className, String parentName) {
+        defer(w -> emitter.addClass(jsName, className, parentName));
+    }
+
+    @Override
+    public void addField(String fieldName, String jsName) {
+        defer(w -> emitter.addField(fieldName, jsName));
+    }
+
+    @Override
+    public void addSuccessors(SourceLocation location, SourceLocation[] successors) {
+        defer(w -> emitter.addSuccessors(location, successors));
+    }
+
+    private void defer(SourceWriter.Command command) {
+        try {
+            writer.runInOrder(command);
+        } catch (IOException e) {
+            throw new RenderingException("IO error occurred", e);
+        }
+    }
+
+    private class CallSiteProxy implements DeferredCallSite {
+        DeferredCallSite target;
+
+        @Override
+        public void setVirtualMethod(MethodReference method) {
+            defer(w -> {
+                if (target != null) {
+                    target.setVirtualMethod(method);
+                }
+            });
+        }
+
+        @Override
+        public void setStaticMethod(MethodReference method) {
+            defer(w -> {
+                if (target != null) {
+                    target.setStaticMethod(method);
+                }
+            });
+        }
+
+        @Override
+        public void clean() {
+            defer(w -> {
+                if (target != null) {
+                    target.clean();
+                }
+            });
+        }
+    }
+}
@@ -20,6 +20,7 @@ import com.carrotsearch.hppc.ObjectIntMap;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
@@ -27,17 +28,23 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.function.IntFunction;
 import org.teavm.ast.AsyncMethodNode;
 import org.teavm.ast.AsyncMethodPart;
+import org.teavm.ast.InvocationExpr;
 import org.teavm.ast.MethodNode;
 import org.teavm.ast.MethodNodeVisitor;
+import org.teavm.ast.RecursiveVisitor;
 import org.teavm.ast.RegularMethodNode;
 import org.teavm.ast.ReturnStatement;
 import org.teavm.ast.Statement;
 import org.teavm.ast.VariableNode;
 import org.teavm.backend.javascript.codegen.NamingOrderer;
 import org.teavm.backend.javascript.codegen.NamingStrategy;
+import org.teavm.backend.javascript.codegen.RememberingSourceWriter;
 import org.teavm.backend.javascript.codegen.ScopedName;
 import org.teavm.backend.javascript.codegen.SourceWriter;
 import org.teavm.backend.javascript.decompile.PreparedClass;
@@ -65,7 +72,7 @@ import org.teavm.vm.TeaVMProgressFeedback;
 
 public class Renderer implements RenderingManager {
     private final NamingStrategy naming;
-    private final SourceWriter writer;
+    private SourceWriter writer;
     private final ListableClassReaderSource classSource;
     private final ClassLoader classLoader;
     private boolean minifying;
@@ -74,6 +81,7 @@ public class Renderer implements RenderingManager {
     private DebugInformationEmitter debugEmitter = new DummyDebugInformationEmitter();
     private final Set<MethodReference> asyncMethods;
     private final Set<MethodReference> asyncFamilyMethods;
+    private final Set<MethodReference> generatorMethods = new HashSet<>();
     private final Diagnostics diagnostics;
     private RenderingContext context;
     private List<PostponedFieldInitializer> postponedFieldInitializers = new ArrayList<>();
@@ -86,6 +94,13 @@ public class Renderer implements RenderingManager {
 
     private boolean longLibraryUsed;
     private boolean threadLibraryUsed;
+    private Map<MethodReference, SourceWriter> chunkWriters = Collections.emptyMap();
+    private boolean chunkModules;
+    private final Map<SourceWriter, List<String>> chunkFunctions = new HashMap<>();
+    private boolean renderingChunk;
+    private int threadCount = 1;
+    private final Map<MethodReference, Future<RememberedBody>> rememberedBodies = new HashMap<>();
+    private DebugInformationEmitter statementDebugEmitter;
 
     public Renderer(SourceWriter writer, Set<MethodReference> asyncMethods, Set<MethodReference> asyncFamilyMethods,
             Diagnostics diagnostics, RenderingContext context) {
@@ -172,6 +187,41 @@ public class Renderer implements RenderingManager {
         this.progressConsumer = progressConsumer;
     }
 
+    /**
+     * Specifies methods that should be rendered into separate chunks instead of main output. By default,
+     * chunk code only assigns functions to names declared in main output, so it should be evaluated
+     * in the scope of main output.
+     */
+    public void setChunkWriters(Map<MethodReference, SourceWriter> chunkWriters) {
+        this.chunkWriters = chunkWriters;
+    }
+
+    /**
+     * Makes chunk code declare its functions instead of assigning them to names declared in main output.
+     * Used when chunks are ES2015 modules, which export these functions and import everything else
+     * from main output.
+     */
+    public void setChunkModules(boolean chunkModules) {
+        this.chunkModules = chunkModules;
+    }
+
+    /**
+     * Returns names of top-level functions declared by chunk code written to the given writer.
+     * Only makes sense when {@link #setChunkModules(boolean)} is enabled.
+     */
+    public List<String> getChunkFunctions(SourceWriter chunkWriter) {
+        return chunkFunctions.getOrDefault(chunkWriter, Collections.emptyList());
+    }
+
+    /**
+     * Specifies number of threads used to render method bodies. Bodies are rendered into intermediate buffers
+     * and then written to output in the same order as in single thread mode, so output does not depend
+     * on this value.
+     */
+    public void setThreadCount(int threadCount) {
+        this.threadCount = threadCount;
+    }
+
     public void setProperties(Properties properties) {
         this.properties.clear();
         this.properties.putAll(properties);
@@ -274,6 +324,30 @@ public class Renderer implements RenderingManager {
                 "Long_lt", "Long_le", "Long_gt", "Long_ge", "Long_not", "Long_neg");
     }
 
+    public void renderGeneratorSupport() throws IOException {
+        writer.append("$rt_generatorPrototype").ws().append("=").ws()
+                .append("Object.getPrototypeOf(function*()").ws().append("{}).prototype;").newLine();
+
+        // Resumes the thread protocol of native async methods: they suspend the thread and return,
+        // and get result from thread attribute after resumption
+        writer.append("function* ").appendFunction("$rt_await").append("(r)").ws().append("{").indent()
+                .softNewLine();
+        writer.append("if").ws().append("($rt_isGenerator(r))").ws().append("{").indent().softNewLine();
+        writer.append("return yield* r;").softNewLine();
+        writer.outdent().append("}").softNewLine();
+        writer.append("if").ws().append("($rt_suspending())").ws().append("{").indent().softNewLine();
+        writer.append("yield;").softNewLine();
+        writer.append("var t").ws().append("=").ws().append("$rt_nativeThread();").softNewLine();
+        writer.append("t.status").ws().append("=").ws().append("0;").softNewLine();
+        writer.append("r").ws().append("=").ws().append("t.attribute;").softNewLine();
+        writer.append("if").ws().append("(r instanceof Error)").ws().append("{").indent().softNewLine();
+        writer.append("throw r;").softNewLine();
+        writer.outdent().append("}").softNewLine();
+        writer.outdent().append("}").softNewLine();
+        writer.append("return r;").softNewLine();
+        writer.outdent().append("}").newLine();
+    }
+
     private void renderRuntimeAliases(String... names) throws IOException {
         boolean first = true;
         for (String name : names) {
@@ -287,6 +361,15 @@ public class Renderer implements RenderingManager {
     }
 
     public void prepare(List<PreparedClass> classes) {
+        if (context.isAsyncGenerators()) {
+            for (PreparedClass cls : classes) {
+                for (PreparedMethod method : cls.getMethods()) {
+                    if (method.async && method.node != null) {
+                        generatorMethods.add(method.reference);
+                    }
+                }
+            }
+        }
         if (minifying) {
             NamingOrderer orderer = new NamingOrderer();
             NameFrequencyEstimator estimator = new NameFrequencyEstimator(orderer, classSource, asyncMethods,
@@ -307,20 +390,132 @@ public class Renderer implements RenderingManager {
                 throw new RenderingException(e);
             }
         }
-        int index = 0;
-        for (PreparedClass cls : classes) {
-            int start = writer.getOffset();
-            renderDeclaration(cls);
-            renderMethodBodies(cls);
-            appendClassSize(cls.getName(), writer.getOffset() - start);
-            if (progressConsumer.apply(1000 * ++index / classes.size()) == TeaVMProgressFeedback.CANCEL) {
-                return false;
+        ForkJoinPool pool = threadCount > 1 ? new ForkJoinPool(threadCount) : null;
+        try {
+            if (pool != null) {
+                rememberBodies(classes, pool);
             }
+            int index = 0;
+            for (PreparedClass cls : classes) {
+                int start = writer.getOffset();
+                renderDeclaration(cls);
+                renderMethodBodies(cls);
+                appendClassSize(cls.getName(), writer.getOffset() - start);
+                if (progressConsumer.apply(1000 * ++index / classes.size()) == TeaVMProgressFeedback.CANCEL) {
+                    return false;
+                }
+            }
+        } finally {
+            if (pool != null) {
+                pool.shutdownNow();
+            }
+            rememberedBodies.clear();
         }
         renderClassMetadata(classes);
         return true;
     }
 
+    /*
+     * Renders bodies of regular methods on a pool of worker threads. Each worker has its own renderer
+     * that writes into RememberingSourceWriter, which postpones resolution of names, string pool lookups,
+     * line breaking and debug information until the body is replayed into actual output. Bodies are replayed
+     * by renderBody in the same order they are rendered in single thread mode, so the output is the same.
+     * Native methods, methods that go to separate chunks and methods that call injectors are still rendered
+     * by the calling thread, since generators and injectors are plugin code that is not required to be
+     * thread-safe. Injectors are instantiated here, on the calling thread, so workers only read them.
+     */
+    private void rememberBodies(List<PreparedClass> classes, ForkJoinPool pool) {
+        var mainDebugEmitter = debugEmitter;
+        var workers = ThreadLocal.withInitial(this::createWorker);
+        var injectorUsageFinder = new InjectorUsageFinder();
+        for (PreparedClass cls : classes) {
+            for (PreparedMethod method : cls.getMethods()) {
+                if (method.node != null && !chunkWriters.containsKey(method.reference)
+                        && !injectorUsageFinder.usesInjectors(method.node)) {
+                    rememberedBodies.put(method.reference, pool.submit(() -> workers.get()
+                            .rememberBody(method, mainDebugEmitter)));
+                }
+            }
+        }
+    }
+
+    private class InjectorUsageFinder extends RecursiveVisitor implements MethodNodeVisitor {
+        private boolean found;
+
+        boolean usesInjectors(MethodNode node) {
+            found = false;
+            canceled = false;
+            node.acceptVisitor(this);
+            return found;
+        }
+
+        @Override
+        public void visit(RegularMethodNode methodNode) {
+            methodNode.getBody().acceptVisitor(this);
+        }
+
+        @Override
+        public void visit(AsyncMethodNode methodNode) {
+            for (AsyncMethodPart part : methodNode.getBody()) {
+                part.getStatement().acceptVisitor(this);
+                if (canceled) {
+                    break;
+                }
+            }
+        }
+
+        @Override
+        public void visit(InvocationExpr expr) {
+            if (context.getInjector(expr.getMethod()) != null) {
+                found = true;
+                cancel();
+            } else {
+                super.visit(expr);
+            }
+        }
+    }
+
+    private Renderer createWorker() {
+        var worker = new Renderer(null, asyncMethods, asyncFamilyMethods, diagnostics, context);
+        worker.minifying = minifying;
+        worker.properties.putAll(properties);
+        worker.generatorMethods.addAll(generatorMethods);
+        return worker;
+    }
+
+    private RememberedBody rememberBody(PreparedMethod method, DebugInformationEmitter mainDebugEmitter) {
+        var bodyWriter = new RememberingSourceWriter();
+        writer = bodyWriter;
+        debugEmitter = new DeferredDebugInformationEmitter(mainDebugEmitter, bodyWriter);
+        statementDebugEmitter = new DeferredDebugInformationEmitter(context.getDebugEmitter(), bodyWriter);
+        longLibraryUsed = false;
+        threadLibraryUsed = false;
+        try {
+            renderBody(method);
+        } catch (IOException | RuntimeException e) {
+            // Body will be rendered again by the calling thread, which reports the error as usual
+            return null;
+        } finally {
+            writer = null;
+        }
+        return new RememberedBody(bodyWriter, longLibraryUsed, threadLibraryUsed);
+    }
+
+    private RememberedBody takeRememberedBody(MethodReference method) {
+        Future<RememberedBody> future = rememberedBodies.remove(method);
+        if (future == null) {
+            return null;
+        }
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RenderingException(e);
+        } catch (ExecutionException e) {
+            return null;
+        }
+    }
+
     private void renderDeclaration(PreparedClass cls) throws RenderingException {
         ScopedName jsName = naming.getNameFor(cls.getName());
         debugEmitter.addClass(jsName.value, cls.getName(), cls.getParentName());
@@ -441,7 +636,12 @@ public class Renderer implements RenderingManager {
             }
 
             for (PreparedMethod method : cls.getMethods()) {
-                renderBody(method);
+                SourceWriter chunkWriter = chunkWriters.get(method.reference);
+                if (chunkWriter != null) {
+                    renderChunkBody(method, chunkWriter);
+                } else {
+                    renderBody(method);
+                }
             }
         } catch (IOException e) {
             throw new RenderingException("IO error occurred", e);
@@ -452,6 +652,10 @@ public class Renderer implements RenderingManager {
     private void renderCallClinit(MethodReader clinit, PreparedClass cls)
             throws IOException {
         boolean isAsync = asyncMethods.contains(clinit.getReference());
+        if (isAsync && generatorMethods.contains(clinit.getReference())) {
+            renderGeneratorCallClinit(clinit, cls);
+            return;
+        }
 
         ScopedName className = naming.getNameFor(cls.getName());
         String clinitCalled = (className.scoped ? naming.getScopeName() + "_" : "") + className.value
@@ -512,6 +716,29 @@ public class Renderer implements RenderingManager {
         writer.newLine();
     }
 
+    private void renderGeneratorCallClinit(MethodReader clinit, PreparedClass cls) throws IOException {
+        ScopedName className = naming.getNameFor(cls.getName());
+        String clinitCalled = (className.scoped ? naming.getScopeName() + "_" : "") + className.value
+                + "_$clinitCalled";
+        writer.append("var ").append(clinitCalled).ws().append("=").ws().append("false;").softNewLine();
+
+        ScopedName name = naming.getNameForClassInit(cls.getName());
+        renderFunctionDeclaration(name, true);
+        writer.append("()").ws().append("{").softNewLine().indent();
+        writer.append("if").ws().append("(").append(clinitCalled).append(")").ws().append("{").indent()
+                .softNewLine();
+        writer.append("return;").softNewLine();
+        writer.outdent().append("}").softNewLine();
+        writer.append(clinitCalled).ws().append('=').ws().append("true;").softNewLine();
+        writer.append("yield*").ws().appendMethodBody(clinit.getReference()).append("();").softNewLine();
+        renderEraseClinit(cls);
+        writer.outdent().append("}");
+        if (name.scoped) {
+            writer.append(";");
+        }
+        writer.newLine();
+    }
+
     private void renderEraseClinit(PreparedClass cls) throws IOException {
         writer.appendClassInit(cls.getName()).ws().append("=").ws()
                 .appendFunction("$rt_eraseClinit").append("(")
@@ -784,7 +1011,8 @@ public class Renderer implements RenderingManager {
         MethodReference ref = method.reference;
         debugEmitter.emitMethod(ref.getDescriptor());
         ScopedName name = naming.getNameForInit(ref);
-        renderFunctionDeclaration(name);
+        boolean generator = generatorMethods.contains(ref);
+        renderFunctionDeclaration(name, generator);
         writer.append("(");
         for (int i = 0; i < ref.parameterCount(); ++i) {
             if (i > 0) {
@@ -797,6 +1025,9 @@ public class Renderer implements RenderingManager {
         String instanceName = variableNameForInitializer(ref.parameterCount());
         writer.append("var " + instanceName).ws().append("=").ws().append("new ").appendClass(
                 ref.getClassName()).append("();").softNewLine();
+        if (generator) {
+            writer.append("yield*").ws();
+        }
         writer.appendMethodBody(ref).append("(" + instanceName);
         for (int i = 0; i < ref.parameterCount(); ++i) {
             writer.append(",").ws();
@@ -877,14 +1108,30 @@ public class Renderer implements RenderingManager {
     }
 
     private void renderBody(PreparedMethod method) throws IOException {
+        RememberedBody rememberedBody = takeRememberedBody(method.reference);
+        if (rememberedBody != null) {
+            rememberedBody.writer.replay(writer);
+            longLibraryUsed |= rememberedBody.longLibraryUsed;
+            threadLibraryUsed |= rememberedBody.threadLibraryUsed;
+            return;
+        }
+
         StatementRenderer statementRenderer = new StatementRenderer(context, writer);
+        if (statementDebugEmitter != null) {
+            statementRenderer.setDebugEmitter(statementDebugEmitter);
+        }
         statementRenderer.setCurrentMethod(method.node);
+        boolean generator = generatorMethods.contains(method.reference);
+        if (context.isAsyncGenerators()) {
+            statementRenderer.setAsyncMethods(asyncMethods, asyncFamilyMethods, generatorMethods);
+            statementRenderer.setGenerator(generator);
+            threadLibraryUsed |= generator;
+        }
 
         MethodReference ref = method.reference;
         debugEmitter.emitMethod(ref.getDescriptor());
-        ScopedName name = naming.getFullNameFor(ref);
-
-        renderFunctionDeclaration(name);
+        boolean chunk = renderingChunk && !chunkModules;
+        writer.runInOrder(w -> renderFunctionDeclaration(w, naming.getFullNameFor(ref), generator, chunk));
         writer.append("(");
         int startParam = 0;
         if (method.methodHolder.getModifiers().contains(ElementModifier.STATIC)) {
@@ -910,9 +1157,11 @@ public class Renderer implements RenderingManager {
         }
 
         writer.outdent().append("}");
-        if (name.scoped) {
-            writer.append(";");
-        }
+        writer.runInOrder(w -> {
+            if (naming.getFullNameFor(ref).scoped || chunk) {
+                w.append(";");
+            }
+        });
 
         writer.newLine();
         debugEmitter.emitMethod(null);
@@ -920,6 +1169,29 @@ public class Renderer implements RenderingManager {
         longLibraryUsed |= statementRenderer.isLongLibraryUsed();
     }
 
+    private void renderChunkBody(PreparedMethod method, SourceWriter chunkWriter) throws IOException {
+        ScopedName name = naming.getFullNameFor(method.reference);
+        if (!name.scoped) {
+            writer.append("var ").append(name.value).append(";").softNewLine();
+            if (chunkModules) {
+                chunkFunctions.computeIfAbsent(chunkWriter, w -> new ArrayList<>()).add(name.value);
+            }
+        }
+
+        SourceWriter mainWriter = writer;
+        DebugInformationEmitter mainDebugEmitter = debugEmitter;
+        writer = chunkWriter;
+        debugEmitter = new DummyDebugInformationEmitter();
+        renderingChunk = true;
+        try {
+            renderBody(method);
+        } finally {
+            writer = mainWriter;
+            debugEmitter = mainDebugEmitter;
+            renderingChunk = false;
+        }
+    }
+
     private static boolean isTrivialBody(MethodNode node) {
         if (!(node instanceof RegularMethodNode)) {
             return false;
@@ -929,11 +1201,22 @@ public class Renderer implements RenderingManager {
     }
 
     private void renderFunctionDeclaration(ScopedName name) throws IOException {
+        renderFunctionDeclaration(name, false);
+    }
+
+    private void renderFunctionDeclaration(ScopedName name, boolean generator) throws IOException {
+        renderFunctionDeclaration(writer, name, generator, renderingChunk && !chunkModules);
+    }
+
+    private void renderFunctionDeclaration(SourceWriter writer, ScopedName name, boolean generator, boolean chunk)
+            throws IOException {
         if (name.scoped) {
             writer.append(naming.getScopeName()).append(".").append(name.value).ws().append("=").ws();
+        } else if (chunk) {
+            writer.append(name.value).ws().append("=").ws();
         }
-        writer.append("function");
-        if (!name.scoped) {
+        writer.append(generator ? "function*" : "function");
+        if (!name.scoped && !chunk) {
             writer.append(" ").append(name.value);
         }
     }
@@ -1012,11 +1295,18 @@ public class Renderer implements RenderingManager {
                 statementRenderer.setEnd(true);
                 statementRenderer.setCurrentPart(0);
 
+                boolean generator = statementRenderer.isGenerator();
                 if (method.getModifiers().contains(ElementModifier.SYNCHRONIZED)) {
-                    writer.appendMethodBody(NameFrequencyEstimator.MONITOR_ENTER_SYNC_METHOD);
+                    MethodReference monitorEnter = generator
+                            ? NameFrequencyEstimator.MONITOR_ENTER_METHOD
+                            : NameFrequencyEstimator.MONITOR_ENTER_SYNC_METHOD;
+                    statementRenderer.renderAwaitStart(monitorEnter);
+                    writer.appendMethodBody(monitorEnter);
                     writer.append("(");
                     appendMonitor(statementRenderer, method);
-                    writer.append(");").softNewLine();
+                    writer.append(")");
+                    statementRenderer.renderAwaitEnd(monitorEnter);
+                    writer.append(";").softNewLine();
 
                     writer.append("try").ws().append("{").softNewLine().indent();
                 }
@@ -1026,10 +1316,16 @@ public class Renderer implements RenderingManager {
                 if (method.getModifiers().contains(ElementModifier.SYNCHRONIZED)) {
                     writer.outdent().append("}").ws().append("finally").ws().append("{").indent().softNewLine();
 
-                    writer.appendMethodBody(NameFrequencyEstimator.MONITOR_EXIT_SYNC_METHOD);
+                    MethodReference monitorExit = generator
+                            ? NameFrequencyEstimator.MONITOR_EXIT_METHOD
+                            : NameFrequencyEstimator.MONITOR_EXIT_SYNC_METHOD;
+                    statementRenderer.renderAwaitStart(monitorExit);
+                    writer.appendMethodBody(monitorExit);
                     writer.append("(");
                     appendMonitor(statementRenderer, method);
-                    writer.append(");").softNewLine();
+                    writer.append(")");
+                    statementRenderer.renderAwaitEnd(monitorExit);
+                    writer.append(";").softNewLine();
 
                     writer.outdent().append("}").softNewLine();
                 }
@@ -1190,6 +1486,11 @@ public class Renderer implements RenderingManager {
             return asyncFamilyMethods.contains(method);
         }
 
+        @Override
+        public boolean isAsyncGenerators() {
+            return context.isAsyncGenerators();
+        }
+
         @Override
         public Diagnostics getDiagnostics() {
             return diagnostics;
@@ -1234,6 +1535,18 @@ public class Renderer implements RenderingManager {
         return services.getService(type);
     }
 
+    private static class RememberedBody {
+        final RememberingSourceWriter writer;
+        final boolean longLibraryUsed;
+        final boolean threadLibraryUsed;
+
+        RememberedBody(RememberingSourceWriter writer, boolean longLibraryUsed, boolean threadLibraryUsed) {
+            this.writer = writer;
+            this.longLibraryUsed = longLibraryUsed;
+            this.threadLibraryUsed = threadLibraryUsed;
+        }
+    }
+
     private static class PostponedFieldInitializer {
         FieldReference field;
         String value;
@@ -27,6 +27,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Predicate;
 import org.teavm.backend.javascript.codegen.NamingStrategy;
 import org.teavm.backend.javascript.codegen.SourceWriter;
@@ -61,11 +62,13 @@ public abstract class RenderingContext {
     private final Map<String, Integer> stringPoolMap = new HashMap<>();
     private final List<String> stringPool = new ArrayList<>();
     private final List<String> readonlyStringPool = Collections.unmodifiableList(stringPool);
-    private final Map<MethodReference, InjectorHolder> injectorMap = new HashMap<>();
+    private final Map<MethodReference, InjectorHolder> injectorMap = new ConcurrentHashMap<>();
     private boolean minifying;
     private ClassInitializerInfo classInitializerInfo;
     private TextLocation lastEmittedLocation = TextLocation.EMPTY;
     private boolean strict;
+    private boolean asyncGenerators;
+    private boolean bigIntLongs;
 
     public RenderingContext(DebugInformationEmitter debugEmitter,
             ClassReaderSource initialClassSource, ListableClassReaderSource classSource,
@@ -118,6 +121,22 @@ public abstract class RenderingContext {
         this.minifying = minifying;
     }
 
+    public boolean isAsyncGenerators() {
+        return asyncGenerators;
+    }
+
+    public void setAsyncGenerators(boolean asyncGenerators) {
+        this.asyncGenerators = asyncGenerators;
+    }
+
+    public boolean isBigIntLongs() {
+        return bigIntLongs;
+    }
+
+    public void setBigIntLongs(boolean bigIntLongs) {
+        this.bigIntLongs = bigIntLongs;
+    }
+
     public DebugInformationEmitter getDebugEmitter() {
         return debugEmitter;
     }
@@ -237,7 +256,13 @@ public abstract class RenderingContext {
             writer.appendFunction("$rt_s").append("(" + index + ")");
         } else if (cst instanceof Long) {
             long value = (Long) cst;
-            if (value == 0) {
+            if (bigIntLongs) {
+                if (value < 0) {
+                    writer.append("(").append(Long.toString(value)).append("n)");
+                } else {
+                    writer.append(Long.toString(value)).append("n");
+                }
+            } else if (value == 0) {
                 writer.appendFunction("Long_ZERO");
             } else if ((int) value == value) {
                 writer.appendFunction("Long_fromInt").append("(").append(String.valueOf(value)).append(")");
@@ -381,25 +406,24 @@ public abstract class RenderingContext {
     }
 
     public Injector getInjector(MethodReference ref) {
-        InjectorHolder holder = injectorMap.get(ref);
-        if (holder == null) {
-            holder = new InjectorHolder(null);
-            if (!isBootstrap()) {
-                ClassReader cls = classSource.get(ref.getClassName());
-                if (cls != null) {
-                    MethodReader method = cls.getMethod(ref.getDescriptor());
-                    if (method != null) {
-                        AnnotationReader injectedByAnnot = method.getAnnotations().get(InjectedBy.class.getName());
-                        if (injectedByAnnot != null) {
-                            ValueType type = injectedByAnnot.getValue("value").getJavaClass();
-                            holder = new InjectorHolder(instantiateInjector(((ValueType.Object) type).getClassName()));
-                        }
+        return injectorMap.computeIfAbsent(ref, this::createInjector).injector;
+    }
+
+    private InjectorHolder createInjector(MethodReference ref) {
+        if (!isBootstrap()) {
+            ClassReader cls = classSource.get(ref.getClassName());
+            if (cls != null) {
+                MethodReader method = cls.getMethod(ref.getDescriptor());
+                if (method != null) {
+                    AnnotationReader injectedByAnnot = method.getAnnotations().get(InjectedBy.class.getName());
+                    if (injectedByAnnot != null) {
+                        ValueType type = injectedByAnnot.getValue("value").getJavaClass();
+                        return new InjectorHolder(instantiateInjector(((ValueType.Object) type).getClassName()));
                     }
                 }
             }
-            injectorMap.put(ref, holder);
         }
-        return holder.injector;
+        return new InjectorHolder(null);
     }
 
     public boolean isStrict() {
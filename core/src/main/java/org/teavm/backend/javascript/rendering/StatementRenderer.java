@@ -24,6 +24,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 import org.teavm.ast.ArrayFromDataExpr;
 import org.teavm.ast.AssignmentStatement;
 import org.teavm.ast.BinaryExpr;
@@ -65,7 +66,6 @@ import org.teavm.ast.UnaryExpr;
 import org.teavm.ast.UnwrapArrayExpr;
 import org.teavm.ast.VariableExpr;
 import org.teavm.ast.WhileStatement;
-import org.teavm.backend.javascript.codegen.NamingStrategy;
 import org.teavm.backend.javascript.codegen.SourceWriter;
 import org.teavm.backend.javascript.spi.Injector;
 import org.teavm.backend.javascript.spi.InjectorContext;
@@ -87,10 +87,13 @@ public class StatementRenderer implements ExprVisitor, StatementVisitor {
     private SourceWriter writer;
     private ClassReaderSource classSource;
     private boolean async;
+    private boolean generator;
+    private Set<MethodReference> asyncMethods = Collections.emptySet();
+    private Set<MethodReference> asyncFamilyMethods = Collections.emptySet();
+    private Set<MethodReference> generatorMethods = Collections.emptySet();
     private boolean minifying;
     private Precedence precedence;
     private DebugInformationEmitter debugEmitter;
-    private NamingStrategy naming;
     private DeferredCallSite lastCallSite;
     private DeferredCallSite prevCallSite;
     private boolean end;
@@ -99,6 +102,7 @@ public class StatementRenderer implements ExprVisitor, StatementVisitor {
     private List<String> blockIds = new ArrayList<>();
     private IntIndexedContainer blockIndexMap = new IntArrayList();
     private boolean longLibraryUsed;
+    private boolean bigIntLongs;
     private static final MethodDescriptor CLINIT_METHOD = new MethodDescriptor("<clinit>", ValueType.VOID);
     private VariableNameGenerator variableNameGenerator;
 
@@ -107,11 +111,15 @@ public class StatementRenderer implements ExprVisitor, StatementVisitor {
         this.writer = writer;
         this.classSource = context.getClassSource();
         this.minifying = context.isMinifying();
-        this.naming = context.getNaming();
+        this.bigIntLongs = context.isBigIntLongs();
         this.debugEmitter = context.getDebugEmitter();
         variableNameGenerator = new VariableNameGenerator(minifying);
     }
 
+    public void setDebugEmitter(DebugInformationEmitter debugEmitter) {
+        this.debugEmitter = debugEmitter;
+    }
+
     public boolean isLongLibraryUsed() {
         return longLibraryUsed;
     }
@@ -124,6 +132,55 @@ public class StatementRenderer implements ExprVisitor, StatementVisitor {
         this.async = async;
     }
 
+    public boolean isGenerator() {
+        return generator;
+    }
+
+    public void setGenerator(boolean generator) {
+        this.generator = generator;
+    }
+
+    public void setAsyncMethods(Set<MethodReference> asyncMethods, Set<MethodReference> asyncFamilyMethods,
+            Set<MethodReference> generatorMethods) {
+        this.asyncMethods = asyncMethods;
+        this.asyncFamilyMethods = asyncFamilyMethods;
+        this.generatorMethods = generatorMethods;
+    }
+
+    private boolean isAwaited(MethodReference method) {
+        return generator && (asyncMethods.contains(method) || asyncFamilyMethods.contains(method));
+    }
+
+    public void renderAwaitStart(MethodReference method) throws IOException {
+        renderAwaitStart(method, false);
+    }
+
+    public void renderAwaitEnd(MethodReference method) throws IOException {
+        renderAwaitEnd(method, false);
+    }
+
+    // Generator of a known callee is delegated to directly, results of virtual and native methods
+    // are checked at run time
+    private void renderAwaitStart(MethodReference method, boolean virtual) throws IOException {
+        if (!isAwaited(method)) {
+            return;
+        }
+        writer.append("(yield*").ws();
+        if (virtual || !generatorMethods.contains(method)) {
+            writer.appendFunction("$rt_await").append("(");
+        }
+    }
+
+    private void renderAwaitEnd(MethodReference method, boolean virtual) throws IOException {
+        if (!isAwaited(method)) {
+            return;
+        }
+        if (virtual || !generatorMethods.contains(method)) {
+            writer.append(")");
+        }
+        writer.append(")");
+    }
+
     public void setCurrentMethod(MethodNode currentMethod) {
         variableNameGenerator.setCurrentMethod(currentMethod);
     }
@@ -137,11 +194,19 @@ public class StatementRenderer implements ExprVisitor, StatementVisitor {
     }
 
     private void pushLocation(TextLocation location) {
-        context.pushLocation(location);
+        try {
+            writer.runInOrder(w -> context.pushLocation(location));
+        } catch (IOException e) {
+            throw new RenderingException("IO error occurred", e);
+        }
     }
 
     private void popLocation() {
-        context.popLocation();
+        try {
+            writer.runInOrder(w -> context.popLocation());
+        } catch (IOException e) {
+            throw new RenderingException("IO error occurred", e);
+        }
     }
 
     @Override
@@ -470,7 +535,14 @@ public class StatementRenderer implements ExprVisitor, StatementVisitor {
             if (statement.getLocation() != null) {
                 pushLocation(statement.getLocation());
             }
-            writer.appendClassInit(statement.getClassName()).append("();").softNewLine();
+            MethodReference clinit = method.getReference();
+            if (isAwaited(clinit)) {
+                // Class initializer is replaced by a plain function after the first call
+                writer.append("yield*").ws().appendFunction("$rt_await").append("(")
+                        .appendClassInit(statement.getClassName()).append("());").softNewLine();
+            } else {
+                writer.appendClassInit(statement.getClassName()).append("();").softNewLine();
+            }
             if (statement.isAsync()) {
                 emitSuspendChecker();
             }
@@ -620,9 +692,116 @@ public class StatementRenderer implements ExprVisitor, StatementVisitor {
         }
     }
 
+    private void visitBigIntBinary(BinaryExpr expr) {
+        switch (expr.getOperation()) {
+            case ADD:
+                renderInt64(() -> visitBinary(expr, "+", false));
+                break;
+            case SUBTRACT:
+                renderInt64(() -> visitBinary(expr, "-", false));
+                break;
+            case MULTIPLY:
+                renderInt64(() -> visitBinary(expr, "*", false));
+                break;
+            case DIVIDE:
+                renderInt64(() -> visitBinary(expr, "/", false));
+                break;
+            case MODULO:
+                visitBinary(expr, "%", false);
+                break;
+            case BITWISE_AND:
+                visitBinary(expr, "&", false);
+                break;
+            case BITWISE_OR:
+                visitBinary(expr, "|", false);
+                break;
+            case BITWISE_XOR:
+                visitBinary(expr, "^", false);
+                break;
+            case LEFT_SHIFT:
+                renderInt64(() -> visitBigIntShift(expr, "<<"));
+                break;
+            case RIGHT_SHIFT:
+                visitBigIntShift(expr, ">>");
+                break;
+            case UNSIGNED_RIGHT_SHIFT:
+                longLibraryUsed = true;
+                visitBinaryFunction(expr, "Long_shru");
+                break;
+            case COMPARE:
+                longLibraryUsed = true;
+                visitBinaryFunction(expr, "Long_compare");
+                break;
+            case EQUALS:
+                visitBinary(expr, "===", false);
+                break;
+            case NOT_EQUALS:
+                visitBinary(expr, "!==", false);
+                break;
+            case LESS:
+                visitBinary(expr, "<", false);
+                break;
+            case LESS_OR_EQUALS:
+                visitBinary(expr, "<=", false);
+                break;
+            case GREATER:
+                visitBinary(expr, ">", false);
+                break;
+            case GREATER_OR_EQUALS:
+                visitBinary(expr, ">=", false);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void visitBigIntShift(BinaryExpr expr, String op) {
+        if (expr.getLocation() != null) {
+            pushLocation(expr.getLocation());
+        }
+        visitBinary(expr.getOperation(), op, () -> expr.getFirstOperand().acceptVisitor(this), () -> {
+            try {
+                Expr amount = expr.getSecondOperand();
+                if (amount instanceof ConstantExpr && ((ConstantExpr) amount).getValue() instanceof Integer) {
+                    int value = (Integer) ((ConstantExpr) amount).getValue();
+                    writer.append(String.valueOf(value & 63)).append("n");
+                } else {
+                    writer.append("BigInt(");
+                    precedence = Precedence.min();
+                    visitBinary(BinaryOperation.BITWISE_AND, "&", () -> amount.acceptVisitor(this), () -> {
+                        try {
+                            writer.append("63");
+                        } catch (IOException e) {
+                            throw new RenderingException("IO error occurred", e);
+                        }
+                    });
+                    writer.append(")");
+                }
+            } catch (IOException e) {
+                throw new RenderingException("IO error occurred", e);
+            }
+        });
+        if (expr.getLocation() != null) {
+            popLocation();
+        }
+    }
+
+    private void renderInt64(Runnable value) {
+        try {
+            writer.append("BigInt.asIntN(64,").ws();
+            precedence = Precedence.min();
+            value.run();
+            writer.append(")");
+        } catch (IOException e) {
+            throw new RenderingException("IO error occurred", e);
+        }
+    }
+
     @Override
     public void visit(BinaryExpr expr) {
-        if (expr.getType() == OperationType.LONG) {
+        if (expr.getType() == OperationType.LONG && bigIntLongs) {
+            visitBigIntBinary(expr);
+        } else if (expr.getType() == OperationType.LONG) {
             longLibraryUsed = true;
             switch (expr.getOperation()) {
                 case ADD:
@@ -771,7 +950,7 @@ public class StatementRenderer implements ExprVisitor, StatementVisitor {
             Precedence outerPrecedence = precedence;
             switch (expr.getOperation()) {
                 case NOT: {
-                    if (expr.getType() == OperationType.LONG) {
+                    if (expr.getType() == OperationType.LONG && !bigIntLongs) {
                         longLibraryUsed = true;
                         writer.appendFunction("Long_not").append("(");
                         precedence = Precedence.min();
@@ -791,7 +970,17 @@ public class StatementRenderer implements ExprVisitor, StatementVisitor {
                     break;
                 }
                 case NEGATE:
-                    if (expr.getType() == OperationType.LONG) {
+                    if (expr.getType() == OperationType.LONG && bigIntLongs) {
+                        renderInt64(() -> {
+                            try {
+                                writer.append("-");
+                                precedence = Precedence.UNARY;
+                                expr.getOperand().acceptVisitor(this);
+                            } catch (IOException e) {
+                                throw new RenderingException("IO error occurred", e);
+                            }
+                        });
+                    } else if (expr.getType() == OperationType.LONG) {
                         longLibraryUsed = true;
                         writer.appendFunction("Long_neg").append("(");
                         precedence = Precedence.min();
@@ -921,7 +1110,12 @@ public class StatementRenderer implements ExprVisitor, StatementVisitor {
             }
             switch (expr.getSource()) {
                 case INT:
-                    if (expr.getTarget() == OperationType.LONG) {
+                    if (expr.getTarget() == OperationType.LONG && bigIntLongs) {
+                        writer.append("BigInt(");
+                        precedence = Precedence.min();
+                        expr.getValue().acceptVisitor(this);
+                        writer.append(')');
+                    } else if (expr.getTarget() == OperationType.LONG) {
                         writer.appendFunction("Long_fromInt").append("(");
                         precedence = Precedence.min();
                         expr.getValue().acceptVisitor(this);
@@ -935,7 +1129,25 @@ public class StatementRenderer implements ExprVisitor, StatementVisitor {
                         case INT:
                             precedence = Precedence.MEMBER_ACCESS;
                             Expr longShifted = extractLongRightShiftedBy32(expr.getValue());
-                            if (longShifted != null) {
+                            if (bigIntLongs) {
+                                precedence = Precedence.min();
+                                if (longShifted != null) {
+                                    writer.append("Number(");
+                                    visitBinary(BinaryOperation.RIGHT_SHIFT, ">>",
+                                            () -> longShifted.acceptVisitor(this), () -> {
+                                                try {
+                                                    writer.append("32n");
+                                                } catch (IOException e) {
+                                                    throw new RenderingException("IO error occurred", e);
+                                                }
+                                            });
+                                    writer.append(")");
+                                } else {
+                                    writer.append("Number(BigInt.asIntN(32,").ws();
+                                    expr.getValue().acceptVisitor(this);
+                                    writer.append("))");
+                                }
+                            } else if (longShifted != null) {
                                 writer.appendFunction("Long_hi").append("(");
                                 longShifted.acceptVisitor(this);
                                 writer.append(")");
@@ -947,6 +1159,13 @@ public class StatementRenderer implements ExprVisitor, StatementVisitor {
                             break;
                         case FLOAT:
                         case DOUBLE:
+                            if (bigIntLongs) {
+                                writer.append("Number(");
+                                precedence = Precedence.min();
+                                expr.getValue().acceptVisitor(this);
+                                writer.append(')');
+                                break;
+                            }
                             writer.appendFunction("Long_toNumber").append("(");
                             precedence = Precedence.min();
                             expr.getValue().acceptVisitor(this);
@@ -1052,7 +1271,8 @@ public class StatementRenderer implements ExprVisitor, StatementVisitor {
             if (expr.getLocation() != null) {
                 pushLocation(expr.getLocation());
             }
-            context.constantToString(writer, expr.getValue());
+            Object value = expr.getValue();
+            writer.runInOrder(w -> context.constantToString(w, value));
             if (expr.getLocation() != null) {
                 popLocation();
             }
@@ -1124,6 +1344,11 @@ public class StatementRenderer implements ExprVisitor, StatementVisitor {
                 injector.generate(new InjectorContextImpl(expr.getArguments()), expr.getMethod());
             } else {
                 Precedence outerPrecedence = precedence;
+                boolean awaited = isAwaited(expr.getMethod());
+                if (awaited) {
+                    renderAwaitStart(expr.getMethod(), expr.getType() == InvocationType.DYNAMIC);
+                    outerPrecedence = Precedence.min();
+                }
                 if (outerPrecedence.ordinal() > Precedence.FUNCTION_CALL.ordinal()) {
                     writer.append('(');
                 }
@@ -1133,7 +1358,6 @@ public class StatementRenderer implements ExprVisitor, StatementVisitor {
                     expr.getArguments().get(0).acceptVisitor(this);
                 }
                 MethodReference method = expr.getMethod();
-                String name = naming.getNameFor(method.getDescriptor());
                 DeferredCallSite callSite = prevCallSite;
                 boolean shouldEraseCallSite = lastCallSite == null;
                 if (lastCallSite == null) {
@@ -1164,7 +1388,7 @@ public class StatementRenderer implements ExprVisitor, StatementVisitor {
                         }
                         break;
                     case DYNAMIC:
-                        writer.append(".").append(name).append("(");
+                        writer.append(".").appendMethod(method.getDescriptor()).append("(");
                         prevCallSite = debugEmitter.emitCallSite();
                         for (int i = 1; i < expr.getArguments().size(); ++i) {
                             if (i > 1) {
@@ -1203,6 +1427,9 @@ public class StatementRenderer implements ExprVisitor, StatementVisitor {
                 if (outerPrecedence.ordinal() > Precedence.FUNCTION_CALL.ordinal()) {
                     writer.append(')');
                 }
+                if (awaited) {
+                    renderAwaitEnd(expr.getMethod(), expr.getType() == InvocationType.DYNAMIC);
+                }
             }
             if (expr.getLocation() != null) {
                 popLocation();
@@ -1603,6 +1830,14 @@ public class StatementRenderer implements ExprVisitor, StatementVisitor {
                 statement.getObjectRef().acceptVisitor(this);
                 writer.append(");").softNewLine();
                 emitSuspendChecker();
+            } else if (generator) {
+                renderAwaitStart(NameFrequencyEstimator.MONITOR_ENTER_METHOD);
+                writer.appendMethodBody(NameFrequencyEstimator.MONITOR_ENTER_METHOD).append("(");
+                precedence = Precedence.min();
+                statement.getObjectRef().acceptVisitor(this);
+                writer.append(")");
+                renderAwaitEnd(NameFrequencyEstimator.MONITOR_ENTER_METHOD);
+                writer.append(";").softNewLine();
             } else {
                 writer.appendMethodBody(NameFrequencyEstimator.MONITOR_ENTER_SYNC_METHOD).append('(');
                 precedence = Precedence.min();
@@ -1629,6 +1864,14 @@ public class StatementRenderer implements ExprVisitor, StatementVisitor {
                 precedence = Precedence.min();
                 statement.getObjectRef().acceptVisitor(this);
                 writer.append(");").softNewLine();
+            } else if (generator) {
+                renderAwaitStart(NameFrequencyEstimator.MONITOR_EXIT_METHOD);
+                writer.appendMethodBody(NameFrequencyEstimator.MONITOR_EXIT_METHOD).append("(");
+                precedence = Precedence.min();
+                statement.getObjectRef().acceptVisitor(this);
+                writer.append(")");
+                renderAwaitEnd(NameFrequencyEstimator.MONITOR_EXIT_METHOD);
+                writer.append(";").softNewLine();
             } else {
                 writer.appendMethodBody(NameFrequencyEstimator.MONITOR_EXIT_SYNC_METHOD).append('(');
                 precedence = Precedence.min();
@@ -44,6 +44,8 @@ public interface GeneratorContext extends ServiceRepository {
 
     boolean isAsyncFamily(MethodReference method);
 
+    boolean isAsyncGenerators();
+
     Diagnostics getDiagnostics();
 
     DependencyInfo getDependency();
@@ -0,0 +1,64 @@
+/*
+ *  Copyright 2023 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.backend.javascript.splitting;
+
+import org.teavm.ast.AsyncMethodNode;
+import org.teavm.ast.AsyncMethodPart;
+import org.teavm.ast.Expr;
+import org.teavm.ast.InvocationExpr;
+import org.teavm.ast.MethodNode;
+import org.teavm.ast.MethodNodeVisitor;
+import org.teavm.ast.RecursiveVisitor;
+import org.teavm.ast.RegularMethodNode;
+
+/**
+ * Writes chunk id into the {@link org.teavm.backend.javascript.runtime.ChunkLoader#load(int)} call
+ * that {@link SplitPointTransformer} inserted into a split point. Ids are only known when all split points
+ * are found, while program and AST of a split point may come from cache, so the id is set on AST right
+ * before rendering. Argument is replaced with a new constant, since optimizer may share the original one
+ * with other expressions.
+ */
+public class ChunkLoaderCallUpdater extends RecursiveVisitor implements MethodNodeVisitor {
+    private int chunk;
+
+    public void update(MethodNode node, int chunk) {
+        this.chunk = chunk;
+        node.acceptVisitor(this);
+    }
+
+    @Override
+    public void visit(RegularMethodNode methodNode) {
+        methodNode.getBody().acceptVisitor(this);
+    }
+
+    @Override
+    public void visit(AsyncMethodNode methodNode) {
+        for (AsyncMethodPart part : methodNode.getBody()) {
+            part.getStatement().acceptVisitor(this);
+        }
+    }
+
+    @Override
+    public void visit(InvocationExpr expr) {
+        super.visit(expr);
+        if (expr.getMethod().equals(SplitPointTransformer.LOAD_METHOD)) {
+            Expr argument = expr.getArguments().get(0);
+            Expr chunkConstant = Expr.constant(chunk);
+            chunkConstant.setLocation(argument.getLocation());
+            expr.getArguments().set(0, chunkConstant);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ *  Copyright 2023 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.backend.javascript.splitting;
+
+import java.io.IOException;
+import org.teavm.backend.javascript.codegen.SourceWriter;
+import org.teavm.backend.javascript.spi.Generator;
+import org.teavm.backend.javascript.spi.GeneratorContext;
+import org.teavm.model.MethodReference;
+
+public class ChunkLoaderGenerator implements Generator {
+    @Override
+    public void generate(GeneratorContext context, SourceWriter writer, MethodReference methodRef) throws IOException {
+        String chunk = context.getParameterName(1);
+        writer.append("var thread").ws().append('=').ws().append("$rt_nativeThread();").softNewLine();
+        writer.appendIf().append("thread.isResuming())").appendBlockStart();
+        writer.append("thread.status").ws().append("=").ws().append("0;").softNewLine();
+        writer.append("var error").ws().append("=").ws().append("thread.attribute;").softNewLine();
+        writer.appendIf().append("error").ws().append("!==").ws().append("null)").ws()
+                .append("throw error;").softNewLine();
+        writer.append("return;").softNewLine();
+        writer.appendBlockEnd();
+        writer.appendIf().append("$rt_chunkLoaded(").append(chunk).append("))").ws().append("return;")
+                .softNewLine();
+
+        writer.append("var javaThread").ws().append('=').ws().append("$rt_getThread();").softNewLine();
+        writer.append("thread.suspend(function()").ws().append("{").indent().softNewLine();
+        writer.append("$rt_loadChunk(").append(chunk).append(",").ws().append("function(e)").ws()
+                .append("{").indent().softNewLine();
+        writer.append("thread.attribute").ws().append('=').ws().append("e;").softNewLine();
+        writer.append("$rt_setThread(javaThread);").softNewLine();
+        writer.append("thread.resume();").softNewLine();
+        writer.outdent().append("});").softNewLine();
+        writer.outdent().append("});").softNewLine();
+    }
+}
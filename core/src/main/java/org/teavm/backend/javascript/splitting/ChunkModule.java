@@ -0,0 +1,189 @@
+/*
+ *  Copyright 2023 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.backend.javascript.splitting;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import org.teavm.backend.javascript.rendering.RenderingUtil;
+
+/**
+ * <p>Represents chunk as ES2015 module. Chunk code refers to names declared in main module, so chunk module
+ * imports them, and main module should export all names returned by {@link #getImportedNames()}.
+ * Functions that chunk declares are exported, main module assigns them to its own declarations
+ * after it loads the chunk.</p>
+ *
+ * <p>Imported names are found by scanning identifiers in chunk code, skipping string literals, regular
+ * expressions, comments and property names. Scanning may find more names than chunk actually uses,
+ * which is harmless as long as main module declares them.</p>
+ */
+public class ChunkModule {
+    private static final Set<String> KEYWORDS_BEFORE_EXPRESSION = new HashSet<>(Arrays.asList("return", "typeof",
+            "instanceof", "in", "of", "new", "delete", "void", "throw", "case", "do", "else", "yield", "await"));
+    private final String code;
+    private final List<String> functions;
+    private final Set<String> importedNames = new TreeSet<>();
+
+    /**
+     * @param code chunk code, as written by renderer.
+     * @param functions names of top-level functions that chunk code declares.
+     * @param mainNames tells whether an identifier refers to a name declared in main module.
+     */
+    public ChunkModule(String code, List<String> functions, Predicate<String> mainNames) {
+        this.code = code;
+        this.functions = functions;
+        Set<String> declared = new HashSet<>(functions);
+        for (String identifier : collectIdentifiers(code)) {
+            if (!declared.contains(identifier) && mainNames.test(identifier)) {
+                importedNames.add(identifier);
+            }
+        }
+    }
+
+    public Set<String> getImportedNames() {
+        return Collections.unmodifiableSet(importedNames);
+    }
+
+    public List<String> getFunctions() {
+        return Collections.unmodifiableList(functions);
+    }
+
+    /**
+     * Writes module source.
+     *
+     * @param output where to write.
+     * @param mainModule specifier of main module, relative to the chunk.
+     * @param exportName maps name declared in main module to the name under which main module exports it.
+     */
+    public void write(Appendable output, String mainModule, Function<String, String> exportName)
+            throws IOException {
+        if (!importedNames.isEmpty()) {
+            output.append("import { ");
+            boolean first = true;
+            for (String name : importedNames) {
+                if (!first) {
+                    output.append(", ");
+                }
+                first = false;
+                String exported = exportName.apply(name);
+                if (!exported.equals(name)) {
+                    output.append(exported).append(" as ");
+                }
+                output.append(name);
+            }
+            output.append(" } from \"").append(RenderingUtil.escapeString(mainModule)).append("\";\n");
+        }
+        output.append(code);
+        if (!functions.isEmpty()) {
+            output.append("export { ").append(String.join(", ", functions)).append(" };\n");
+        }
+    }
+
+    static Set<String> collectIdentifiers(String code) {
+        Set<String> result = new HashSet<>();
+        boolean expressionExpected = true;
+        int i = 0;
+        while (i < code.length()) {
+            char c = code.charAt(i);
+            if (Character.isWhitespace(c)) {
+                ++i;
+            } else if (c == '/' && i + 1 < code.length() && code.charAt(i + 1) == '/') {
+                i = skipUntil(code, i + 2, "\n");
+            } else if (c == '/' && i + 1 < code.length() && code.charAt(i + 1) == '*') {
+                i = skipUntil(code, i + 2, "*/");
+            } else if (c == '"' || c == '\'' || c == '`') {
+                i = skipString(code, i + 1, c);
+                expressionExpected = false;
+            } else if (c == '/' && expressionExpected) {
+                i = skipRegex(code, i + 1);
+                expressionExpected = false;
+            } else if (Character.isJavaIdentifierStart(c)) {
+                int start = i++;
+                while (i < code.length() && Character.isJavaIdentifierPart(code.charAt(i))) {
+                    ++i;
+                }
+                String identifier = code.substring(start, i);
+                if (!isPropertyName(code, start)) {
+                    result.add(identifier);
+                }
+                expressionExpected = KEYWORDS_BEFORE_EXPRESSION.contains(identifier);
+            } else if (Character.isDigit(c)) {
+                while (i < code.length() && (Character.isJavaIdentifierPart(code.charAt(i))
+                        || code.charAt(i) == '.')) {
+                    ++i;
+                }
+                expressionExpected = false;
+            } else {
+                ++i;
+                expressionExpected = c != ')' && c != ']' && c != '}';
+            }
+        }
+        return result;
+    }
+
+    private static boolean isPropertyName(String code, int index) {
+        int i = index - 1;
+        while (i >= 0 && Character.isWhitespace(code.charAt(i))) {
+            --i;
+        }
+        return i >= 0 && code.charAt(i) == '.' && (i == 0 || code.charAt(i - 1) != '.');
+    }
+
+    private static int skipUntil(String code, int index, String terminator) {
+        int end = code.indexOf(terminator, index);
+        return end < 0 ? code.length() : end + terminator.length();
+    }
+
+    private static int skipString(String code, int index, char quote) {
+        while (index < code.length()) {
+            char c = code.charAt(index++);
+            if (c == '\\') {
+                ++index;
+            } else if (c == quote) {
+                break;
+            }
+        }
+        return index;
+    }
+
+    private static int skipRegex(String code, int index) {
+        boolean inClass = false;
+        while (index < code.length()) {
+            char c = code.charAt(index++);
+            if (c == '\\') {
+                ++index;
+            } else if (c == '[') {
+                inClass = true;
+            } else if (c == ']') {
+                inClass = false;
+            } else if (c == '/' && !inClass) {
+                break;
+            } else if (c == '\n') {
+                break;
+            }
+        }
+        while (index < code.length() && Character.isJavaIdentifierPart(code.charAt(index))) {
+            ++index;
+        }
+        return index;
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ *  Copyright 2023 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.backend.javascript.splitting;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import org.teavm.callgraph.CallGraph;
+import org.teavm.callgraph.CallGraphNode;
+import org.teavm.callgraph.CallSite;
+import org.teavm.model.BasicBlockReader;
+import org.teavm.model.ClassReader;
+import org.teavm.model.ElementModifier;
+import org.teavm.model.FieldReference;
+import org.teavm.model.ListableClassReaderSource;
+import org.teavm.model.MethodReader;
+import org.teavm.model.MethodReference;
+import org.teavm.model.ValueType;
+import org.teavm.model.VariableReader;
+import org.teavm.model.instructions.AbstractInstructionReader;
+import org.teavm.model.instructions.InvocationType;
+
+/**
+ * <p>Computes which methods can be moved into lazily loaded chunks.</p>
+ *
+ * <p>Chunk of a split point consists of static methods, reachable from this split point, that are only called
+ * by the split point itself or by other methods of the same chunk. Both dependency call graph and
+ * final programs (which may be changed by inlining and other optimizations) are taken into account.
+ * Methods of classes that have native methods are never moved, since generators may refer to them from
+ * hand-written JavaScript, which is not visible to call graph.</p>
+ */
+public class ChunkPartitioner {
+    private final ListableClassReaderSource classes;
+    private final CallGraph callGraph;
+    private final Map<MethodReference, Set<MethodReference>> callees = new HashMap<>();
+    private final Map<MethodReference, Set<MethodReference>> callers = new HashMap<>();
+    private final Set<MethodReference> excluded = new HashSet<>();
+    private final Set<MethodReference> staticFieldWriters = new HashSet<>();
+    private boolean staticFieldWritesAllowed = true;
+
+    public ChunkPartitioner(ListableClassReaderSource classes, CallGraph callGraph) {
+        this.classes = classes;
+        this.callGraph = callGraph;
+    }
+
+    /**
+     * Excludes method from all chunks. Used for methods that are referenced outside of generated code,
+     * like entry points.
+     */
+    public void exclude(MethodReference method) {
+        excluded.add(method);
+    }
+
+    /**
+     * Specifies whether methods that assign static fields can be moved into chunks. Chunks that are ES2015
+     * modules import static fields from main output, and imported bindings are read-only.
+     */
+    public void setStaticFieldWritesAllowed(boolean staticFieldWritesAllowed) {
+        this.staticFieldWritesAllowed = staticFieldWritesAllowed;
+    }
+
+    public Map<MethodReference, Integer> partition(Map<MethodReference, Integer> splitPoints) {
+        excluded.addAll(splitPoints.keySet());
+        buildCallGraph();
+
+        Map<MethodReference, Integer> result = new LinkedHashMap<>();
+        for (Map.Entry<MethodReference, Integer> entry : splitPoints.entrySet()) {
+            for (MethodReference method : computeChunk(entry.getKey())) {
+                result.put(method, entry.getValue());
+            }
+        }
+        return result;
+    }
+
+    private void buildCallGraph() {
+        for (String className : classes.getClassNames()) {
+            ClassReader cls = classes.get(className);
+            for (MethodReader method : cls.getMethods()) {
+                if (method.getProgramReader() == null) {
+                    continue;
+                }
+                MethodReference caller = method.getReference();
+                CalleeCollector collector = new CalleeCollector();
+                for (BasicBlockReader block : method.getProgramReader().getBasicBlocks()) {
+                    block.readAllInstructions(collector);
+                }
+                callees.put(caller, collector.callees);
+                if (collector.writesStaticFields) {
+                    staticFieldWriters.add(caller);
+                }
+                for (MethodReference callee : collector.callees) {
+                    callers.computeIfAbsent(callee, k -> new HashSet<>()).add(caller);
+                }
+            }
+        }
+    }
+
+    private Set<MethodReference> computeChunk(MethodReference splitPoint) {
+        Set<MethodReference> chunk = new LinkedHashSet<>();
+        Queue<MethodReference> queue = new ArrayDeque<>(callees.getOrDefault(splitPoint, Set.of()));
+        while (!queue.isEmpty()) {
+            MethodReference method = queue.remove();
+            if (!chunk.contains(method) && isCandidate(method)) {
+                chunk.add(method);
+                queue.addAll(callees.getOrDefault(method, Set.of()));
+            }
+        }
+
+        boolean changed;
+        do {
+            changed = chunk.removeIf(method -> !hasOnlyCallersFrom(method, splitPoint, chunk));
+        } while (changed);
+
+        return chunk;
+    }
+
+    private boolean isCandidate(MethodReference method) {
+        if (excluded.contains(method) || method.getName().equals("<clinit>")) {
+            return false;
+        }
+        if (!staticFieldWritesAllowed && staticFieldWriters.contains(method)) {
+            return false;
+        }
+        ClassReader cls = classes.get(method.getClassName());
+        if (cls == null) {
+            return false;
+        }
+        MethodReader methodReader = cls.getMethod(method.getDescriptor());
+        if (methodReader == null || methodReader.getProgramReader() == null
+                || !methodReader.hasModifier(ElementModifier.STATIC)) {
+            return false;
+        }
+        for (MethodReader otherMethod : cls.getMethods()) {
+            if (otherMethod.hasModifier(ElementModifier.NATIVE)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean hasOnlyCallersFrom(MethodReference method, MethodReference splitPoint,
+            Set<MethodReference> chunk) {
+        for (MethodReference caller : callers.getOrDefault(method, Set.of())) {
+            if (!caller.equals(splitPoint) && !chunk.contains(caller)) {
+                return false;
+            }
+        }
+
+        CallGraphNode node = callGraph.getNode(method);
+        if (node == null) {
+            return true;
+        }
+        Collection<? extends CallSite> callSites = node.getCallerCallSites();
+        if (callSites.isEmpty()) {
+            // method was linked by some dependency plugin, we can't know where it is used
+            return false;
+        }
+        for (CallSite callSite : callSites) {
+            for (CallGraphNode callerNode : callSite.getCallers()) {
+                MethodReference caller = callerNode.getMethod();
+                if (!caller.equals(splitPoint) && !chunk.contains(caller) && isAlive(caller)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private boolean isAlive(MethodReference method) {
+        ClassReader cls = classes.get(method.getClassName());
+        return cls != null && cls.getMethod(method.getDescriptor()) != null;
+    }
+
+    private class CalleeCollector extends AbstractInstructionReader {
+        Set<MethodReference> callees = new HashSet<>();
+        boolean writesStaticFields;
+
+        @Override
+        public void invoke(VariableReader receiver, VariableReader instance, MethodReference method,
+                List<? extends VariableReader> arguments, InvocationType type) {
+            if (type == InvocationType.SPECIAL) {
+                MethodReader resolved = classes.resolve(method);
+                callees.add(resolved != null ? resolved.getReference() : method);
+            }
+        }
+
+        @Override
+        public void putField(VariableReader instance, FieldReference field, VariableReader value,
+                ValueType fieldType) {
+            if (instance == null) {
+                writesStaticFields = true;
+            }
+        }
+    }
+}
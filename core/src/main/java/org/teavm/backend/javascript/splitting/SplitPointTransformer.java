@@ -0,0 +1,84 @@
+/*
+ *  Copyright 2023 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.backend.javascript.splitting;
+
+import java.util.Set;
+import org.teavm.backend.javascript.runtime.ChunkLoader;
+import org.teavm.interop.SplitPoint;
+import org.teavm.model.BasicBlock;
+import org.teavm.model.ClassHolder;
+import org.teavm.model.ClassHolderTransformer;
+import org.teavm.model.ClassHolderTransformerContext;
+import org.teavm.model.MethodHolder;
+import org.teavm.model.MethodReference;
+import org.teavm.model.Program;
+import org.teavm.model.instructions.IntegerConstantInstruction;
+import org.teavm.model.instructions.InvocationType;
+import org.teavm.model.instructions.InvokeInstruction;
+
+/**
+ * Inserts call to {@link ChunkLoader#load(int)} at the beginning of every split point, so that
+ * dependency analyzer sees split points (and their callers) as asynchronous methods. Found split points
+ * are collected into the given set. Classes are transformed in order in which dependency analyzer requests
+ * them, so chunk ids are not assigned here: the call gets a placeholder, which {@link ChunkLoaderCallUpdater}
+ * replaces later.
+ */
+public class SplitPointTransformer implements ClassHolderTransformer {
+    public static final MethodReference LOAD_METHOD = new MethodReference(ChunkLoader.class, "load", int.class,
+            void.class);
+    private final Set<MethodReference> declaredSplitPoints;
+    private final Set<MethodReference> splitPoints;
+
+    public SplitPointTransformer(Set<MethodReference> declaredSplitPoints, Set<MethodReference> splitPoints) {
+        this.declaredSplitPoints = declaredSplitPoints;
+        this.splitPoints = splitPoints;
+    }
+
+    @Override
+    public void transformClass(ClassHolder cls, ClassHolderTransformerContext context) {
+        for (MethodHolder method : cls.getMethods()) {
+            if (!method.hasProgram()) {
+                continue;
+            }
+            if (!declaredSplitPoints.contains(method.getReference())
+                    && method.getAnnotations().get(SplitPoint.class.getName()) == null) {
+                continue;
+            }
+            splitPoints.add(method.getReference());
+            insertLoaderCall(method.getProgram());
+        }
+    }
+
+    private void insertLoaderCall(Program program) {
+        BasicBlock block = program.basicBlockAt(0);
+
+        IntegerConstantInstruction chunkConstant = new IntegerConstantInstruction();
+        chunkConstant.setConstant(-1);
+        chunkConstant.setReceiver(program.createVariable());
+
+        InvokeInstruction loadCall = new InvokeInstruction();
+        loadCall.setType(InvocationType.SPECIAL);
+        loadCall.setMethod(LOAD_METHOD);
+        loadCall.setArguments(chunkConstant.getReceiver());
+
+        if (block.getFirstInstruction() != null) {
+            chunkConstant.setLocation(block.getFirstInstruction().getLocation());
+            loadCall.setLocation(block.getFirstInstruction().getLocation());
+        }
+        block.addFirst(loadCall);
+        block.addFirst(chunkConstant);
+    }
+}
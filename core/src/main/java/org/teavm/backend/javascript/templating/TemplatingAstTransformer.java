@@ -157,7 +157,8 @@ public class TemplatingAstTransformer extends AstVisitor {
         var className = ((StringLiteral) classArg).getValue();
         var methodName = ((StringLiteral) methodArg).getValue();
         var method = classes.resolveImplementation(new MethodReference(className, MethodDescriptor.parse(methodName)));
-        var exists = method != null && (method.getProgram() != null || method.hasModifier(ElementModifier.NATIVE));
+        var exists = method != null && (method.getProgramReader() != null
+                || method.hasModifier(ElementModifier.NATIVE));
         replaceWith(new KeywordLiteral(0, 0, exists ? Token.TRUE : Token.FALSE));
     }
 
@@ -174,7 +175,8 @@ public class TemplatingAstTransformer extends AstVisitor {
         var methodName = ((StringLiteral) methodArg).getValue();
         var method = classes.resolveImplementation(new MethodReference(className, "<init>",
                 MethodDescriptor.parseSignature(methodName)));
-        var exists = method != null && (method.getProgram() != null || method.hasModifier(ElementModifier.NATIVE));
+        var exists = method != null && (method.getProgramReader() != null
+                || method.hasModifier(ElementModifier.NATIVE));
         replaceWith(new KeywordLiteral(0, 0, exists ? Token.TRUE : Token.FALSE));
     }
 }
@@ -0,0 +1,43 @@
+/*
+ *  Copyright 2023 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.cache;
+
+import java.io.IOException;
+
+/**
+ * Storage for build cache entries that can be shared between builds on different machines.
+ * Keys are hex strings derived from contents of the cached items, so an entry with the given key
+ * never changes its meaning, and implementations are free to evict entries at any time.
+ */
+public interface BuildCacheBackend {
+    /**
+     * @return entry data or {@code null} if there's no entry with given key.
+     */
+    byte[] get(String key) throws IOException;
+
+    void put(String key, byte[] data) throws IOException;
+
+    /**
+     * Tells whether backend gave up serving requests. Backend may do so after it fails to reach its storage,
+     * so that the build does not wait for each of the remaining requests to time out. Callers should skip
+     * the backend for the rest of the build once this method returns non-null value.
+     *
+     * @return the error that made backend give up, or {@code null} if backend is still available.
+     */
+    default IOException getFailure() {
+        return null;
+    }
+}
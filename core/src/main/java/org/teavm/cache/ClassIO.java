@@ -29,6 +29,7 @@ import java.util.Set;
 import org.teavm.model.AccessLevel;
 import org.teavm.model.AnnotationContainerReader;
 import org.teavm.model.ClassReader;
+import org.teavm.model.CompactProgram;
 import org.teavm.model.ElementModifier;
 import org.teavm.model.FieldReader;
 import org.teavm.model.FieldReference;
@@ -199,11 +200,11 @@ public class ClassIO {
             output.writeUnsigned(0);
         }
 
-        if (method.getProgram() != null) {
+        if (method.getProgramReader() != null) {
             output.writeUnsigned(1);
             ByteArrayOutputStream buffer = new ByteArrayOutputStream();
             VarDataOutput programOutput = new VarDataOutput(buffer);
-            programIO.write(method.getProgram(), programOutput);
+            programIO.write(method.getProgramReader(), programOutput);
             output.writeBytes(buffer.toByteArray());
         } else {
             output.writeUnsigned(0);
@@ -235,7 +236,7 @@ public class ClassIO {
             method.programSupplier = () -> {
                 VarDataInput programInput = new VarDataInput(new ByteArrayInputStream(programData));
                 try {
-                    return programIO.read(programInput);
+                    return CompactProgram.from(programIO.read(programInput));
                 } catch (IOException e) {
                     throw new IllegalStateException(e);
                 }
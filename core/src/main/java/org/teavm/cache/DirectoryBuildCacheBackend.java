@@ -0,0 +1,64 @@
+/*
+ *  Copyright 2023 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Build cache that stores entries in a local directory, possibly on a network file system.
+ */
+public class DirectoryBuildCacheBackend implements BuildCacheBackend {
+    private final File directory;
+
+    public DirectoryBuildCacheBackend(File directory) {
+        this.directory = directory;
+    }
+
+    @Override
+    public byte[] get(String key) throws IOException {
+        File file = getFile(key);
+        if (!file.exists()) {
+            return null;
+        }
+        return Files.readAllBytes(file.toPath());
+    }
+
+    @Override
+    public void put(String key, byte[] data) throws IOException {
+        File file = getFile(key);
+        file.getParentFile().mkdirs();
+        File tmpFile = File.createTempFile(key, ".tmp", file.getParentFile());
+        try {
+            Files.write(tmpFile.toPath(), data);
+            try {
+                Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmpFile.toPath());
+        }
+    }
+
+    private File getFile(String key) {
+        return new File(new File(directory, key.substring(0, 2)), key);
+    }
+}
@@ -23,6 +23,8 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
@@ -34,14 +36,19 @@ import org.teavm.model.ClassReaderSource;
 import org.teavm.model.MethodReference;
 import org.teavm.model.ReferenceCache;
 import org.teavm.parsing.ClassDateProvider;
+import org.teavm.parsing.ClassHashProvider;
 
 public class DiskCachedClassReaderSource implements ClassReaderSource, CacheStatus {
+    private static final String SHARED_KIND = "class";
     private File directory;
     private ClassHolderSource innerSource;
     private ClassDateProvider classDateProvider;
+    private ClassHashProvider classHashProvider;
     private Map<String, Item> cache = new LinkedHashMap<>();
     private Set<String> newClasses = new HashSet<>();
     private ClassIO classIO;
+    private ReferenceCache referenceCache;
+    private SharedCacheSupport sharedCache;
 
     public DiskCachedClassReaderSource(File directory, ReferenceCache referenceCache, SymbolTable symbolTable,
             SymbolTable fileTable, SymbolTable variableTable, ClassHolderSource innerSource,
@@ -49,9 +56,35 @@ public class DiskCachedClassReaderSource implements ClassReaderSource, CacheStat
         this.directory = directory;
         this.innerSource = innerSource;
         this.classDateProvider = classDateProvider;
+        this.referenceCache = referenceCache;
         classIO = new ClassIO(referenceCache, symbolTable, fileTable, variableTable);
     }
 
+    public ClassHashProvider getClassHashProvider() {
+        return classHashProvider;
+    }
+
+    /**
+     * Makes cache compare digests of class files instead of modification dates, so that cache remains valid
+     * when class files are rebuilt or checked out again without changes.
+     */
+    public void setClassHashProvider(ClassHashProvider classHashProvider) {
+        this.classHashProvider = classHashProvider;
+    }
+
+    /**
+     * Makes cache look for classes missing locally in the given shared cache, and upload newly parsed classes
+     * to it. Requires {@link #setClassHashProvider(ClassHashProvider)} to be called first.
+     *
+     * @param namespace identifies compiler version and settings that affect parsed classes.
+     */
+    public void setSharedCache(BuildCacheBackend backend, String namespace) {
+        if (classHashProvider == null) {
+            throw new IllegalStateException("Shared cache requires class hash provider");
+        }
+        sharedCache = new SharedCacheSupport(backend, classHashProvider, namespace);
+    }
+
     @Override
     public ClassReader get(String name) {
         return getItemFromCache(name).cls;
@@ -72,42 +105,95 @@ public class DiskCachedClassReaderSource implements ClassReaderSource, CacheStat
         if (item == null) {
             item = new Item();
             cache.put(name, item);
-            File classFile = new File(directory, name.replace('.', '/') + ".teavm-cls");
-            if (classFile.exists()) {
-                Date classDate = classDateProvider.getModificationDate(name);
-                if (classDate != null && classDate.before(new Date(classFile.lastModified()))) {
-                    try (InputStream input = new BufferedInputStream(new FileInputStream(classFile))) {
-                        item.cls = classIO.readClass(input, name);
-                    } catch (IOException e) {
-                        // We could not access cache file, so let's parse class file
-                        item.cls = null;
-                    }
+            File classFile = getClassFile(name);
+            if (classHashProvider != null) {
+                item.hash = classHashProvider.getContentHash(name);
+            }
+            if (classFile.exists() && isUpToDate(name, item, classFile)) {
+                try (InputStream input = new BufferedInputStream(new FileInputStream(classFile))) {
+                    item.cls = classIO.readClass(input, name);
+                } catch (IOException e) {
+                    // We could not access cache file, so let's parse class file
+                    item.cls = null;
+                }
+            }
+            if (item.cls == null && sharedCache != null) {
+                var entry = sharedCache.get(SHARED_KIND, name, name, (input, symbolTable, fileTable, variableTable) ->
+                        new ClassIO(referenceCache, symbolTable, fileTable, variableTable).readClass(input, name));
+                if (entry != null) {
+                    item.cls = entry.value;
+                    newClasses.add(name);
                 }
             }
             if (item.cls == null) {
                 item.dirty = true;
                 item.cls = innerSource.get(name);
                 newClasses.add(name);
+                if (item.cls != null && sharedCache != null) {
+                    ClassReader cls = item.cls;
+                    sharedCache.store(SHARED_KIND, name, name, new String[0],
+                            (output, symbolTable, fileTable, variableTable) -> new ClassIO(referenceCache,
+                                    symbolTable, fileTable, variableTable).writeClass(output, cls));
+                }
             }
         }
         return item;
     }
 
+    private boolean isUpToDate(String name, Item item, File classFile) {
+        if (classHashProvider != null) {
+            if (item.hash == null) {
+                return false;
+            }
+            File hashFile = getHashFile(name);
+            if (!hashFile.exists()) {
+                return false;
+            }
+            try {
+                return item.hash.equals(new String(Files.readAllBytes(hashFile.toPath()), StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                return false;
+            }
+        } else {
+            Date classDate = classDateProvider.getModificationDate(name);
+            return classDate != null && classDate.before(new Date(classFile.lastModified()));
+        }
+    }
+
+    private File getClassFile(String className) {
+        return new File(directory, className.replace('.', '/') + ".teavm-cls");
+    }
+
+    private File getHashFile(String className) {
+        return new File(directory, className.replace('.', '/') + ".teavm-hash");
+    }
+
     private static class Item {
         ClassReader cls;
         boolean dirty;
+        String hash;
     }
 
     public void flush() throws IOException {
         for (String className : newClasses) {
             Item item = cache.get(className);
             if (item.cls != null) {
-                File classFile = new File(directory, className.replace('.', '/') + ".teavm-cls");
+                File classFile = getClassFile(className);
                 classFile.getParentFile().mkdirs();
+                Files.deleteIfExists(getHashFile(className).toPath());
                 try (OutputStream output = new BufferedOutputStream(new FileOutputStream(classFile))) {
                     classIO.writeClass(output, item.cls);
                 }
+                if (item.hash != null) {
+                    Files.write(getHashFile(className).toPath(), item.hash.getBytes(StandardCharsets.UTF_8));
+                }
             }
         }
     }
+
+    public void flushSharedCache() throws IOException {
+        if (sharedCache != null) {
+            sharedCache.flush();
+        }
+    }
 }
@@ -0,0 +1,154 @@
+/*
+ *  Copyright 2023 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.cache;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * <p>Build cache that stores entries on HTTP server. Entry with key {@code k} is read by {@code GET baseUrl/k}
+ * and written by {@code PUT baseUrl/k}. Server should respond with 404 status when there's no such entry.</p>
+ *
+ * <p>After the first error that is not an HTTP response (server is unreachable, connection is reset,
+ * request times out), backend stops sending requests and reports the error via {@link #getFailure()}.</p>
+ */
+public class HttpBuildCacheBackend implements BuildCacheBackend {
+    private static final int DEFAULT_TIMEOUT = 10000;
+    private final String baseUrl;
+    private final int timeout;
+    private volatile IOException failure;
+
+    public HttpBuildCacheBackend(String baseUrl) {
+        this(baseUrl, DEFAULT_TIMEOUT);
+    }
+
+    /**
+     * @param timeout connect and read timeout in milliseconds.
+     */
+    public HttpBuildCacheBackend(String baseUrl, int timeout) {
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl : baseUrl + "/";
+        this.timeout = timeout;
+    }
+
+    @Override
+    public IOException getFailure() {
+        return failure;
+    }
+
+    @Override
+    public byte[] get(String key) throws IOException {
+        checkAvailable();
+        try {
+            return doGet(key);
+        } catch (UnexpectedResponseException e) {
+            throw e;
+        } catch (IOException e) {
+            fail(e);
+            throw e;
+        }
+    }
+
+    private byte[] doGet(String key) throws IOException {
+        HttpURLConnection connection = openConnection(key);
+        try {
+            connection.setRequestMethod("GET");
+            int status = connection.getResponseCode();
+            if (status != HttpURLConnection.HTTP_OK) {
+                discardErrorStream(connection);
+                if (status == HttpURLConnection.HTTP_NOT_FOUND) {
+                    return null;
+                }
+                throw new UnexpectedResponseException(status);
+            }
+            try (InputStream input = connection.getInputStream()) {
+                return input.readAllBytes();
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    @Override
+    public void put(String key, byte[] data) throws IOException {
+        checkAvailable();
+        try {
+            doPut(key, data);
+        } catch (UnexpectedResponseException e) {
+            throw e;
+        } catch (IOException e) {
+            fail(e);
+            throw e;
+        }
+    }
+
+    private void doPut(String key, byte[] data) throws IOException {
+        HttpURLConnection connection = openConnection(key);
+        try {
+            connection.setRequestMethod("PUT");
+            connection.setDoOutput(true);
+            connection.setFixedLengthStreamingMode(data.length);
+            connection.setRequestProperty("Content-Type", "application/octet-stream");
+            try (OutputStream output = connection.getOutputStream()) {
+                output.write(data);
+            }
+            int status = connection.getResponseCode();
+            if (status < 200 || status >= 300) {
+                discardErrorStream(connection);
+                throw new UnexpectedResponseException(status);
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private void checkAvailable() throws IOException {
+        IOException failure = this.failure;
+        if (failure != null) {
+            throw new IOException("Build cache " + baseUrl + " is disabled after previous error", failure);
+        }
+    }
+
+    private void fail(IOException e) {
+        if (failure == null) {
+            failure = e;
+        }
+    }
+
+    private static void discardErrorStream(HttpURLConnection connection) throws IOException {
+        try (InputStream input = connection.getErrorStream()) {
+            if (input != null) {
+                input.readAllBytes();
+            }
+        }
+    }
+
+    private HttpURLConnection openConnection(String key) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + key).openConnection();
+        connection.setConnectTimeout(timeout);
+        connection.setReadTimeout(timeout);
+        connection.setUseCaches(false);
+        return connection;
+    }
+
+    private static class UnexpectedResponseException extends IOException {
+        UnexpectedResponseException(int status) {
+            super("Unexpected response from build cache: " + status);
+        }
+    }
+}
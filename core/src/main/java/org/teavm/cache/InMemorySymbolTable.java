@@ -40,6 +40,10 @@ public class InMemorySymbolTable implements SymbolTable {
         return index;
     }
 
+    public int size() {
+        return symbols.size();
+    }
+
     public void invalidate() {
         symbols.clear();
         indexes.clear();
@@ -99,6 +99,20 @@ public class MemoryCachedClassReaderSource implements ClassReaderSource, CacheSt
         freshClasses.addAll(cache.keySet());
     }
 
+    /**
+     * Tells whether any of given classes was requested from this source since it was last invalidated,
+     * including requests for classes that did not exist. Build that got all of its classes from this source
+     * can't be affected by changes in classes that were never requested.
+     */
+    public boolean isAnyRequested(Collection<? extends String> classes) {
+        for (String className : classes) {
+            if (cache.containsKey(className)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public void evict(Collection<? extends String> classes) {
         cache.keySet().removeAll(classes);
         freshClasses.removeAll(classes);
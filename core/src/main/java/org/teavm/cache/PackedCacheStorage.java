@@ -0,0 +1,388 @@
+/*
+ *  Copyright 2023 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>Key-value storage that keeps all cached entries in a single append-only pack file,
+ * which is memory-mapped for reading, and a small index file that maps keys to regions of the pack file
+ * and to the classes the entry depends on.</p>
+ *
+ * <p>New entries are only appended to the pack file, then the index is rewritten and atomically moved
+ * in place. If the process dies in the middle of {@link #flush()}, the old index still describes
+ * a valid prefix of the pack file, and the garbage after it gets overwritten next time.
+ * When more than half of the pack file is occupied by superseded entries, {@link #flush()} writes
+ * live entries to a new pack file instead.</p>
+ *
+ * <p>Pack file is mapped in segments, since single mapping can't exceed 2 GB. Each mapping covers
+ * two segments, so that an entry starting in a segment is always readable from it, unless the entry is
+ * larger than a segment, in which case it's read from the file directly.</p>
+ */
+public class PackedCacheStorage {
+    private static final int INDEX_MAGIC = 0x7EA0CAC0;
+    private static final int INDEX_VERSION = 1;
+    private static final long MIN_COMPACTION_SIZE = 1 << 20;
+    private static final long DEFAULT_SEGMENT_SIZE = 1 << 30;
+    private final File directory;
+    private final String name;
+    private final long segmentSize;
+    private boolean loaded;
+    private int generation;
+    private long committedLength;
+    private Map<String, Entry> entries = new LinkedHashMap<>();
+    private Map<String, PendingEntry> pendingEntries = new LinkedHashMap<>();
+    private ByteBuffer[] segments;
+
+    public PackedCacheStorage(File directory, String name) {
+        this(directory, name, DEFAULT_SEGMENT_SIZE);
+    }
+
+    PackedCacheStorage(File directory, String name, long segmentSize) {
+        this.directory = directory;
+        this.name = name;
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Gets stream with stored data.
+     *
+     * @return stream or {@code null} if there's no such entry, or any of the classes it depends on is stale.
+     */
+    public InputStream get(String key, CacheStatus cacheStatus) {
+        load();
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        for (String dependency : entry.dependencies) {
+            if (cacheStatus.isStaleClass(dependency)) {
+                return null;
+            }
+        }
+
+        ByteBuffer data = read(entry);
+        return data != null ? new ByteBufferInputStream(data) : null;
+    }
+
+    public void store(String key, String[] dependencies, byte[] data) {
+        pendingEntries.put(key, new PendingEntry(dependencies.clone(), data));
+    }
+
+    public void flush() throws IOException {
+        if (pendingEntries.isEmpty()) {
+            return;
+        }
+        load();
+        directory.mkdirs();
+
+        long liveLength = 0;
+        long pendingLength = 0;
+        for (var mapEntry : entries.entrySet()) {
+            if (!pendingEntries.containsKey(mapEntry.getKey())) {
+                liveLength += mapEntry.getValue().length;
+            }
+        }
+        for (PendingEntry pendingEntry : pendingEntries.values()) {
+            pendingLength += pendingEntry.data.length;
+        }
+        liveLength += pendingLength;
+        long totalLength = committedLength + pendingLength;
+
+        if (totalLength > MIN_COMPACTION_SIZE && totalLength - liveLength > liveLength) {
+            compact();
+        } else {
+            append();
+        }
+        pendingEntries.clear();
+    }
+
+    private void append() throws IOException {
+        long position = committedLength;
+        try (FileChannel channel = FileChannel.open(getPackFile(generation).toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE)) {
+            for (var mapEntry : pendingEntries.entrySet()) {
+                PendingEntry pendingEntry = mapEntry.getValue();
+                write(channel, ByteBuffer.wrap(pendingEntry.data), position);
+                entries.put(mapEntry.getKey(), new Entry(position, pendingEntry.data.length,
+                        pendingEntry.dependencies));
+                position += pendingEntry.data.length;
+            }
+            channel.force(true);
+        }
+        committedLength = position;
+        segments = null;
+        writeIndex();
+    }
+
+    private void compact() throws IOException {
+        int newGeneration = generation + 1;
+        Map<String, Entry> newEntries = new LinkedHashMap<>();
+        long position = 0;
+        try (FileChannel channel = FileChannel.open(getPackFile(newGeneration).toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (var mapEntry : entries.entrySet()) {
+                if (pendingEntries.containsKey(mapEntry.getKey())) {
+                    continue;
+                }
+                Entry entry = mapEntry.getValue();
+                ByteBuffer data = read(entry);
+                if (data == null) {
+                    continue;
+                }
+                write(channel, data, position);
+                newEntries.put(mapEntry.getKey(), new Entry(position, entry.length, entry.dependencies));
+                position += entry.length;
+            }
+            for (var mapEntry : pendingEntries.entrySet()) {
+                PendingEntry pendingEntry = mapEntry.getValue();
+                write(channel, ByteBuffer.wrap(pendingEntry.data), position);
+                newEntries.put(mapEntry.getKey(), new Entry(position, pendingEntry.data.length,
+                        pendingEntry.dependencies));
+                position += pendingEntry.data.length;
+            }
+            channel.force(true);
+        }
+
+        File oldPackFile = getPackFile(generation);
+        generation = newGeneration;
+        entries = newEntries;
+        committedLength = position;
+        segments = null;
+        writeIndex();
+
+        try {
+            Files.deleteIfExists(oldPackFile.toPath());
+        } catch (IOException e) {
+            // Old pack file may still be mapped on some platforms, it's not referenced by index anymore,
+            // so just leave it
+        }
+    }
+
+    private static void write(FileChannel channel, ByteBuffer data, long position) throws IOException {
+        while (data.hasRemaining()) {
+            position += channel.write(data, position);
+        }
+    }
+
+    private void writeIndex() throws IOException {
+        File indexFile = getIndexFile();
+        File tmpFile = new File(directory, indexFile.getName() + ".tmp");
+        try (FileOutputStream fileOutput = new FileOutputStream(tmpFile)) {
+            BufferedOutputStream bufferedOutput = new BufferedOutputStream(fileOutput);
+            VarDataOutput output = new VarDataOutput(bufferedOutput);
+            output.writeUnsigned(INDEX_MAGIC);
+            output.writeUnsigned(INDEX_VERSION);
+            output.writeUnsigned(generation);
+            output.writeUnsigned(committedLength);
+            output.writeUnsigned(entries.size());
+            for (var mapEntry : entries.entrySet()) {
+                Entry entry = mapEntry.getValue();
+                output.write(mapEntry.getKey());
+                output.writeUnsigned(entry.offset);
+                output.writeUnsigned(entry.length);
+                output.writeUnsigned(entry.dependencies.length);
+                for (String dependency : entry.dependencies) {
+                    output.write(dependency);
+                }
+            }
+            bufferedOutput.flush();
+            fileOutput.getFD().sync();
+        }
+
+        try {
+            Files.move(tmpFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmpFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+
+        File indexFile = getIndexFile();
+        if (!indexFile.exists()) {
+            return;
+        }
+        try (InputStream stream = new BufferedInputStream(new FileInputStream(indexFile))) {
+            VarDataInput input = new VarDataInput(stream);
+            if (input.readUnsigned() != INDEX_MAGIC || input.readUnsigned() != INDEX_VERSION) {
+                return;
+            }
+            int generation = input.readUnsigned();
+            long committedLength = input.readUnsignedLong();
+            if (getPackFile(generation).length() < committedLength) {
+                return;
+            }
+            int entryCount = input.readUnsigned();
+            Map<String, Entry> entries = new LinkedHashMap<>();
+            for (int i = 0; i < entryCount; ++i) {
+                String key = input.read();
+                long offset = input.readUnsignedLong();
+                int length = input.readUnsigned();
+                String[] dependencies = new String[input.readUnsigned()];
+                for (int j = 0; j < dependencies.length; ++j) {
+                    dependencies[j] = input.read();
+                }
+                entries.put(key, new Entry(offset, length, dependencies));
+            }
+            this.generation = generation;
+            this.committedLength = committedLength;
+            this.entries = entries;
+        } catch (IOException e) {
+            // we could not read index, just leave storage empty
+        }
+    }
+
+    private ByteBuffer read(Entry entry) {
+        int index = (int) (entry.offset / segmentSize);
+        long segmentStart = index * segmentSize;
+        if (entry.offset + entry.length - segmentStart > getMappingSize()) {
+            return readDirectly(entry);
+        }
+        ByteBuffer segment = map(index);
+        if (segment == null) {
+            return null;
+        }
+        ByteBuffer data = segment.duplicate();
+        data.position((int) (entry.offset - segmentStart));
+        data.limit((int) (entry.offset - segmentStart + entry.length));
+        return data.slice();
+    }
+
+    private ByteBuffer map(int index) {
+        if (segments == null) {
+            segments = new ByteBuffer[(int) ((committedLength + segmentSize - 1) / segmentSize)];
+        }
+        ByteBuffer segment = segments[index];
+        if (segment == null) {
+            long start = index * segmentSize;
+            long size = Math.min(committedLength - start, getMappingSize());
+            try (FileChannel channel = FileChannel.open(getPackFile(generation).toPath(),
+                    StandardOpenOption.READ)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+                segment = buffer;
+            } catch (IOException e) {
+                // we could not map pack file, act as if it's empty
+                return null;
+            }
+            segments[index] = segment;
+        }
+        return segment;
+    }
+
+    private long getMappingSize() {
+        return Math.min(segmentSize * 2, Integer.MAX_VALUE);
+    }
+
+    private ByteBuffer readDirectly(Entry entry) {
+        ByteBuffer data = ByteBuffer.allocate(entry.length);
+        try (FileChannel channel = FileChannel.open(getPackFile(generation).toPath(), StandardOpenOption.READ)) {
+            long position = entry.offset;
+            while (data.hasRemaining()) {
+                int bytesRead = channel.read(data, position);
+                if (bytesRead < 0) {
+                    return null;
+                }
+                position += bytesRead;
+            }
+        } catch (IOException e) {
+            return null;
+        }
+        data.flip();
+        return data;
+    }
+
+    private File getIndexFile() {
+        return new File(directory, name + ".teavm-index");
+    }
+
+    private File getPackFile(int generation) {
+        return new File(directory, name + "-" + generation + ".teavm-pack");
+    }
+
+    static class Entry {
+        final long offset;
+        final int length;
+        final String[] dependencies;
+
+        Entry(long offset, int length, String[] dependencies) {
+            this.offset = offset;
+            this.length = length;
+            this.dependencies = dependencies;
+        }
+    }
+
+    static class PendingEntry {
+        final String[] dependencies;
+        final byte[] data;
+
+        PendingEntry(String[] dependencies, byte[] data) {
+            this.dependencies = dependencies;
+            this.data = data;
+        }
+    }
+
+    static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            len = Math.min(len, buffer.remaining());
+            buffer.get(b, off, len);
+            return len;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
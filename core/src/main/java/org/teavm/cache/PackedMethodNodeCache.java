@@ -0,0 +1,140 @@
+/*
+ *  Copyright 2023 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.cache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+import org.teavm.ast.AsyncMethodNode;
+import org.teavm.ast.ControlFlowEntry;
+import org.teavm.ast.RegularMethodNode;
+import org.teavm.model.MethodReference;
+import org.teavm.model.ReferenceCache;
+
+/**
+ * Method node cache that stores all methods in two pack files (for regular and for async methods),
+ * see {@link PackedCacheStorage}.
+ */
+public class PackedMethodNodeCache implements MethodNodeCache {
+    private final PackedCacheStorage storage;
+    private final PackedCacheStorage asyncStorage;
+    private final AstIO astIO;
+    private final Map<MethodReference, Item> cache = new HashMap<>();
+    private final Map<MethodReference, AsyncItem> asyncCache = new HashMap<>();
+    private final Set<MethodReference> newMethods = new LinkedHashSet<>();
+    private final Set<MethodReference> newAsyncMethods = new LinkedHashSet<>();
+
+    public PackedMethodNodeCache(File directory, ReferenceCache referenceCache, SymbolTable symbolTable,
+            SymbolTable fileTable, SymbolTable variableTable) {
+        storage = new PackedCacheStorage(directory, "ast");
+        asyncStorage = new PackedCacheStorage(directory, "ast-async");
+        astIO = new AstIO(referenceCache, symbolTable, fileTable, variableTable);
+    }
+
+    @Override
+    public AstCacheEntry get(MethodReference methodReference, CacheStatus cacheStatus) {
+        Item item = cache.get(methodReference);
+        if (item == null) {
+            item = new Item();
+            cache.put(methodReference, item);
+            InputStream stream = storage.get(methodReference.toString(), cacheStatus);
+            if (stream != null) {
+                try {
+                    VarDataInput input = new VarDataInput(stream);
+                    RegularMethodNode node = astIO.read(input, methodReference);
+                    ControlFlowEntry[] cfg = astIO.readControlFlow(input);
+                    item.entry = new AstCacheEntry(node, cfg);
+                } catch (IOException e) {
+                    // we could not read program, just leave it empty
+                }
+            }
+        }
+        return item.entry;
+    }
+
+    @Override
+    public void store(MethodReference methodReference, AstCacheEntry entry, Supplier<String[]> dependencies) {
+        Item item = new Item();
+        item.entry = entry;
+        item.dependencies = dependencies.get().clone();
+        cache.put(methodReference, item);
+        newMethods.add(methodReference);
+    }
+
+    @Override
+    public AsyncMethodNode getAsync(MethodReference methodReference, CacheStatus cacheStatus) {
+        AsyncItem item = asyncCache.get(methodReference);
+        if (item == null) {
+            item = new AsyncItem();
+            asyncCache.put(methodReference, item);
+            InputStream stream = asyncStorage.get(methodReference.toString(), cacheStatus);
+            if (stream != null) {
+                try {
+                    item.node = astIO.readAsync(new VarDataInput(stream), methodReference);
+                } catch (IOException e) {
+                    // we could not read program, just leave it empty
+                }
+            }
+        }
+        return item.node;
+    }
+
+    @Override
+    public void storeAsync(MethodReference methodReference, AsyncMethodNode node, Supplier<String[]> dependencies) {
+        AsyncItem item = new AsyncItem();
+        item.node = node;
+        item.dependencies = dependencies.get().clone();
+        asyncCache.put(methodReference, item);
+        newAsyncMethods.add(methodReference);
+    }
+
+    public void flush() throws IOException {
+        for (MethodReference method : newMethods) {
+            Item item = cache.get(method);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            VarDataOutput output = new VarDataOutput(bytes);
+            astIO.write(output, item.entry.method);
+            astIO.write(output, item.entry.cfg);
+            storage.store(method.toString(), item.dependencies, bytes.toByteArray());
+        }
+        for (MethodReference method : newAsyncMethods) {
+            AsyncItem item = asyncCache.get(method);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            astIO.writeAsync(new VarDataOutput(bytes), item.node);
+            asyncStorage.store(method.toString(), item.dependencies, bytes.toByteArray());
+        }
+        newMethods.clear();
+        newAsyncMethods.clear();
+        storage.flush();
+        asyncStorage.flush();
+    }
+
+    private static class Item {
+        AstCacheEntry entry;
+        String[] dependencies;
+    }
+
+    private static class AsyncItem {
+        AsyncMethodNode node;
+        String[] dependencies;
+    }
+}
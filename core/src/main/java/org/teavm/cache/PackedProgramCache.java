@@ -0,0 +1,89 @@
+/*
+ *  Copyright 2023 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.cache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+import org.teavm.model.MethodReference;
+import org.teavm.model.Program;
+import org.teavm.model.ProgramCache;
+import org.teavm.model.ReferenceCache;
+
+/**
+ * Program cache that stores all methods in a single pack file, see {@link PackedCacheStorage}.
+ */
+public class PackedProgramCache implements ProgramCache {
+    private PackedCacheStorage storage;
+    private ProgramIO programIO;
+    private Map<MethodReference, Item> cache = new HashMap<>();
+    private Set<MethodReference> newMethods = new LinkedHashSet<>();
+
+    public PackedProgramCache(File directory, ReferenceCache referenceCache, SymbolTable symbolTable,
+            SymbolTable fileTable, SymbolTable variableTable) {
+        storage = new PackedCacheStorage(directory, "programs");
+        programIO = new ProgramIO(referenceCache, symbolTable, fileTable, variableTable);
+    }
+
+    @Override
+    public Program get(MethodReference method, CacheStatus cacheStatus) {
+        Item item = cache.get(method);
+        if (item == null) {
+            item = new Item();
+            cache.put(method, item);
+            InputStream input = storage.get(method.toString(), cacheStatus);
+            if (input != null) {
+                try {
+                    item.program = programIO.read(input);
+                } catch (IOException e) {
+                    // we could not read program, just leave it empty
+                }
+            }
+        }
+        return item.program;
+    }
+
+    @Override
+    public void store(MethodReference method, Program program, Supplier<String[]> dependencies) {
+        Item item = new Item();
+        cache.put(method, item);
+        item.program = program;
+        item.dependencies = dependencies.get().clone();
+        newMethods.add(method);
+    }
+
+    public void flush() throws IOException {
+        for (MethodReference method : newMethods) {
+            Item item = cache.get(method);
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            programIO.write(item.program, output);
+            storage.store(method.toString(), item.dependencies, output.toByteArray());
+        }
+        newMethods.clear();
+        storage.flush();
+    }
+
+    static class Item {
+        Program program;
+        String[] dependencies;
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ *  Copyright 2023 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.teavm.parsing.ClassHashProvider;
+
+/**
+ * Serializes entries for {@link BuildCacheBackend}. Unlike local caches, shared entries can't refer
+ * to local symbol tables and can't rely on local {@link CacheStatus}, so each entry carries its own
+ * symbol tables and digests of all classes it depends on. Entry is keyed by namespace, kind, name and
+ * digest of the owner class, and is only used if all dependency digests are still the same.
+ */
+class SharedCacheSupport {
+    private final BuildCacheBackend backend;
+    private final ClassHashProvider classHashProvider;
+    private final String namespace;
+    private final Map<String, byte[]> pendingEntries = new LinkedHashMap<>();
+
+    SharedCacheSupport(BuildCacheBackend backend, ClassHashProvider classHashProvider, String namespace) {
+        this.backend = backend;
+        this.classHashProvider = classHashProvider;
+        this.namespace = namespace;
+    }
+
+    <T> Entry<T> get(String kind, String name, String ownerClass, EntryReader<T> reader) {
+        if (backend.getFailure() != null) {
+            return null;
+        }
+        String ownerHash = classHashProvider.getContentHash(ownerClass);
+        if (ownerHash == null) {
+            return null;
+        }
+        byte[] data;
+        try {
+            data = backend.get(key(kind, name, ownerHash));
+        } catch (IOException e) {
+            return null;
+        }
+        if (data == null) {
+            return null;
+        }
+
+        try {
+            VarDataInput input = new VarDataInput(new ByteArrayInputStream(data));
+            if (!name.equals(input.read())) {
+                return null;
+            }
+            String[] dependencies = new String[input.readUnsigned()];
+            for (int i = 0; i < dependencies.length; ++i) {
+                dependencies[i] = input.read();
+                String hash = input.read();
+                if (!hash.equals(classHashProvider.getContentHash(dependencies[i]))) {
+                    return null;
+                }
+            }
+            SymbolTable symbolTable = readSymbolTable(input);
+            SymbolTable fileTable = readSymbolTable(input);
+            SymbolTable variableTable = readSymbolTable(input);
+            InputStream payload = new ByteArrayInputStream(input.readBytes());
+            return new Entry<>(reader.read(payload, symbolTable, fileTable, variableTable), dependencies);
+        } catch (IOException | RuntimeException e) {
+            // Entry is corrupted or written by incompatible version, just ignore it
+            return null;
+        }
+    }
+
+    void store(String kind, String name, String ownerClass, String[] dependencies, EntryWriter writer) {
+        if (backend.getFailure() != null) {
+            return;
+        }
+        String ownerHash = classHashProvider.getContentHash(ownerClass);
+        if (ownerHash == null) {
+            return;
+        }
+        String[] dependencyHashes = new String[dependencies.length];
+        for (int i = 0; i < dependencies.length; ++i) {
+            dependencyHashes[i] = classHashProvider.getContentHash(dependencies[i]);
+            if (dependencyHashes[i] == null) {
+                // Entry depends on a generated class or on a class that is not available as a file,
+                // we can't tell whether it's the same on other machines
+                return;
+            }
+        }
+
+        try {
+            InMemorySymbolTable symbolTable = new InMemorySymbolTable();
+            InMemorySymbolTable fileTable = new InMemorySymbolTable();
+            InMemorySymbolTable variableTable = new InMemorySymbolTable();
+            ByteArrayOutputStream payload = new ByteArrayOutputStream();
+            writer.write(payload, symbolTable, fileTable, variableTable);
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            VarDataOutput output = new VarDataOutput(bytes);
+            output.write(name);
+            output.writeUnsigned(dependencies.length);
+            for (int i = 0; i < dependencies.length; ++i) {
+                output.write(dependencies[i]);
+                output.write(dependencyHashes[i]);
+            }
+            writeSymbolTable(output, symbolTable);
+            writeSymbolTable(output, fileTable);
+            writeSymbolTable(output, variableTable);
+            output.writeBytes(payload.toByteArray());
+            pendingEntries.put(key(kind, name, ownerHash), bytes.toByteArray());
+        } catch (IOException e) {
+            throw new RuntimeException("Unexpected IO error while writing to memory", e);
+        }
+    }
+
+    void flush() throws IOException {
+        IOException error = null;
+        for (var mapEntry : pendingEntries.entrySet()) {
+            if (backend.getFailure() != null) {
+                if (error == null) {
+                    error = backend.getFailure();
+                }
+                break;
+            }
+            try {
+                backend.put(mapEntry.getKey(), mapEntry.getValue());
+            } catch (IOException e) {
+                if (error == null) {
+                    error = e;
+                }
+            }
+        }
+        pendingEntries.clear();
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    private static SymbolTable readSymbolTable(VarDataInput input) throws IOException {
+        InMemorySymbolTable table = new InMemorySymbolTable();
+        int size = input.readUnsigned();
+        for (int i = 0; i < size; ++i) {
+            table.lookup(input.read());
+        }
+        return table;
+    }
+
+    private static void writeSymbolTable(VarDataOutput output, InMemorySymbolTable table) throws IOException {
+        output.writeUnsigned(table.size());
+        for (int i = 0; i < table.size(); ++i) {
+            output.write(table.at(i));
+        }
+    }
+
+    private String key(String kind, String name, String ownerHash) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+        String keySource = namespace + "\n" + kind + "\n" + name + "\n" + ownerHash;
+        StringBuilder sb = new StringBuilder();
+        for (byte b : digest.digest(keySource.getBytes(StandardCharsets.UTF_8))) {
+            sb.append(Character.forDigit((b >>> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    static class Entry<T> {
+        final T value;
+        final String[] dependencies;
+
+        Entry(T value, String[] dependencies) {
+            this.value = value;
+            this.dependencies = dependencies;
+        }
+    }
+
+    interface EntryWriter {
+        void write(OutputStream output, SymbolTable symbolTable, SymbolTable fileTable, SymbolTable variableTable)
+                throws IOException;
+    }
+
+    interface EntryReader<T> {
+        T read(InputStream input, SymbolTable symbolTable, SymbolTable fileTable, SymbolTable variableTable)
+                throws IOException;
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ *  Copyright 2023 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.cache;
+
+import java.io.IOException;
+import java.util.function.Supplier;
+import org.teavm.ast.AsyncMethodNode;
+import org.teavm.model.MethodReference;
+import org.teavm.model.ReferenceCache;
+import org.teavm.parsing.ClassHashProvider;
+
+/**
+ * Method node cache that falls back to {@link BuildCacheBackend} when method is missing in local cache,
+ * and uploads all methods stored in local cache to the backend.
+ */
+public class SharedMethodNodeCache implements MethodNodeCache {
+    private static final String KIND = "ast";
+    private static final String ASYNC_KIND = "ast-async";
+    private final MethodNodeCache localCache;
+    private final ReferenceCache referenceCache;
+    private final SharedCacheSupport support;
+
+    /**
+     * @param namespace identifies compiler version and settings that affect generated AST.
+     */
+    public SharedMethodNodeCache(MethodNodeCache localCache, BuildCacheBackend backend,
+            ClassHashProvider classHashProvider, ReferenceCache referenceCache, String namespace) {
+        this.localCache = localCache;
+        this.referenceCache = referenceCache;
+        support = new SharedCacheSupport(backend, classHashProvider, namespace);
+    }
+
+    @Override
+    public AstCacheEntry get(MethodReference methodReference, CacheStatus cacheStatus) {
+        AstCacheEntry result = localCache.get(methodReference, cacheStatus);
+        if (result != null) {
+            return result;
+        }
+        var entry = support.get(KIND, methodReference.toString(), methodReference.getClassName(),
+                (input, symbolTable, fileTable, variableTable) -> {
+                    AstIO astIO = new AstIO(referenceCache, symbolTable, fileTable, variableTable);
+                    VarDataInput data = new VarDataInput(input);
+                    return new AstCacheEntry(astIO.read(data, methodReference), astIO.readControlFlow(data));
+                });
+        if (entry == null) {
+            return null;
+        }
+        localCache.store(methodReference, entry.value, () -> entry.dependencies);
+        return entry.value;
+    }
+
+    @Override
+    public void store(MethodReference methodReference, AstCacheEntry entry, Supplier<String[]> dependencies) {
+        String[] dependencyArray = dependencies.get();
+        localCache.store(methodReference, entry, () -> dependencyArray);
+        support.store(KIND, methodReference.toString(), methodReference.getClassName(), dependencyArray,
+                (output, symbolTable, fileTable, variableTable) -> {
+                    AstIO astIO = new AstIO(referenceCache, symbolTable, fileTable, variableTable);
+                    VarDataOutput data = new VarDataOutput(output);
+                    astIO.write(data, entry.method);
+                    astIO.write(data, entry.cfg);
+                });
+    }
+
+    @Override
+    public AsyncMethodNode getAsync(MethodReference methodReference, CacheStatus cacheStatus) {
+        AsyncMethodNode result = localCache.getAsync(methodReference, cacheStatus);
+        if (result != null) {
+            return result;
+        }
+        var entry = support.get(ASYNC_KIND, methodReference.toString(), methodReference.getClassName(),
+                (input, symbolTable, fileTable, variableTable) -> new AstIO(referenceCache, symbolTable,
+                        fileTable, variableTable).readAsync(new VarDataInput(input), methodReference));
+        if (entry == null) {
+            return null;
+        }
+        localCache.storeAsync(methodReference, entry.value, () -> entry.dependencies);
+        return entry.value;
+    }
+
+    @Override
+    public void storeAsync(MethodReference methodReference, AsyncMethodNode node, Supplier<String[]> dependencies) {
+        String[] dependencyArray = dependencies.get();
+        localCache.storeAsync(methodReference, node, () -> dependencyArray);
+        support.store(ASYNC_KIND, methodReference.toString(), methodReference.getClassName(), dependencyArray,
+                (output, symbolTable, fileTable, variableTable) -> new AstIO(referenceCache, symbolTable,
+                        fileTable, variableTable).writeAsync(new VarDataOutput(output), node));
+    }
+
+    public void flush() throws IOException {
+        support.flush();
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ *  Copyright 2023 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.cache;
+
+import java.io.IOException;
+import java.util.function.Supplier;
+import org.teavm.model.MethodReference;
+import org.teavm.model.Program;
+import org.teavm.model.ProgramCache;
+import org.teavm.model.ReferenceCache;
+import org.teavm.parsing.ClassHashProvider;
+
+/**
+ * Program cache that falls back to {@link BuildCacheBackend} when program is missing in local cache,
+ * and uploads all programs stored in local cache to the backend.
+ */
+public class SharedProgramCache implements ProgramCache {
+    private static final String KIND = "program";
+    private final ProgramCache localCache;
+    private final ReferenceCache referenceCache;
+    private final SharedCacheSupport support;
+
+    /**
+     * @param namespace identifies compiler version and settings that affect optimized programs.
+     */
+    public SharedProgramCache(ProgramCache localCache, BuildCacheBackend backend,
+            ClassHashProvider classHashProvider, ReferenceCache referenceCache, String namespace) {
+        this.localCache = localCache;
+        this.referenceCache = referenceCache;
+        support = new SharedCacheSupport(backend, classHashProvider, namespace);
+    }
+
+    @Override
+    public Program get(MethodReference method, CacheStatus status) {
+        Program program = localCache.get(method, status);
+        if (program != null) {
+            return program;
+        }
+        var entry = support.get(KIND, method.toString(), method.getClassName(),
+                (input, symbolTable, fileTable, variableTable) -> new ProgramIO(referenceCache, symbolTable,
+                        fileTable, variableTable).read(input));
+        if (entry == null) {
+            return null;
+        }
+        localCache.store(method, entry.value, () -> entry.dependencies);
+        return entry.value;
+    }
+
+    @Override
+    public void store(MethodReference method, Program program, Supplier<String[]> dependencies) {
+        String[] dependencyArray = dependencies.get();
+        localCache.store(method, program, () -> dependencyArray);
+        support.store(KIND, method.toString(), method.getClassName(), dependencyArray,
+                (output, symbolTable, fileTable, variableTable) -> new ProgramIO(referenceCache, symbolTable,
+                        fileTable, variableTable).write(program, output));
+    }
+
+    public void flush() throws IOException {
+        support.flush();
+    }
+}
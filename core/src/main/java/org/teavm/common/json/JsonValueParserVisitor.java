@@ -50,15 +50,10 @@ public abstract class JsonValueParserVisitor extends JsonAllErrorVisitor {
     public JsonVisitor array(JsonErrorReporter reporter) {
         var jsonArray = new JsonArrayValue();
         consume(jsonArray);
-        return new JsonAllErrorVisitor() {
+        return new JsonValueParserVisitor() {
             @Override
-            public JsonVisitor array(JsonErrorReporter reporter) {
-                return new JsonValueParserVisitor() {
-                    @Override
-                    public void consume(JsonValue value) {
-                        jsonArray.add(value);
-                    }
-                };
+            public void consume(JsonValue value) {
+                jsonArray.add(value);
             }
         };
     }
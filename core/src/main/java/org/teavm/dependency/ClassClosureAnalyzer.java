@@ -73,8 +73,8 @@ class ClassClosureAnalyzer extends AbstractInstructionReader {
             for (ValueType paramType : method.getParameterTypes()) {
                 build(paramType);
             }
-            if (method.getProgram() != null) {
-                for (BasicBlockReader block : method.getProgram().getBasicBlocks()) {
+            if (method.getProgramReader() != null) {
+                for (BasicBlockReader block : method.getProgramReader().getBasicBlocks()) {
                     block.readAllInstructions(this);
                 }
             }
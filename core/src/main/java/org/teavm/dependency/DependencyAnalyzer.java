@@ -17,7 +17,6 @@ package org.teavm.dependency;
 
 import com.carrotsearch.hppc.IntHashSet;
 import com.carrotsearch.hppc.IntSet;
-import com.carrotsearch.hppc.cursors.IntCursor;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -27,6 +26,7 @@ import java.util.Comparator;
 import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
@@ -505,6 +505,14 @@ public abstract class DependencyAnalyzer implements DependencyInfo {
         });
     }
 
+    /**
+     * Gets number of nodes in dependency graph. Nodes are released by {@link #cleanup(ClassSourcePacker)},
+     * so after cleanup this method returns 0.
+     */
+    public int getNodeCount() {
+        return allNodes.size();
+    }
+
     @Override
     public Collection<MethodReference> getReachableMethods() {
         return readonlyReachedMethods;
@@ -674,10 +682,13 @@ public abstract class DependencyAnalyzer implements DependencyInfo {
                 DependencyType type = types.get(pendingTypes.iterator().next().value);
                 transition.consume(type);
             } else {
-                DependencyType[] typesToPropagate = new DependencyType[pendingTypes.size()];
-                int index = 0;
-                for (IntCursor cursor : pendingTypes) {
-                    typesToPropagate[index++] = types.get(cursor.value);
+                // Iteration order of hppc hash sets is randomized per instance, sort types to propagate them
+                // in the same order in every build
+                int[] typeIndexes = pendingTypes.toArray();
+                Arrays.sort(typeIndexes);
+                DependencyType[] typesToPropagate = new DependencyType[typeIndexes.length];
+                for (int i = 0; i < typeIndexes.length; ++i) {
+                    typesToPropagate[i] = types.get(typeIndexes[i]);
                 }
                 transition.consume(typesToPropagate);
             }
@@ -723,6 +734,34 @@ public abstract class DependencyAnalyzer implements DependencyInfo {
 
         System.out.println("Total nodes: " + allNodes.size());
         System.out.println("Total domains: " + domainCount);
+        reportMemoryUsage();
+    }
+
+    private void reportMemoryUsage() {
+        Set<TypeSet> typeSets = Collections.newSetFromMap(new IdentityHashMap<>());
+        Set<Object> typeStorages = Collections.newSetFromMap(new IdentityHashMap<>());
+        long typeStorageSize = 0;
+        int transitionCount = 0;
+        int transitionMapCount = 0;
+        for (DependencyNode node : allNodes) {
+            if (node.transitionList != null) {
+                transitionCount += node.transitionList.size();
+            }
+            if (node.transitions != null) {
+                ++transitionMapCount;
+            }
+            if (node.typeSet != null && typeSets.add(node.typeSet)) {
+                Object storage = node.typeSet.getStorage();
+                if (storage != null && typeStorages.add(storage)) {
+                    typeStorageSize += node.typeSet.estimateStorageSize();
+                }
+            }
+        }
+
+        System.out.println("Total type sets: " + typeSets.size() + ", distinct type storages: "
+                + typeStorages.size() + ", estimated type storage size: " + typeStorageSize + " bytes");
+        System.out.println("Total transitions: " + transitionCount + ", nodes with transition maps: "
+                + transitionMapCount);
     }
 
     public void cleanup(ClassSourcePacker classSourcePacker) {
@@ -778,6 +817,35 @@ public abstract class DependencyAnalyzer implements DependencyInfo {
         fieldReaderCache = null;
     }
 
+    /**
+     * Registers a method created after dependency analysis as a copy of a reachable method, for example by
+     * {@link org.teavm.model.optimization.Specialization}. The copy shares dependency information with
+     * the original method and calls the same methods in call graph, so that later phases treat the copy
+     * the same way as the original.
+     */
+    public void addMethodCopy(MethodReference original, MethodReference copy) {
+        MethodDependency dep = getMethod(original);
+        if (dep == null) {
+            return;
+        }
+        methodCache.computeIfAbsent(copy.getClassName(), k -> new HashMap<>()).put(copy.getDescriptor(), dep);
+        reachedMethods.add(copy);
+        DefaultCallGraphNode copyNode = callGraph.getNode(copy);
+        for (DefaultCallSite callSite : callGraph.getNode(original).getCallSites()) {
+            for (DefaultCallGraphNode callee : callSite.getCalledMethods()) {
+                copyNode.addCallSite(callee.getMethod());
+            }
+        }
+    }
+
+    /**
+     * Adds a direct call to call graph, for calls introduced after dependency analysis, for example
+     * calls to methods registered via {@link #addMethodCopy(MethodReference, MethodReference)}.
+     */
+    public void addCall(MethodReference caller, MethodReference callee) {
+        callGraph.getNode(caller).addCallSite(callee);
+    }
+
     public void cleanupTypes() {
         for (MethodReference reachableMethod : getReachableMethods()) {
             MethodDependency dependency = getMethod(reachableMethod);
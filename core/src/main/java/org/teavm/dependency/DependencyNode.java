@@ -33,6 +33,7 @@ import org.teavm.model.ValueType;
 
 public class DependencyNode implements ValueDependencyInfo {
     private static final int DEGREE_THRESHOLD = 2;
+    private static final int TRANSITION_MAP_THRESHOLD = 8;
     DependencyAnalyzer dependencyAnalyzer;
     List<DependencyConsumer> followers;
     TypeSet typeSet;
@@ -289,17 +290,23 @@ public class DependencyNode implements ValueDependencyInfo {
         if (node == null) {
             throw new IllegalArgumentException("Node must not be null");
         }
-        if (transitions == null) {
-            transitions = new ObjectObjectHashMap<>();
-            transitionList = new ObjectArrayList<>();
+        if (transitionList == null) {
+            transitionList = new ObjectArrayList<>(1);
         }
-        if (transitions.containsKey(node)) {
+        if (hasTransitionTo(node)) {
             return false;
         }
 
         Transition transition = new Transition(this, node, filter);
-        transitions.put(node, transition);
         transitionList.add(transition);
+        if (transitions != null) {
+            transitions.put(node, transition);
+        } else if (transitionList.size() > TRANSITION_MAP_THRESHOLD) {
+            transitions = new ObjectObjectHashMap<>(transitionList.size() * 2);
+            for (ObjectCursor<Transition> cursor : transitionList) {
+                transitions.put(cursor.value.destination, cursor.value);
+            }
+        }
         if (DependencyAnalyzer.shouldLog) {
             System.out.println("Connecting " + tag + " to " + node.tag);
         }
@@ -327,6 +334,18 @@ public class DependencyNode implements ValueDependencyInfo {
         return true;
     }
 
+    private boolean hasTransitionTo(DependencyNode node) {
+        if (transitions != null) {
+            return transitions.containsKey(node);
+        }
+        for (int i = 0; i < transitionList.size(); ++i) {
+            if (transitionList.get(i).destination == node) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private void connectArrayItemNodes(DependencyNode node) {
         if (degree > DEGREE_THRESHOLD || node.degree > DEGREE_THRESHOLD) {
             return;
@@ -365,7 +384,7 @@ public class DependencyNode implements ValueDependencyInfo {
         }
         classNodeComplete = true;
 
-        if (classNodeParent == null || classNodeParent.transitions == null) {
+        if (classNodeParent == null || classNodeParent.transitionList == null) {
             return;
         }
 
@@ -487,10 +506,7 @@ public class DependencyNode implements ValueDependencyInfo {
         if (typeSet == null) {
             Collection<DependencyNode> domain = findDomain();
             typeSet = new TypeSet(dependencyAnalyzer, this);
-            typeSet.domain.addAll(domain);
-            for (DependencyNode node : domain) {
-                node.typeSet = typeSet;
-            }
+            addToDomain(domain);
             return;
         }
 
@@ -507,14 +523,22 @@ public class DependencyNode implements ValueDependencyInfo {
         typeSet.invalidate();
 
         typeSet = typeSet.copy(this);
-        typeSet.domain.addAll(domain);
+        addToDomain(domain);
 
         for (DependencyNode node : domain) {
-            node.typeSet = typeSet;
             node.splitCount++;
         }
     }
 
+    private void addToDomain(Collection<DependencyNode> domain) {
+        for (DependencyNode node : domain) {
+            node.typeSet = typeSet;
+            if (node != this) {
+                typeSet.domain.add(node);
+            }
+        }
+    }
+
     Collection<DependencyNode> findDomain() {
         if (!dependencyAnalyzer.domainOptimizationEnabled()) {
             return Collections.singleton(this);
@@ -533,7 +557,7 @@ public class DependencyNode implements ValueDependencyInfo {
                 break;
             }
 
-            if (node.transitions != null) {
+            if (node.transitionList != null) {
                 for (ObjectCursor<Transition> cursor : node.transitionList) {
                     Transition transition = cursor.value;
                     if (transition.filter == null && transition.destination.typeSet == typeSet
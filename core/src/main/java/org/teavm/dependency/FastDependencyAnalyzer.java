@@ -54,7 +54,7 @@ public class FastDependencyAnalyzer extends DependencyAnalyzer {
     @Override
     protected void processMethod(MethodDependency methodDep) {
         MethodReader method = methodDep.getMethod();
-        ProgramReader program = method.getProgram();
+        ProgramReader program = method.getProgramReader();
 
         if (program != null) {
             var instructionAnalyzer = new FastInstructionAnalyzer(this);
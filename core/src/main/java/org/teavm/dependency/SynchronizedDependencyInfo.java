@@ -0,0 +1,108 @@
+/*
+ *  Copyright 2023 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.dependency;
+
+import java.util.Collection;
+import org.teavm.callgraph.CallGraph;
+import org.teavm.model.ClassReader;
+import org.teavm.model.ClassReaderSource;
+import org.teavm.model.FieldReference;
+import org.teavm.model.MethodReference;
+
+/**
+ * <p>View of {@link DependencyInfo} that can be shared between several threads once dependency analysis
+ * is complete.</p>
+ *
+ * <p>Dependency information itself is not modified after analysis, however class source and some lookups
+ * lazily populate caches. This view serializes such operations on a single lock, while leaving other
+ * read-only queries unsynchronized.</p>
+ */
+public class SynchronizedDependencyInfo implements DependencyInfo {
+    private final DependencyInfo inner;
+    private final ClassReaderSource classSource;
+
+    public SynchronizedDependencyInfo(DependencyInfo inner) {
+        this.inner = inner;
+        classSource = new SynchronizedClassSource(inner.getClassSource());
+    }
+
+    @Override
+    public ClassReaderSource getClassSource() {
+        return classSource;
+    }
+
+    @Override
+    public ClassLoader getClassLoader() {
+        return inner.getClassLoader();
+    }
+
+    @Override
+    public Collection<MethodReference> getReachableMethods() {
+        return inner.getReachableMethods();
+    }
+
+    @Override
+    public Collection<FieldReference> getReachableFields() {
+        return inner.getReachableFields();
+    }
+
+    @Override
+    public Collection<String> getReachableClasses() {
+        return inner.getReachableClasses();
+    }
+
+    @Override
+    public FieldDependencyInfo getField(FieldReference fieldRef) {
+        return inner.getField(fieldRef);
+    }
+
+    @Override
+    public MethodDependencyInfo getMethod(MethodReference methodRef) {
+        return inner.getMethod(methodRef);
+    }
+
+    @Override
+    public MethodDependencyInfo getMethodImplementation(MethodReference methodRef) {
+        synchronized (this) {
+            return inner.getMethodImplementation(methodRef);
+        }
+    }
+
+    @Override
+    public ClassDependencyInfo getClass(String className) {
+        return inner.getClass(className);
+    }
+
+    @Override
+    public CallGraph getCallGraph() {
+        return inner.getCallGraph();
+    }
+
+    class SynchronizedClassSource implements ClassReaderSource {
+        private final ClassReaderSource innerSource;
+
+        SynchronizedClassSource(ClassReaderSource innerSource) {
+            this.innerSource = innerSource;
+        }
+
+        @Override
+        public ClassReader get(String name) {
+            synchronized (SynchronizedDependencyInfo.this) {
+                return innerSource.get(name);
+            }
+        }
+    }
+}
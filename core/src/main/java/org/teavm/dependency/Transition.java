@@ -67,12 +67,18 @@ class Transition {
     void mergeDomains(DependencyType[] types) {
         destination.moveToSeparateDomain();
         destination.scheduleMultipleTypes(types, () -> {
+            TypeSet target = source.typeSet;
+            if (destination.typeSet == target) {
+                return;
+            }
             Collection<DependencyNode> domainToMerge = destination.typeSet.domain;
             for (DependencyNode node : domainToMerge) {
-                node.typeSet = source.typeSet;
-                source.typeSet.domain.add(node);
+                if (node.typeSet != target) {
+                    node.typeSet = target;
+                    target.domain.add(node);
+                }
             }
-            source.typeSet.invalidate();
+            target.invalidate();
         });
     }
 
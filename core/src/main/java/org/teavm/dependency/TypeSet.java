@@ -20,21 +20,28 @@ import com.carrotsearch.hppc.cursors.ObjectCursor;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.BitSet;
-import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Set;
 import java.util.function.Predicate;
 
+/**
+ * <p>Set of types shared by a domain of dependency nodes. Types are stored as a sorted array of type indexes
+ * while the set is small or sparse, and as a bit set otherwise. Bit set is only as long as the largest
+ * type index in it, not as the whole type table.</p>
+ *
+ * <p>When a domain splits, the new type set shares storage with the old one, and each of them copies
+ * storage on first modification.</p>
+ */
 class TypeSet {
-    private static final int SMALL_TYPES_THRESHOLD = 3;
+    private static final int SPARSE_TYPES_THRESHOLD = 32;
     static final DependencyType[] EMPTY_TYPES = new DependencyType[0];
     private DependencyAnalyzer dependencyAnalyzer;
     DependencyNode origin;
-    private int[] smallTypes;
+    private int[] sparseTypes;
     private BitSet types;
     private int typesCount;
+    private boolean sharedStorage;
 
-    Set<DependencyNode> domain = new LinkedHashSet<>();
+    List<DependencyNode> domain = new ArrayList<>(1);
     ObjectArrayList<Transition> transitions;
     ArrayList<ConsumerWithNode> consumers;
 
@@ -45,43 +52,66 @@ class TypeSet {
     }
 
     void addType(DependencyType type) {
+        if (sharedStorage) {
+            sharedStorage = false;
+            if (types != null) {
+                types = (BitSet) types.clone();
+            } else if (sparseTypes != null) {
+                sparseTypes = sparseTypes.clone();
+            }
+        }
+
         if (types == null) {
-            if (smallTypes == null) {
-                smallTypes = new int[] { type.index };
+            if (sparseTypes == null) {
+                sparseTypes = new int[] { type.index };
+                typesCount = 1;
                 return;
             }
-        }
-        if (smallTypes != null) {
-            if (smallTypes.length == SMALL_TYPES_THRESHOLD) {
-                types = new BitSet(dependencyAnalyzer.types.size() * 2);
-                for (int existingType : smallTypes) {
-                    types.set(existingType);
-                }
-                typesCount = smallTypes.length;
-                smallTypes = null;
-            } else {
-                smallTypes = Arrays.copyOf(smallTypes, smallTypes.length + 1);
-                smallTypes[smallTypes.length - 1] = type.index;
+            if (typesCount < SPARSE_TYPES_THRESHOLD
+                    || typesCount * Integer.SIZE < Math.max(type.index, sparseTypes[typesCount - 1])) {
+                addSparseType(type.index);
                 return;
             }
+            types = new BitSet(Math.max(type.index, sparseTypes[typesCount - 1]) + 1);
+            for (int i = 0; i < typesCount; ++i) {
+                types.set(sparseTypes[i]);
+            }
+            sparseTypes = null;
+        }
+        if (!types.get(type.index)) {
+            types.set(type.index);
+            typesCount++;
+        }
+    }
+
+    private void addSparseType(int index) {
+        int position = Arrays.binarySearch(sparseTypes, 0, typesCount, index);
+        if (position >= 0) {
+            return;
+        }
+        position = -position - 1;
+        if (typesCount == sparseTypes.length) {
+            int newLength = typesCount < 4 ? typesCount + 1 : typesCount + typesCount / 2;
+            sparseTypes = Arrays.copyOf(sparseTypes, newLength);
         }
-        types.set(type.index);
+        System.arraycopy(sparseTypes, position, sparseTypes, position + 1, typesCount - position);
+        sparseTypes[position] = index;
         typesCount++;
     }
 
     DependencyType[] getTypes() {
         if (this.types != null) {
-            DependencyType[] types = new DependencyType[this.types.cardinality()];
+            DependencyType[] types = new DependencyType[typesCount];
             int j = 0;
             for (int index = this.types.nextSetBit(0); index >= 0; index = this.types.nextSetBit(index + 1)) {
                 DependencyType type = dependencyAnalyzer.types.get(index);
                 types[j++] = type;
             }
             return types;
-        } else if (this.smallTypes != null) {
-            DependencyType[] types = new DependencyType[smallTypes.length];
+        } else if (sparseTypes != null) {
+            DependencyType[] types = new DependencyType[typesCount];
             for (int i = 0; i < types.length; ++i) {
-                DependencyType type = dependencyAnalyzer.types.get(smallTypes[i]);
+                DependencyType type = dependencyAnalyzer.types.get(sparseTypes[i]);
                 types[i] = type;
             }
             return types;
@@ -93,7 +123,7 @@ class TypeSet {
     boolean hasMoreTypesThan(int limit, Predicate<DependencyType> filter) {
         if (this.types != null) {
             if (filter == null) {
-                return this.types.cardinality() > limit;
+                return typesCount > limit;
             }
             for (int index = this.types.nextSetBit(0); index >= 0; index = this.types.nextSetBit(index + 1)) {
                 DependencyType type = dependencyAnalyzer.types.get(index);
@@ -104,15 +134,15 @@ class TypeSet {
                 }
             }
             return false;
-        } else if (this.smallTypes != null) {
-            if (this.smallTypes.length <= limit) {
+        } else if (sparseTypes != null) {
+            if (typesCount <= limit) {
                 return false;
             }
             if (filter == null) {
                 return true;
             }
-            for (int i = 0; i < smallTypes.length; ++i) {
-                DependencyType type = dependencyAnalyzer.types.get(smallTypes[i]);
+            for (int i = 0; i < typesCount; ++i) {
+                DependencyType type = dependencyAnalyzer.types.get(sparseTypes[i]);
                 if (filter.test(type)) {
                     if (--limit < 0) {
                         return true;
@@ -159,10 +189,10 @@ class TypeSet {
                     }
                 }
             }
-        } else if (this.smallTypes != null) {
-            types = new DependencyType[smallTypes.length];
+        } else if (sparseTypes != null) {
+            types = new DependencyType[typesCount];
             for (int i = 0; i < types.length; ++i) {
-                DependencyType type = dependencyAnalyzer.types.get(smallTypes[i]);
+                DependencyType type = dependencyAnalyzer.types.get(sparseTypes[i]);
                 if (sourceNode.filter(type) && !targetNode.hasType(type) && targetNode.filter(type)
                         && (filter == null || filter.match(type))) {
                     types[j++] = type;
@@ -182,26 +212,25 @@ class TypeSet {
     }
 
     boolean hasType(DependencyType type) {
-        if (smallTypes != null) {
-            for (int i = 0; i < smallTypes.length; ++i) {
-                if (smallTypes[i] == type.index) {
-                    return true;
-                }
-            }
-            return false;
+        if (sparseTypes != null) {
+            return Arrays.binarySearch(sparseTypes, 0, typesCount, type.index) >= 0;
         }
         return types != null && types.get(type.index);
     }
 
     boolean hasAnyType() {
-        return types != null || smallTypes != null;
+        return types != null || sparseTypes != null;
     }
 
     TypeSet copy(DependencyNode origin) {
         TypeSet result = new TypeSet(dependencyAnalyzer, origin);
-        result.types = types != null ? (BitSet) types.clone() : null;
-        result.smallTypes = smallTypes;
+        result.types = types;
+        result.sparseTypes = sparseTypes;
         result.typesCount = typesCount;
+        if (hasAnyType()) {
+            sharedStorage = true;
+            result.sharedStorage = true;
+        }
         return result;
     }
 
@@ -214,7 +243,7 @@ class TypeSet {
         if (transitions == null) {
             transitions = new ObjectArrayList<>(domain.size() * 2);
             for (DependencyNode node : domain) {
-                if (node.transitions != null) {
+                if (node.transitionList != null) {
                     for (ObjectCursor<Transition> cursor : node.transitionList) {
                         Transition transition = cursor.value;
                         if (transition.filter != null || transition.destination.typeSet != this) {
@@ -241,7 +270,21 @@ class TypeSet {
     }
 
     int typeCount() {
-        return smallTypes != null ? smallTypes.length : types != null ? typesCount : 0;
+        return typesCount;
+    }
+
+    Object getStorage() {
+        return types != null ? types : sparseTypes;
+    }
+
+    long estimateStorageSize() {
+        if (types != null) {
+            return 16 + types.size() / 8;
+        } else if (sparseTypes != null) {
+            return 16 + sparseTypes.length * 4L;
+        } else {
+            return 0;
+        }
     }
 
     void cleanup() {
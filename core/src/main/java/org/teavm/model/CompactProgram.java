@@ -0,0 +1,1072 @@
+/*
+ *  Copyright 2023 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.model;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import org.teavm.model.instructions.ArrayElementType;
+import org.teavm.model.instructions.BinaryBranchingCondition;
+import org.teavm.model.instructions.BinaryOperation;
+import org.teavm.model.instructions.BranchingCondition;
+import org.teavm.model.instructions.CastIntegerDirection;
+import org.teavm.model.instructions.InstructionReader;
+import org.teavm.model.instructions.IntegerSubtype;
+import org.teavm.model.instructions.InvocationType;
+import org.teavm.model.instructions.NumericOperandType;
+import org.teavm.model.instructions.SwitchTableEntryReader;
+import org.teavm.model.util.ModelUtils;
+import org.teavm.model.util.ProgramUtils;
+
+/**
+ * <p>Read-only representation of a program that keeps all instructions in a single flat array of integers.
+ * Opcodes, variables, basic blocks and enum values are stored as integers, while references to classes, members,
+ * string constants and locations are stored once per program in a constant pool. Objects that represent
+ * variables and basic blocks are created on demand.</p>
+ *
+ * <p>This representation is intended for programs that are kept in memory for a long time, but are read
+ * rarely, like programs of parsed or cached classes. Use {@link #expand()} to get a mutable {@link Program}.</p>
+ */
+public final class CompactProgram implements ProgramReader {
+    private static final BinaryOperation[] binaryOperations = BinaryOperation.values();
+    private static final NumericOperandType[] numericOperandTypes = NumericOperandType.values();
+    private static final IntegerSubtype[] integerSubtypes = IntegerSubtype.values();
+    private static final CastIntegerDirection[] castIntegerDirections = CastIntegerDirection.values();
+    private static final BranchingCondition[] branchingConditions = BranchingCondition.values();
+    private static final BinaryBranchingCondition[] binaryBranchingConditions = BinaryBranchingCondition.values();
+    private static final ArrayElementType[] arrayElementTypes = ArrayElementType.values();
+    private static final InvocationType[] invocationTypes = InvocationType.values();
+    private static final AnnotationContainer EMPTY_ANNOTATIONS = new AnnotationContainer();
+
+    private static final int NOP = 0;
+    private static final int CLASS_CONSTANT = 1;
+    private static final int NULL_CONSTANT = 2;
+    private static final int INTEGER_CONSTANT = 3;
+    private static final int LONG_CONSTANT = 4;
+    private static final int FLOAT_CONSTANT = 5;
+    private static final int DOUBLE_CONSTANT = 6;
+    private static final int STRING_CONSTANT = 7;
+    private static final int BINARY = 8;
+    private static final int NEGATE = 9;
+    private static final int ASSIGN = 10;
+    private static final int CAST = 11;
+    private static final int CAST_NUMBER = 12;
+    private static final int CAST_INTEGER = 13;
+    private static final int JUMP_IF = 14;
+    private static final int BINARY_JUMP_IF = 15;
+    private static final int JUMP = 16;
+    private static final int CHOOSE = 17;
+    private static final int EXIT = 18;
+    private static final int RAISE = 19;
+    private static final int CREATE_ARRAY = 20;
+    private static final int CREATE_MULTI_ARRAY = 21;
+    private static final int CREATE = 22;
+    private static final int GET_FIELD = 23;
+    private static final int PUT_FIELD = 24;
+    private static final int ARRAY_LENGTH = 25;
+    private static final int CLONE_ARRAY = 26;
+    private static final int UNWRAP_ARRAY = 27;
+    private static final int GET_ELEMENT = 28;
+    private static final int PUT_ELEMENT = 29;
+    private static final int INVOKE = 30;
+    private static final int INVOKE_DYNAMIC = 31;
+    private static final int IS_INSTANCE = 32;
+    private static final int INIT_CLASS = 33;
+    private static final int NULL_CHECK = 34;
+    private static final int MONITOR_ENTER = 35;
+    private static final int MONITOR_EXIT = 36;
+    private static final int BOUND_CHECK = 37;
+
+    private final int[] code;
+    private final Object[] constants;
+    private final int[] blockOffsets;
+    private final int[] blockInstructions;
+    private final int[] instructionOffsets;
+    private final String[] variableNames;
+    private final String[] variableLabels;
+    private final int[] registers;
+    private final AnnotationContainer annotations;
+    private final Block[] blocks;
+    private final VariableImpl[] variables;
+
+    private CompactProgram(Encoder encoder, ProgramReader program) {
+        code = Arrays.copyOf(encoder.code, encoder.size);
+        constants = encoder.constants.toArray();
+        blockOffsets = encoder.blockOffsets;
+        blockInstructions = encoder.blockInstructions;
+        instructionOffsets = Arrays.copyOf(encoder.instructionOffsets, encoder.instructionCount);
+
+        int variableCount = program.variableCount();
+        variables = new VariableImpl[variableCount];
+        String[] names = null;
+        String[] labels = null;
+        int[] registers = null;
+        for (int i = 0; i < variableCount; ++i) {
+            VariableReader variable = program.variableAt(i);
+            if (variable.getDebugName() != null) {
+                if (names == null) {
+                    names = new String[variableCount];
+                }
+                names[i] = variable.getDebugName();
+            }
+            if (variable.getLabel() != null) {
+                if (labels == null) {
+                    labels = new String[variableCount];
+                }
+                labels[i] = variable.getLabel();
+            }
+            if (variable.getRegister() != 0) {
+                if (registers == null) {
+                    registers = new int[variableCount];
+                }
+                registers[i] = variable.getRegister();
+            }
+        }
+        variableNames = names;
+        variableLabels = labels;
+        this.registers = registers;
+
+        blocks = new Block[program.basicBlockCount()];
+        for (int i = 0; i < blocks.length; ++i) {
+            blocks[i] = new Block(i);
+        }
+
+        if (program.getAnnotations().all().iterator().hasNext()) {
+            annotations = new AnnotationContainer();
+            ModelUtils.copyAnnotations(program.getAnnotations(), annotations);
+        } else {
+            annotations = EMPTY_ANNOTATIONS;
+        }
+    }
+
+    public static CompactProgram from(ProgramReader program) {
+        if (program instanceof CompactProgram) {
+            return (CompactProgram) program;
+        }
+        Encoder encoder = new Encoder(program.basicBlockCount());
+        for (int i = 0; i < program.basicBlockCount(); ++i) {
+            encoder.writeBlock(program.basicBlockAt(i));
+        }
+        encoder.blockInstructions[program.basicBlockCount()] = encoder.instructionCount;
+        return new CompactProgram(encoder, program);
+    }
+
+    /**
+     * Creates mutable copy of this program.
+     */
+    public Program expand() {
+        return ProgramUtils.copy(this);
+    }
+
+    @Override
+    public int basicBlockCount() {
+        return blocks.length;
+    }
+
+    @Override
+    public BasicBlockReader basicBlockAt(int index) {
+        return blocks[index];
+    }
+
+    @Override
+    public Iterable<? extends BasicBlockReader> getBasicBlocks() {
+        return Arrays.asList(blocks);
+    }
+
+    @Override
+    public int variableCount() {
+        return variables.length;
+    }
+
+    @Override
+    public VariableReader variableAt(int index) {
+        if (index < 0) {
+            return null;
+        }
+        VariableImpl variable = variables[index];
+        if (variable == null) {
+            variable = new VariableImpl(index);
+            variables[index] = variable;
+        }
+        return variable;
+    }
+
+    @Override
+    public AnnotationContainerReader getAnnotations() {
+        return annotations;
+    }
+
+    private void read(int instruction, InstructionReader reader) {
+        int offset = instructionOffsets[instruction];
+        int[] code = this.code;
+        int opcode = code[offset];
+        offset += 2;
+        switch (opcode) {
+            case NOP:
+                reader.nop();
+                break;
+            case CLASS_CONSTANT:
+                reader.classConstant(variableAt(code[offset]), (ValueType) constants[code[offset + 1]]);
+                break;
+            case NULL_CONSTANT:
+                reader.nullConstant(variableAt(code[offset]));
+                break;
+            case INTEGER_CONSTANT:
+                reader.integerConstant(variableAt(code[offset]), code[offset + 1]);
+                break;
+            case LONG_CONSTANT:
+                reader.longConstant(variableAt(code[offset]), readLong(offset + 1));
+                break;
+            case FLOAT_CONSTANT:
+                reader.floatConstant(variableAt(code[offset]), Float.intBitsToFloat(code[offset + 1]));
+                break;
+            case DOUBLE_CONSTANT:
+                reader.doubleConstant(variableAt(code[offset]), Double.longBitsToDouble(readLong(offset + 1)));
+                break;
+            case STRING_CONSTANT:
+                reader.stringConstant(variableAt(code[offset]), (String) constants[code[offset + 1]]);
+                break;
+            case BINARY:
+                reader.binary(binaryOperations[code[offset]], variableAt(code[offset + 1]),
+                        variableAt(code[offset + 2]), variableAt(code[offset + 3]),
+                        numericOperandTypes[code[offset + 4]]);
+                break;
+            case NEGATE:
+                reader.negate(variableAt(code[offset]), variableAt(code[offset + 1]),
+                        numericOperandTypes[code[offset + 2]]);
+                break;
+            case ASSIGN:
+                reader.assign(variableAt(code[offset]), variableAt(code[offset + 1]));
+                break;
+            case CAST:
+                reader.cast(variableAt(code[offset]), variableAt(code[offset + 1]),
+                        (ValueType) constants[code[offset + 2]]);
+                break;
+            case CAST_NUMBER:
+                reader.cast(variableAt(code[offset]), variableAt(code[offset + 1]),
+                        numericOperandTypes[code[offset + 2]], numericOperandTypes[code[offset + 3]]);
+                break;
+            case CAST_INTEGER:
+                reader.cast(variableAt(code[offset]), variableAt(code[offset + 1]),
+                        integerSubtypes[code[offset + 2]], castIntegerDirections[code[offset + 3]]);
+                break;
+            case JUMP_IF:
+                reader.jumpIf(branchingConditions[code[offset]], variableAt(code[offset + 1]),
+                        blocks[code[offset + 2]], blocks[code[offset + 3]]);
+                break;
+            case BINARY_JUMP_IF:
+                reader.jumpIf(binaryBranchingConditions[code[offset]], variableAt(code[offset + 1]),
+                        variableAt(code[offset + 2]), blocks[code[offset + 3]], blocks[code[offset + 4]]);
+                break;
+            case JUMP:
+                reader.jump(blocks[code[offset]]);
+                break;
+            case CHOOSE: {
+                int count = code[offset + 2];
+                List<SwitchTableEntryReader> table = new ArrayList<>(count);
+                for (int i = 0; i < count; ++i) {
+                    int entryOffset = offset + 3 + i * 2;
+                    table.add(new SwitchTableEntryImpl(code[entryOffset], blocks[code[entryOffset + 1]]));
+                }
+                reader.choose(variableAt(code[offset]), table, blocks[code[offset + 1]]);
+                break;
+            }
+            case EXIT:
+                reader.exit(variableAt(code[offset]));
+                break;
+            case RAISE:
+                reader.raise(variableAt(code[offset]));
+                break;
+            case CREATE_ARRAY:
+                reader.createArray(variableAt(code[offset]), (ValueType) constants[code[offset + 1]],
+                        variableAt(code[offset + 2]));
+                break;
+            case CREATE_MULTI_ARRAY:
+                reader.createArray(variableAt(code[offset]), (ValueType) constants[code[offset + 1]],
+                        new VariableList(offset + 3, code[offset + 2]));
+                break;
+            case CREATE:
+                reader.create(variableAt(code[offset]), (String) constants[code[offset + 1]]);
+                break;
+            case GET_FIELD:
+                reader.getField(variableAt(code[offset]), variableAt(code[offset + 1]),
+                        (FieldReference) constants[code[offset + 2]], (ValueType) constants[code[offset + 3]]);
+                break;
+            case PUT_FIELD:
+                reader.putField(variableAt(code[offset]), (FieldReference) constants[code[offset + 1]],
+                        variableAt(code[offset + 2]), (ValueType) constants[code[offset + 3]]);
+                break;
+            case ARRAY_LENGTH:
+                reader.arrayLength(variableAt(code[offset]), variableAt(code[offset + 1]));
+                break;
+            case CLONE_ARRAY:
+                reader.cloneArray(variableAt(code[offset]), variableAt(code[offset + 1]));
+                break;
+            case UNWRAP_ARRAY:
+                reader.unwrapArray(variableAt(code[offset]), variableAt(code[offset + 1]),
+                        arrayElementTypes[code[offset + 2]]);
+                break;
+            case GET_ELEMENT:
+                reader.getElement(variableAt(code[offset]), variableAt(code[offset + 1]),
+                        variableAt(code[offset + 2]), arrayElementTypes[code[offset + 3]]);
+                break;
+            case PUT_ELEMENT:
+                reader.putElement(variableAt(code[offset]), variableAt(code[offset + 1]),
+                        variableAt(code[offset + 2]), arrayElementTypes[code[offset + 3]]);
+                break;
+            case INVOKE:
+                reader.invoke(variableAt(code[offset]), variableAt(code[offset + 1]),
+                        (MethodReference) constants[code[offset + 2]], new VariableList(offset + 5, code[offset + 4]),
+                        invocationTypes[code[offset + 3]]);
+                break;
+            case INVOKE_DYNAMIC: {
+                @SuppressWarnings("unchecked")
+                List<RuntimeConstant> bootstrapArguments = (List<RuntimeConstant>) constants[code[offset + 4]];
+                reader.invokeDynamic(variableAt(code[offset]), variableAt(code[offset + 1]),
+                        (MethodDescriptor) constants[code[offset + 2]], new VariableList(offset + 6, code[offset + 5]),
+                        (MethodHandle) constants[code[offset + 3]], bootstrapArguments);
+                break;
+            }
+            case IS_INSTANCE:
+                reader.isInstance(variableAt(code[offset]), variableAt(code[offset + 1]),
+                        (ValueType) constants[code[offset + 2]]);
+                break;
+            case INIT_CLASS:
+                reader.initClass((String) constants[code[offset]]);
+                break;
+            case NULL_CHECK:
+                reader.nullCheck(variableAt(code[offset]), variableAt(code[offset + 1]));
+                break;
+            case MONITOR_ENTER:
+                reader.monitorEnter(variableAt(code[offset]));
+                break;
+            case MONITOR_EXIT:
+                reader.monitorExit(variableAt(code[offset]));
+                break;
+            case BOUND_CHECK:
+                reader.boundCheck(variableAt(code[offset]), variableAt(code[offset + 1]),
+                        variableAt(code[offset + 2]), code[offset + 3] != 0);
+                break;
+            default:
+                throw new IllegalStateException("Unknown opcode: " + opcode);
+        }
+    }
+
+    private TextLocation location(int instruction) {
+        int index = code[instructionOffsets[instruction] + 1];
+        return index >= 0 ? (TextLocation) constants[index] : null;
+    }
+
+    private long readLong(int offset) {
+        return ((long) code[offset] << 32) | (code[offset + 1] & 0xFFFFFFFFL);
+    }
+
+    private class Block implements BasicBlockReader {
+        private final int index;
+
+        Block(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public ProgramReader getProgram() {
+            return CompactProgram.this;
+        }
+
+        @Override
+        public int getIndex() {
+            return index;
+        }
+
+        @Override
+        public List<? extends PhiReader> readPhis() {
+            int offset = blockOffsets[index] + 1;
+            int count = code[offset++];
+            List<PhiImpl> phis = new ArrayList<>(count);
+            for (int i = 0; i < count; ++i) {
+                PhiImpl phi = new PhiImpl(this, offset);
+                phis.add(phi);
+                offset += 2 + code[offset + 1] * 2;
+            }
+            return phis;
+        }
+
+        @Override
+        public int instructionCount() {
+            return blockInstructions[index + 1] - blockInstructions[index];
+        }
+
+        @Override
+        public InstructionIterator iterateInstructions() {
+            return new InstructionIterator() {
+                int next = blockInstructions[index];
+                int current = -1;
+                TextLocation location;
+
+                @Override
+                public boolean hasNext() {
+                    return next < blockInstructions[index + 1];
+                }
+
+                @Override
+                public void next() {
+                    current = next++;
+                }
+
+                @Override
+                public boolean hasPrevious() {
+                    return hasNext() && next > blockInstructions[index];
+                }
+
+                @Override
+                public void previous() {
+                    current = --next;
+                }
+
+                @Override
+                public void read(InstructionReader reader) {
+                    TextLocation instructionLocation = location(current);
+                    if (!Objects.equals(instructionLocation, location)) {
+                        location = instructionLocation;
+                        reader.location(location);
+                    }
+                    CompactProgram.this.read(current, reader);
+                }
+            };
+        }
+
+        @Override
+        public void readAllInstructions(InstructionReader reader) {
+            TextLocation location = null;
+            for (int i = blockInstructions[index]; i < blockInstructions[index + 1]; ++i) {
+                TextLocation instructionLocation = location(i);
+                if (!Objects.equals(location, instructionLocation)) {
+                    location = instructionLocation;
+                    reader.location(location);
+                }
+                read(i, reader);
+            }
+        }
+
+        @Override
+        public List<? extends TryCatchBlockReader> readTryCatchBlocks() {
+            int offset = blockOffsets[index] + 1;
+            int phiCount = code[offset++];
+            for (int i = 0; i < phiCount; ++i) {
+                offset += 2 + code[offset + 1] * 2;
+            }
+            int count = code[offset++];
+            List<TryCatchBlockReader> tryCatchBlocks = new ArrayList<>(count);
+            for (int i = 0; i < count; ++i) {
+                int type = code[offset++];
+                tryCatchBlocks.add(new TryCatchBlockImpl(this, type >= 0 ? (String) constants[type] : null,
+                        blocks[code[offset++]]));
+            }
+            return tryCatchBlocks;
+        }
+
+        @Override
+        public VariableReader getExceptionVariable() {
+            return variableAt(code[blockOffsets[index]]);
+        }
+    }
+
+    private class VariableImpl implements VariableReader {
+        private final int index;
+
+        VariableImpl(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public int getIndex() {
+            return index;
+        }
+
+        @Override
+        public ProgramReader getProgram() {
+            return CompactProgram.this;
+        }
+
+        @Override
+        public String getDebugName() {
+            return variableNames != null ? variableNames[index] : null;
+        }
+
+        @Override
+        public String getLabel() {
+            return variableLabels != null ? variableLabels[index] : null;
+        }
+
+        @Override
+        public int getRegister() {
+            return registers != null ? registers[index] : 0;
+        }
+    }
+
+    private class VariableList extends AbstractList<VariableReader> {
+        private final int offset;
+        private final int size;
+
+        VariableList(int offset, int size) {
+            this.offset = offset;
+            this.size = size;
+        }
+
+        @Override
+        public VariableReader get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException();
+            }
+            return variableAt(code[offset + index]);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    private class PhiImpl implements PhiReader {
+        private final Block block;
+        private final int offset;
+
+        PhiImpl(Block block, int offset) {
+            this.block = block;
+            this.offset = offset;
+        }
+
+        @Override
+        public BasicBlockReader getBasicBlock() {
+            return block;
+        }
+
+        @Override
+        public VariableReader getReceiver() {
+            return variableAt(code[offset]);
+        }
+
+        @Override
+        public List<? extends IncomingReader> readIncomings() {
+            int count = code[offset + 1];
+            List<IncomingReader> incomings = new ArrayList<>(count);
+            for (int i = 0; i < count; ++i) {
+                int incomingOffset = offset + 2 + i * 2;
+                incomings.add(new IncomingImpl(this, blocks[code[incomingOffset]],
+                        variableAt(code[incomingOffset + 1])));
+            }
+            return incomings;
+        }
+    }
+
+    private static class IncomingImpl implements IncomingReader {
+        private final PhiReader phi;
+        private final BasicBlockReader source;
+        private final VariableReader value;
+
+        IncomingImpl(PhiReader phi, BasicBlockReader source, VariableReader value) {
+            this.phi = phi;
+            this.source = source;
+            this.value = value;
+        }
+
+        @Override
+        public VariableReader getValue() {
+            return value;
+        }
+
+        @Override
+        public BasicBlockReader getSource() {
+            return source;
+        }
+
+        @Override
+        public PhiReader getPhi() {
+            return phi;
+        }
+    }
+
+    private static class TryCatchBlockImpl implements TryCatchBlockReader {
+        private final BasicBlockReader protectedBlock;
+        private final String exceptionType;
+        private final BasicBlockReader handler;
+
+        TryCatchBlockImpl(BasicBlockReader protectedBlock, String exceptionType, BasicBlockReader handler) {
+            this.protectedBlock = protectedBlock;
+            this.exceptionType = exceptionType;
+            this.handler = handler;
+        }
+
+        @Override
+        public BasicBlockReader getProtectedBlock() {
+            return protectedBlock;
+        }
+
+        @Override
+        public BasicBlockReader getHandler() {
+            return handler;
+        }
+
+        @Override
+        public String getExceptionType() {
+            return exceptionType;
+        }
+    }
+
+    private static class SwitchTableEntryImpl implements SwitchTableEntryReader {
+        private final int condition;
+        private final BasicBlockReader target;
+
+        SwitchTableEntryImpl(int condition, BasicBlockReader target) {
+            this.condition = condition;
+            this.target = target;
+        }
+
+        @Override
+        public int getCondition() {
+            return condition;
+        }
+
+        @Override
+        public BasicBlockReader getTarget() {
+            return target;
+        }
+    }
+
+    private static class Encoder implements InstructionReader {
+        int[] code = new int[64];
+        int size;
+        List<Object> constants = new ArrayList<>();
+        Map<Object, Integer> constantIndexes = new HashMap<>();
+        int[] blockOffsets;
+        int[] blockInstructions;
+        int[] instructionOffsets = new int[16];
+        int instructionCount;
+        int location = -1;
+
+        Encoder(int blockCount) {
+            blockOffsets = new int[blockCount];
+            blockInstructions = new int[blockCount + 1];
+        }
+
+        void writeBlock(BasicBlockReader block) {
+            blockOffsets[block.getIndex()] = size;
+            blockInstructions[block.getIndex()] = instructionCount;
+            write(variable(block.getExceptionVariable()));
+
+            List<? extends PhiReader> phis = block.readPhis();
+            write(phis.size());
+            for (PhiReader phi : phis) {
+                write(phi.getReceiver().getIndex());
+                List<? extends IncomingReader> incomings = phi.readIncomings();
+                write(incomings.size());
+                for (IncomingReader incoming : incomings) {
+                    write(incoming.getSource().getIndex());
+                    write(incoming.getValue().getIndex());
+                }
+            }
+
+            List<? extends TryCatchBlockReader> tryCatchBlocks = block.readTryCatchBlocks();
+            write(tryCatchBlocks.size());
+            for (TryCatchBlockReader tryCatch : tryCatchBlocks) {
+                write(tryCatch.getExceptionType() != null ? constant(tryCatch.getExceptionType()) : -1);
+                write(tryCatch.getHandler().getIndex());
+            }
+
+            location = -1;
+            block.readAllInstructions(this);
+        }
+
+        private void write(int value) {
+            if (size == code.length) {
+                code = Arrays.copyOf(code, size * 2);
+            }
+            code[size++] = value;
+        }
+
+        private void write(long value) {
+            write((int) (value >>> 32));
+            write((int) value);
+        }
+
+        private void write(VariableReader variable) {
+            write(variable(variable));
+        }
+
+        private void write(BasicBlockReader block) {
+            write(block.getIndex());
+        }
+
+        private void write(Enum<?> value) {
+            write(value.ordinal());
+        }
+
+        private void writeConstant(Object value) {
+            write(constant(value));
+        }
+
+        private void writeVariables(List<? extends VariableReader> variables) {
+            write(variables.size());
+            for (VariableReader variable : variables) {
+                write(variable);
+            }
+        }
+
+        private static int variable(VariableReader variable) {
+            return variable != null ? variable.getIndex() : -1;
+        }
+
+        private int constant(Object value) {
+            Integer index = constantIndexes.get(value);
+            if (index == null) {
+                index = constants.size();
+                constants.add(value);
+                constantIndexes.put(value, index);
+            }
+            return index;
+        }
+
+        private void instruction(int opcode) {
+            if (instructionCount == instructionOffsets.length) {
+                instructionOffsets = Arrays.copyOf(instructionOffsets, instructionCount * 2);
+            }
+            instructionOffsets[instructionCount++] = size;
+            write(opcode);
+            write(location);
+        }
+
+        @Override
+        public void location(TextLocation location) {
+            this.location = location != null ? constant(location) : -1;
+        }
+
+        @Override
+        public void nop() {
+            instruction(NOP);
+        }
+
+        @Override
+        public void classConstant(VariableReader receiver, ValueType cst) {
+            instruction(CLASS_CONSTANT);
+            write(receiver);
+            writeConstant(cst);
+        }
+
+        @Override
+        public void nullConstant(VariableReader receiver) {
+            instruction(NULL_CONSTANT);
+            write(receiver);
+        }
+
+        @Override
+        public void integerConstant(VariableReader receiver, int cst) {
+            instruction(INTEGER_CONSTANT);
+            write(receiver);
+            write(cst);
+        }
+
+        @Override
+        public void longConstant(VariableReader receiver, long cst) {
+            instruction(LONG_CONSTANT);
+            write(receiver);
+            write(cst);
+        }
+
+        @Override
+        public void floatConstant(VariableReader receiver, float cst) {
+            instruction(FLOAT_CONSTANT);
+            write(receiver);
+            write(Float.floatToRawIntBits(cst));
+        }
+
+        @Override
+        public void doubleConstant(VariableReader receiver, double cst) {
+            instruction(DOUBLE_CONSTANT);
+            write(receiver);
+            write(Double.doubleToRawLongBits(cst));
+        }
+
+        @Override
+        public void stringConstant(VariableReader receiver, String cst) {
+            instruction(STRING_CONSTANT);
+            write(receiver);
+            writeConstant(cst);
+        }
+
+        @Override
+        public void binary(BinaryOperation op, VariableReader receiver, VariableReader first, VariableReader second,
+                NumericOperandType type) {
+            instruction(BINARY);
+            write(op);
+            write(receiver);
+            write(first);
+            write(second);
+            write(type);
+        }
+
+        @Override
+        public void negate(VariableReader receiver, VariableReader operand, NumericOperandType type) {
+            instruction(NEGATE);
+            write(receiver);
+            write(operand);
+            write(type);
+        }
+
+        @Override
+        public void assign(VariableReader receiver, VariableReader assignee) {
+            instruction(ASSIGN);
+            write(receiver);
+            write(assignee);
+        }
+
+        @Override
+        public void cast(VariableReader receiver, VariableReader value, ValueType targetType) {
+            instruction(CAST);
+            write(receiver);
+            write(value);
+            writeConstant(targetType);
+        }
+
+        @Override
+        public void cast(VariableReader receiver, VariableReader value, NumericOperandType sourceType,
+                NumericOperandType targetType) {
+            instruction(CAST_NUMBER);
+            write(receiver);
+            write(value);
+            write(sourceType);
+            write(targetType);
+        }
+
+        @Override
+        public void cast(VariableReader receiver, VariableReader value, IntegerSubtype type,
+                CastIntegerDirection targetType) {
+            instruction(CAST_INTEGER);
+            write(receiver);
+            write(value);
+            write(type);
+            write(targetType);
+        }
+
+        @Override
+        public void jumpIf(BranchingCondition cond, VariableReader operand, BasicBlockReader consequent,
+                BasicBlockReader alternative) {
+            instruction(JUMP_IF);
+            write(cond);
+            write(operand);
+            write(consequent);
+            write(alternative);
+        }
+
+        @Override
+        public void jumpIf(BinaryBranchingCondition cond, VariableReader first, VariableReader second,
+                BasicBlockReader consequent, BasicBlockReader alternative) {
+            instruction(BINARY_JUMP_IF);
+            write(cond);
+            write(first);
+            write(second);
+            write(consequent);
+            write(alternative);
+        }
+
+        @Override
+        public void jump(BasicBlockReader target) {
+            instruction(JUMP);
+            write(target);
+        }
+
+        @Override
+        public void choose(VariableReader condition, List<? extends SwitchTableEntryReader> table,
+                BasicBlockReader defaultTarget) {
+            instruction(CHOOSE);
+            write(condition);
+            write(defaultTarget);
+            write(table.size());
+            for (SwitchTableEntryReader entry : table) {
+                write(entry.getCondition());
+                write(entry.getTarget());
+            }
+        }
+
+        @Override
+        public void exit(VariableReader valueToReturn) {
+            instruction(EXIT);
+            write(valueToReturn);
+        }
+
+        @Override
+        public void raise(VariableReader exception) {
+            instruction(RAISE);
+            write(exception);
+        }
+
+        @Override
+        public void createArray(VariableReader receiver, ValueType itemType, VariableReader size) {
+            instruction(CREATE_ARRAY);
+            write(receiver);
+            writeConstant(itemType);
+            write(size);
+        }
+
+        @Override
+        public void createArray(VariableReader receiver, ValueType itemType,
+                List<? extends VariableReader> dimensions) {
+            instruction(CREATE_MULTI_ARRAY);
+            write(receiver);
+            writeConstant(itemType);
+            writeVariables(dimensions);
+        }
+
+        @Override
+        public void create(VariableReader receiver, String type) {
+            instruction(CREATE);
+            write(receiver);
+            writeConstant(type);
+        }
+
+        @Override
+        public void getField(VariableReader receiver, VariableReader instance, FieldReference field,
+                ValueType fieldType) {
+            instruction(GET_FIELD);
+            write(receiver);
+            write(instance);
+            writeConstant(field);
+            writeConstant(fieldType);
+        }
+
+        @Override
+        public void putField(VariableReader instance, FieldReference field, VariableReader value,
+                ValueType fieldType) {
+            instruction(PUT_FIELD);
+            write(instance);
+            writeConstant(field);
+            write(value);
+            writeConstant(fieldType);
+        }
+
+        @Override
+        public void arrayLength(VariableReader receiver, VariableReader array) {
+            instruction(ARRAY_LENGTH);
+            write(receiver);
+            write(array);
+        }
+
+        @Override
+        public void cloneArray(VariableReader receiver, VariableReader array) {
+            instruction(CLONE_ARRAY);
+            write(receiver);
+            write(array);
+        }
+
+        @Override
+        public void unwrapArray(VariableReader receiver, VariableReader array, ArrayElementType elementType) {
+            instruction(UNWRAP_ARRAY);
+            write(receiver);
+            write(array);
+            write(elementType);
+        }
+
+        @Override
+        public void getElement(VariableReader receiver, VariableReader array, VariableReader index,
+                ArrayElementType elementType) {
+            instruction(GET_ELEMENT);
+            write(receiver);
+            write(array);
+            write(index);
+            write(elementType);
+        }
+
+        @Override
+        public void putElement(VariableReader array, VariableReader index, VariableReader value,
+                ArrayElementType elementType) {
+            instruction(PUT_ELEMENT);
+            write(array);
+            write(index);
+            write(value);
+            write(elementType);
+        }
+
+        @Override
+        public void invoke(VariableReader receiver, VariableReader instance, MethodReference method,
+                List<? extends VariableReader> arguments, InvocationType type) {
+            instruction(INVOKE);
+            write(receiver);
+            write(instance);
+            writeConstant(method);
+            write(type);
+            writeVariables(arguments);
+        }
+
+        @Override
+        public void invokeDynamic(VariableReader receiver, VariableReader instance, MethodDescriptor method,
+                List<? extends VariableReader> arguments, MethodHandle bootstrapMethod,
+                List<RuntimeConstant> bootstrapArguments) {
+            instruction(INVOKE_DYNAMIC);
+            write(receiver);
+            write(instance);
+            writeConstant(method);
+            writeConstant(bootstrapMethod);
+            writeConstant(new ArrayList<>(bootstrapArguments));
+            writeVariables(arguments);
+        }
+
+        @Override
+        public void isInstance(VariableReader receiver, VariableReader value, ValueType type) {
+            instruction(IS_INSTANCE);
+            write(receiver);
+            write(value);
+            writeConstant(type);
+        }
+
+        @Override
+        public void initClass(String className) {
+            instruction(INIT_CLASS);
+            writeConstant(className);
+        }
+
+        @Override
+        public void nullCheck(VariableReader receiver, VariableReader value) {
+            instruction(NULL_CHECK);
+            write(receiver);
+            write(value);
+        }
+
+        @Override
+        public void monitorEnter(VariableReader objectRef) {
+            instruction(MONITOR_ENTER);
+            write(objectRef);
+        }
+
+        @Override
+        public void monitorExit(VariableReader objectRef) {
+            instruction(MONITOR_EXIT);
+            write(objectRef);
+        }
+
+        @Override
+        public void boundCheck(VariableReader receiver, VariableReader index, VariableReader array,
+                boolean lower) {
+            instruction(BOUND_CHECK);
+            write(receiver);
+            write(index);
+            write(array);
+            write(lower ? 1 : 0);
+        }
+    }
+}
@@ -66,6 +66,7 @@ public class Interpreter {
 
         try {
             while (true) {
+                enterBlock(currentBlock);
                 InstructionIterator iterator = currentBlock.iterateInstructions();
                 try {
                     while (iterator.hasNext()) {
@@ -98,6 +99,172 @@ public class Interpreter {
         }
     }
 
+    /**
+     * Called each time the interpreter starts executing a basic block. Subclasses may use it to limit
+     * the amount of work, by throwing an exception, which is not handled by the interpreted program.
+     */
+    protected void enterBlock(BasicBlockReader block) {
+    }
+
+    protected Object getField(FieldReference field, Object instance) {
+        Field jvmField = getJvmField(field);
+        try {
+            return toIntegerIfSmall(jvmField.get(instance));
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException("Can't get field value: " + field);
+        }
+    }
+
+    protected void putField(FieldReference field, Object instance, Object value) {
+        Field jvmField = getJvmField(field);
+        try {
+            jvmField.set(instance, fromInteger(value, jvmField.getType()));
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException("Can't set field value: " + field);
+        }
+    }
+
+    private Field getJvmField(FieldReference field) {
+        Class<?> cls;
+        try {
+            cls = Class.forName(field.getClassName(), false, classLoader);
+        } catch (ClassNotFoundException e) {
+            throw new RuntimeException("Class not found: " + field.getClassName());
+        }
+
+        Field jvmField;
+        try {
+            jvmField = cls.getDeclaredField(field.getFieldName());
+        } catch (NoSuchFieldException e) {
+            throw new RuntimeException("Field not found: " + field);
+        }
+
+        jvmField.setAccessible(true);
+        return jvmField;
+    }
+
+    protected Object invoke(MethodReference method, InvocationType type, Object instance, Object[] arguments) {
+        Method jvmMethod = asJvmMethod(method);
+        Class<?>[] parameterTypes = jvmMethod.getParameterTypes();
+        Object[] jvmArgs = new Object[arguments.length];
+        for (int i = 0; i < jvmArgs.length; ++i) {
+            jvmArgs[i] = fromInteger(arguments[i], parameterTypes[i]);
+        }
+        try {
+            return toIntegerIfSmall(jvmMethod.invoke(instance, jvmArgs));
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new RuntimeException("Error calling method " + method, e);
+        }
+    }
+
+    private Method asJvmMethod(MethodReference method) {
+        Class<?> cls;
+        try {
+            cls = Class.forName(method.getClassName(), false, classLoader);
+        } catch (ClassNotFoundException e) {
+            throw new RuntimeException("Can't find class " + method.getClassName());
+        }
+
+        Class<?>[] jvmParameters = new Class[method.parameterCount()];
+        for (int i = 0; i < method.parameterCount(); ++i) {
+            jvmParameters[i] = asJvmClass(method.parameterType(i));
+        }
+        Class<?> jvmReturnType = asJvmClass(method.getReturnType());
+        for (Method jvmMethod : cls.getDeclaredMethods()) {
+            if (jvmMethod.getName().equals(method.getName())
+                    && Arrays.equals(jvmMethod.getParameterTypes(), jvmParameters)
+                    && jvmReturnType.equals(jvmMethod.getReturnType())) {
+                jvmMethod.setAccessible(true);
+                return jvmMethod;
+            }
+        }
+
+        throw new RuntimeException("Method not found: " + method);
+    }
+
+    protected Object createInstance(String className) {
+        try {
+            Class.forName(className, false, classLoader);
+        } catch (ClassNotFoundException e) {
+            throw new RuntimeException("Class not found: " + className);
+        }
+        return null;
+    }
+
+    protected void initClass(String className) {
+        try {
+            Class.forName(className, true, classLoader);
+        } catch (ClassNotFoundException e) {
+            throw new RuntimeException("Class not found: " + className);
+        }
+    }
+
+    protected Class<?> asJvmClass(ValueType type) {
+        if (type instanceof ValueType.Primitive) {
+            switch (((ValueType.Primitive) type).getKind()) {
+                case BOOLEAN:
+                    return boolean.class;
+                case BYTE:
+                    return byte.class;
+                case SHORT:
+                    return short.class;
+                case CHARACTER:
+                    return char.class;
+                case INTEGER:
+                    return int.class;
+                case LONG:
+                    return long.class;
+                case FLOAT:
+                    return float.class;
+                case DOUBLE:
+                    return double.class;
+                default:
+                    break;
+            }
+        } else if (type instanceof ValueType.Void) {
+            return void.class;
+        } else if (type instanceof ValueType.Array) {
+            Class<?> itemJvmClass = asJvmClass(((ValueType.Array) type).getItemType());
+            return Array.newInstance(itemJvmClass, 0).getClass();
+        } else if (type instanceof ValueType.Object) {
+            try {
+                return Class.forName(((ValueType.Object) type).getClassName(), false, classLoader);
+            } catch (ClassNotFoundException e) {
+                throw new IllegalArgumentException("Class not found: " + type);
+            }
+        }
+        throw new IllegalArgumentException("Unknown type: " + type);
+    }
+
+    // Program represents boolean, byte, short and char values as int, while JVM uses distinct types for them
+    private static Object toIntegerIfSmall(Object value) {
+        if (value instanceof Boolean) {
+            return (Boolean) value ? 1 : 0;
+        } else if (value instanceof Byte || value instanceof Short) {
+            return ((Number) value).intValue();
+        } else if (value instanceof Character) {
+            return (int) (Character) value;
+        }
+        return value;
+    }
+
+    private static Object fromInteger(Object value, Class<?> type) {
+        if (!(value instanceof Integer)) {
+            return value;
+        }
+        int intValue = (Integer) value;
+        if (type == boolean.class) {
+            return intValue != 0;
+        } else if (type == byte.class) {
+            return (byte) intValue;
+        } else if (type == short.class) {
+            return (short) intValue;
+        } else if (type == char.class) {
+            return (char) intValue;
+        }
+        return value;
+    }
+
     private boolean pickExceptionHandler(Throwable e) {
         for (TryCatchBlockReader tryCatch : currentBlock.readTryCatchBlocks()) {
             Class<?> exceptionType;
@@ -179,7 +346,7 @@ public class Interpreter {
                             result = a * b;
                             break;
                         case DIVIDE:
-                            result = a * b;
+                            result = a / b;
                             break;
                         case MODULO:
                             result = a % b;
@@ -196,6 +363,15 @@ public class Interpreter {
                         case XOR:
                             result = a ^ b;
                             break;
+                        case SHIFT_LEFT:
+                            result = a << b;
+                            break;
+                        case SHIFT_RIGHT:
+                            result = a >> b;
+                            break;
+                        case SHIFT_RIGHT_UNSIGNED:
+                            result = a >>> b;
+                            break;
                         default:
                             throw new IllegalArgumentException("Unknown operation: " + op);
                     }
@@ -204,7 +380,11 @@ public class Interpreter {
                 }
                 case LONG: {
                     long a = (Long) variables[first.getIndex()];
-                    long b = (Long) variables[second.getIndex()];
+                    long b = ((Number) variables[second.getIndex()]).longValue();
+                    if (op == BinaryOperation.COMPARE) {
+                        variables[receiver.getIndex()] = Long.compare(a, b);
+                        break;
+                    }
                     long result;
                     switch (op) {
                         case ADD:
@@ -217,14 +397,11 @@ public class Interpreter {
                             result = a * b;
                             break;
                         case DIVIDE:
-                            result = a * b;
+                            result = a / b;
                             break;
                         case MODULO:
                             result = a % b;
                             break;
-                        case COMPARE:
-                            result = Long.compare(a, b);
-                            break;
                         case AND:
                             result = a & b;
                             break;
@@ -234,6 +411,15 @@ public class Interpreter {
                         case XOR:
                             result = a ^ b;
                             break;
+                        case SHIFT_LEFT:
+                            result = a << b;
+                            break;
+                        case SHIFT_RIGHT:
+                            result = a >> b;
+                            break;
+                        case SHIFT_RIGHT_UNSIGNED:
+                            result = a >>> b;
+                            break;
                         default:
                             throw new IllegalArgumentException("Unknown operation: " + op);
                     }
@@ -243,6 +429,10 @@ public class Interpreter {
                 case FLOAT: {
                     float a = (Float) variables[first.getIndex()];
                     float b = (Float) variables[second.getIndex()];
+                    if (op == BinaryOperation.COMPARE) {
+                        variables[receiver.getIndex()] = Float.compare(a, b);
+                        break;
+                    }
                     float result;
                     switch (op) {
                         case ADD:
@@ -255,17 +445,17 @@ public class Interpreter {
                             result = a * b;
                             break;
                         case DIVIDE:
-                            result = a * b;
+                            result = a / b;
                             break;
                         case MODULO:
                             result = a % b;
                             break;
-                        case COMPARE:
-                            result = Float.compare(a, b);
-                            break;
                         case AND:
                         case OR:
                         case XOR:
+                        case SHIFT_LEFT:
+                        case SHIFT_RIGHT:
+                        case SHIFT_RIGHT_UNSIGNED:
                             throw new IllegalArgumentException("Unsupported operation " + op
                                     + " for operands of type" + type);
                         default:
@@ -277,6 +467,10 @@ public class Interpreter {
                 case DOUBLE: {
                     double a = (Double) variables[first.getIndex()];
                     double b = (Double) variables[second.getIndex()];
+                    if (op == BinaryOperation.COMPARE) {
+                        variables[receiver.getIndex()] = Double.compare(a, b);
+                        break;
+                    }
                     double result;
                     switch (op) {
                         case ADD:
@@ -289,17 +483,17 @@ public class Interpreter {
                             result = a * b;
                             break;
                         case DIVIDE:
-                            result = a * b;
+                            result = a / b;
                             break;
                         case MODULO:
                             result = a % b;
                             break;
-                        case COMPARE:
-                            result = Double.compare(a, b);
-                            break;
                         case AND:
                         case OR:
                         case XOR:
+                        case SHIFT_LEFT:
+                        case SHIFT_RIGHT:
+                        case SHIFT_RIGHT_UNSIGNED:
                             throw new IllegalArgumentException("Unsupported operation " + op
                                     + " for operands of type" + type);
                         default:
@@ -441,7 +635,7 @@ public class Interpreter {
             switch (direction) {
                 case FROM_INTEGER: {
                     int a = (Integer) variables[value.getIndex()];
-                    Object result;
+                    int result;
                     switch (type) {
                         case BYTE:
                             result = (byte) a;
@@ -459,17 +653,17 @@ public class Interpreter {
                     break;
                 }
                 case TO_INTEGER: {
-                    Object a = variables[value.getIndex()];
+                    int a = (Integer) variables[value.getIndex()];
                     int result;
                     switch (type) {
                         case BYTE:
-                            result = (Byte) a;
+                            result = (byte) a;
                             break;
                         case SHORT:
-                            result = (Short) a;
+                            result = (short) a;
                             break;
                         case CHAR:
-                            result = (Character) a;
+                            result = (char) a;
                             break;
                         default:
                             throw new IllegalArgumentException("Unknown type: " + type);
@@ -572,14 +766,14 @@ public class Interpreter {
         @Override
         public void exit(VariableReader valueToReturn) {
             state = State.EXITED;
-            result = variables[valueToReturn.getIndex()];
+            result = valueToReturn != null ? variables[valueToReturn.getIndex()] : null;
         }
 
         @Override
         public void raise(VariableReader exception) {
             Throwable e = (Throwable) variables[exception.getIndex()];
             if (!pickExceptionHandler(e)) {
-                state = State.EXITED;
+                state = State.THROWN;
                 result = e;
             }
         }
@@ -614,60 +808,20 @@ public class Interpreter {
 
         @Override
         public void create(VariableReader receiver, String type) {
-            Class<?> cls;
-            try {
-                cls = Class.forName(type, false, classLoader);
-            } catch (ClassNotFoundException e) {
-                throw new RuntimeException("Class not found: " + type);
-            }
-            variables[receiver.getIndex()] = null;
+            variables[receiver.getIndex()] = createInstance(type);
         }
 
         @Override
         public void getField(VariableReader receiver, VariableReader instance, FieldReference field,
                 ValueType fieldType) {
-            Field jvmField = getJvmField(field);
-
             Object jvmInstance = instance != null ? variables[instance.getIndex()] : null;
-            Object result;
-            try {
-                result = jvmField.get(jvmInstance);
-            } catch (IllegalAccessException e) {
-                throw new RuntimeException("Can't get field value: " + field);
-            }
-
-            variables[receiver.getIndex()] = result;
+            variables[receiver.getIndex()] = Interpreter.this.getField(field, jvmInstance);
         }
 
         @Override
         public void putField(VariableReader instance, FieldReference field, VariableReader value, ValueType fieldType) {
-            Field jvmField = getJvmField(field);
-
             Object jvmInstance = instance != null ? variables[instance.getIndex()] : null;
-            try {
-                jvmField.set(jvmInstance, variables[value.getIndex()]);
-            } catch (IllegalAccessException e) {
-                throw new RuntimeException("Can't get field value: " + field);
-            }
-        }
-
-        private Field getJvmField(FieldReference field) {
-            Class<?> cls;
-            try {
-                cls = Class.forName(field.getClassName(), false, classLoader);
-            } catch (ClassNotFoundException e) {
-                throw new RuntimeException("Class not found: " + field.getClassName());
-            }
-
-            Field jvmField;
-            try {
-                jvmField = cls.getDeclaredField(field.getFieldName());
-            } catch (NoSuchFieldException e) {
-                throw new RuntimeException("Field not found: " + field);
-            }
-
-            jvmField.setAccessible(true);
-            return jvmField;
+            Interpreter.this.putField(field, jvmInstance, variables[value.getIndex()]);
         }
 
         @Override
@@ -682,7 +836,7 @@ public class Interpreter {
             int length = Array.getLength(jvmArray);
             Object copy = Array.newInstance(jvmArray.getClass().getComponentType(), length);
             for (int i = 0; i < length; ++i) {
-                Array.set(copy, i, Array.get(array, i));
+                Array.set(copy, i, Array.get(jvmArray, i));
             }
             variables[receiver.getIndex()] = copy;
         }
@@ -697,7 +851,7 @@ public class Interpreter {
                 ArrayElementType type) {
             Object jvmArray = variables[array.getIndex()];
             int indexValue = (Integer) variables[index.getIndex()];
-            variables[receiver.getIndex()] = Array.get(jvmArray, indexValue);
+            variables[receiver.getIndex()] = toIntegerIfSmall(Array.get(jvmArray, indexValue));
         }
 
         @Override
@@ -705,52 +859,24 @@ public class Interpreter {
                 ArrayElementType type) {
             Object jvmArray = variables[array.getIndex()];
             int indexValue = (Integer) variables[index.getIndex()];
-            Array.set(jvmArray, indexValue, variables[value.getIndex()]);
+            Array.set(jvmArray, indexValue, fromInteger(variables[value.getIndex()],
+                    jvmArray.getClass().getComponentType()));
         }
 
         @Override
         public void invoke(VariableReader receiver, VariableReader instance, MethodReference method,
                 List<? extends VariableReader> arguments, InvocationType type) {
-            Method jvmMethod = asJvmMethod(method);
             Object[] jvmArgs = new Object[arguments.size()];
             for (int i = 0; i < jvmArgs.length; ++i) {
                 jvmArgs[i] = variables[arguments.get(i).getIndex()];
             }
             Object jvmInstance = instance != null ? variables[instance.getIndex()] : null;
-            Object result;
-            try {
-                result = jvmMethod.invoke(jvmInstance, jvmArgs);
-            } catch (IllegalAccessException | InvocationTargetException e) {
-                throw new RuntimeException("Error calling method " + method, e);
-            }
+            Object result = Interpreter.this.invoke(method, type, jvmInstance, jvmArgs);
             if (receiver != null) {
                 variables[receiver.getIndex()] = result;
             }
         }
 
-        private Method asJvmMethod(MethodReference method) {
-            Class<?> cls;
-            try {
-                cls = Class.forName(method.getClassName(), false, classLoader);
-            } catch (ClassNotFoundException e) {
-                throw new RuntimeException("Can't find class " + method.getClassName());
-            }
-
-            Class<?>[] jvmParameters = new Class[method.parameterCount()];
-            for (int i = 0; i < method.parameterCount(); ++i) {
-                jvmParameters[i] = asJvmClass(method.parameterType(i));
-            }
-            Class<?> jvmReturnType = asJvmClass(method.getReturnType());
-            for (Method jvmMethod : cls.getDeclaredMethods()) {
-                if (Arrays.equals(jvmMethod.getParameterTypes(), jvmParameters)
-                        && jvmReturnType.equals(jvmMethod.getReturnType())) {
-                    return jvmMethod;
-                }
-            }
-
-            throw new RuntimeException("Method not found: " + method);
-        }
-
         @Override
         public void invokeDynamic(VariableReader receiver, VariableReader instance, MethodDescriptor method,
                 List<? extends VariableReader> arguments, MethodHandle bootstrapMethod,
@@ -762,16 +888,12 @@ public class Interpreter {
         public void isInstance(VariableReader receiver, VariableReader value, ValueType type) {
             Object jvmValue = variables[value.getIndex()];
             Class<?> jvmType = asJvmClass(type);
-            variables[receiver.getIndex()] = jvmType.isInstance(jvmValue);
+            variables[receiver.getIndex()] = jvmType.isInstance(jvmValue) ? 1 : 0;
         }
 
         @Override
         public void initClass(String className) {
-            try {
-                Class.forName(className);
-            } catch (ClassNotFoundException e) {
-                throw new RuntimeException("Class not found: " + className);
-            }
+            Interpreter.this.initClass(className);
         }
 
         @Override
@@ -795,43 +917,6 @@ public class Interpreter {
         public void boundCheck(VariableReader receiver, VariableReader index, VariableReader array, boolean lower) {
             variables[receiver.getIndex()] = variables[index.getIndex()];
         }
-
-        private Class<?> asJvmClass(ValueType type) {
-            if (type instanceof ValueType.Primitive) {
-                switch (((ValueType.Primitive) type).getKind()) {
-                    case BOOLEAN:
-                        return boolean.class;
-                    case BYTE:
-                        return byte.class;
-                    case SHORT:
-                        return short.class;
-                    case CHARACTER:
-                        return char.class;
-                    case INTEGER:
-                        return int.class;
-                    case LONG:
-                        return long.class;
-                    case FLOAT:
-                        return float.class;
-                    case DOUBLE:
-                        return double.class;
-                    default:
-                        break;
-                }
-            } else if (type instanceof ValueType.Void) {
-                return void.class;
-            } else if (type instanceof ValueType.Array) {
-                Class<?> itemJvmClass = asJvmClass(((ValueType.Array) type).getItemType());
-                return Array.newInstance(itemJvmClass, 0).getClass();
-            } else if (type instanceof ValueType.Object) {
-                try {
-                    Class.forName(((ValueType.Object) type).getClassName(), false, classLoader);
-                } catch (ClassNotFoundException e) {
-                    throw new IllegalArgumentException("Class not found: " + type);
-                }
-            }
-            throw new IllegalArgumentException("Unknown type: " + type);
-        }
     };
 
     private enum State {
@@ -26,6 +26,7 @@ public class MethodHolder extends MemberHolder implements MethodReader {
     private ClassHolder owner;
     private Program program;
     private Function<MethodHolder, Program> programSupplier;
+    private CompactProgram compactProgram;
     private AnnotationValue annotationDefault;
     private AnnotationContainer[] parameterAnnotations;
     private MethodReference reference;
@@ -154,13 +155,40 @@ public class MethodHolder extends MemberHolder implements MethodReader {
         if (program == null && programSupplier != null) {
             program = programSupplier.apply(this);
             programSupplier = null;
+            compactProgram = null;
         }
         return program;
     }
 
+    /**
+     * Returns program of this method for reading. Unlike {@link #getProgram()}, does not expand program
+     * stored by {@link #compactProgram()}.
+     */
+    @Override
+    public ProgramReader getProgramReader() {
+        if (program == null && compactProgram != null) {
+            return compactProgram;
+        }
+        return getProgram();
+    }
+
+    /**
+     * Replaces program of this method with its {@link CompactProgram compact representation}. Mutable program
+     * is restored on first call to {@link #getProgram()}.
+     */
+    public void compactProgram() {
+        Program program = getProgram();
+        if (program != null) {
+            CompactProgram compactProgram = CompactProgram.from(program);
+            setProgramSupplier(method -> compactProgram.expand());
+            this.compactProgram = compactProgram;
+        }
+    }
+
     public void setProgram(Program program) {
         this.program = program;
         this.programSupplier = null;
+        this.compactProgram = null;
     }
 
     public boolean hasProgram() {
@@ -170,6 +198,7 @@ public class MethodHolder extends MemberHolder implements MethodReader {
     public void setProgramSupplier(Function<MethodHolder, Program> programSupplier) {
         this.program = null;
         this.programSupplier = programSupplier;
+        this.compactProgram = null;
     }
 
     @Override
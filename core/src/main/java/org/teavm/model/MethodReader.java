@@ -44,5 +44,14 @@ public interface MethodReader extends MemberReader {
 
     ProgramReader getProgram();
 
+    /**
+     * Returns program of this method for read-only access. Unlike {@link #getProgram()}, may return
+     * representation that is more compact but slower to read, and does not force implementation
+     * to create a mutable program. Read-only consumers should prefer this method.
+     */
+    default ProgramReader getProgramReader() {
+        return getProgram();
+    }
+
     AnnotationValue getAnnotationDefault();
 }
@@ -39,6 +39,9 @@ public class PreOptimizingClassHolderSource implements ClassHolderSource {
                 return null;
             }
 
+            for (MethodHolder method : cls.getMethods()) {
+                method.compactProgram();
+            }
             cache.put(name, cls);
         }
         return cls;
@@ -150,7 +150,7 @@ public class ClassInitializerAnalysis implements ClassInitializerInfo {
 
             var currentClass = method.getDescriptor().equals(CLINIT) ? method.getOwnerName() : null;
             var reader = new InstructionAnalyzer(currentClass, methodInfo);
-            var program = method.getProgram();
+            var program = method.getProgramReader();
             if (program == null) {
                 methodInfo.anyFieldModified = hasSideEffects(method);
             } else {
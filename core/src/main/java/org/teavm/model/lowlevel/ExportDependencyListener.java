@@ -66,11 +66,11 @@ public class ExportDependencyListener extends AbstractDependencyListener {
 
     @Override
     public void methodReached(DependencyAgent agent, MethodDependency method) {
-        if (method.getMethod() == null || method.getMethod().getProgram() == null) {
+        if (method.getMethod() == null || method.getMethod().getProgramReader() == null) {
             return;
         }
 
-        ProgramReader program = method.getMethod().getProgram();
+        ProgramReader program = method.getMethod().getProgramReader();
         FunctionGetFinder finder = new FunctionGetFinder(program.variableCount());
         for (BasicBlockReader block : program.getBasicBlocks()) {
             block.readAllInstructions(finder);
@@ -82,7 +82,7 @@ public class ExportDependencyListener extends AbstractDependencyListener {
     }
 
     private void processInvocations(DependencyAgent agent, MethodReader method, FunctionGetFinder finder) {
-        int[] variableClasses = finder.variableClasses.pack(method.getProgram().variableCount());
+        int[] variableClasses = finder.variableClasses.pack(method.getProgramReader().variableCount());
         String[] stringConstants = new String[finder.stringConstants.length];
         ValueType[] classConstants = new ValueType[finder.classConstants.length];
         for (int i = 0; i < stringConstants.length; ++i) {
@@ -0,0 +1,298 @@
+/*
+ *  Copyright 2023 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.model.optimization;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.teavm.model.BasicBlock;
+import org.teavm.model.FieldReference;
+import org.teavm.model.Incoming;
+import org.teavm.model.Instruction;
+import org.teavm.model.MethodReference;
+import org.teavm.model.Phi;
+import org.teavm.model.Program;
+import org.teavm.model.Variable;
+import org.teavm.model.instructions.AssignInstruction;
+import org.teavm.model.instructions.GetFieldInstruction;
+import org.teavm.model.instructions.InvokeInstruction;
+import org.teavm.model.instructions.NullCheckInstruction;
+import org.teavm.model.util.UsageExtractor;
+
+/**
+ * Eliminates boxing of primitive values, i.e. replaces
+ *
+ * ```
+ * b = Integer.valueOf(a);
+ * ...
+ * c = b.intValue();
+ * ```
+ *
+ * with `c = a`. Boxes are tracked through assignments, null checks and phis, so that boxes created in different
+ * branches or on different loop iterations are also eliminated. Unboxing can be either a call to `xxxValue`
+ * method or a read of `value` field, which appears when unboxing method gets inlined. Null checks of boxes
+ * are replaced with assignments, since boxing never produces null. Boxing methods are never inlined
+ * (see {@link #isBoxingMethod(MethodReference)}), so that this optimization could recognize them.
+ * Once all unboxings are replaced, calls to boxing methods with unused results are removed.
+ */
+public class BoxingElimination implements MethodOptimization {
+    private static final Map<String, MethodReference> boxingMethods = new HashMap<>();
+    private static final Map<String, MethodReference> unboxingMethods = new HashMap<>();
+    private Program program;
+    private Variable[] boxes;
+    private String[] boxClasses;
+    private Variable[] primitives;
+    private Phi[] phis;
+
+    static {
+        register(Boolean.class, boolean.class);
+        register(Byte.class, byte.class);
+        register(Short.class, short.class);
+        register(Character.class, char.class);
+        register(Integer.class, int.class);
+        register(Long.class, long.class);
+        register(Float.class, float.class);
+        register(Double.class, double.class);
+    }
+
+    private static void register(Class<?> boxClass, Class<?> primitiveClass) {
+        boxingMethods.put(boxClass.getName(), new MethodReference(boxClass, "valueOf", primitiveClass, boxClass));
+        unboxingMethods.put(boxClass.getName(), new MethodReference(boxClass, primitiveClass.getName() + "Value",
+                primitiveClass));
+    }
+
+    public static boolean isBoxingMethod(MethodReference method) {
+        return method.equals(boxingMethods.get(method.getClassName()));
+    }
+
+    @Override
+    public boolean optimize(MethodOptimizationContext context, Program program) {
+        this.program = program;
+        boxes = new Variable[program.variableCount()];
+        boxClasses = new String[program.variableCount()];
+        primitives = new Variable[program.variableCount()];
+        phis = new Phi[program.variableCount()];
+
+        boolean changed = findBoxes() && replaceUnboxing();
+        changed |= removeUnusedBoxing();
+
+        this.program = null;
+        boxes = null;
+        boxClasses = null;
+        primitives = null;
+        phis = null;
+        return changed;
+    }
+
+    private boolean findBoxes() {
+        boolean found = false;
+        for (BasicBlock block : program.getBasicBlocks()) {
+            for (Instruction insn : block) {
+                if (insn instanceof InvokeInstruction) {
+                    InvokeInstruction invoke = (InvokeInstruction) insn;
+                    if (invoke.getReceiver() != null && isBoxingMethod(invoke.getMethod())) {
+                        boxes[invoke.getReceiver().getIndex()] = invoke.getReceiver();
+                        boxClasses[invoke.getReceiver().getIndex()] = invoke.getMethod().getClassName();
+                        primitives[invoke.getReceiver().getIndex()] = invoke.getArguments().get(0);
+                        found = true;
+                    }
+                }
+            }
+        }
+        if (!found) {
+            return false;
+        }
+
+        boolean changed;
+        do {
+            changed = false;
+            for (BasicBlock block : program.getBasicBlocks()) {
+                for (Phi phi : block.getPhis()) {
+                    if (boxes[phi.getReceiver().getIndex()] != null) {
+                        continue;
+                    }
+                    String boxClass = getPhiBoxClass(phi);
+                    if (boxClass != null) {
+                        boxes[phi.getReceiver().getIndex()] = phi.getReceiver();
+                        boxClasses[phi.getReceiver().getIndex()] = boxClass;
+                        phis[phi.getReceiver().getIndex()] = phi;
+                        changed = true;
+                    }
+                }
+                for (Instruction insn : block) {
+                    Variable source;
+                    Variable receiver;
+                    if (insn instanceof AssignInstruction) {
+                        source = ((AssignInstruction) insn).getAssignee();
+                        receiver = ((AssignInstruction) insn).getReceiver();
+                    } else if (insn instanceof NullCheckInstruction) {
+                        source = ((NullCheckInstruction) insn).getValue();
+                        receiver = ((NullCheckInstruction) insn).getReceiver();
+                    } else {
+                        continue;
+                    }
+                    if (boxes[receiver.getIndex()] == null && boxes[source.getIndex()] != null) {
+                        boxes[receiver.getIndex()] = boxes[source.getIndex()];
+                        changed = true;
+                    }
+                }
+            }
+        } while (changed);
+        return true;
+    }
+
+    private String getPhiBoxClass(Phi phi) {
+        String boxClass = null;
+        for (Incoming incoming : phi.getIncomings()) {
+            if (incoming.getValue() == phi.getReceiver()) {
+                continue;
+            }
+            Variable box = boxes[incoming.getValue().getIndex()];
+            if (box == null) {
+                return null;
+            }
+            String incomingClass = boxClasses[box.getIndex()];
+            if (boxClass == null) {
+                boxClass = incomingClass;
+            } else if (!boxClass.equals(incomingClass)) {
+                return null;
+            }
+        }
+        return boxClass;
+    }
+
+    private boolean replaceUnboxing() {
+        boolean changed = false;
+        for (BasicBlock block : program.getBasicBlocks()) {
+            List<Instruction> instructions = new ArrayList<>();
+            for (Instruction insn : block) {
+                instructions.add(insn);
+            }
+            for (Instruction insn : instructions) {
+                if (insn instanceof NullCheckInstruction) {
+                    NullCheckInstruction nullCheck = (NullCheckInstruction) insn;
+                    if (boxes[nullCheck.getValue().getIndex()] != null) {
+                        AssignInstruction assign = new AssignInstruction();
+                        assign.setAssignee(nullCheck.getValue());
+                        assign.setReceiver(nullCheck.getReceiver());
+                        assign.setLocation(insn.getLocation());
+                        insn.replace(assign);
+                        changed = true;
+                    }
+                    continue;
+                }
+
+                Variable instance;
+                Variable receiver;
+                boolean unboxing;
+                if (insn instanceof InvokeInstruction) {
+                    InvokeInstruction invoke = (InvokeInstruction) insn;
+                    if (invoke.getInstance() == null) {
+                        continue;
+                    }
+                    instance = invoke.getInstance();
+                    receiver = invoke.getReceiver();
+                    unboxing = boxes[instance.getIndex()] != null && invoke.getMethod().equals(
+                            unboxingMethods.get(boxClasses[boxes[instance.getIndex()].getIndex()]));
+                } else if (insn instanceof GetFieldInstruction) {
+                    GetFieldInstruction getField = (GetFieldInstruction) insn;
+                    instance = getField.getInstance();
+                    receiver = getField.getReceiver();
+                    unboxing = instance != null && boxes[instance.getIndex()] != null && getField.getField().equals(
+                            new FieldReference(boxClasses[boxes[instance.getIndex()].getIndex()], "value"));
+                } else {
+                    continue;
+                }
+                if (!unboxing) {
+                    continue;
+                }
+
+                if (receiver == null) {
+                    insn.delete();
+                } else {
+                    AssignInstruction assign = new AssignInstruction();
+                    assign.setAssignee(getPrimitive(boxes[instance.getIndex()]));
+                    assign.setReceiver(receiver);
+                    assign.setLocation(insn.getLocation());
+                    insn.replace(assign);
+                }
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    private Variable getPrimitive(Variable box) {
+        Variable primitive = primitives[box.getIndex()];
+        if (primitive != null) {
+            return primitive;
+        }
+
+        Phi phi = phis[box.getIndex()];
+        Phi primitivePhi = new Phi();
+        primitivePhi.setReceiver(program.createVariable());
+        if (box.getLabel() != null) {
+            primitivePhi.getReceiver().setLabel(box.getLabel() + "$value");
+        }
+        primitives[box.getIndex()] = primitivePhi.getReceiver();
+        for (Incoming incoming : phi.getIncomings()) {
+            Incoming primitiveIncoming = new Incoming();
+            primitiveIncoming.setSource(incoming.getSource());
+            primitiveIncoming.setValue(getPrimitive(boxes[incoming.getValue().getIndex()]));
+            primitivePhi.getIncomings().add(primitiveIncoming);
+        }
+        phi.getBasicBlock().getPhis().add(primitivePhi);
+        return primitivePhi.getReceiver();
+    }
+
+    private boolean removeUnusedBoxing() {
+        boolean[] used = new boolean[program.variableCount()];
+        UsageExtractor usageExtractor = new UsageExtractor();
+        for (BasicBlock block : program.getBasicBlocks()) {
+            for (Phi phi : block.getPhis()) {
+                for (Incoming incoming : phi.getIncomings()) {
+                    used[incoming.getValue().getIndex()] = true;
+                }
+            }
+            for (Instruction insn : block) {
+                insn.acceptVisitor(usageExtractor);
+                for (Variable variable : usageExtractor.getUsedVariables()) {
+                    used[variable.getIndex()] = true;
+                }
+            }
+        }
+
+        boolean changed = false;
+        for (BasicBlock block : program.getBasicBlocks()) {
+            List<Instruction> instructions = new ArrayList<>();
+            for (Instruction insn : block) {
+                instructions.add(insn);
+            }
+            for (Instruction insn : instructions) {
+                if (insn instanceof InvokeInstruction) {
+                    InvokeInstruction invoke = (InvokeInstruction) insn;
+                    if (isBoxingMethod(invoke.getMethod())
+                            && (invoke.getReceiver() == null || !used[invoke.getReceiver().getIndex()])) {
+                        insn.delete();
+                        changed = true;
+                    }
+                }
+            }
+        }
+        return changed;
+    }
+}
@@ -0,0 +1,517 @@
+/*
+ *  Copyright 2023 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.model.optimization;
+
+import java.lang.reflect.Array;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import org.teavm.interop.StaticInit;
+import org.teavm.model.BasicBlock;
+import org.teavm.model.BasicBlockReader;
+import org.teavm.model.ClassHolder;
+import org.teavm.model.ElementModifier;
+import org.teavm.model.FieldHolder;
+import org.teavm.model.FieldReader;
+import org.teavm.model.FieldReference;
+import org.teavm.model.InterpretException;
+import org.teavm.model.Interpreter;
+import org.teavm.model.ListableClassHolderSource;
+import org.teavm.model.MethodDescriptor;
+import org.teavm.model.MethodHolder;
+import org.teavm.model.MethodReader;
+import org.teavm.model.MethodReference;
+import org.teavm.model.Program;
+import org.teavm.model.ProgramReader;
+import org.teavm.model.ValueType;
+import org.teavm.model.Variable;
+import org.teavm.model.instructions.ArrayElementType;
+import org.teavm.model.instructions.ConstructArrayInstruction;
+import org.teavm.model.instructions.DoubleConstantInstruction;
+import org.teavm.model.instructions.ExitInstruction;
+import org.teavm.model.instructions.FloatConstantInstruction;
+import org.teavm.model.instructions.IntegerConstantInstruction;
+import org.teavm.model.instructions.InvocationType;
+import org.teavm.model.instructions.LongConstantInstruction;
+import org.teavm.model.instructions.PutElementInstruction;
+import org.teavm.model.instructions.PutFieldInstruction;
+import org.teavm.model.instructions.StringConstantInstruction;
+import org.teavm.model.instructions.UnwrapArrayInstruction;
+
+/**
+ * <p>Runs class initializers at build time and replaces them with initial values of static fields,
+ * so that these initializers are not called at run time at all.</p>
+ *
+ * <p>An initializer is only evaluated when it can't have observable side effects: it may compute
+ * primitive values, strings and arrays, call static methods and write static fields of its own class,
+ * and read final static fields of classes that don't need initialization at run time. Anything else,
+ * like object creation, virtual calls, exceptions or too long computation, leaves initializer as is.
+ * Initializer is evaluated only if all static fields of the class end up holding primitive values, strings,
+ * {@code null} or arrays of these values.</p>
+ *
+ * <p>Primitive values and strings become initial values of static fields, and initializer is removed.
+ * Backends can't emit arrays as initial values of static fields, so when some fields hold arrays,
+ * initializer is replaced with straight-line code that creates these arrays from constants and stores them
+ * into fields. Arrays are never shared between classes, since each class would get its own copy.</p>
+ */
+public class ClassInitializerEvaluation {
+    private static final MethodDescriptor CLINIT = new MethodDescriptor("<clinit>", void.class);
+    private static final int MAX_EXECUTED_BLOCKS = 100000;
+    private static final int MAX_CALL_DEPTH = 16;
+    private static final int MAX_ARRAY_ELEMENTS = 4096;
+    private ListableClassHolderSource classes;
+    private Map<String, Map<String, Object>> evaluatedClasses = new LinkedHashMap<>();
+    private Set<String> failedClasses = new HashSet<>();
+    private Set<String> classesInProgress = new HashSet<>();
+    private int executedBlocks;
+
+    public ClassInitializerEvaluation(ListableClassHolderSource classes) {
+        this.classes = classes;
+    }
+
+    public void apply() {
+        for (String className : classes.getClassNames()) {
+            isInitializationFree(className);
+        }
+
+        for (var entry : evaluatedClasses.entrySet()) {
+            ClassHolder cls = classes.get(entry.getKey());
+            boolean hasArrays = false;
+            for (var fieldEntry : entry.getValue().entrySet()) {
+                if (fieldEntry.getValue() != null && fieldEntry.getValue().getClass().isArray()) {
+                    cls.getField(fieldEntry.getKey()).setInitialValue(null);
+                    hasArrays = true;
+                } else {
+                    cls.getField(fieldEntry.getKey()).setInitialValue(fieldEntry.getValue());
+                }
+            }
+            if (hasArrays) {
+                MethodHolder clinit = cls.getMethod(CLINIT);
+                clinit.setProgram(new ArrayInitializerEmitter(cls).emit(entry.getValue()));
+            } else {
+                cls.removeMethod(cls.getMethod(CLINIT));
+            }
+        }
+    }
+
+    public int getEvaluatedClassCount() {
+        return evaluatedClasses.size();
+    }
+
+    private boolean isInitializationFree(String className) {
+        if (evaluatedClasses.containsKey(className)) {
+            return true;
+        }
+        if (failedClasses.contains(className) || classesInProgress.contains(className)) {
+            return false;
+        }
+        ClassHolder cls = classes.get(className);
+        if (cls == null) {
+            return false;
+        }
+
+        classesInProgress.add(className);
+        boolean result = false;
+        if (cls.getParent() == null || isInitializationFree(cls.getParent())) {
+            MethodHolder clinit = cls.getMethod(CLINIT);
+            if (clinit == null) {
+                result = true;
+            } else if (cls.getAnnotations().get(StaticInit.class.getName()) == null) {
+                Map<String, Object> fieldValues = evaluate(cls, clinit);
+                if (fieldValues != null) {
+                    evaluatedClasses.put(className, fieldValues);
+                    result = true;
+                }
+            }
+        }
+        classesInProgress.remove(className);
+
+        if (!result) {
+            failedClasses.add(className);
+        }
+        return result;
+    }
+
+    private Map<String, Object> evaluate(ClassHolder cls, MethodHolder clinit) {
+        Map<String, Object> fieldValues = new LinkedHashMap<>();
+        for (FieldHolder field : cls.getFields()) {
+            if (field.hasModifier(ElementModifier.STATIC)) {
+                fieldValues.put(field.getName(), getInitialValue(field));
+            }
+        }
+
+        if (clinit.getProgram() == null) {
+            return null;
+        }
+        int executedBlocksBefore = executedBlocks;
+        executedBlocks = 0;
+        try {
+            new Evaluator(cls.getName(), fieldValues, 0).evaluate(clinit.getProgram(), new Object[] { null });
+        } catch (InterpretException | RuntimeException e) {
+            return null;
+        } finally {
+            executedBlocks = executedBlocksBefore;
+        }
+
+        Set<Object> visitedArrays = Collections.newSetFromMap(new IdentityHashMap<>());
+        int arrayElements = 0;
+        for (Object value : fieldValues.values()) {
+            if (value != null && value.getClass().isArray()) {
+                int count = countArrayElements(value, visitedArrays);
+                if (count < 0) {
+                    return null;
+                }
+                arrayElements += count;
+                if (arrayElements > MAX_ARRAY_ELEMENTS) {
+                    return null;
+                }
+            } else if (value != null && !(value instanceof Number) && !(value instanceof String)) {
+                return null;
+            }
+        }
+        return fieldValues;
+    }
+
+    private int countArrayElements(Object array, Set<Object> visitedArrays) {
+        if (!visitedArrays.add(array)) {
+            return 0;
+        }
+        boolean primitive = array.getClass().getComponentType().isPrimitive();
+        int length = Array.getLength(array);
+        int count = 1;
+        for (int i = 0; i < length; ++i) {
+            Object element = Array.get(array, i);
+            if (ArrayInitializerEmitter.isDefaultValue(element)) {
+                continue;
+            }
+            ++count;
+            if (primitive || element instanceof String) {
+                continue;
+            }
+            if (!element.getClass().isArray()) {
+                return -1;
+            }
+            int nestedCount = countArrayElements(element, visitedArrays);
+            if (nestedCount < 0) {
+                return -1;
+            }
+            count += nestedCount;
+        }
+        return count;
+    }
+
+    private Object getInitialValue(FieldReader field) {
+        Object value = field.getInitialValue();
+        if (value instanceof Boolean) {
+            return (Boolean) value ? 1 : 0;
+        } else if (value instanceof Character) {
+            return (int) (Character) value;
+        } else if (value instanceof Byte || value instanceof Short) {
+            return ((Number) value).intValue();
+        } else if (value != null) {
+            return value;
+        }
+
+        if (field.getType() instanceof ValueType.Primitive) {
+            switch (((ValueType.Primitive) field.getType()).getKind()) {
+                case LONG:
+                    return 0L;
+                case FLOAT:
+                    return 0F;
+                case DOUBLE:
+                    return 0.0;
+                default:
+                    return 0;
+            }
+        }
+        return null;
+    }
+
+    private class Evaluator extends Interpreter {
+        private String className;
+        private Map<String, Object> fieldValues;
+        private int depth;
+
+        Evaluator(String className, Map<String, Object> fieldValues, int depth) {
+            super(ClassInitializerEvaluation.class.getClassLoader());
+            this.className = className;
+            this.fieldValues = fieldValues;
+            this.depth = depth;
+        }
+
+        Object evaluate(ProgramReader program, Object[] parameters) throws InterpretException {
+            for (int i = 0; i < program.basicBlockCount(); ++i) {
+                if (!program.basicBlockAt(i).readTryCatchBlocks().isEmpty()) {
+                    throw new CannotEvaluateException("Exception handling is not supported");
+                }
+            }
+            return interpret(program, parameters);
+        }
+
+        @Override
+        protected void enterBlock(BasicBlockReader block) {
+            if (++executedBlocks > MAX_EXECUTED_BLOCKS) {
+                throw new CannotEvaluateException("Initializer takes too long to evaluate");
+            }
+        }
+
+        @Override
+        protected Object getField(FieldReference field, Object instance) {
+            if (instance != null) {
+                throw new CannotEvaluateException("Instance fields are not supported");
+            }
+            if (field.getClassName().equals(className)) {
+                if (!fieldValues.containsKey(field.getFieldName())) {
+                    throw new CannotEvaluateException("Unknown field: " + field);
+                }
+                return fieldValues.get(field.getFieldName());
+            }
+
+            ClassHolder cls = classes.get(field.getClassName());
+            FieldReader fieldReader = cls != null ? cls.getField(field.getFieldName()) : null;
+            if (fieldReader == null || !fieldReader.hasModifier(ElementModifier.STATIC)
+                    || !fieldReader.hasModifier(ElementModifier.FINAL)
+                    || !isInitializationFree(field.getClassName())) {
+                throw new CannotEvaluateException("Can't read field " + field);
+            }
+            Map<String, Object> otherFieldValues = evaluatedClasses.get(field.getClassName());
+            Object value = otherFieldValues != null
+                    ? otherFieldValues.get(field.getFieldName())
+                    : getInitialValue(fieldReader);
+            if (value != null && value.getClass().isArray()) {
+                throw new CannotEvaluateException("Can't read array from field " + field);
+            }
+            return value;
+        }
+
+        @Override
+        protected void putField(FieldReference field, Object instance, Object value) {
+            if (instance != null || !field.getClassName().equals(className)
+                    || !fieldValues.containsKey(field.getFieldName())) {
+                throw new CannotEvaluateException("Can't write field " + field);
+            }
+            fieldValues.put(field.getFieldName(), value);
+        }
+
+        @Override
+        protected Object invoke(MethodReference method, InvocationType type, Object instance, Object[] arguments) {
+            if (type != InvocationType.SPECIAL || instance != null || depth >= MAX_CALL_DEPTH) {
+                throw new CannotEvaluateException("Can't call method " + method);
+            }
+            ClassHolder cls = classes.get(method.getClassName());
+            MethodReader methodReader = cls != null ? cls.getMethod(method.getDescriptor()) : null;
+            if (methodReader == null || !methodReader.hasModifier(ElementModifier.STATIC)) {
+                throw new CannotEvaluateException("Can't call method " + method);
+            }
+            if (!method.getClassName().equals(className) && !isInitializationFree(method.getClassName())) {
+                throw new CannotEvaluateException("Calling method " + method + " requires class initialization");
+            }
+
+            Evaluator callee = new Evaluator(className, fieldValues, depth + 1);
+            ProgramReader program = methodReader.getProgram();
+            if (program == null) {
+                throw new CannotEvaluateException("Method has no body: " + method);
+            }
+            Object[] parameters = new Object[arguments.length + 1];
+            System.arraycopy(arguments, 0, parameters, 1, arguments.length);
+            try {
+                return callee.evaluate(program, parameters);
+            } catch (InterpretException e) {
+                throw new CannotEvaluateException("Error calling method " + method);
+            }
+        }
+
+        @Override
+        protected Object createInstance(String className) {
+            throw new CannotEvaluateException("Object creation is not supported");
+        }
+
+        @Override
+        protected void initClass(String className) {
+            if (!className.equals(this.className) && !isInitializationFree(className)) {
+                throw new CannotEvaluateException("Class " + className + " requires initialization");
+            }
+        }
+
+        @Override
+        protected Class<?> asJvmClass(ValueType type) {
+            if (type instanceof ValueType.Object) {
+                String typeName = ((ValueType.Object) type).getClassName();
+                if (typeName.equals("java.lang.String")) {
+                    return String.class;
+                } else if (typeName.equals("java.lang.Object")) {
+                    return Object.class;
+                }
+                throw new CannotEvaluateException("Class " + typeName + " is not supported");
+            }
+            return super.asJvmClass(type);
+        }
+    }
+
+    private static class ArrayInitializerEmitter {
+        private ClassHolder cls;
+        private Program program = new Program();
+        private BasicBlock block;
+        private Map<Object, Variable> arrayVariables = new IdentityHashMap<>();
+
+        ArrayInitializerEmitter(ClassHolder cls) {
+            this.cls = cls;
+        }
+
+        Program emit(Map<String, Object> fieldValues) {
+            program.createVariable();
+            block = program.createBasicBlock();
+            for (var entry : fieldValues.entrySet()) {
+                Object value = entry.getValue();
+                if (value == null || !value.getClass().isArray()) {
+                    continue;
+                }
+                FieldHolder field = cls.getField(entry.getKey());
+                PutFieldInstruction putField = new PutFieldInstruction();
+                putField.setField(field.getReference());
+                putField.setFieldType(field.getType());
+                putField.setValue(emitArray(value));
+                block.add(putField);
+            }
+            block.add(new ExitInstruction());
+            return program;
+        }
+
+        private Variable emitArray(Object array) {
+            Variable variable = arrayVariables.get(array);
+            if (variable != null) {
+                return variable;
+            }
+
+            Class<?> itemType = array.getClass().getComponentType();
+            int length = Array.getLength(array);
+            ConstructArrayInstruction construct = new ConstructArrayInstruction();
+            construct.setItemType(ValueType.parse(itemType));
+            construct.setSize(emitConstant(length));
+            variable = program.createVariable();
+            construct.setReceiver(variable);
+            block.add(construct);
+            arrayVariables.put(array, variable);
+
+            ArrayElementType elementType = getElementType(itemType);
+            Variable data = null;
+            for (int i = 0; i < length; ++i) {
+                Object element = Array.get(array, i);
+                if (isDefaultValue(element)) {
+                    continue;
+                }
+                Variable value = element.getClass().isArray() ? emitArray(element) : emitConstant(element);
+                if (data == null) {
+                    UnwrapArrayInstruction unwrap = new UnwrapArrayInstruction(elementType);
+                    unwrap.setArray(variable);
+                    data = program.createVariable();
+                    unwrap.setReceiver(data);
+                    block.add(unwrap);
+                }
+                PutElementInstruction putElement = new PutElementInstruction(elementType);
+                putElement.setArray(data);
+                putElement.setIndex(emitConstant(i));
+                putElement.setValue(value);
+                block.add(putElement);
+            }
+            return variable;
+        }
+
+        private Variable emitConstant(Object value) {
+            Variable receiver = program.createVariable();
+            if (value instanceof Boolean) {
+                value = (Boolean) value ? 1 : 0;
+            } else if (value instanceof Character) {
+                value = (int) (Character) value;
+            } else if (value instanceof Byte || value instanceof Short) {
+                value = ((Number) value).intValue();
+            }
+
+            if (value instanceof Integer) {
+                IntegerConstantInstruction insn = new IntegerConstantInstruction();
+                insn.setConstant((Integer) value);
+                insn.setReceiver(receiver);
+                block.add(insn);
+            } else if (value instanceof Long) {
+                LongConstantInstruction insn = new LongConstantInstruction();
+                insn.setConstant((Long) value);
+                insn.setReceiver(receiver);
+                block.add(insn);
+            } else if (value instanceof Float) {
+                FloatConstantInstruction insn = new FloatConstantInstruction();
+                insn.setConstant((Float) value);
+                insn.setReceiver(receiver);
+                block.add(insn);
+            } else if (value instanceof Double) {
+                DoubleConstantInstruction insn = new DoubleConstantInstruction();
+                insn.setConstant((Double) value);
+                insn.setReceiver(receiver);
+                block.add(insn);
+            } else {
+                StringConstantInstruction insn = new StringConstantInstruction();
+                insn.setConstant((String) value);
+                insn.setReceiver(receiver);
+                block.add(insn);
+            }
+            return receiver;
+        }
+
+        static boolean isDefaultValue(Object value) {
+            if (value == null) {
+                return true;
+            } else if (value instanceof Boolean) {
+                return !(Boolean) value;
+            } else if (value instanceof Character) {
+                return (Character) value == 0;
+            } else if (value instanceof Float) {
+                return Float.floatToRawIntBits((Float) value) == 0;
+            } else if (value instanceof Double) {
+                return Double.doubleToRawLongBits((Double) value) == 0;
+            } else if (value instanceof Number) {
+                return ((Number) value).longValue() == 0;
+            }
+            return false;
+        }
+
+        private static ArrayElementType getElementType(Class<?> itemType) {
+            if (itemType == boolean.class || itemType == byte.class) {
+                return ArrayElementType.BYTE;
+            } else if (itemType == short.class) {
+                return ArrayElementType.SHORT;
+            } else if (itemType == char.class) {
+                return ArrayElementType.CHAR;
+            } else if (itemType == int.class) {
+                return ArrayElementType.INT;
+            } else if (itemType == long.class) {
+                return ArrayElementType.LONG;
+            } else if (itemType == float.class) {
+                return ArrayElementType.FLOAT;
+            } else if (itemType == double.class) {
+                return ArrayElementType.DOUBLE;
+            }
+            return ArrayElementType.OBJECT;
+        }
+    }
+
+    static class CannotEvaluateException extends RuntimeException {
+        CannotEvaluateException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,371 @@
+/*
+ *  Copyright 2023 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.model.optimization;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.IntHashSet;
+import com.carrotsearch.hppc.IntSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.teavm.common.DominatorTree;
+import org.teavm.common.Graph;
+import org.teavm.common.GraphUtils;
+import org.teavm.common.Loop;
+import org.teavm.common.LoopGraph;
+import org.teavm.model.BasicBlock;
+import org.teavm.model.Incoming;
+import org.teavm.model.Instruction;
+import org.teavm.model.Phi;
+import org.teavm.model.Program;
+import org.teavm.model.TryCatchBlock;
+import org.teavm.model.Variable;
+import org.teavm.model.instructions.BinaryInstruction;
+import org.teavm.model.instructions.BinaryOperation;
+import org.teavm.model.instructions.BranchingCondition;
+import org.teavm.model.instructions.BranchingInstruction;
+import org.teavm.model.instructions.IntegerConstantInstruction;
+import org.teavm.model.instructions.NumericOperandType;
+import org.teavm.model.util.BasicBlockMapper;
+import org.teavm.model.util.ProgramUtils;
+
+/**
+ * Innermost loop that is driven by an integer counter, i.e. loop in form:
+ *
+ * ```
+ * i = init;
+ * while (true) {
+ *     ...
+ *     if (i + offset >= bound) break;
+ *     ...
+ *     i = i + 1;
+ * }
+ * ```
+ *
+ * where `bound` is defined outside of the loop, `offset` is either 0 (counter is compared before increment)
+ * or 1 (the incremented counter is compared) and the comparison is the only exit from the loop.
+ * The block with comparison dominates the only back edge, so it's performed on every iteration
+ * and therefore at the beginning of `m`-th iteration counter is equal to `init + m`.
+ * Loops that contain nested loops, exception handlers or try/catch blocks are not recognized.
+ */
+class CountedLoop {
+    final Program program;
+    final int head;
+    final int[] nodes;
+    final IntSet nodeSet;
+    final int[] entries;
+    final int latch;
+    final int test;
+    final Phi counter;
+    final Variable bound;
+    final int offset;
+    final int size;
+    final DominatorTree dom;
+
+    private CountedLoop(Program program, int head, int[] nodes, IntSet nodeSet, int[] entries, int latch, int test,
+            Phi counter, Variable bound, int offset, int size, DominatorTree dom) {
+        this.program = program;
+        this.head = head;
+        this.nodes = nodes;
+        this.nodeSet = nodeSet;
+        this.entries = entries;
+        this.latch = latch;
+        this.test = test;
+        this.counter = counter;
+        this.bound = bound;
+        this.offset = offset;
+        this.size = size;
+        this.dom = dom;
+    }
+
+    static List<CountedLoop> find(Program program) {
+        Graph cfg = ProgramUtils.buildControlFlowGraph(program);
+        LoopGraph loopGraph = new LoopGraph(cfg);
+        Map<Loop, IntArrayList> loopNodes = new LinkedHashMap<>();
+        for (int node = 0; node < cfg.size(); ++node) {
+            for (Loop loop = loopGraph.loopAt(node); loop != null; loop = loop.getParent()) {
+                loopNodes.computeIfAbsent(loop, k -> new IntArrayList()).add(node);
+            }
+        }
+
+        List<CountedLoop> result = new ArrayList<>();
+        DominatorTree dom = GraphUtils.buildDominatorTree(cfg);
+        Definitions definitions = new Definitions(program);
+        for (Map.Entry<Loop, IntArrayList> entry : loopNodes.entrySet()) {
+            Loop loop = entry.getKey();
+            int[] nodes = entry.getValue().toArray();
+            if (Arrays.stream(nodes).allMatch(node -> loopGraph.loopAt(node) == loop)) {
+                addIfRecognized(result, recognize(program, cfg, dom, definitions, loop.getHead(), nodes));
+            }
+        }
+
+        // loop graph does not report blocks that jump to themselves as loops
+        for (int node = 0; node < cfg.size(); ++node) {
+            Loop loop = loopGraph.loopAt(node);
+            if ((loop == null || loop.getHead() != node) && hasEdge(cfg, node, node)) {
+                addIfRecognized(result, recognize(program, cfg, dom, definitions, node, new int[] { node }));
+            }
+        }
+        return result;
+    }
+
+    private static void addIfRecognized(List<CountedLoop> loops, CountedLoop loop) {
+        if (loop != null) {
+            loops.add(loop);
+        }
+    }
+
+    private static boolean hasEdge(Graph cfg, int from, int to) {
+        for (int successor : cfg.outgoingEdges(from)) {
+            if (successor == to) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static CountedLoop recognize(Program program, Graph cfg, DominatorTree dom, Definitions definitions,
+            int head, int[] nodes) {
+        IntSet nodeSet = IntHashSet.from(nodes);
+        int test = -1;
+        int size = 0;
+        for (int node : nodes) {
+            if (node != head && hasEdge(cfg, node, node)) {
+                return null;
+            }
+            BasicBlock block = program.basicBlockAt(node);
+            if (!block.getTryCatchBlocks().isEmpty() || block.getExceptionVariable() != null) {
+                return null;
+            }
+            for (int successor : cfg.outgoingEdges(node)) {
+                if (!nodeSet.contains(successor)) {
+                    if (test >= 0) {
+                        return null;
+                    }
+                    test = node;
+                }
+            }
+            size += block.instructionCount();
+        }
+        if (test < 0) {
+            return null;
+        }
+
+        IntArrayList entries = new IntArrayList();
+        int latch = -1;
+        for (int predecessor : cfg.incomingEdges(head)) {
+            if (nodeSet.contains(predecessor)) {
+                if (latch >= 0) {
+                    return null;
+                }
+                latch = predecessor;
+            } else {
+                for (TryCatchBlock tryCatch : program.basicBlockAt(predecessor).getTryCatchBlocks()) {
+                    if (tryCatch.getHandler().getIndex() == head) {
+                        return null;
+                    }
+                }
+                entries.add(predecessor);
+            }
+        }
+        if (latch < 0 || entries.isEmpty() || !dom.dominates(test, latch)) {
+            return null;
+        }
+
+        BasicBlock testBlock = program.basicBlockAt(test);
+        if (!(testBlock.getLastInstruction() instanceof BranchingInstruction)) {
+            return null;
+        }
+        BranchingInstruction branch = (BranchingInstruction) testBlock.getLastInstruction();
+        BranchingCondition exitCondition = branch.getCondition();
+        if (nodeSet.contains(branch.getConsequent().getIndex())) {
+            exitCondition = negate(exitCondition);
+        }
+        BinaryInstruction comparison = definitions.binary(branch.getOperand());
+        if (comparison == null || comparison.getOperation() != BinaryOperation.COMPARE
+                || comparison.getOperandType() != NumericOperandType.INT) {
+            return null;
+        }
+        Variable tested;
+        Variable bound;
+        if (exitCondition == BranchingCondition.GREATER_OR_EQUAL) {
+            tested = comparison.getFirstOperand();
+            bound = comparison.getSecondOperand();
+        } else if (exitCondition == BranchingCondition.LESS_OR_EQUAL) {
+            tested = comparison.getSecondOperand();
+            bound = comparison.getFirstOperand();
+        } else {
+            return null;
+        }
+        BasicBlock boundDefinition = definitions.places[bound.getIndex()];
+        if (boundDefinition != null && nodeSet.contains(boundDefinition.getIndex())) {
+            return null;
+        }
+
+        for (Phi phi : program.basicBlockAt(head).getPhis()) {
+            Variable next = null;
+            for (Incoming incoming : phi.getIncomings()) {
+                if (incoming.getSource().getIndex() == latch) {
+                    next = incoming.getValue();
+                }
+            }
+            if (next == null || !definitions.isIncrement(next, phi.getReceiver())) {
+                continue;
+            }
+            int offset;
+            if (tested == phi.getReceiver()) {
+                offset = 0;
+            } else if (tested == next) {
+                offset = 1;
+            } else {
+                continue;
+            }
+            int[] sortedNodes = nodes.clone();
+            Arrays.sort(sortedNodes);
+            return new CountedLoop(program, head, sortedNodes, nodeSet, entries.toArray(), latch, test, phi,
+                    bound, offset, size, dom);
+        }
+        return null;
+    }
+
+    static BranchingCondition negate(BranchingCondition condition) {
+        switch (condition) {
+            case EQUAL:
+                return BranchingCondition.NOT_EQUAL;
+            case NOT_EQUAL:
+                return BranchingCondition.EQUAL;
+            case LESS:
+                return BranchingCondition.GREATER_OR_EQUAL;
+            case GREATER_OR_EQUAL:
+                return BranchingCondition.LESS;
+            case GREATER:
+                return BranchingCondition.LESS_OR_EQUAL;
+            case LESS_OR_EQUAL:
+                return BranchingCondition.GREATER;
+            case NULL:
+                return BranchingCondition.NOT_NULL;
+            case NOT_NULL:
+                return BranchingCondition.NULL;
+        }
+        throw new IllegalArgumentException();
+    }
+
+    boolean isInvariant(Variable variable, BasicBlock[] definitionPlaces) {
+        BasicBlock place = variable.getIndex() < definitionPlaces.length
+                ? definitionPlaces[variable.getIndex()]
+                : null;
+        return place == null || !nodeSet.contains(place.getIndex());
+    }
+
+    /**
+     * Copies instructions and phis of all blocks of the loop into the given blocks, keeping variables
+     * intact, so {@link org.teavm.model.util.PhiUpdater} must be run afterwards. The back edge of the copy
+     * points to {@code headTarget}. Phis of the head are not copied, since the caller is responsible for deciding
+     * where values of the copied head come from.
+     */
+    void copyBlocks(int[] copies, BasicBlock headTarget) {
+        BasicBlockMapper blockMapper = new BasicBlockMapper((int block) -> {
+            if (block == head) {
+                return headTarget.getIndex();
+            }
+            int index = indexOf(block);
+            return index >= 0 ? copies[index] : block;
+        });
+        for (int i = 0; i < nodes.length; ++i) {
+            BasicBlock source = program.basicBlockAt(nodes[i]);
+            BasicBlock target = program.basicBlockAt(copies[i]);
+            for (Instruction insn : ProgramUtils.copyInstructions(source.getFirstInstruction(), null, program)) {
+                insn.acceptVisitor(blockMapper);
+                target.add(insn);
+            }
+            if (nodes[i] == head) {
+                continue;
+            }
+            for (Phi phi : source.getPhis()) {
+                Phi phiCopy = new Phi();
+                phiCopy.setReceiver(phi.getReceiver());
+                for (Incoming incoming : phi.getIncomings()) {
+                    Incoming incomingCopy = new Incoming();
+                    incomingCopy.setSource(program.basicBlockAt(copies[indexOf(incoming.getSource().getIndex())]));
+                    incomingCopy.setValue(incoming.getValue());
+                    phiCopy.getIncomings().add(incomingCopy);
+                }
+                target.getPhis().add(phiCopy);
+            }
+        }
+    }
+
+    BasicBlock copyOf(int[] copies, int node) {
+        return program.basicBlockAt(copies[indexOf(node)]);
+    }
+
+    int[] createBlocks() {
+        int[] copies = new int[nodes.length];
+        for (int i = 0; i < copies.length; ++i) {
+            copies[i] = program.createBasicBlock().getIndex();
+        }
+        return copies;
+    }
+
+    int indexOf(int node) {
+        return Arrays.binarySearch(nodes, node);
+    }
+
+    static class Definitions {
+        final BasicBlock[] places;
+        private final Instruction[] instructions;
+
+        Definitions(Program program) {
+            places = ProgramUtils.getVariableDefinitionPlaces(program);
+            instructions = new Instruction[program.variableCount()];
+            for (BasicBlock block : program.getBasicBlocks()) {
+                for (Instruction insn : block) {
+                    if (insn instanceof BinaryInstruction) {
+                        instructions[((BinaryInstruction) insn).getReceiver().getIndex()] = insn;
+                    } else if (insn instanceof IntegerConstantInstruction) {
+                        instructions[((IntegerConstantInstruction) insn).getReceiver().getIndex()] = insn;
+                    }
+                }
+            }
+        }
+
+        BinaryInstruction binary(Variable variable) {
+            Instruction insn = instructions[variable.getIndex()];
+            return insn instanceof BinaryInstruction ? (BinaryInstruction) insn : null;
+        }
+
+        boolean isIncrement(Variable variable, Variable base) {
+            BinaryInstruction insn = binary(variable);
+            if (insn == null || insn.getOperation() != BinaryOperation.ADD
+                    || insn.getOperandType() != NumericOperandType.INT) {
+                return false;
+            }
+            if (insn.getFirstOperand() == base) {
+                return isOne(insn.getSecondOperand());
+            } else if (insn.getSecondOperand() == base) {
+                return isOne(insn.getFirstOperand());
+            }
+            return false;
+        }
+
+        private boolean isOne(Variable variable) {
+            Instruction insn = instructions[variable.getIndex()];
+            return insn instanceof IntegerConstantInstruction && ((IntegerConstantInstruction) insn).getConstant() == 1;
+        }
+    }
+}
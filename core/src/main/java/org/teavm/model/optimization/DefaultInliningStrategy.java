@@ -25,13 +25,17 @@ import org.teavm.model.instructions.BinaryBranchingCondition;
 import org.teavm.model.instructions.BranchingCondition;
 import org.teavm.model.instructions.InvocationType;
 import org.teavm.model.instructions.SwitchTableEntryReader;
+import org.teavm.model.profile.ExecutionProfile;
 
 public class DefaultInliningStrategy implements InliningStrategy {
+    private static final int HOT_COMPLEXITY_FACTOR = 3;
+    private static final int HOT_TOTAL_COMPLEXITY_FACTOR = 2;
+    private static final int COLD_COMPLEXITY_THRESHOLD = 1;
     private final int complexityThreshold;
     private final int depthThreshold;
     private final int totalComplexityThreshold;
     private final boolean onceUsedOnly;
-    private int getComplexityDepth;
+    private ExecutionProfile profile;
 
     public DefaultInliningStrategy(int complexityThreshold, int depthThreshold, int totalComplexityThreshold,
             boolean onceUsedOnly) {
@@ -41,21 +45,42 @@ public class DefaultInliningStrategy implements InliningStrategy {
         this.onceUsedOnly = onceUsedOnly;
     }
 
+    /**
+     * Sets execution profile. Methods that were called often get larger complexity thresholds,
+     * while methods that were never called are only allowed to inline trivial methods and are only
+     * inlined when trivial.
+     */
+    public void setProfile(ExecutionProfile profile) {
+        this.profile = profile;
+    }
+
     @Override
     public InliningStep start(MethodReference method, ProgramReader program) {
-        Complexity complexity = getComplexity(program, null);
-        if (complexity.score > totalComplexityThreshold) {
+        int totalThreshold = totalComplexityThreshold;
+        boolean cold = false;
+        if (profile != null) {
+            if (profile.isHot(method)) {
+                totalThreshold *= HOT_TOTAL_COMPLEXITY_FACTOR;
+            } else if (profile.isCold(method)) {
+                cold = true;
+            }
+        }
+
+        Complexity complexity = getComplexity(program, null, 0);
+        if (complexity.score > totalThreshold) {
             return null;
         }
 
         ComplexityHolder complexityHolder = new ComplexityHolder();
         complexityHolder.complexity = complexity.score;
+        complexityHolder.threshold = totalThreshold;
+        complexityHolder.cold = cold;
         return new InliningStepImpl(complexityHolder);
     }
 
-    private Complexity getComplexity(ProgramReader program, InliningContext context) {
+    private Complexity getComplexity(ProgramReader program, InliningContext context, int depth) {
         int complexity = 0;
-        ComplexityCounter counter = new ComplexityCounter(context);
+        ComplexityCounter counter = new ComplexityCounter(context, depth);
         for (int i = 0; i < program.basicBlockCount(); ++i) {
             BasicBlockReader block = program.basicBlockAt(i);
             counter.complexity = 0;
@@ -81,34 +106,51 @@ public class DefaultInliningStrategy implements InliningStrategy {
                 return null;
             }
 
-            Complexity complexity = getComplexity(program, context);
+            Complexity complexity = getComplexity(program, context, 0);
             if (onceUsedOnly && !context.isUsedOnce(method)) {
                 if (complexity.callsToUsedOnceMethods || complexity.score > 1) {
                     return null;
                 }
             }
 
-            if (complexity.score > complexityThreshold
-                    || complexityHolder.complexity + complexity.score > totalComplexityThreshold) {
+            if (complexity.score > getComplexityThreshold(method)
+                    || complexityHolder.complexity + complexity.score > complexityHolder.threshold) {
                 return null;
             }
 
             complexityHolder.complexity += complexity.score;
             return new InliningStepImpl(complexityHolder);
         }
+
+        private int getComplexityThreshold(MethodReference method) {
+            if (profile == null) {
+                return complexityThreshold;
+            }
+            if (complexityHolder.cold || profile.isCold(method)) {
+                return Math.min(complexityThreshold, COLD_COMPLEXITY_THRESHOLD);
+            }
+            if (profile.isHot(method)) {
+                return complexityThreshold * HOT_COMPLEXITY_FACTOR;
+            }
+            return complexityThreshold;
+        }
     }
 
     static class ComplexityHolder {
         int complexity;
+        int threshold;
+        boolean cold;
     }
 
     class ComplexityCounter extends AbstractInstructionReader {
         InliningContext context;
+        int depth;
         int complexity;
         boolean callsToUsedOnceMethods;
 
-        ComplexityCounter(InliningContext context) {
+        ComplexityCounter(InliningContext context, int depth) {
             this.context = context;
+            this.depth = depth;
         }
 
         @Override
@@ -133,12 +175,10 @@ public class DefaultInliningStrategy implements InliningStrategy {
         }
 
         private boolean isTrivialCall(ProgramReader program) {
-            if (program == null || getComplexityDepth > 10) {
+            if (program == null || depth > 10) {
                return false;
             }
-            getComplexityDepth++;
-            Complexity complexity = getComplexity(program, context);
-            getComplexityDepth--;
+            Complexity complexity = getComplexity(program, context, depth + 1);
             return complexity.score <= 1 && !complexity.callsToUsedOnceMethods;
         }
 
@@ -15,9 +15,14 @@
  */
 package org.teavm.model.optimization;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import org.teavm.common.OptionalPredicate;
 import org.teavm.dependency.DependencyInfo;
@@ -26,26 +31,40 @@ import org.teavm.dependency.ValueDependencyInfo;
 import org.teavm.model.BasicBlock;
 import org.teavm.model.ClassHierarchy;
 import org.teavm.model.ClassReader;
+import org.teavm.model.Incoming;
 import org.teavm.model.Instruction;
 import org.teavm.model.MethodHolder;
 import org.teavm.model.MethodReference;
+import org.teavm.model.Phi;
 import org.teavm.model.Program;
 import org.teavm.model.ValueType;
+import org.teavm.model.Variable;
 import org.teavm.model.instructions.AssignInstruction;
+import org.teavm.model.instructions.BranchingCondition;
+import org.teavm.model.instructions.BranchingInstruction;
 import org.teavm.model.instructions.CastInstruction;
 import org.teavm.model.instructions.InvocationType;
 import org.teavm.model.instructions.InvokeInstruction;
+import org.teavm.model.instructions.IsInstanceInstruction;
+import org.teavm.model.instructions.JumpInstruction;
+import org.teavm.model.profile.ExecutionProfile;
+import org.teavm.model.util.BasicBlockSplitter;
+import org.teavm.vm.TeaVMOptimizationLevel;
 
 public class Devirtualization {
     static final boolean shouldLog = System.getProperty("org.teavm.logDevirtualization", "false").equals("true");
+    private static final int DOMINANT_RECEIVER_PERCENT = 90;
     private DependencyInfo dependency;
     private ClassHierarchy hierarchy;
     private Set<MethodReference> virtualMethods = new HashSet<>();
     private Set<? extends MethodReference> readonlyVirtualMethods = Collections.unmodifiableSet(virtualMethods);
     private int virtualCallSites;
     private int directCallSites;
+    private int guardedCallSites;
     private int remainingCasts;
     private int eliminatedCasts;
+    private ExecutionProfile profile;
+    private int maxGuardedTargets;
 
     public Devirtualization(DependencyInfo dependency, ClassHierarchy hierarchy) {
         this.dependency = dependency;
@@ -60,6 +79,14 @@ public class Devirtualization {
         return directCallSites;
     }
 
+    /**
+     * Gets number of virtual call sites that got direct calls guarded by type checks.
+     * These call sites are also counted as virtual.
+     */
+    public int getGuardedCallSites() {
+        return guardedCallSites;
+    }
+
     public int getRemainingCasts() {
         return remainingCasts;
     }
@@ -68,6 +95,46 @@ public class Devirtualization {
         return eliminatedCasts;
     }
 
+    /**
+     * Sets execution profile. When a virtual call site has more possible implementations than allowed by
+     * {@link #setMaxGuardedTargets(int)}, but profile shows that almost always the same receiver class
+     * was observed, the call is split into a direct call to its implementation, guarded by type check,
+     * and the original virtual call. Profile also defines order of type checks.
+     */
+    public void setProfile(ExecutionProfile profile) {
+        this.profile = profile;
+    }
+
+    public int getMaxGuardedTargets() {
+        return maxGuardedTargets;
+    }
+
+    /**
+     * Sets maximum number of implementations of a virtual call site that can be called directly.
+     * Such call sites are replaced by a cascade of type checks, each followed by a direct call,
+     * which can be inlined later, and the original virtual call as a fallback. Zero (default) disables
+     * this transformation.
+     */
+    public void setMaxGuardedTargets(int maxGuardedTargets) {
+        this.maxGuardedTargets = maxGuardedTargets;
+    }
+
+    /**
+     * Gets default value of {@link #setMaxGuardedTargets(int)} for given optimization level.
+     * Guarded calls are only worth their code size when the direct calls get inlined, so the limit is
+     * higher at the level that inlines more aggressively.
+     */
+    public static int getDefaultMaxGuardedTargets(TeaVMOptimizationLevel optimizationLevel) {
+        switch (optimizationLevel) {
+            case FULL:
+                return 3;
+            case ADVANCED:
+                return 2;
+            default:
+                return 0;
+        }
+    }
+
     public void apply(MethodHolder method) {
         MethodDependencyInfo methodDep = dependency.getMethod(method.getReference());
         if (methodDep == null) {
@@ -79,26 +146,40 @@ public class Devirtualization {
             System.out.println("DEVIRTUALIZATION running at " + method.getReference());
         }
 
+        Map<MethodReference, Integer> callOrdinals = new HashMap<>();
+        List<GuardedCall> guardedCalls = new ArrayList<>();
         for (int i = 0; i < program.basicBlockCount(); ++i) {
             BasicBlock block = program.basicBlockAt(i);
             for (Instruction insn : block) {
                 if (insn instanceof InvokeInstruction) {
-                    applyToInvoke(methodDep, (InvokeInstruction) insn);
+                    InvokeInstruction invoke = (InvokeInstruction) insn;
+                    if (invoke.getType() == InvocationType.VIRTUAL) {
+                        int ordinal = callOrdinals.merge(invoke.getMethod(), 1, Integer::sum) - 1;
+                        GuardedCall guardedCall = applyToInvoke(methodDep, invoke, ordinal);
+                        if (guardedCall != null) {
+                            guardedCalls.add(guardedCall);
+                        }
+                    }
                 } else if (insn instanceof CastInstruction) {
                     applyToCast(methodDep, (CastInstruction) insn);
                 }
             }
         }
 
+        if (!guardedCalls.isEmpty()) {
+            BasicBlockSplitter splitter = new BasicBlockSplitter(program);
+            for (GuardedCall guardedCall : guardedCalls) {
+                insertGuard(program, splitter, guardedCall);
+            }
+            splitter.fixProgram();
+        }
+
         if (shouldLog) {
             System.out.println("DEVIRTUALIZATION complete for " + method.getReference());
         }
     }
 
-    private void applyToInvoke(MethodDependencyInfo methodDep, InvokeInstruction invoke) {
-        if (invoke.getType() != InvocationType.VIRTUAL) {
-            return;
-        }
+    private GuardedCall applyToInvoke(MethodDependencyInfo methodDep, InvokeInstruction invoke, int ordinal) {
         ValueDependencyInfo var = methodDep.getVariable(invoke.getInstance().getIndex());
         Set<MethodReference> implementations = getImplementations(var.getTypes(),
                 invoke.getMethod());
@@ -116,6 +197,7 @@ public class Devirtualization {
             invoke.setType(InvocationType.SPECIAL);
             invoke.setMethod(resolvedImplementaiton);
             directCallSites++;
+            return null;
         } else {
             virtualMethods.addAll(implementations);
             if (shouldLog) {
@@ -136,7 +218,226 @@ public class Devirtualization {
                 System.out.println();
             }
             virtualCallSites++;
+            return getGuardedCall(methodDep.getReference(), invoke, ordinal, var.getTypes(), implementations);
+        }
+    }
+
+    private GuardedCall getGuardedCall(MethodReference caller, InvokeInstruction invoke, int ordinal,
+            String[] types, Set<MethodReference> implementations) {
+        if (!invoke.getBasicBlock().getTryCatchBlocks().isEmpty()) {
+            return null;
+        }
+        Map<String, Long> receivers = profile != null
+                ? profile.getReceiverCounts(caller, ordinal, invoke.getMethod())
+                : Collections.emptyMap();
+
+        List<Guard> guards = new ArrayList<>();
+        if (implementations.size() >= 2 && implementations.size() <= maxGuardedTargets) {
+            for (MethodReference implementation : implementations) {
+                guards.add(new Guard(implementation.getClassName(), implementation));
+            }
+        } else {
+            String dominantClass = getDominantReceiver(receivers);
+            if (dominantClass != null) {
+                MethodReference target = resolve(dominantClass, invoke.getMethod());
+                if (target != null && implementations.contains(target)) {
+                    guards.add(new Guard(dominantClass, target));
+                }
+            }
+        }
+        if (guards.isEmpty()) {
+            return null;
+        }
+
+        if (!receivers.isEmpty()) {
+            Map<MethodReference, Long> frequencies = new HashMap<>();
+            for (Map.Entry<String, Long> entry : receivers.entrySet()) {
+                MethodReference target = resolve(entry.getKey(), invoke.getMethod());
+                if (target != null) {
+                    frequencies.merge(target, entry.getValue(), Long::sum);
+                }
+            }
+            guards.sort(Comparator.comparing((Guard guard) -> frequencies.getOrDefault(guard.target, 0L))
+                    .reversed());
+        }
+        guards = sortBySubtyping(guards);
+        removeUnsoundGuards(guards, types, invoke.getMethod(), implementations);
+        if (guards.isEmpty()) {
+            return null;
+        }
+
+        if (shouldLog) {
+            System.out.print("GUARDED CALL " + invoke.getMethod() + " resolved to [");
+            for (int i = 0; i < guards.size(); ++i) {
+                if (i > 0) {
+                    System.out.print(", ");
+                }
+                System.out.print(guards.get(i).target.getClassName());
+            }
+            System.out.print("]");
+            if (invoke.getLocation() != null) {
+                System.out.print(" at " + invoke.getLocation().getFileName() + ":"
+                        + invoke.getLocation().getLine());
+            }
+            System.out.println();
+        }
+        guardedCallSites++;
+        return new GuardedCall(invoke, guards);
+    }
+
+    private static String getDominantReceiver(Map<String, Long> receivers) {
+        long total = 0;
+        long dominantCount = 0;
+        String dominantClass = null;
+        for (Map.Entry<String, Long> entry : receivers.entrySet()) {
+            total += entry.getValue();
+            if (entry.getValue() > dominantCount) {
+                dominantCount = entry.getValue();
+                dominantClass = entry.getKey();
+            }
         }
+        if (dominantClass == null || dominantClass.equals("java.lang.Object")
+                || dominantCount * 100 < total * DOMINANT_RECEIVER_PERCENT) {
+            return null;
+        }
+        return dominantClass;
+    }
+
+    /*
+     * Type checks are instanceof checks, so a check for a subclass must come before a check for its superclass,
+     * otherwise it would never succeed. Otherwise keep original order.
+     */
+    private List<Guard> sortBySubtyping(List<Guard> guards) {
+        List<Guard> remaining = new ArrayList<>(guards);
+        List<Guard> result = new ArrayList<>(guards.size());
+        while (!remaining.isEmpty()) {
+            for (int i = 0; i < remaining.size(); ++i) {
+                Guard guard = remaining.get(i);
+                boolean hasSubtype = false;
+                for (Guard other : remaining) {
+                    if (other != guard && hierarchy.isSuperType(guard.className, other.className, false)) {
+                        hasSubtype = true;
+                        break;
+                    }
+                }
+                if (!hasSubtype) {
+                    result.add(guard);
+                    remaining.remove(i);
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    /*
+     * For each type that can reach call site, first check that succeeds must lead to the implementation
+     * that virtual call would choose. Remove checks that break this rule until there are none left.
+     * Types that fail all checks are handled by the virtual call.
+     */
+    private void removeUnsoundGuards(List<Guard> guards, String[] types, MethodReference method,
+            Set<MethodReference> implementations) {
+        boolean changed;
+        do {
+            changed = false;
+            for (String type : types) {
+                boolean isArray = type.startsWith("[");
+                MethodReference implementation = resolve(isArray ? "java.lang.Object" : type, method);
+                if (implementation == null || !implementations.contains(implementation)) {
+                    continue;
+                }
+                ValueType valueType = isArray ? ValueType.parse(type) : ValueType.object(type);
+                Guard matchingGuard = null;
+                for (Guard guard : guards) {
+                    if (hierarchy.isSuperType(ValueType.object(guard.className), valueType, false)) {
+                        matchingGuard = guard;
+                        break;
+                    }
+                }
+                if (matchingGuard != null && !matchingGuard.target.equals(implementation)) {
+                    guards.remove(matchingGuard);
+                    changed = true;
+                    break;
+                }
+            }
+        } while (changed);
+    }
+
+    private MethodReference resolve(String className, MethodReference method) {
+        MethodDependencyInfo methodDep = dependency.getMethodImplementation(new MethodReference(
+                className, method.getDescriptor()));
+        return methodDep != null ? methodDep.getReference() : null;
+    }
+
+    private void insertGuard(Program program, BasicBlockSplitter splitter, GuardedCall guardedCall) {
+        InvokeInstruction invoke = guardedCall.invoke;
+        BasicBlock block = invoke.getBasicBlock();
+        BasicBlock continueBlock = splitter.split(block, invoke);
+        invoke.delete();
+
+        Variable receiver = invoke.getReceiver();
+        Phi phi = null;
+        if (receiver != null) {
+            phi = new Phi();
+            phi.setReceiver(receiver);
+            continueBlock.getPhis().add(phi);
+        }
+
+        BasicBlock checkBlock = block;
+        for (Guard guard : guardedCall.guards) {
+            BasicBlock directBlock = program.createBasicBlock();
+            BasicBlock nextBlock = program.createBasicBlock();
+
+            IsInstanceInstruction typeCheck = new IsInstanceInstruction();
+            typeCheck.setValue(invoke.getInstance());
+            typeCheck.setType(ValueType.object(guard.className));
+            typeCheck.setReceiver(program.createVariable());
+            typeCheck.setLocation(invoke.getLocation());
+            checkBlock.add(typeCheck);
+
+            BranchingInstruction branching = new BranchingInstruction(BranchingCondition.NOT_EQUAL);
+            branching.setOperand(typeCheck.getReceiver());
+            branching.setConsequent(directBlock);
+            branching.setAlternative(nextBlock);
+            branching.setLocation(invoke.getLocation());
+            checkBlock.add(branching);
+
+            InvokeInstruction directCall = new InvokeInstruction();
+            directCall.setType(InvocationType.SPECIAL);
+            directCall.setMethod(guard.target);
+            directCall.setInstance(invoke.getInstance());
+            directCall.setArguments(invoke.getArguments().toArray(new Variable[0]));
+            directCall.setLocation(invoke.getLocation());
+            if (phi != null) {
+                directCall.setReceiver(program.createVariable());
+                addIncoming(phi, directBlock, directCall.getReceiver());
+            }
+            directBlock.add(directCall);
+            directBlock.add(createJump(continueBlock, invoke));
+
+            checkBlock = nextBlock;
+        }
+
+        if (phi != null) {
+            invoke.setReceiver(program.createVariable());
+            addIncoming(phi, checkBlock, invoke.getReceiver());
+        }
+        checkBlock.add(invoke);
+        checkBlock.add(createJump(continueBlock, invoke));
+    }
+
+    private static void addIncoming(Phi phi, BasicBlock source, Variable value) {
+        Incoming incoming = new Incoming();
+        incoming.setSource(source);
+        incoming.setValue(value);
+        phi.getIncomings().add(incoming);
+    }
+
+    private static JumpInstruction createJump(BasicBlock target, Instruction origin) {
+        JumpInstruction jump = new JumpInstruction();
+        jump.setTarget(target);
+        jump.setLocation(origin.getLocation());
+        return jump;
     }
 
     private void applyToCast(MethodDependencyInfo methodDep, CastInstruction cast) {
@@ -224,4 +525,24 @@ public class Devirtualization {
     public Set<? extends MethodReference> getVirtualMethods() {
         return readonlyVirtualMethods;
     }
+
+    static class GuardedCall {
+        final InvokeInstruction invoke;
+        final List<Guard> guards;
+
+        GuardedCall(InvokeInstruction invoke, List<Guard> guards) {
+            this.invoke = invoke;
+            this.guards = guards;
+        }
+    }
+
+    static class Guard {
+        final String className;
+        final MethodReference target;
+
+        Guard(String className, MethodReference target) {
+            this.className = className;
+            this.target = target;
+        }
+    }
 }
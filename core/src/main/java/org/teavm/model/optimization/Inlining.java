@@ -16,6 +16,7 @@
 package org.teavm.model.optimization;
 
 import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.IntStack;
 import com.carrotsearch.hppc.ObjectIntHashMap;
 import com.carrotsearch.hppc.ObjectIntMap;
 import com.carrotsearch.hppc.cursors.ObjectCursor;
@@ -30,6 +31,8 @@ import java.util.Map;
 import java.util.Set;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
+import org.teavm.callgraph.CallGraphNode;
+import org.teavm.callgraph.CallSite;
 import org.teavm.dependency.DependencyInfo;
 import org.teavm.model.BasicBlock;
 import org.teavm.model.BasicBlockReader;
@@ -62,8 +65,6 @@ import org.teavm.model.util.TransitionExtractor;
 import org.teavm.runtime.Fiber;
 
 public class Inlining {
-    private IntArrayList depthsByBlock;
-    private Set<Instruction> instructionsToSkip;
     private ClassHierarchy hierarchy;
     private ListableClassReaderSource classes;
     private DependencyInfo dependencyInfo;
@@ -71,7 +72,7 @@ public class Inlining {
     private MethodUsageCounter usageCounter;
     private Set<MethodReference> methodsUsedOnce = new HashSet<>();
     private boolean devirtualization;
-    private ClassInference classInference;
+    private ThreadLocal<ClassInference> classInference = new ThreadLocal<>();
     private InliningFilterFactory filterFactory;
 
     public Inlining(ClassHierarchy hierarchy, DependencyInfo dependencyInfo, InliningStrategy strategy,
@@ -133,8 +134,144 @@ public class Inlining {
         order.add(method);
     }
 
+    /**
+     * <p>Splits methods returned by {@link #getOrder()} into units that can be processed concurrently.
+     * Units are strongly connected components of call graph, listed so that callers come before callees.
+     * Methods within unit are listed in the order they appear in {@link #getOrder()}.</p>
+     *
+     * <p>Processing a method only reads and writes programs and usage counts of methods reachable
+     * from it, so processing units respecting their dependencies always gives the same result,
+     * no matter how many threads are used. Note that this result may differ from the one produced
+     * by processing methods in order returned by {@link #getOrder()}.</p>
+     *
+     * <p>When devirtualization is enabled, calls to virtual methods can turn to static ones during inlining,
+     * so call sites found by dependency analysis are taken into account as well.</p>
+     */
+    public List<InliningUnit> getUnits() {
+        List<MethodReference> order = getOrder();
+        ObjectIntMap<MethodReference> indexes = new ObjectIntHashMap<>();
+        for (int i = 0; i < order.size(); ++i) {
+            indexes.put(order.get(i), i);
+        }
+        int[][] successors = new int[order.size()][];
+        for (int i = 0; i < order.size(); ++i) {
+            successors[i] = getSuccessors(order.get(i), indexes);
+        }
+
+        int[] components = findStronglyConnectedComponents(successors);
+        int componentCount = 0;
+        for (int component : components) {
+            componentCount = Math.max(componentCount, component + 1);
+        }
+
+        // Tarjan's algorithm numbers components so that callees come first, reverse numbering
+        List<InliningUnit> units = new ArrayList<>(componentCount);
+        for (int i = 0; i < componentCount; ++i) {
+            units.add(new InliningUnit(i));
+        }
+        for (int i = 0; i < order.size(); ++i) {
+            units.get(componentCount - 1 - components[i]).methods.add(order.get(i));
+        }
+        for (int i = 0; i < order.size(); ++i) {
+            InliningUnit unit = units.get(componentCount - 1 - components[i]);
+            for (int successor : successors[i]) {
+                InliningUnit successorUnit = units.get(componentCount - 1 - components[successor]);
+                if (successorUnit != unit && !successorUnit.dependencies.contains(unit)) {
+                    successorUnit.dependencies.add(unit);
+                }
+            }
+        }
+        return units;
+    }
+
+    private int[] getSuccessors(MethodReference method, ObjectIntMap<MethodReference> indexes) {
+        IntArrayList result = new IntArrayList();
+        Set<MethodReference> invokedMethods = usageCounter.methodDependencies.get(method);
+        if (invokedMethods != null) {
+            for (MethodReference invokedMethod : invokedMethods) {
+                result.add(indexes.get(invokedMethod));
+            }
+        }
+        if (devirtualization) {
+            CallGraphNode node = dependencyInfo.getCallGraph().getNode(method);
+            if (node != null) {
+                for (CallSite callSite : node.getCallSites()) {
+                    for (CallGraphNode callee : callSite.getCalledMethods()) {
+                        int index = indexes.getOrDefault(callee.getMethod(), -1);
+                        if (index >= 0) {
+                            result.add(index);
+                        }
+                    }
+                }
+            }
+        }
+        return result.toArray();
+    }
+
+    private static int[] findStronglyConnectedComponents(int[][] successors) {
+        int count = successors.length;
+        int[] components = new int[count];
+        int[] indexes = new int[count];
+        int[] lowLinks = new int[count];
+        boolean[] onStack = new boolean[count];
+        int[] successorPositions = new int[count];
+        Arrays.fill(indexes, -1);
+        IntStack stack = new IntStack();
+        IntStack callStack = new IntStack();
+        int lastIndex = 0;
+        int lastComponent = 0;
+
+        for (int start = 0; start < count; ++start) {
+            if (indexes[start] >= 0) {
+                continue;
+            }
+            callStack.push(start);
+            indexes[start] = lastIndex;
+            lowLinks[start] = lastIndex++;
+            stack.push(start);
+            onStack[start] = true;
+
+            while (!callStack.isEmpty()) {
+                int node = callStack.peek();
+                int[] nodeSuccessors = successors[node];
+                if (successorPositions[node] < nodeSuccessors.length) {
+                    int successor = nodeSuccessors[successorPositions[node]++];
+                    if (indexes[successor] < 0) {
+                        indexes[successor] = lastIndex;
+                        lowLinks[successor] = lastIndex++;
+                        stack.push(successor);
+                        onStack[successor] = true;
+                        callStack.push(successor);
+                    } else if (onStack[successor]) {
+                        lowLinks[node] = Math.min(lowLinks[node], indexes[successor]);
+                    }
+                    continue;
+                }
+
+                callStack.pop();
+                if (!callStack.isEmpty()) {
+                    int caller = callStack.peek();
+                    lowLinks[caller] = Math.min(lowLinks[caller], lowLinks[node]);
+                }
+                if (lowLinks[node] == indexes[node]) {
+                    int member;
+                    do {
+                        member = stack.pop();
+                        onStack[member] = false;
+                        components[member] = lastComponent;
+                    } while (member != node);
+                    lastComponent++;
+                }
+            }
+        }
+
+        return components;
+    }
+
     public boolean hasUsages(MethodReference method) {
-        return usageCounter.methodUsageCount.getOrDefault(method, -1) != 0;
+        synchronized (usageCounter) {
+            return usageCounter.methodUsageCount.getOrDefault(method, -1) != 0;
+        }
     }
 
     public void removeUsages(Program program) {
@@ -149,58 +286,68 @@ public class Inlining {
                     continue;
                 }
 
-                int usageCount = usageCounter.methodUsageCount.getOrDefault(invoke.getMethod(), -1);
-                if (usageCount > 0) {
-                    usageCounter.methodUsageCount.put(invoke.getMethod(), usageCount - 1);
-                }
+                decrementUsageCount(invoke.getMethod());
             }
         }
     }
 
-    public void apply(Program program, MethodReference method) {
-        depthsByBlock = new IntArrayList(program.basicBlockCount());
-        for (int i = 0; i < program.basicBlockCount(); ++i) {
-            depthsByBlock.add(0);
+    private void decrementUsageCount(MethodReference method) {
+        synchronized (usageCounter) {
+            int usageCount = usageCounter.methodUsageCount.getOrDefault(method, -1);
+            if (usageCount > 0) {
+                usageCounter.methodUsageCount.put(method, usageCount - 1);
+            }
         }
-        instructionsToSkip = new HashSet<>();
+    }
 
+    private void incrementUsageCount(MethodReference method) {
+        synchronized (usageCounter) {
+            int usageCount = usageCounter.methodUsageCount.getOrDefault(method, -1);
+            if (usageCount >= 0) {
+                usageCounter.methodUsageCount.put(method, usageCount + 1);
+            }
+        }
+    }
+
+    /**
+     * Inlines calls in given method. Can be called concurrently for methods from units that don't depend
+     * on each other, see {@link #getUnits()}. In this case dependency info and inlining filter passed
+     * to constructor must be thread-safe.
+     */
+    public void apply(Program program, MethodReference method) {
+        ContextImpl context = new ContextImpl(program.basicBlockCount());
         if (devirtualization) {
-            while (applyOnce(program, method)) {
+            while (applyOnce(context, program, method)) {
                 devirtualize(program, method, dependencyInfo);
             }
         } else {
-            applyOnce(program, method);
+            applyOnce(context, program, method);
         }
-        depthsByBlock = null;
-        instructionsToSkip = null;
 
         new UnreachableBasicBlockEliminator().optimize(program);
     }
 
-    private boolean applyOnce(Program program, MethodReference method) {
+    private boolean applyOnce(ContextImpl context, Program program, MethodReference method) {
         InliningStep step = strategy.start(method, program);
         if (step == null) {
             return false;
         }
-        List<PlanEntry> plan = buildPlan(program, -1, step, method, null);
+        List<PlanEntry> plan = buildPlan(context, program, -1, step, method, null);
         if (plan.isEmpty()) {
             return false;
         }
-        execPlan(program, plan, 0);
+        execPlan(context, program, plan, 0);
         return true;
     }
 
-    private void execPlan(Program program, List<PlanEntry> plan, int offset) {
+    private void execPlan(ContextImpl context, Program program, List<PlanEntry> plan, int offset) {
         for (PlanEntry entry : plan) {
-            execPlanEntry(program, entry, offset);
+            execPlanEntry(context, program, entry, offset);
         }
     }
 
-    private void execPlanEntry(Program program, PlanEntry planEntry, int offset) {
-        int usageCount = usageCounter.methodUsageCount.getOrDefault(planEntry.method, -1);
-        if (usageCount > 0) {
-            usageCounter.methodUsageCount.put(planEntry.method, usageCount - 1);
-        }
+    private void execPlanEntry(ContextImpl context, Program program, PlanEntry planEntry, int offset) {
+        decrementUsageCount(planEntry.method);
 
         BasicBlock block = program.basicBlockAt(planEntry.targetBlock + offset);
         InvokeInstruction invoke = (InvokeInstruction) planEntry.targetInstruction;
@@ -210,8 +357,8 @@ public class Inlining {
         for (int i = 1; i < inlineProgram.basicBlockCount(); ++i) {
             program.createBasicBlock();
         }
-        while (depthsByBlock.size() < program.basicBlockCount()) {
-            depthsByBlock.add(planEntry.depth + 1);
+        while (context.depthsByBlock.size() < program.basicBlockCount()) {
+            context.depthsByBlock.add(planEntry.depth + 1);
         }
 
         int variableOffset = program.variableCount();
@@ -244,10 +391,7 @@ public class Inlining {
                 if (insn instanceof InvokeInstruction) {
                     InvokeInstruction invokeInsn = (InvokeInstruction) insn;
                     if (invokeInsn.getType() == InvocationType.SPECIAL) {
-                        usageCount = usageCounter.methodUsageCount.getOrDefault(invokeInsn.getMethod(), -1);
-                        if (usageCount >= 0) {
-                            usageCounter.methodUsageCount.put(invokeInsn.getMethod(), usageCount + 1);
-                        }
+                        incrementUsageCount(invokeInsn.getMethod());
                     }
                 }
 
@@ -335,27 +479,26 @@ public class Inlining {
             }
         }
 
-        execPlan(program, planEntry.innerPlan, firstInlineBlock.getIndex());
+        execPlan(context, program, planEntry.innerPlan, firstInlineBlock.getIndex());
     }
 
-    private List<PlanEntry> buildPlan(Program program, int depth, InliningStep step, MethodReference method,
-            InliningInfo inliningInfo) {
+    private List<PlanEntry> buildPlan(ContextImpl context, Program program, int depth, InliningStep step,
+            MethodReference method, InliningInfo inliningInfo) {
         List<PlanEntry> plan = new ArrayList<>();
         int originalDepth = depth;
         InliningFilter filter = filterFactory.createFilter(method);
 
-        ContextImpl context = new ContextImpl();
         for (BasicBlock block : program.getBasicBlocks()) {
             if (!block.getTryCatchBlocks().isEmpty()) {
                 continue;
             }
 
             if (originalDepth < 0) {
-                depth = depthsByBlock.get(block.getIndex());
+                depth = context.depthsByBlock.get(block.getIndex());
             }
 
             for (Instruction insn : block) {
-                if (instructionsToSkip.contains(insn)) {
+                if (context.instructionsToSkip.contains(insn)) {
                     continue;
                 }
 
@@ -371,6 +514,9 @@ public class Inlining {
                         != method.getClassName().equals(Fiber.class.getName())) {
                     continue;
                 }
+                if (BoxingElimination.isBoxingMethod(invoke.getMethod())) {
+                    continue;
+                }
                 if (!filter.apply(invoke.getMethod())) {
                     continue;
                 }
@@ -379,7 +525,7 @@ public class Inlining {
                 if (invokedMethod == null || invokedMethod.getProgram() == null
                         || invokedMethod.getProgram().basicBlockCount() == 0
                         || invokedMethod.hasModifier(ElementModifier.SYNCHRONIZED)) {
-                    instructionsToSkip.add(insn);
+                    context.instructionsToSkip.add(insn);
                     continue;
                 }
 
@@ -387,7 +533,7 @@ public class Inlining {
                 InliningStep innerStep = step.tryInline(invokedMethod.getReference(), invokedMethod.getProgram(),
                         context);
                 if (innerStep == null) {
-                    instructionsToSkip.add(insn);
+                    context.instructionsToSkip.add(insn);
                     continue;
                 }
                 Program invokedProgram = ProgramUtils.copy(invokedMethod.getProgram());
@@ -403,8 +549,8 @@ public class Inlining {
                 entry.targetBlock = block.getIndex();
                 entry.targetInstruction = insn;
                 entry.program = invokedProgram;
-                entry.innerPlan.addAll(buildPlan(invokedProgram, depth + 1, innerStep, invokedMethod.getReference(),
-                        innerInliningInfo));
+                entry.innerPlan.addAll(buildPlan(context, invokedProgram, depth + 1, innerStep,
+                        invokedMethod.getReference(), innerInliningInfo));
                 entry.depth = depth;
                 entry.method = invokedMethod.getReference();
                 entry.locationInfo = innerInliningInfo;
@@ -422,8 +568,12 @@ public class Inlining {
     }
 
     private void devirtualize(Program program, MethodReference method, DependencyInfo dependencyInfo) {
+        ClassInference classInference = this.classInference.get();
         if (classInference == null) {
-            classInference = new ClassInference(dependencyInfo, hierarchy, classes.getClassNames(), 30);
+            // ClassInference and ClassHierarchy cache results, so each thread needs its own instance
+            ClassHierarchy threadHierarchy = new ClassHierarchy(hierarchy.getClassSource());
+            classInference = new ClassInference(dependencyInfo, threadHierarchy, classes.getClassNames(), 30);
+            this.classInference.set(classInference);
         }
         classInference.infer(program, method);
 
@@ -493,8 +643,17 @@ public class Inlining {
     }
 
     class ContextImpl implements InliningContext {
+        final IntArrayList depthsByBlock;
+        final Set<Instruction> instructionsToSkip = new HashSet<>();
         int depth;
 
+        ContextImpl(int blockCount) {
+            depthsByBlock = new IntArrayList(blockCount);
+            for (int i = 0; i < blockCount; ++i) {
+                depthsByBlock.add(0);
+            }
+        }
+
         @Override
         public boolean isUsedOnce(MethodReference method) {
             return methodsUsedOnce.contains(method);
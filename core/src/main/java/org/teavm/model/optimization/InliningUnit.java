@@ -0,0 +1,53 @@
+/*
+ *  Copyright 2023 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.model.optimization;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.teavm.model.MethodReference;
+
+/**
+ * Group of methods that should be processed by {@link Inlining} sequentially, in the given order.
+ * Unit can be processed only after all its dependencies are processed. Units that don't depend
+ * on each other (even transitively) can be processed concurrently.
+ */
+public class InliningUnit {
+    final int index;
+    final List<MethodReference> methods = new ArrayList<>();
+    final List<InliningUnit> dependencies = new ArrayList<>();
+    private final List<MethodReference> readonlyMethods = Collections.unmodifiableList(methods);
+    private final List<InliningUnit> readonlyDependencies = Collections.unmodifiableList(dependencies);
+
+    InliningUnit(int index) {
+        this.index = index;
+    }
+
+    /**
+     * Position of this unit in list returned by {@link Inlining#getUnits()}. All dependencies have lower index.
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    public List<MethodReference> getMethods() {
+        return readonlyMethods;
+    }
+
+    public List<InliningUnit> getDependencies() {
+        return readonlyDependencies;
+    }
+}
@@ -0,0 +1,532 @@
+/*
+ *  Copyright 2023 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.model.optimization;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.function.Predicate;
+import org.teavm.model.BasicBlock;
+import org.teavm.model.ClassHolder;
+import org.teavm.model.ElementModifier;
+import org.teavm.model.Incoming;
+import org.teavm.model.Instruction;
+import org.teavm.model.ListableClassHolderSource;
+import org.teavm.model.MethodHolder;
+import org.teavm.model.MethodReference;
+import org.teavm.model.Phi;
+import org.teavm.model.Program;
+import org.teavm.model.Variable;
+import org.teavm.model.instructions.AbstractInstructionVisitor;
+import org.teavm.model.instructions.AssignInstruction;
+import org.teavm.model.instructions.BranchingInstruction;
+import org.teavm.model.instructions.ClassConstantInstruction;
+import org.teavm.model.instructions.CloneArrayInstruction;
+import org.teavm.model.instructions.ConstructArrayInstruction;
+import org.teavm.model.instructions.ConstructInstruction;
+import org.teavm.model.instructions.ConstructMultiArrayInstruction;
+import org.teavm.model.instructions.DoubleConstantInstruction;
+import org.teavm.model.instructions.ExitInstruction;
+import org.teavm.model.instructions.FloatConstantInstruction;
+import org.teavm.model.instructions.IntegerConstantInstruction;
+import org.teavm.model.instructions.InvocationType;
+import org.teavm.model.instructions.InvokeInstruction;
+import org.teavm.model.instructions.JumpInstruction;
+import org.teavm.model.instructions.LongConstantInstruction;
+import org.teavm.model.instructions.NullCheckInstruction;
+import org.teavm.model.instructions.NullConstantInstruction;
+import org.teavm.model.instructions.StringConstantInstruction;
+import org.teavm.model.util.DefinitionExtractor;
+import org.teavm.model.util.InstructionVariableMapper;
+import org.teavm.model.util.TransitionExtractor;
+
+/**
+ * <p>Whole-program propagation of constants and nullness through parameters and return values.</p>
+ *
+ * <p>For every method that is only called directly from the compiled code (see {@code isExternal} predicate),
+ * computes what is known about each parameter across all call sites: whether it's always the same constant,
+ * or never {@code null}. For every method computes the same facts about its return value.
+ * Then these facts are written into programs: constant parameters and results of calls are replaced
+ * with constant instructions, null checks and null comparisons of non-null values are removed.
+ * Intra-procedural optimizations, like {@link ConstantConditionElimination}, do the rest.</p>
+ */
+public class InterproceduralPropagation {
+    private ListableClassHolderSource classes;
+    private Predicate<MethodReference> isExternal;
+    private Map<MethodReference, MethodFacts> methodFacts = new HashMap<>();
+    private Queue<MethodFacts> queue = new ArrayDeque<>();
+    private int propagatedConstants;
+    private int eliminatedNullChecks;
+
+    public InterproceduralPropagation(ListableClassHolderSource classes, Predicate<MethodReference> isExternal) {
+        this.classes = classes;
+        this.isExternal = isExternal;
+    }
+
+    public int getPropagatedConstants() {
+        return propagatedConstants;
+    }
+
+    public int getEliminatedNullChecks() {
+        return eliminatedNullChecks;
+    }
+
+    public void apply() {
+        for (String className : classes.getClassNames()) {
+            ClassHolder cls = classes.get(className);
+            for (MethodHolder method : cls.getMethods()) {
+                if (method.getProgram() != null) {
+                    MethodFacts facts = new MethodFacts(method, isExternal.test(method.getReference()));
+                    methodFacts.put(method.getReference(), facts);
+                    schedule(facts);
+                }
+            }
+        }
+
+        while (!queue.isEmpty()) {
+            MethodFacts facts = queue.remove();
+            facts.queued = false;
+            propagate(facts);
+        }
+
+        for (MethodFacts facts : methodFacts.values()) {
+            transform(facts);
+        }
+    }
+
+    private void schedule(MethodFacts facts) {
+        if (!facts.queued) {
+            facts.queued = true;
+            queue.add(facts);
+        }
+    }
+
+    private void propagate(MethodFacts facts) {
+        Program program = facts.method.getProgram();
+        Fact[] variables = new VariableAnalysis(facts).analyze();
+
+        Fact result = Fact.UNDEFINED;
+        for (BasicBlock block : program.getBasicBlocks()) {
+            for (Instruction insn : block) {
+                if (insn instanceof InvokeInstruction) {
+                    InvokeInstruction invoke = (InvokeInstruction) insn;
+                    MethodFacts callee = getDirectCallee(invoke);
+                    if (callee == null) {
+                        continue;
+                    }
+                    callee.callers.add(facts);
+                    if (callee.external) {
+                        continue;
+                    }
+                    boolean changed = false;
+                    for (int i = 0; i < invoke.getArguments().size(); ++i) {
+                        Fact argument = variables[invoke.getArguments().get(i).getIndex()];
+                        Fact parameter = callee.parameters[i + 1];
+                        Fact newParameter = parameter.meet(argument);
+                        if (!newParameter.equals(parameter)) {
+                            callee.parameters[i + 1] = newParameter;
+                            changed = true;
+                        }
+                    }
+                    if (changed) {
+                        schedule(callee);
+                    }
+                } else if (insn instanceof ExitInstruction) {
+                    ExitInstruction exit = (ExitInstruction) insn;
+                    if (exit.getValueToReturn() != null) {
+                        result = result.meet(variables[exit.getValueToReturn().getIndex()]);
+                    }
+                }
+            }
+        }
+
+        if (!result.equals(facts.result)) {
+            facts.result = result;
+            for (MethodFacts caller : facts.callers) {
+                schedule(caller);
+            }
+        }
+    }
+
+    private MethodFacts getDirectCallee(InvokeInstruction invoke) {
+        if (invoke.getType() != InvocationType.SPECIAL) {
+            return null;
+        }
+        return methodFacts.get(invoke.getMethod());
+    }
+
+    private void transform(MethodFacts facts) {
+        Program program = facts.method.getProgram();
+        Fact[] variables = new VariableAnalysis(facts).analyze();
+        boolean blocksRemoved = false;
+
+        TransitionExtractor transitionExtractor = new TransitionExtractor();
+        for (BasicBlock block : program.getBasicBlocks()) {
+            for (Phi phi : block.getPhis().toArray(new Phi[0])) {
+                Instruction constant = createConstant(variables[phi.getReceiver().getIndex()], phi.getReceiver());
+                if (constant != null) {
+                    block.addFirst(constant);
+                    block.getPhis().remove(phi);
+                    propagatedConstants++;
+                }
+            }
+
+            for (Instruction insn : block) {
+                if (insn instanceof InvokeInstruction) {
+                    InvokeInstruction invoke = (InvokeInstruction) insn;
+                    if (invoke.getReceiver() != null && getDirectCallee(invoke) != null) {
+                        Instruction constant = createConstant(variables[invoke.getReceiver().getIndex()],
+                                invoke.getReceiver());
+                        if (constant != null) {
+                            constant.setLocation(invoke.getLocation());
+                            invoke.setReceiver(null);
+                            invoke.insertNext(constant);
+                            propagatedConstants++;
+                        }
+                    }
+                } else if (insn instanceof NullCheckInstruction) {
+                    NullCheckInstruction nullCheck = (NullCheckInstruction) insn;
+                    if (variables[nullCheck.getValue().getIndex()].isNotNull()) {
+                        AssignInstruction assign = new AssignInstruction();
+                        assign.setAssignee(nullCheck.getValue());
+                        assign.setReceiver(nullCheck.getReceiver());
+                        assign.setLocation(nullCheck.getLocation());
+                        nullCheck.replace(assign);
+                        eliminatedNullChecks++;
+                    }
+                }
+            }
+
+            BasicBlock target = getConstantTarget(block.getLastInstruction(), variables);
+            if (target != null) {
+                block.getLastInstruction().acceptVisitor(transitionExtractor);
+                for (BasicBlock successor : transitionExtractor.getTargets()) {
+                    if (successor != target) {
+                        for (Phi phi : successor.getPhis()) {
+                            phi.getIncomings().removeIf(incoming -> incoming.getSource() == block);
+                        }
+                    }
+                }
+                JumpInstruction jump = new JumpInstruction();
+                jump.setTarget(target);
+                jump.setLocation(block.getLastInstruction().getLocation());
+                block.getLastInstruction().replace(jump);
+                eliminatedNullChecks++;
+                blocksRemoved = true;
+            }
+        }
+
+        // Parameters are replaced last, since mapping introduces variables that are not covered by analysis
+        for (int i = 1; i < facts.parameters.length; ++i) {
+            if (variables[i].kind == FactKind.CONSTANT) {
+                Variable parameter = program.variableAt(i);
+                Variable replacement = program.createVariable();
+                program.basicBlockAt(0).addFirst(createConstant(variables[i], replacement));
+                InstructionVariableMapper mapper = new InstructionVariableMapper(
+                        var -> var == parameter ? replacement : var);
+                for (BasicBlock block : program.getBasicBlocks()) {
+                    mapper.apply(block);
+                }
+                propagatedConstants++;
+            }
+        }
+
+        if (blocksRemoved) {
+            new UnreachableBasicBlockEliminator().optimize(program);
+        }
+    }
+
+    private static BasicBlock getConstantTarget(Instruction insn, Fact[] variables) {
+        if (!(insn instanceof BranchingInstruction)) {
+            return null;
+        }
+        BranchingInstruction branching = (BranchingInstruction) insn;
+        Fact operand = variables[branching.getOperand().getIndex()];
+        switch (branching.getCondition()) {
+            case NULL:
+                if (operand.isNull()) {
+                    return branching.getConsequent();
+                } else if (operand.isNotNull()) {
+                    return branching.getAlternative();
+                }
+                break;
+            case NOT_NULL:
+                if (operand.isNull()) {
+                    return branching.getAlternative();
+                } else if (operand.isNotNull()) {
+                    return branching.getConsequent();
+                }
+                break;
+            default:
+                break;
+        }
+        return null;
+    }
+
+    private static Instruction createConstant(Fact fact, Variable receiver) {
+        if (fact.kind != FactKind.CONSTANT) {
+            return null;
+        }
+        Object value = fact.value;
+        if (value == null) {
+            NullConstantInstruction insn = new NullConstantInstruction();
+            insn.setReceiver(receiver);
+            return insn;
+        } else if (value instanceof Integer) {
+            IntegerConstantInstruction insn = new IntegerConstantInstruction();
+            insn.setConstant((Integer) value);
+            insn.setReceiver(receiver);
+            return insn;
+        } else if (value instanceof Long) {
+            LongConstantInstruction insn = new LongConstantInstruction();
+            insn.setConstant((Long) value);
+            insn.setReceiver(receiver);
+            return insn;
+        } else if (value instanceof Float) {
+            FloatConstantInstruction insn = new FloatConstantInstruction();
+            insn.setConstant((Float) value);
+            insn.setReceiver(receiver);
+            return insn;
+        } else if (value instanceof Double) {
+            DoubleConstantInstruction insn = new DoubleConstantInstruction();
+            insn.setConstant((Double) value);
+            insn.setReceiver(receiver);
+            return insn;
+        } else {
+            StringConstantInstruction insn = new StringConstantInstruction();
+            insn.setConstant((String) value);
+            insn.setReceiver(receiver);
+            return insn;
+        }
+    }
+
+    class VariableAnalysis extends AbstractInstructionVisitor {
+        private MethodFacts facts;
+        private Fact[] variables;
+        private boolean handled;
+        private boolean changed;
+        private DefinitionExtractor definitionExtractor = new DefinitionExtractor();
+
+        VariableAnalysis(MethodFacts facts) {
+            this.facts = facts;
+        }
+
+        Fact[] analyze() {
+            Program program = facts.method.getProgram();
+            variables = new Fact[program.variableCount()];
+            Arrays.fill(variables, Fact.UNDEFINED);
+            System.arraycopy(facts.parameters, 0, variables, 0, facts.parameters.length);
+
+            do {
+                changed = false;
+                for (BasicBlock block : program.getBasicBlocks()) {
+                    if (block.getExceptionVariable() != null) {
+                        update(block.getExceptionVariable(), Fact.NOT_NULL);
+                    }
+                    for (Phi phi : block.getPhis()) {
+                        Fact fact = Fact.UNDEFINED;
+                        for (Incoming incoming : phi.getIncomings()) {
+                            fact = fact.meet(variables[incoming.getValue().getIndex()]);
+                        }
+                        update(phi.getReceiver(), fact);
+                    }
+                    for (Instruction insn : block) {
+                        handled = false;
+                        insn.acceptVisitor(this);
+                        if (!handled) {
+                            insn.acceptVisitor(definitionExtractor);
+                            for (Variable var : definitionExtractor.getDefinedVariables()) {
+                                update(var, Fact.VARYING);
+                            }
+                        }
+                    }
+                }
+            } while (changed);
+
+            return variables;
+        }
+
+        private void update(Variable variable, Fact fact) {
+            handled = true;
+            if (!variables[variable.getIndex()].equals(fact)) {
+                variables[variable.getIndex()] = fact;
+                changed = true;
+            }
+        }
+
+        @Override
+        public void visit(NullConstantInstruction insn) {
+            update(insn.getReceiver(), Fact.constant(null));
+        }
+
+        @Override
+        public void visit(IntegerConstantInstruction insn) {
+            update(insn.getReceiver(), Fact.constant(insn.getConstant()));
+        }
+
+        @Override
+        public void visit(LongConstantInstruction insn) {
+            update(insn.getReceiver(), Fact.constant(insn.getConstant()));
+        }
+
+        @Override
+        public void visit(FloatConstantInstruction insn) {
+            update(insn.getReceiver(), Fact.constant(insn.getConstant()));
+        }
+
+        @Override
+        public void visit(DoubleConstantInstruction insn) {
+            update(insn.getReceiver(), Fact.constant(insn.getConstant()));
+        }
+
+        @Override
+        public void visit(StringConstantInstruction insn) {
+            update(insn.getReceiver(), Fact.constant(insn.getConstant()));
+        }
+
+        @Override
+        public void visit(ClassConstantInstruction insn) {
+            update(insn.getReceiver(), Fact.NOT_NULL);
+        }
+
+        @Override
+        public void visit(ConstructInstruction insn) {
+            update(insn.getReceiver(), Fact.NOT_NULL);
+        }
+
+        @Override
+        public void visit(ConstructArrayInstruction insn) {
+            update(insn.getReceiver(), Fact.NOT_NULL);
+        }
+
+        @Override
+        public void visit(ConstructMultiArrayInstruction insn) {
+            update(insn.getReceiver(), Fact.NOT_NULL);
+        }
+
+        @Override
+        public void visit(CloneArrayInstruction insn) {
+            update(insn.getReceiver(), Fact.NOT_NULL);
+        }
+
+        @Override
+        public void visit(AssignInstruction insn) {
+            update(insn.getReceiver(), variables[insn.getAssignee().getIndex()]);
+        }
+
+        @Override
+        public void visit(NullCheckInstruction insn) {
+            Fact value = variables[insn.getValue().getIndex()];
+            update(insn.getReceiver(), value.isNotNull() ? value : Fact.NOT_NULL);
+        }
+
+        @Override
+        public void visit(InvokeInstruction insn) {
+            if (insn.getReceiver() != null) {
+                MethodFacts callee = getDirectCallee(insn);
+                update(insn.getReceiver(), callee != null ? callee.result : Fact.VARYING);
+            }
+        }
+    }
+
+    static class MethodFacts {
+        final MethodHolder method;
+        final boolean external;
+        final Fact[] parameters;
+        Fact result = Fact.UNDEFINED;
+        final Set<MethodFacts> callers = new LinkedHashSet<>();
+        boolean queued;
+
+        MethodFacts(MethodHolder method, boolean external) {
+            this.method = method;
+            this.external = external;
+            parameters = new Fact[method.parameterCount() + 1];
+            Arrays.fill(parameters, external ? Fact.VARYING : Fact.UNDEFINED);
+            parameters[0] = method.hasModifier(ElementModifier.STATIC) ? Fact.VARYING : Fact.NOT_NULL;
+        }
+    }
+
+    enum FactKind {
+        UNDEFINED,
+        CONSTANT,
+        NOT_NULL,
+        VARYING
+    }
+
+    /**
+     * Element of the lattice {@code UNDEFINED > CONSTANT > NOT_NULL > VARYING}, where {@code NOT_NULL} only
+     * follows string constants, while {@code null} and numeric constants go directly to {@code VARYING}.
+     */
+    static final class Fact {
+        static final Fact UNDEFINED = new Fact(FactKind.UNDEFINED, null);
+        static final Fact NOT_NULL = new Fact(FactKind.NOT_NULL, null);
+        static final Fact VARYING = new Fact(FactKind.VARYING, null);
+        final FactKind kind;
+        final Object value;
+
+        private Fact(FactKind kind, Object value) {
+            this.kind = kind;
+            this.value = value;
+        }
+
+        static Fact constant(Object value) {
+            return new Fact(FactKind.CONSTANT, value);
+        }
+
+        boolean isNull() {
+            return kind == FactKind.CONSTANT && value == null;
+        }
+
+        boolean isNotNull() {
+            return kind == FactKind.NOT_NULL || kind == FactKind.CONSTANT && value instanceof String;
+        }
+
+        Fact meet(Fact other) {
+            if (kind == FactKind.UNDEFINED || other.kind == FactKind.VARYING) {
+                return other;
+            }
+            if (other.kind == FactKind.UNDEFINED || kind == FactKind.VARYING) {
+                return this;
+            }
+            if (kind == FactKind.CONSTANT && other.kind == FactKind.CONSTANT && Objects.equals(value, other.value)) {
+                return this;
+            }
+            return isNotNull() && other.isNotNull() ? NOT_NULL : VARYING;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Fact)) {
+                return false;
+            }
+            Fact other = (Fact) obj;
+            return kind == other.kind && Objects.equals(value, other.value);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(kind, value);
+        }
+    }
+}
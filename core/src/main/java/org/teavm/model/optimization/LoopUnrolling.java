@@ -0,0 +1,243 @@
+/*
+ *  Copyright 2023 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.model.optimization;
+
+import com.carrotsearch.hppc.IntHashSet;
+import com.carrotsearch.hppc.IntSet;
+import java.util.List;
+import org.teavm.model.BasicBlock;
+import org.teavm.model.Incoming;
+import org.teavm.model.Instruction;
+import org.teavm.model.MethodReader;
+import org.teavm.model.Phi;
+import org.teavm.model.Program;
+import org.teavm.model.Variable;
+import org.teavm.model.instructions.BinaryInstruction;
+import org.teavm.model.instructions.BinaryOperation;
+import org.teavm.model.instructions.BoundCheckInstruction;
+import org.teavm.model.instructions.BranchingCondition;
+import org.teavm.model.instructions.BranchingInstruction;
+import org.teavm.model.instructions.IntegerConstantInstruction;
+import org.teavm.model.instructions.JumpInstruction;
+import org.teavm.model.instructions.NullCheckInstruction;
+import org.teavm.model.instructions.NumericOperandType;
+import org.teavm.model.util.BasicBlockMapper;
+import org.teavm.model.util.PhiUpdater;
+
+/**
+ * Partially unrolls small counted loops (see {@link CountedLoop}). Loop
+ *
+ * ```
+ * while (true) {
+ *     if (i >= n) break;
+ *     body(i);
+ *     i = i + 1;
+ * }
+ * ```
+ *
+ * is transformed to
+ *
+ * ```
+ * while (i < n && n - i >= K) {
+ *     body(i);
+ *     body(i + 1);
+ *     ...
+ *     body(i + K - 1);
+ *     i = i + K;
+ * }
+ * while (true) {
+ *     if (i >= n) break;
+ *     body(i);
+ *     i = i + 1;
+ * }
+ * ```
+ *
+ * where copies of the body in the first loop don't perform the exit test. The second loop is the original one
+ * and it finishes remaining iterations. Loops that still contain null or bound checks are not unrolled,
+ * since they either are slow versions of loops produced by {@link LoopVersioning}, or the cost of checks
+ * outweighs loop overhead.
+ *
+ * Unlike most of the optimizations, this one is not idempotent: remainder loop can be unrolled again.
+ * So it should be applied only once.
+ */
+public class LoopUnrolling implements MethodOptimization {
+    private static final int MAX_UNROLL_FACTOR = 4;
+    private static final int MAX_UNROLLED_SIZE = 64;
+
+    @Override
+    public boolean optimize(MethodOptimizationContext context, Program program) {
+        List<CountedLoop> loops = CountedLoop.find(program);
+        IntHashSet affectedNodes = new IntHashSet();
+        boolean changed = false;
+        for (CountedLoop loop : loops) {
+            int factor = Math.min(MAX_UNROLL_FACTOR, MAX_UNROLLED_SIZE / Math.max(1, loop.size));
+            if (factor < 2 || hasChecks(loop) || intersects(loop.entries, affectedNodes)) {
+                continue;
+            }
+            unroll(loop, factor);
+            affectedNodes.addAll(loop.nodes);
+            changed = true;
+        }
+
+        if (changed) {
+            MethodReader method = context.getMethod();
+            Variable[] inputs = new Variable[method.parameterCount() + 1];
+            for (int i = 0; i < inputs.length; ++i) {
+                inputs[i] = program.variableAt(i);
+            }
+            new PhiUpdater().updatePhis(program, inputs);
+        }
+        return changed;
+    }
+
+    private boolean hasChecks(CountedLoop loop) {
+        for (int node : loop.nodes) {
+            for (Instruction insn : loop.program.basicBlockAt(node)) {
+                if (insn instanceof NullCheckInstruction || insn instanceof BoundCheckInstruction) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    static boolean intersects(int[] nodes, IntSet set) {
+        for (int node : nodes) {
+            if (set.contains(node)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void unroll(CountedLoop loop, int factor) {
+        Program program = loop.program;
+        BasicBlock head = program.basicBlockAt(loop.head);
+        BasicBlock latch = program.basicBlockAt(loop.latch);
+        BasicBlock guard = program.createBasicBlock();
+        BasicBlock rangeGuard = program.createBasicBlock();
+
+        int[][] copies = new int[factor][];
+        for (int i = 0; i < factor; ++i) {
+            copies[i] = loop.createBlocks();
+        }
+        BranchingInstruction exitBranch = (BranchingInstruction) program.basicBlockAt(loop.test)
+                .getLastInstruction();
+        BasicBlock continueTarget = loop.nodeSet.contains(exitBranch.getConsequent().getIndex())
+                ? exitBranch.getConsequent()
+                : exitBranch.getAlternative();
+
+        for (int i = 0; i < factor; ++i) {
+            int[] copy = copies[i];
+            BasicBlock nextHead = i + 1 < factor ? loop.copyOf(copies[i + 1], loop.head) : guard;
+            loop.copyBlocks(copy, nextHead);
+
+            BasicBlock testCopy = loop.copyOf(copy, loop.test);
+            JumpInstruction jump = new JumpInstruction();
+            jump.setTarget(continueTarget.getIndex() == loop.head
+                    ? nextHead
+                    : loop.copyOf(copy, continueTarget.getIndex()));
+            jump.setLocation(testCopy.getLastInstruction().getLocation());
+            testCopy.getLastInstruction().replace(jump);
+
+            if (i > 0) {
+                BasicBlock headCopy = loop.copyOf(copy, loop.head);
+                BasicBlock previousLatch = loop.copyOf(copies[i - 1], loop.latch);
+                for (Phi phi : head.getPhis()) {
+                    Phi phiCopy = new Phi();
+                    phiCopy.setReceiver(phi.getReceiver());
+                    addIncoming(phiCopy, previousLatch, backValue(phi, latch));
+                    headCopy.getPhis().add(phiCopy);
+                }
+            }
+        }
+
+        BasicBlock lastLatch = loop.copyOf(copies[factor - 1], loop.latch);
+        for (Phi phi : head.getPhis()) {
+            Phi guardPhi = new Phi();
+            guardPhi.setReceiver(phi.getReceiver());
+            List<Incoming> incomings = phi.getIncomings();
+            for (int i = 0; i < incomings.size(); ++i) {
+                Incoming incoming = incomings.get(i);
+                if (!loop.nodeSet.contains(incoming.getSource().getIndex())) {
+                    incomings.remove(i--);
+                    addIncoming(guardPhi, incoming.getSource(), incoming.getValue());
+                }
+            }
+            addIncoming(guardPhi, lastLatch, backValue(phi, latch));
+            guard.getPhis().add(guardPhi);
+            addIncoming(phi, guard, phi.getReceiver());
+            addIncoming(phi, rangeGuard, phi.getReceiver());
+        }
+
+        BasicBlockMapper entryMapper = new BasicBlockMapper((int block) -> block == loop.head
+                ? guard.getIndex()
+                : block);
+        for (int entry : loop.entries) {
+            program.basicBlockAt(entry).getLastInstruction().acceptVisitor(entryMapper);
+        }
+
+        Variable counter = loop.counter.getReceiver();
+        Variable comparison = compare(guard, counter, loop.bound);
+        branch(guard, comparison, BranchingCondition.GREATER_OR_EQUAL, head, rangeGuard);
+
+        BinaryInstruction remaining = new BinaryInstruction(BinaryOperation.SUBTRACT, NumericOperandType.INT);
+        remaining.setFirstOperand(loop.bound);
+        remaining.setSecondOperand(counter);
+        remaining.setReceiver(program.createVariable());
+        rangeGuard.add(remaining);
+        IntegerConstantInstruction iterations = new IntegerConstantInstruction();
+        iterations.setConstant(factor + loop.offset);
+        iterations.setReceiver(program.createVariable());
+        rangeGuard.add(iterations);
+        comparison = compare(rangeGuard, remaining.getReceiver(), iterations.getReceiver());
+        branch(rangeGuard, comparison, BranchingCondition.LESS, head, loop.copyOf(copies[0], loop.head));
+    }
+
+    private static Variable backValue(Phi phi, BasicBlock latch) {
+        for (Incoming incoming : phi.getIncomings()) {
+            if (incoming.getSource() == latch) {
+                return incoming.getValue();
+            }
+        }
+        return null;
+    }
+
+    static void addIncoming(Phi phi, BasicBlock source, Variable value) {
+        Incoming incoming = new Incoming();
+        incoming.setSource(source);
+        incoming.setValue(value);
+        phi.getIncomings().add(incoming);
+    }
+
+    static Variable compare(BasicBlock block, Variable first, Variable second) {
+        BinaryInstruction insn = new BinaryInstruction(BinaryOperation.COMPARE, NumericOperandType.INT);
+        insn.setFirstOperand(first);
+        insn.setSecondOperand(second);
+        insn.setReceiver(block.getProgram().createVariable());
+        block.add(insn);
+        return insn.getReceiver();
+    }
+
+    static void branch(BasicBlock block, Variable operand, BranchingCondition condition, BasicBlock consequent,
+            BasicBlock alternative) {
+        BranchingInstruction insn = new BranchingInstruction(condition);
+        insn.setOperand(operand);
+        insn.setConsequent(consequent);
+        insn.setAlternative(alternative);
+        block.add(insn);
+    }
+}
@@ -0,0 +1,288 @@
+/*
+ *  Copyright 2023 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.model.optimization;
+
+import com.carrotsearch.hppc.IntHashSet;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import org.teavm.model.BasicBlock;
+import org.teavm.model.Incoming;
+import org.teavm.model.Instruction;
+import org.teavm.model.MethodReader;
+import org.teavm.model.Phi;
+import org.teavm.model.Program;
+import org.teavm.model.Variable;
+import org.teavm.model.instructions.ArrayLengthInstruction;
+import org.teavm.model.instructions.AssignInstruction;
+import org.teavm.model.instructions.BoundCheckInstruction;
+import org.teavm.model.instructions.BranchingCondition;
+import org.teavm.model.instructions.BranchingInstruction;
+import org.teavm.model.instructions.JumpInstruction;
+import org.teavm.model.instructions.NullCheckInstruction;
+import org.teavm.model.util.BasicBlockMapper;
+import org.teavm.model.util.PhiUpdater;
+import org.teavm.model.util.ProgramUtils;
+
+/**
+ * Creates a fast version of a counted loop (see {@link CountedLoop}) without null and bound checks
+ * that can be proven redundant by a guard evaluated once before the loop. For example,
+ *
+ * ```
+ * while (true) {
+ *     if (i >= n) break;
+ *     a[i] = 0; // with bound checks
+ *     i = i + 1;
+ * }
+ * ```
+ *
+ * is transformed to
+ *
+ * ```
+ * if (a != null && i >= 0 && n <= a.length) {
+ *     while (true) {
+ *         if (i >= n) break;
+ *         a[i] = 0; // no bound checks
+ *         i = i + 1;
+ *     }
+ * } else {
+ *     // original loop
+ * }
+ * ```
+ *
+ * Null checks of values defined outside of the loop, as well as bound checks of arrays defined outside of the loop
+ * indexed by the loop counter are eliminated this way.
+ */
+public class LoopVersioning implements MethodOptimization {
+    private static final int MAX_LOOP_SIZE = 128;
+
+    @Override
+    public boolean optimize(MethodOptimizationContext context, Program program) {
+        List<CountedLoop> loops = CountedLoop.find(program);
+        if (loops.isEmpty()) {
+            return false;
+        }
+        BasicBlock[] definitionPlaces = ProgramUtils.getVariableDefinitionPlaces(program);
+        IntHashSet affectedNodes = new IntHashSet();
+        boolean changed = false;
+        for (CountedLoop loop : loops) {
+            if (loop.size > MAX_LOOP_SIZE || LoopUnrolling.intersects(loop.entries, affectedNodes)) {
+                continue;
+            }
+            Guard guard = new Guard(loop, definitionPlaces);
+            for (int node : loop.nodes) {
+                for (Instruction insn : program.basicBlockAt(node)) {
+                    guard.check(node, insn, false);
+                }
+            }
+            if (guard.removedChecks == 0) {
+                continue;
+            }
+            createFastVersion(loop, guard);
+            affectedNodes.addAll(loop.nodes);
+            changed = true;
+        }
+
+        if (changed) {
+            MethodReader method = context.getMethod();
+            Variable[] inputs = new Variable[method.parameterCount() + 1];
+            for (int i = 0; i < inputs.length; ++i) {
+                inputs[i] = program.variableAt(i);
+            }
+            new PhiUpdater().updatePhis(program, inputs);
+        }
+        return changed;
+    }
+
+    private void createFastVersion(CountedLoop loop, Guard guard) {
+        Program program = loop.program;
+        BasicBlock head = program.basicBlockAt(loop.head);
+        BasicBlock latch = program.basicBlockAt(loop.latch);
+        BasicBlock test = program.basicBlockAt(loop.test);
+
+        int[] fast = loop.createBlocks();
+        BasicBlock fastHead = loop.copyOf(fast, loop.head);
+        loop.copyBlocks(fast, fastHead);
+        for (int i = 0; i < fast.length; ++i) {
+            List<Instruction> instructions = new ArrayList<>();
+            program.basicBlockAt(fast[i]).forEach(instructions::add);
+            for (Instruction insn : instructions) {
+                guard.check(loop.nodes[i], insn, true);
+            }
+        }
+
+        BranchingInstruction exitBranch = (BranchingInstruction) test.getLastInstruction();
+        BasicBlock exit = loop.nodeSet.contains(exitBranch.getConsequent().getIndex())
+                ? exitBranch.getAlternative()
+                : exitBranch.getConsequent();
+        for (Phi phi : exit.getPhis()) {
+            for (Incoming incoming : phi.getIncomings().toArray(new Incoming[0])) {
+                if (incoming.getSource() == test) {
+                    LoopUnrolling.addIncoming(phi, loop.copyOf(fast, loop.test), incoming.getValue());
+                }
+            }
+        }
+
+        BasicBlock entry = program.createBasicBlock();
+        for (Phi phi : head.getPhis()) {
+            Phi entryPhi = new Phi();
+            entryPhi.setReceiver(phi.getReceiver());
+            Phi fastPhi = new Phi();
+            fastPhi.setReceiver(phi.getReceiver());
+            List<Incoming> incomings = phi.getIncomings();
+            for (int i = 0; i < incomings.size(); ++i) {
+                Incoming incoming = incomings.get(i);
+                if (incoming.getSource() == latch) {
+                    LoopUnrolling.addIncoming(fastPhi, loop.copyOf(fast, loop.latch), incoming.getValue());
+                } else {
+                    incomings.remove(i--);
+                    LoopUnrolling.addIncoming(entryPhi, incoming.getSource(), incoming.getValue());
+                }
+            }
+            entry.getPhis().add(entryPhi);
+            fastHead.getPhis().add(fastPhi);
+        }
+        for (int entryNode : loop.entries) {
+            program.basicBlockAt(entryNode).getLastInstruction().acceptVisitor(
+                    new BasicBlockMapper((int block) -> block == loop.head
+                            ? entry.getIndex()
+                            : block));
+        }
+
+        List<BasicBlock> slowPathSources = new ArrayList<>();
+        BasicBlock current = entry;
+        Variable counter = loop.counter.getReceiver();
+        for (Variable value : guard.nonNullValues) {
+            current = addCondition(current, value, BranchingCondition.NULL, head, slowPathSources);
+        }
+        if (guard.nonNegativeCounter) {
+            current = addCondition(current, counter, BranchingCondition.LESS, head, slowPathSources);
+        }
+        if (loop.offset > 0 && (guard.nonNegativeCounter || !guard.boundedArrays.isEmpty())) {
+            Variable comparison = LoopUnrolling.compare(current, counter, loop.bound);
+            current = addCondition(current, comparison, BranchingCondition.GREATER_OR_EQUAL, head,
+                    slowPathSources);
+        }
+        for (Variable array : guard.boundedArrays) {
+            ArrayLengthInstruction length = new ArrayLengthInstruction();
+            length.setArray(array);
+            length.setReceiver(program.createVariable());
+            current.add(length);
+            Variable comparison = LoopUnrolling.compare(current, loop.bound, length.getReceiver());
+            current = addCondition(current, comparison, BranchingCondition.GREATER, head, slowPathSources);
+        }
+        JumpInstruction jumpToFastVersion = new JumpInstruction();
+        jumpToFastVersion.setTarget(fastHead);
+        current.add(jumpToFastVersion);
+        for (Phi phi : fastHead.getPhis()) {
+            LoopUnrolling.addIncoming(phi, current, phi.getReceiver());
+        }
+
+        for (Phi phi : head.getPhis()) {
+            for (BasicBlock source : slowPathSources) {
+                LoopUnrolling.addIncoming(phi, source, phi.getReceiver());
+            }
+        }
+    }
+
+    private BasicBlock addCondition(BasicBlock block, Variable operand, BranchingCondition condition,
+            BasicBlock slowPath, List<BasicBlock> slowPathSources) {
+        BasicBlock next = block.getProgram().createBasicBlock();
+        LoopUnrolling.branch(block, operand, condition, slowPath, next);
+        slowPathSources.add(block);
+        return next;
+    }
+
+    static class Guard {
+        private final CountedLoop loop;
+        private final BasicBlock[] definitionPlaces;
+        final Set<Variable> nonNullValues = new LinkedHashSet<>();
+        final Set<Variable> boundedArrays = new LinkedHashSet<>();
+        boolean nonNegativeCounter;
+        int removedChecks;
+
+        Guard(CountedLoop loop, BasicBlock[] definitionPlaces) {
+            this.loop = loop;
+            this.definitionPlaces = definitionPlaces;
+        }
+
+        /**
+         * Finds out whether check can be eliminated in the fast version. When {@code remove} is false,
+         * collects conditions that the guard should test, otherwise eliminates the check.
+         */
+        void check(int node, Instruction insn, boolean remove) {
+            if (insn instanceof NullCheckInstruction) {
+                NullCheckInstruction nullCheck = (NullCheckInstruction) insn;
+                if (!loop.isInvariant(nullCheck.getValue(), definitionPlaces)) {
+                    return;
+                }
+                if (remove) {
+                    replaceWithAssignment(insn, nullCheck.getReceiver(), nullCheck.getValue());
+                } else {
+                    nonNullValues.add(nullCheck.getValue());
+                    removedChecks++;
+                }
+            } else if (insn instanceof BoundCheckInstruction) {
+                BoundCheckInstruction boundCheck = (BoundCheckInstruction) insn;
+                if (boundCheck.getIndex() != loop.counter.getReceiver()) {
+                    return;
+                }
+                boolean lower = boundCheck.isLower();
+                boolean upper = boundCheck.getArray() != null && isUpperBoundKnown(node)
+                        && loop.isInvariant(boundCheck.getArray(), definitionPlaces);
+                if (!lower && !upper) {
+                    return;
+                }
+                if (remove) {
+                    if (upper) {
+                        boundCheck.setArray(null);
+                    }
+                    boundCheck.setLower(false);
+                    if (boundCheck.getArray() == null) {
+                        replaceWithAssignment(insn, boundCheck.getReceiver(), boundCheck.getIndex());
+                    }
+                } else {
+                    if (lower) {
+                        nonNegativeCounter = true;
+                    }
+                    if (upper) {
+                        nonNullValues.add(boundCheck.getArray());
+                        boundedArrays.add(boundCheck.getArray());
+                    }
+                    removedChecks++;
+                }
+            }
+        }
+
+        /**
+         * At the beginning of each iteration counter is less than bound, either because it was tested
+         * on previous iteration (when incremented counter is compared), or the test precedes the check
+         * on the current iteration. In the former case the guard checks the initial value against the bound.
+         */
+        private boolean isUpperBoundKnown(int node) {
+            return loop.offset > 0 || (node != loop.test && loop.dom.dominates(loop.test, node));
+        }
+
+        private void replaceWithAssignment(Instruction insn, Variable receiver, Variable value) {
+            AssignInstruction assign = new AssignInstruction();
+            assign.setAssignee(value);
+            assign.setReceiver(receiver);
+            assign.setLocation(insn.getLocation());
+            insn.replace(assign);
+        }
+    }
+}
@@ -0,0 +1,291 @@
+/*
+ *  Copyright 2023 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.model.optimization;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import org.teavm.dependency.DependencyAnalyzer;
+import org.teavm.dependency.DependencyNode;
+import org.teavm.dependency.MethodDependency;
+import org.teavm.model.BasicBlock;
+import org.teavm.model.ClassHolder;
+import org.teavm.model.Incoming;
+import org.teavm.model.Instruction;
+import org.teavm.model.ListableClassHolderSource;
+import org.teavm.model.MethodDescriptor;
+import org.teavm.model.MethodHolder;
+import org.teavm.model.MethodReference;
+import org.teavm.model.Phi;
+import org.teavm.model.Program;
+import org.teavm.model.Variable;
+import org.teavm.model.instructions.AssignInstruction;
+import org.teavm.model.instructions.CastInstruction;
+import org.teavm.model.instructions.InvocationType;
+import org.teavm.model.instructions.InvokeInstruction;
+import org.teavm.model.instructions.NullCheckInstruction;
+import org.teavm.model.util.ModelUtils;
+import org.teavm.model.util.ProgramUtils;
+import org.teavm.runtime.Fiber;
+
+/**
+ * Clones methods for call sites that pass arguments of exactly known classes. For example, when
+ * a generic sorting method is called with a comparator that, according to dependency analysis, is always
+ * an instance of the same class, a copy of sorting method is created, where calls to comparator
+ * are direct and can be inlined later. Calls to other methods that receive such arguments are specialized
+ * recursively. Total size of created methods is limited by {@link #setCodeSizeBudget(int)}.
+ *
+ * This optimization must run before {@link DependencyAnalyzer#cleanupTypes()}. Created methods are registered
+ * in dependency analyzer as copies of original methods.
+ */
+public class Specialization {
+    private static final int MAX_METHOD_SIZE = 400;
+    private static final int MAX_DEPTH = 3;
+    private static final int MAX_SPECIALIZATIONS_PER_METHOD = 4;
+    private DependencyAnalyzer dependencyAnalyzer;
+    private ListableClassHolderSource classes;
+    private int codeSizeBudget = 10000;
+    private int usedCodeSize;
+    private Map<String, MethodReference> specializations = new HashMap<>();
+    private Map<MethodReference, Integer> specializationCounts = new HashMap<>();
+    private int specializedMethods;
+    private int specializedCallSites;
+
+    public Specialization(DependencyAnalyzer dependencyAnalyzer, ListableClassHolderSource classes) {
+        this.dependencyAnalyzer = dependencyAnalyzer;
+        this.classes = classes;
+    }
+
+    public int getCodeSizeBudget() {
+        return codeSizeBudget;
+    }
+
+    /**
+     * Sets maximum total number of instructions in created methods.
+     */
+    public void setCodeSizeBudget(int codeSizeBudget) {
+        this.codeSizeBudget = codeSizeBudget;
+    }
+
+    public int getSpecializedMethods() {
+        return specializedMethods;
+    }
+
+    public int getSpecializedCallSites() {
+        return specializedCallSites;
+    }
+
+    public void apply() {
+        List<MethodHolder> methods = new ArrayList<>();
+        for (String className : classes.getClassNames()) {
+            for (MethodHolder method : classes.get(className).getMethods()) {
+                if (method.getProgram() != null) {
+                    methods.add(method);
+                }
+            }
+        }
+
+        for (MethodHolder method : methods) {
+            MethodDependency methodDep = dependencyAnalyzer.getMethod(method.getReference());
+            if (methodDep == null) {
+                continue;
+            }
+            List<MethodReference> calledMethods = new ArrayList<>();
+            applyToProgram(method.getProgram(), var -> getExactType(methodDep, var), 0, calledMethods);
+            for (MethodReference calledMethod : calledMethods) {
+                dependencyAnalyzer.addCall(method.getReference(), calledMethod);
+            }
+        }
+    }
+
+    private boolean applyToProgram(Program program, Function<Variable, String> exactTypes, int depth,
+            List<MethodReference> calledMethods) {
+        boolean changed = false;
+        for (BasicBlock block : program.getBasicBlocks()) {
+            for (Instruction insn : block) {
+                if (!(insn instanceof InvokeInstruction)) {
+                    continue;
+                }
+                InvokeInstruction invoke = (InvokeInstruction) insn;
+                if (invoke.getType() == InvocationType.VIRTUAL) {
+                    if (depth > 0 && devirtualize(invoke, exactTypes.apply(invoke.getInstance()))) {
+                        changed = true;
+                    }
+                    continue;
+                }
+
+                String[] types = new String[invoke.getMethod().parameterCount() + 1];
+                boolean hasExactTypes = false;
+                if (invoke.getInstance() != null) {
+                    types[0] = exactTypes.apply(invoke.getInstance());
+                    hasExactTypes = types[0] != null;
+                }
+                for (int i = 0; i < invoke.getArguments().size(); ++i) {
+                    types[i + 1] = exactTypes.apply(invoke.getArguments().get(i));
+                    hasExactTypes |= types[i + 1] != null;
+                }
+                if (!hasExactTypes) {
+                    continue;
+                }
+
+                MethodReference specialization = specialize(invoke.getMethod(), types, depth);
+                if (specialization != null) {
+                    invoke.setMethod(specialization);
+                    calledMethods.add(specialization);
+                    specializedCallSites++;
+                    changed = true;
+                }
+            }
+        }
+        return changed;
+    }
+
+    private boolean devirtualize(InvokeInstruction invoke, String type) {
+        if (type == null) {
+            return false;
+        }
+        MethodDependency implementation = dependencyAnalyzer.getMethodImplementation(new MethodReference(
+                type, invoke.getMethod().getDescriptor()));
+        if (implementation == null) {
+            return false;
+        }
+        invoke.setType(InvocationType.SPECIAL);
+        invoke.setMethod(implementation.getReference());
+        return true;
+    }
+
+    private MethodReference specialize(MethodReference method, String[] types, int depth) {
+        if (depth >= MAX_DEPTH || method.getName().equals("<init>") || method.getName().equals("<clinit>")
+                || method.getClassName().equals(Fiber.class.getName())) {
+            return null;
+        }
+        ClassHolder cls = classes.get(method.getClassName());
+        MethodHolder original = cls != null ? cls.getMethod(method.getDescriptor()) : null;
+        if (original == null || original.getProgram() == null || dependencyAnalyzer.getMethod(method) == null) {
+            return null;
+        }
+
+        String key = method + Arrays.toString(types);
+        if (specializations.containsKey(key)) {
+            return specializations.get(key);
+        }
+        // Prevents infinite recursion; also, remembers that method can't be specialized
+        specializations.put(key, null);
+
+        int size = getSize(original.getProgram());
+        if (size > MAX_METHOD_SIZE || usedCodeSize + size > codeSizeBudget
+                || specializationCounts.getOrDefault(method, 0) >= MAX_SPECIALIZATIONS_PER_METHOD) {
+            return null;
+        }
+
+        Program program = ProgramUtils.copy(original.getProgram());
+        String[] exactTypes = new String[program.variableCount()];
+        System.arraycopy(types, 0, exactTypes, 0, Math.min(types.length, exactTypes.length));
+        propagateExactTypes(program, exactTypes);
+        List<MethodReference> calledMethods = new ArrayList<>();
+        if (!applyToProgram(program, var -> exactTypes[var.getIndex()], depth + 1, calledMethods)) {
+            return null;
+        }
+
+        int index = specializationCounts.merge(method, 1, Integer::sum);
+        MethodDescriptor descriptor;
+        do {
+            descriptor = new MethodDescriptor(method.getName() + "$spec" + index++, method.getSignature());
+        } while (cls.getMethod(descriptor) != null);
+        MethodHolder specialization = new MethodHolder(descriptor);
+        specialization.setLevel(original.getLevel());
+        specialization.getModifiers().addAll(original.getModifiers());
+        ModelUtils.copyAnnotations(original.getAnnotations(), specialization.getAnnotations());
+        specialization.setProgram(program);
+        cls.addMethod(specialization);
+
+        usedCodeSize += size;
+        specializedMethods++;
+        dependencyAnalyzer.addMethodCopy(method, specialization.getReference());
+        for (MethodReference calledMethod : calledMethods) {
+            dependencyAnalyzer.addCall(specialization.getReference(), calledMethod);
+        }
+        specializations.put(key, specialization.getReference());
+        return specialization.getReference();
+    }
+
+    private static void propagateExactTypes(Program program, String[] exactTypes) {
+        boolean changed;
+        do {
+            changed = false;
+            for (BasicBlock block : program.getBasicBlocks()) {
+                for (Phi phi : block.getPhis()) {
+                    String type = null;
+                    for (Incoming incoming : phi.getIncomings()) {
+                        String incomingType = exactTypes[incoming.getValue().getIndex()];
+                        if (incomingType == null || (type != null && !type.equals(incomingType))) {
+                            type = null;
+                            break;
+                        }
+                        type = incomingType;
+                    }
+                    changed |= setExactType(exactTypes, phi.getReceiver(), type);
+                }
+                for (Instruction insn : block) {
+                    if (insn instanceof AssignInstruction) {
+                        AssignInstruction assign = (AssignInstruction) insn;
+                        changed |= setExactType(exactTypes, assign.getReceiver(),
+                                exactTypes[assign.getAssignee().getIndex()]);
+                    } else if (insn instanceof NullCheckInstruction) {
+                        NullCheckInstruction nullCheck = (NullCheckInstruction) insn;
+                        changed |= setExactType(exactTypes, nullCheck.getReceiver(),
+                                exactTypes[nullCheck.getValue().getIndex()]);
+                    } else if (insn instanceof CastInstruction) {
+                        CastInstruction cast = (CastInstruction) insn;
+                        changed |= setExactType(exactTypes, cast.getReceiver(),
+                                exactTypes[cast.getValue().getIndex()]);
+                    }
+                }
+            }
+        } while (changed);
+    }
+
+    private static boolean setExactType(String[] exactTypes, Variable variable, String type) {
+        if (type == null || exactTypes[variable.getIndex()] != null) {
+            return false;
+        }
+        exactTypes[variable.getIndex()] = type;
+        return true;
+    }
+
+    private static String getExactType(MethodDependency methodDep, Variable variable) {
+        if (variable.getIndex() >= methodDep.getVariableCount()) {
+            return null;
+        }
+        DependencyNode node = methodDep.getVariable(variable.getIndex());
+        if (node == null) {
+            return null;
+        }
+        String[] types = node.getTypes();
+        return types.length == 1 && !types[0].startsWith("[") ? types[0] : null;
+    }
+
+    private static int getSize(Program program) {
+        int size = 0;
+        for (BasicBlock block : program.getBasicBlocks()) {
+            size += block.instructionCount();
+        }
+        return size;
+    }
+}
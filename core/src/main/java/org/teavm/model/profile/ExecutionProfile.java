@@ -0,0 +1,177 @@
+/*
+ *  Copyright 2023 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.model.profile;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import org.teavm.model.MethodReference;
+import org.teavm.runtime.ExecutionProfiler;
+
+/**
+ * <p>Runtime profile collected by a program instrumented with {@link ProfileInstrumentation}.</p>
+ *
+ * <p>Call sites and branches are identified by the method that contains them and by ordinal number.
+ * Ordinal of a virtual call site is the number of preceding virtual invocations of the same method
+ * in the same caller, ordinal of a branch is the number of preceding conditional jumps. Both are counted
+ * in order of basic blocks and instructions, as they come after parsing a class file.</p>
+ */
+public class ExecutionProfile {
+    private static final int HOT_METHOD_RATIO = 1000;
+    private Map<MethodReference, Long> invocationCounts = new HashMap<>();
+    private long totalInvocations;
+    private Map<Site, Map<String, Long>> receiverCounts = new HashMap<>();
+    private Map<Site, long[]> branchCounts = new HashMap<>();
+
+    /**
+     * Reads counters printed by {@link ExecutionProfiler#dump()}. Lines that don't contain counters are ignored,
+     * so output of an application can be passed as is. Counters of several runs are summed up.
+     */
+    public void load(Reader reader) throws IOException {
+        BufferedReader lines = new BufferedReader(reader);
+        while (true) {
+            String line = lines.readLine();
+            if (line == null) {
+                break;
+            }
+            int index = line.indexOf(ExecutionProfiler.OUTPUT_PREFIX);
+            if (index >= 0) {
+                parseCounter(line.substring(index + ExecutionProfiler.OUTPUT_PREFIX.length()).trim().split(" "));
+            }
+        }
+    }
+
+    private void parseCounter(String[] parts) {
+        try {
+            switch (parts[0]) {
+                case "m":
+                    if (parts.length == 3) {
+                        addInvocations(MethodReference.parse(parts[1]), Long.parseLong(parts[2]));
+                    }
+                    break;
+                case "r":
+                    if (parts.length == 6) {
+                        addReceiver(MethodReference.parse(parts[1]), Integer.parseInt(parts[2]),
+                                MethodReference.parse(parts[3]), parts[4], Long.parseLong(parts[5]));
+                    }
+                    break;
+                case "b":
+                    if (parts.length == 5) {
+                        addBranch(MethodReference.parse(parts[1]), Integer.parseInt(parts[2]),
+                                parts[3].equals("1"), Long.parseLong(parts[4]));
+                    }
+                    break;
+            }
+        } catch (IllegalArgumentException e) {
+            // Line is corrupted, ignore it
+        }
+    }
+
+    public void addInvocations(MethodReference method, long count) {
+        invocationCounts.merge(method, count, Long::sum);
+        totalInvocations += count;
+    }
+
+    public void addReceiver(MethodReference caller, int ordinal, MethodReference callee, String className,
+            long count) {
+        receiverCounts.computeIfAbsent(new Site(caller, ordinal, callee), k -> new LinkedHashMap<>())
+                .merge(className, count, Long::sum);
+    }
+
+    public void addBranch(MethodReference method, int ordinal, boolean taken, long count) {
+        long[] counts = branchCounts.computeIfAbsent(new Site(method, ordinal, null), k -> new long[2]);
+        counts[taken ? 0 : 1] += count;
+    }
+
+    public boolean isEmpty() {
+        return totalInvocations == 0;
+    }
+
+    public long getInvocationCount(MethodReference method) {
+        return invocationCounts.getOrDefault(method, 0L);
+    }
+
+    /**
+     * Tells whether method takes noticeable share of all invocations, i.e. at least one per
+     * {@value #HOT_METHOD_RATIO}.
+     */
+    public boolean isHot(MethodReference method) {
+        long count = getInvocationCount(method);
+        return count > 0 && count * HOT_METHOD_RATIO >= totalInvocations;
+    }
+
+    /**
+     * Tells whether method was never called while profile was collected. Always returns {@code false}
+     * for an empty profile.
+     */
+    public boolean isCold(MethodReference method) {
+        return !isEmpty() && getInvocationCount(method) == 0;
+    }
+
+    /**
+     * Gets numbers of times each class was observed as a receiver at given virtual call site.
+     *
+     * @return map from class name to number of calls, empty if call site was never executed.
+     */
+    public Map<String, Long> getReceiverCounts(MethodReference caller, int ordinal, MethodReference callee) {
+        Map<String, Long> result = receiverCounts.get(new Site(caller, ordinal, callee));
+        return result != null ? Collections.unmodifiableMap(result) : Collections.emptyMap();
+    }
+
+    /**
+     * Gets number of times given conditional jump was taken and not taken.
+     *
+     * @return two-element array, or {@code null} if branch was never executed.
+     */
+    public long[] getBranchCounts(MethodReference method, int ordinal) {
+        long[] result = branchCounts.get(new Site(method, ordinal, null));
+        return result != null ? result.clone() : null;
+    }
+
+    static final class Site {
+        final MethodReference method;
+        final int ordinal;
+        final MethodReference callee;
+
+        Site(MethodReference method, int ordinal, MethodReference callee) {
+            this.method = method;
+            this.ordinal = ordinal;
+            this.callee = callee;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Site)) {
+                return false;
+            }
+            Site that = (Site) o;
+            return method.equals(that.method) && ordinal == that.ordinal && Objects.equals(callee, that.callee);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(method, ordinal, callee);
+        }
+    }
+}
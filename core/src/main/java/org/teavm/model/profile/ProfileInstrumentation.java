@@ -0,0 +1,209 @@
+/*
+ *  Copyright 2023 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.model.profile;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.teavm.interop.Unmanaged;
+import org.teavm.model.BasicBlock;
+import org.teavm.model.ClassHierarchy;
+import org.teavm.model.ClassHolder;
+import org.teavm.model.ClassHolderTransformer;
+import org.teavm.model.ClassHolderTransformerContext;
+import org.teavm.model.Incoming;
+import org.teavm.model.Instruction;
+import org.teavm.model.MethodDescriptor;
+import org.teavm.model.MethodHolder;
+import org.teavm.model.MethodReference;
+import org.teavm.model.Phi;
+import org.teavm.model.Program;
+import org.teavm.model.TextLocation;
+import org.teavm.model.Variable;
+import org.teavm.model.instructions.BinaryBranchingInstruction;
+import org.teavm.model.instructions.BranchingInstruction;
+import org.teavm.model.instructions.ExitInstruction;
+import org.teavm.model.instructions.InvocationType;
+import org.teavm.model.instructions.InvokeInstruction;
+import org.teavm.model.instructions.JumpInstruction;
+import org.teavm.model.instructions.StringConstantInstruction;
+import org.teavm.runtime.ExecutionProfiler;
+
+/**
+ * Inserts probes that count method invocations, receiver classes at virtual call sites and outcomes
+ * of conditional jumps, see {@link ExecutionProfile} for how they are identified. Since probes are inserted
+ * before dependency analysis, they work the same way for all backends.
+ */
+public class ProfileInstrumentation implements ClassHolderTransformer {
+    private static final MethodReference COUNT_METHOD = new MethodReference(ExecutionProfiler.class, "count",
+            String.class, void.class);
+    private static final MethodReference RECEIVER_METHOD = new MethodReference(ExecutionProfiler.class,
+            "receiver", String.class, Object.class, void.class);
+    private static final MethodReference DUMP_METHOD = new MethodReference(ExecutionProfiler.class, "dump",
+            void.class);
+    private static final MethodDescriptor MAIN_METHOD = new MethodDescriptor("main", String[].class, void.class);
+    private static final String JS_OBJECT = "org.teavm.jso.JSObject";
+    private static final String[] EXCLUDED_PACKAGES = { "org.teavm.runtime.", "org.teavm.interop.",
+            "org.teavm.backend.", "org.teavm.jso." };
+    private final String mainClass;
+
+    /**
+     * @param mainClass class whose {@code main} method dumps counters on exit, or {@code null}
+     *                  if application calls {@link ExecutionProfiler#dump()} itself.
+     */
+    public ProfileInstrumentation(String mainClass) {
+        this.mainClass = mainClass;
+    }
+
+    @Override
+    public void transformClass(ClassHolder cls, ClassHolderTransformerContext context) {
+        if (!isInstrumented(cls)) {
+            return;
+        }
+        for (MethodHolder method : cls.getMethods()) {
+            if (method.getProgram() != null && method.getProgram().basicBlockCount() > 0
+                    && method.getAnnotations().get(Unmanaged.class.getName()) == null) {
+                instrument(method, context.getHierarchy());
+            }
+        }
+    }
+
+    private static boolean isInstrumented(ClassHolder cls) {
+        for (String excludedPackage : EXCLUDED_PACKAGES) {
+            if (cls.getName().startsWith(excludedPackage)) {
+                return false;
+            }
+        }
+        return cls.getAnnotations().get(Unmanaged.class.getName()) == null;
+    }
+
+    private void instrument(MethodHolder method, ClassHierarchy hierarchy) {
+        Program program = method.getProgram();
+        MethodReference methodRef = method.getReference();
+
+        List<InvokeInstruction> virtualCalls = new ArrayList<>();
+        List<Instruction> branches = new ArrayList<>();
+        List<ExitInstruction> exits = new ArrayList<>();
+        for (int i = 0; i < program.basicBlockCount(); ++i) {
+            for (Instruction instruction : program.basicBlockAt(i)) {
+                if (instruction instanceof InvokeInstruction) {
+                    InvokeInstruction invoke = (InvokeInstruction) instruction;
+                    if (invoke.getType() == InvocationType.VIRTUAL && invoke.getInstance() != null) {
+                        virtualCalls.add(invoke);
+                    }
+                } else if (instruction instanceof BranchingInstruction
+                        || instruction instanceof BinaryBranchingInstruction) {
+                    branches.add(instruction);
+                } else if (instruction instanceof ExitInstruction) {
+                    exits.add((ExitInstruction) instruction);
+                }
+            }
+        }
+
+        Map<MethodReference, Integer> callOrdinals = new HashMap<>();
+        for (InvokeInstruction invoke : virtualCalls) {
+            MethodReference callee = invoke.getMethod();
+            int ordinal = callOrdinals.merge(callee, 1, Integer::sum) - 1;
+            if (hierarchy.isSuperType(JS_OBJECT, callee.getClassName(), false)) {
+                continue;
+            }
+            Variable key = createKey(program, invoke, "r " + methodRef + " " + ordinal + " " + callee);
+            InvokeInstruction probe = createProbe(RECEIVER_METHOD, invoke.getLocation(), key, invoke.getInstance());
+            invoke.insertPrevious(probe);
+        }
+
+        for (int i = 0; i < branches.size(); ++i) {
+            Instruction branch = branches.get(i);
+            String key = "b " + methodRef + " " + i;
+            if (branch instanceof BranchingInstruction) {
+                BranchingInstruction branching = (BranchingInstruction) branch;
+                if (branching.getConsequent() != branching.getAlternative()) {
+                    branching.setConsequent(instrumentEdge(program, branch, branching.getConsequent(),
+                            key + " 1"));
+                    branching.setAlternative(instrumentEdge(program, branch, branching.getAlternative(),
+                            key + " 0"));
+                }
+            } else {
+                BinaryBranchingInstruction branching = (BinaryBranchingInstruction) branch;
+                if (branching.getConsequent() != branching.getAlternative()) {
+                    branching.setConsequent(instrumentEdge(program, branch, branching.getConsequent(),
+                            key + " 1"));
+                    branching.setAlternative(instrumentEdge(program, branch, branching.getAlternative(),
+                            key + " 0"));
+                }
+            }
+        }
+
+        if (methodRef.getClassName().equals(mainClass) && methodRef.getDescriptor().equals(MAIN_METHOD)) {
+            for (ExitInstruction exit : exits) {
+                exit.insertPrevious(createProbe(DUMP_METHOD, exit.getLocation()));
+            }
+        }
+
+        BasicBlock entry = program.basicBlockAt(0);
+        StringConstantInstruction methodKey = new StringConstantInstruction();
+        methodKey.setConstant("m " + methodRef);
+        methodKey.setReceiver(program.createVariable());
+        entry.addFirst(methodKey);
+        methodKey.insertNext(createProbe(COUNT_METHOD, null, methodKey.getReceiver()));
+    }
+
+    private BasicBlock instrumentEdge(Program program, Instruction branch, BasicBlock target, String key) {
+        BasicBlock source = branch.getBasicBlock();
+        BasicBlock edge = program.createBasicBlock();
+
+        StringConstantInstruction keyInsn = new StringConstantInstruction();
+        keyInsn.setConstant(key);
+        keyInsn.setReceiver(program.createVariable());
+        keyInsn.setLocation(branch.getLocation());
+        edge.add(keyInsn);
+        edge.add(createProbe(COUNT_METHOD, branch.getLocation(), keyInsn.getReceiver()));
+
+        JumpInstruction jump = new JumpInstruction();
+        jump.setTarget(target);
+        jump.setLocation(branch.getLocation());
+        edge.add(jump);
+
+        for (Phi phi : target.getPhis()) {
+            for (Incoming incoming : phi.getIncomings()) {
+                if (incoming.getSource() == source) {
+                    incoming.setSource(edge);
+                }
+            }
+        }
+        return edge;
+    }
+
+    private static Variable createKey(Program program, Instruction before, String key) {
+        StringConstantInstruction insn = new StringConstantInstruction();
+        insn.setConstant(key);
+        insn.setReceiver(program.createVariable());
+        insn.setLocation(before.getLocation());
+        before.insertPrevious(insn);
+        return insn.getReceiver();
+    }
+
+    private static InvokeInstruction createProbe(MethodReference method, TextLocation location,
+            Variable... arguments) {
+        InvokeInstruction probe = new InvokeInstruction();
+        probe.setType(InvocationType.SPECIAL);
+        probe.setMethod(method);
+        probe.setArguments(arguments);
+        probe.setLocation(location);
+        return probe;
+    }
+}
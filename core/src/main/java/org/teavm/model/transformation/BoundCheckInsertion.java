@@ -19,16 +19,20 @@ import com.carrotsearch.hppc.IntArrayList;
 import com.carrotsearch.hppc.IntHashSet;
 import com.carrotsearch.hppc.IntSet;
 import com.carrotsearch.hppc.cursors.IntCursor;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import org.teavm.common.Graph;
 import org.teavm.model.BasicBlock;
+import org.teavm.model.Incoming;
 import org.teavm.model.Instruction;
 import org.teavm.model.MethodReference;
+import org.teavm.model.Phi;
 import org.teavm.model.Program;
 import org.teavm.model.Variable;
 import org.teavm.model.instructions.AbstractInstructionVisitor;
 import org.teavm.model.instructions.ArrayLengthInstruction;
 import org.teavm.model.instructions.AssignInstruction;
-import org.teavm.model.instructions.BinaryBranchingInstruction;
 import org.teavm.model.instructions.BinaryInstruction;
 import org.teavm.model.instructions.BinaryOperation;
 import org.teavm.model.instructions.BoundCheckInstruction;
@@ -36,12 +40,12 @@ import org.teavm.model.instructions.BranchingInstruction;
 import org.teavm.model.instructions.ConstructArrayInstruction;
 import org.teavm.model.instructions.GetElementInstruction;
 import org.teavm.model.instructions.IntegerConstantInstruction;
-import org.teavm.model.instructions.JumpInstruction;
 import org.teavm.model.instructions.NumericOperandType;
 import org.teavm.model.instructions.PutElementInstruction;
 import org.teavm.model.instructions.UnwrapArrayInstruction;
 import org.teavm.model.util.DominatorWalker;
 import org.teavm.model.util.DominatorWalkerCallback;
+import org.teavm.model.util.DominatorWalkerContext;
 import org.teavm.model.util.PhiUpdater;
 
 public class BoundCheckInsertion {
@@ -50,8 +54,21 @@ public class BoundCheckInsertion {
             return;
         }
 
-        InsertionVisitor visitor = new InsertionVisitor(program.variableCount());
-        new DominatorWalker(program).walk(visitor);
+        DominatorWalker walker = new DominatorWalker(program);
+        InductionVariables inductionVariables = new InductionVariables(program);
+        if (inductionVariables.hasCandidates()) {
+            while (true) {
+                InsertionVisitor verifier = new InsertionVisitor(program.variableCount(), inductionVariables, true);
+                walker.walk(verifier);
+                if (!verifier.assumptionViolated) {
+                    break;
+                }
+                inductionVariables.refine();
+            }
+        }
+
+        InsertionVisitor visitor = new InsertionVisitor(program.variableCount(), inductionVariables, false);
+        walker.walk(visitor);
         if (visitor.changed) {
             new PhiUpdater().updatePhis(program, methodReference.parameterCount() + 1);
         }
@@ -61,6 +78,10 @@ public class BoundCheckInsertion {
             implements DominatorWalkerCallback<BlockBounds> {
         BlockBounds bounds;
         boolean changed;
+        boolean assumptionViolated;
+        private InductionVariables inductionVariables;
+        private boolean dryRun;
+        private Graph cfg;
         private boolean[] isConstant;
         private boolean[] isConstantSizedArray;
         private int[] constantValue;
@@ -71,12 +92,13 @@ public class BoundCheckInsertion {
         private int[] arrayLengthReverseVars;
         private int[] comparisonLeft;
         private int[] comparisonRight;
-        private int conditionBlock;
-        private int comparisonValue;
-        private int comparisonVariable;
-        private ComparisonMode comparisonMode;
+        private ComparisonMode[] blockComparisonMode;
+        private int[] blockComparisonValue;
+        private int[] blockComparisonVariable;
 
-        InsertionVisitor(int variableCount) {
+        InsertionVisitor(int variableCount, InductionVariables inductionVariables, boolean dryRun) {
+            this.inductionVariables = inductionVariables;
+            this.dryRun = dryRun;
             isConstant = new boolean[variableCount];
             isConstantSizedArray = new boolean[variableCount];
             constantValue = new int[variableCount];
@@ -92,19 +114,39 @@ public class BoundCheckInsertion {
             comparisonLeft = new int[variableCount];
             Arrays.fill(comparisonLeft, -1);
             comparisonRight = new int[variableCount];
+
+            for (int i = 0; i < variableCount; ++i) {
+                if (inductionVariables.isIncreasing(i)) {
+                    nonNegative[i] = true;
+                } else if (inductionVariables.isDecreasing(i)) {
+                    upperArrayLengths[i] = IntHashSet.from(inductionVariables.getBoundingArray(i));
+                }
+            }
+        }
+
+        @Override
+        public void setContext(DominatorWalkerContext context) {
+            cfg = context.getControlFlowGraph();
+            blockComparisonMode = new ComparisonMode[cfg.size()];
+            blockComparisonValue = new int[cfg.size()];
+            blockComparisonVariable = new int[cfg.size()];
         }
 
         @Override
         public BlockBounds visit(BasicBlock block) {
             bounds = new BlockBounds();
 
-            if (comparisonMode != null && conditionBlock == block.getIndex()) {
+            // A fact derived from a branch condition holds in the target block only when the block
+            // can't be entered another way
+            int blockIndex = block.getIndex();
+            ComparisonMode comparisonMode = blockComparisonMode[blockIndex];
+            if (comparisonMode != null && cfg.incomingEdgesCount(blockIndex) == 1) {
                 switch (comparisonMode) {
                     case LESS_THAN_ARRAY_LENGTH:
-                        addArrayBound(comparisonVariable, comparisonValue);
+                        addArrayBound(blockComparisonVariable[blockIndex], blockComparisonValue[blockIndex]);
                         break;
                     case NON_NEGATIVE:
-                        markAsNonNegative(comparisonVariable);
+                        markAsNonNegative(blockComparisonVariable[blockIndex]);
                         break;
                 }
             }
@@ -113,11 +155,6 @@ public class BoundCheckInsertion {
                 instruction.acceptVisitor(this);
             }
 
-            bounds.comparisonMode = comparisonMode;
-            bounds.comparisonValue = comparisonValue;
-            bounds.comparisonVariable = comparisonVariable;
-            bounds.conditionBlock = conditionBlock;
-
             return bounds;
         }
 
@@ -134,21 +171,13 @@ public class BoundCheckInsertion {
             for (IntCursor cursor : state.nonNegatives) {
                 nonNegative[cursor.value] = false;
             }
-
-            comparisonMode = state.comparisonMode;
-            comparisonValue = state.comparisonValue;
-            comparisonVariable = state.comparisonVariable;
-            conditionBlock = state.conditionBlock;
-        }
-
-        @Override
-        public void visit(JumpInstruction insn) {
-            prepareJump();
         }
 
         @Override
         public void visit(BranchingInstruction insn) {
-            prepareJump();
+            if (insn.getConsequent() == insn.getAlternative()) {
+                return;
+            }
             int operand = index(insn.getOperand());
             int left = comparisonLeft[operand];
             int right = comparisonRight[operand];
@@ -157,87 +186,73 @@ public class BoundCheckInsertion {
                 switch (insn.getCondition()) {
                     case LESS:
                         if (arrayLengthVars[right] >= 0) {
-                            comparisonMode = ComparisonMode.LESS_THAN_ARRAY_LENGTH;
-                            comparisonValue = arrayLengthVars[right];
-                            comparisonVariable = left;
-                            conditionBlock = insn.getConsequent().getIndex();
+                            addComparison(insn.getConsequent(), ComparisonMode.LESS_THAN_ARRAY_LENGTH, left,
+                                    arrayLengthVars[right]);
                         } else if (isConstant[left] && constantValue[left] >= -1) {
-                            comparisonMode = ComparisonMode.NON_NEGATIVE;
-                            comparisonVariable = right;
-                            conditionBlock = insn.getConsequent().getIndex();
+                            addComparison(insn.getConsequent(), ComparisonMode.NON_NEGATIVE, right, 0);
                         } else if (isConstant[right] && constantValue[right] >= 0) {
-                            comparisonMode = ComparisonMode.NON_NEGATIVE;
-                            comparisonVariable = left;
-                            conditionBlock = insn.getAlternative().getIndex();
+                            addComparison(insn.getAlternative(), ComparisonMode.NON_NEGATIVE, left, 0);
                         }
                         break;
 
                     case GREATER_OR_EQUAL:
                         if (arrayLengthVars[right] >= 0) {
-                            comparisonMode = ComparisonMode.LESS_THAN_ARRAY_LENGTH;
-                            comparisonValue = arrayLengthVars[right];
-                            comparisonVariable = left;
-                            conditionBlock = insn.getAlternative().getIndex();
+                            addComparison(insn.getAlternative(), ComparisonMode.LESS_THAN_ARRAY_LENGTH, left,
+                                    arrayLengthVars[right]);
                         } else if (isConstant[left] && constantValue[left] >= -1) {
-                            comparisonMode = ComparisonMode.NON_NEGATIVE;
-                            comparisonVariable = right;
-                            conditionBlock = insn.getAlternative().getIndex();
+                            addComparison(insn.getAlternative(), ComparisonMode.NON_NEGATIVE, right, 0);
                         } else if (isConstant[right] && constantValue[right] >= 0) {
-                            comparisonMode = ComparisonMode.NON_NEGATIVE;
-                            comparisonVariable = left;
-                            conditionBlock = insn.getConsequent().getIndex();
+                            addComparison(insn.getConsequent(), ComparisonMode.NON_NEGATIVE, left, 0);
                         }
                         break;
 
                     case GREATER:
                         if (arrayLengthVars[left] >= 0) {
-                            comparisonMode = ComparisonMode.LESS_THAN_ARRAY_LENGTH;
-                            comparisonValue = arrayLengthVars[left];
-                            comparisonVariable = right;
-                            conditionBlock = insn.getConsequent().getIndex();
+                            addComparison(insn.getConsequent(), ComparisonMode.LESS_THAN_ARRAY_LENGTH, right,
+                                    arrayLengthVars[left]);
                         } else if (isConstant[left] && constantValue[left] >= 0) {
-                            comparisonMode = ComparisonMode.NON_NEGATIVE;
-                            comparisonVariable = right;
-                            conditionBlock = insn.getAlternative().getIndex();
+                            addComparison(insn.getAlternative(), ComparisonMode.NON_NEGATIVE, right, 0);
                         } else if (isConstant[right] && constantValue[right] >= -1) {
-                            comparisonMode = ComparisonMode.NON_NEGATIVE;
-                            comparisonVariable = left;
-                            conditionBlock = insn.getConsequent().getIndex();
+                            addComparison(insn.getConsequent(), ComparisonMode.NON_NEGATIVE, left, 0);
                         }
                         break;
 
                     case LESS_OR_EQUAL:
                         if (arrayLengthVars[left] >= 0) {
-                            comparisonMode = ComparisonMode.LESS_THAN_ARRAY_LENGTH;
-                            comparisonValue = arrayLengthVars[left];
-                            comparisonVariable = right;
-                            conditionBlock = insn.getAlternative().getIndex();
+                            addComparison(insn.getAlternative(), ComparisonMode.LESS_THAN_ARRAY_LENGTH, right,
+                                    arrayLengthVars[left]);
                         } else if (isConstant[left] && constantValue[left] >= 0) {
-                            comparisonMode = ComparisonMode.NON_NEGATIVE;
-                            comparisonVariable = right;
-                            conditionBlock = insn.getConsequent().getIndex();
+                            addComparison(insn.getConsequent(), ComparisonMode.NON_NEGATIVE, right, 0);
                         } else if (isConstant[right] && constantValue[right] >= -1) {
-                            comparisonMode = ComparisonMode.NON_NEGATIVE;
-                            comparisonVariable = left;
-                            conditionBlock = insn.getAlternative().getIndex();
+                            addComparison(insn.getAlternative(), ComparisonMode.NON_NEGATIVE, left, 0);
                         }
                         break;
 
                     default:
                         break;
                 }
+            } else {
+                // Branch that compares integer directly with zero
+                switch (insn.getCondition()) {
+                    case LESS:
+                    case LESS_OR_EQUAL:
+                        addComparison(insn.getAlternative(), ComparisonMode.NON_NEGATIVE, operand, 0);
+                        break;
+                    case GREATER:
+                    case GREATER_OR_EQUAL:
+                        addComparison(insn.getConsequent(), ComparisonMode.NON_NEGATIVE, operand, 0);
+                        break;
+                    default:
+                        break;
+                }
             }
         }
 
-        @Override
-        public void visit(BinaryBranchingInstruction insn) {
-            prepareJump();
-        }
-
-        private void prepareJump() {
-            conditionBlock = -1;
-            comparisonMode = null;
-            comparisonValue = 0;
+        private void addComparison(BasicBlock target, ComparisonMode mode, int variable, int value) {
+            int index = target.getIndex();
+            blockComparisonMode[index] = mode;
+            blockComparisonVariable[index] = variable;
+            blockComparisonValue[index] = value;
         }
 
         @Override
@@ -252,6 +267,7 @@ public class BoundCheckInsertion {
             int first = index(insn.getFirstOperand());
             int second = index(insn.getSecondOperand());
             int receiver = index(insn.getReceiver());
+            checkInductionVariableUpdate(receiver);
             if (isConstant[first] && isConstant[second]) {
                 int a = constantValue[first];
                 int b = constantValue[second];
@@ -306,6 +322,32 @@ public class BoundCheckInsertion {
             }
         }
 
+        /*
+         * Range of induction variables is assumed in advance. To make this assumption sound, it's necessary
+         * to prove that every update keeps variable in range, i.e. increment is performed on a value
+         * that is known to be less than some array's length (so it does not overflow) and decrement is performed
+         * on a non-negative value (so it can't go below -1).
+         */
+        private void checkInductionVariableUpdate(int receiver) {
+            int phi = inductionVariables.getUpdatedVariable(receiver);
+            if (phi < 0) {
+                return;
+            }
+            boolean safe;
+            if (inductionVariables.isIncreasing(phi)) {
+                IntSet upperSet = upperArrayLengths[phi];
+                safe = upperSet != null && !upperSet.isEmpty();
+            } else if (inductionVariables.isDecreasing(phi)) {
+                safe = nonNegative[phi];
+            } else {
+                return;
+            }
+            if (!safe) {
+                inductionVariables.reject(phi);
+                assumptionViolated = true;
+            }
+        }
+
         @Override
         public void visit(ConstructArrayInstruction insn) {
             int size = index(insn.getSize());
@@ -384,7 +426,7 @@ public class BoundCheckInsertion {
             }
             markAsNonNegative(index);
 
-            if (lower || upper) {
+            if ((lower || upper) && !dryRun) {
                 BoundCheckInstruction boundCheck = new BoundCheckInstruction();
                 if (lower) {
                     boundCheck.setLower(true);
@@ -423,14 +465,237 @@ public class BoundCheckInsertion {
         }
     }
 
+    /**
+     * Finds loop counters that either start from a non-negative value and get incremented by one,
+     * like in {@code for (int i = 0; i < a.length; ++i)}, or start below array length and get decremented by one,
+     * like in {@code for (int i = a.length - 1; i >= 0; --i)}. Such variables are only candidates,
+     * {@link InsertionVisitor} rejects ones that are updated without proper guard.
+     */
+    static class InductionVariables {
+        private static final byte NONE = 0;
+        private static final byte INCREASING = 1;
+        private static final byte DECREASING = 2;
+
+        private int[] copyOf;
+        private int[] arrayOfLength;
+        private boolean[] isConstant;
+        private int[] constantValue;
+        private int[] stepBase;
+        private int[] stepValue;
+        private int[] updatedVariable;
+        private byte[] kind;
+        private int[] boundingArray;
+        private List<Phi> candidates = new ArrayList<>();
+
+        InductionVariables(Program program) {
+            int count = program.variableCount();
+            copyOf = new int[count];
+            Arrays.fill(copyOf, -1);
+            arrayOfLength = new int[count];
+            Arrays.fill(arrayOfLength, -1);
+            isConstant = new boolean[count];
+            constantValue = new int[count];
+            stepBase = new int[count];
+            Arrays.fill(stepBase, -1);
+            stepValue = new int[count];
+            updatedVariable = new int[count];
+            Arrays.fill(updatedVariable, -1);
+            kind = new byte[count];
+            boundingArray = new int[count];
+            Arrays.fill(boundingArray, -1);
+
+            List<BinaryInstruction> additions = new ArrayList<>();
+            List<Phi> phis = new ArrayList<>();
+            for (BasicBlock block : program.getBasicBlocks()) {
+                phis.addAll(block.getPhis());
+                for (Instruction instruction : block) {
+                    if (instruction instanceof AssignInstruction) {
+                        AssignInstruction assign = (AssignInstruction) instruction;
+                        copyOf[assign.getReceiver().getIndex()] = assign.getAssignee().getIndex();
+                    } else if (instruction instanceof UnwrapArrayInstruction) {
+                        UnwrapArrayInstruction unwrap = (UnwrapArrayInstruction) instruction;
+                        copyOf[unwrap.getReceiver().getIndex()] = unwrap.getArray().getIndex();
+                    } else if (instruction instanceof IntegerConstantInstruction) {
+                        IntegerConstantInstruction constant = (IntegerConstantInstruction) instruction;
+                        isConstant[constant.getReceiver().getIndex()] = true;
+                        constantValue[constant.getReceiver().getIndex()] = constant.getConstant();
+                    } else if (instruction instanceof ArrayLengthInstruction) {
+                        ArrayLengthInstruction arrayLength = (ArrayLengthInstruction) instruction;
+                        arrayOfLength[arrayLength.getReceiver().getIndex()] = arrayLength.getArray().getIndex();
+                    } else if (instruction instanceof BinaryInstruction) {
+                        BinaryInstruction binary = (BinaryInstruction) instruction;
+                        if (binary.getOperandType() == NumericOperandType.INT
+                                && (binary.getOperation() == BinaryOperation.ADD
+                                || binary.getOperation() == BinaryOperation.SUBTRACT)) {
+                            additions.add(binary);
+                        }
+                    }
+                }
+            }
+
+            for (BinaryInstruction addition : additions) {
+                int first = canonical(addition.getFirstOperand().getIndex());
+                int second = canonical(addition.getSecondOperand().getIndex());
+                int receiver = addition.getReceiver().getIndex();
+                if (addition.getOperation() == BinaryOperation.ADD) {
+                    if (isConstant[second]) {
+                        setStep(receiver, first, constantValue[second]);
+                    } else if (isConstant[first]) {
+                        setStep(receiver, second, constantValue[first]);
+                    }
+                } else if (isConstant[second] && constantValue[second] != Integer.MIN_VALUE) {
+                    setStep(receiver, first, -constantValue[second]);
+                }
+            }
+
+            for (Phi phi : phis) {
+                addCandidate(phi);
+            }
+            for (Phi phi : candidates) {
+                int variable = phi.getReceiver().getIndex();
+                if (kind[variable] == DECREASING) {
+                    boundingArray[variable] = findBoundingArray(phi);
+                }
+            }
+            refine();
+        }
+
+        private void setStep(int receiver, int base, int value) {
+            stepBase[receiver] = base;
+            stepValue[receiver] = value;
+        }
+
+        private void addCandidate(Phi phi) {
+            int variable = phi.getReceiver().getIndex();
+            int direction = 0;
+            boolean hasInitialValue = false;
+            for (Incoming incoming : phi.getIncomings()) {
+                int value = canonical(incoming.getValue().getIndex());
+                if (stepBase[value] == variable) {
+                    int step = stepValue[value];
+                    if ((step != 1 && step != -1) || (direction != 0 && direction != step)) {
+                        return;
+                    }
+                    direction = step;
+                } else {
+                    hasInitialValue = true;
+                }
+            }
+            if (direction == 0 || !hasInitialValue) {
+                return;
+            }
+
+            for (Incoming incoming : phi.getIncomings()) {
+                int value = canonical(incoming.getValue().getIndex());
+                if (stepBase[value] == variable) {
+                    updatedVariable[value] = variable;
+                }
+            }
+            kind[variable] = direction > 0 ? INCREASING : DECREASING;
+            candidates.add(phi);
+        }
+
+        private int findBoundingArray(Phi phi) {
+            for (Incoming incoming : phi.getIncomings()) {
+                int array = getArrayFromLength(canonical(incoming.getValue().getIndex()));
+                if (array >= 0) {
+                    return array;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Removes candidates which initial values can't be proven to fit the range. Since initial value
+         * can be another candidate, this should be repeated after any candidate rejected.
+         */
+        void refine() {
+            boolean changed;
+            do {
+                changed = false;
+                for (Phi phi : candidates) {
+                    int variable = phi.getReceiver().getIndex();
+                    if (kind[variable] != NONE && !checkInitialValues(phi)) {
+                        reject(variable);
+                        changed = true;
+                    }
+                }
+            } while (changed);
+            candidates.removeIf(phi -> kind[phi.getReceiver().getIndex()] == NONE);
+        }
+
+        private boolean checkInitialValues(Phi phi) {
+            int variable = phi.getReceiver().getIndex();
+            for (Incoming incoming : phi.getIncomings()) {
+                int value = canonical(incoming.getValue().getIndex());
+                if (updatedVariable[value] == variable) {
+                    continue;
+                }
+                if (kind[variable] == INCREASING) {
+                    if (!isNonNegative(value)) {
+                        return false;
+                    }
+                } else {
+                    int array = isDecreasing(value) ? boundingArray[value] : getArrayFromLength(value);
+                    if (array < 0 || array != boundingArray[variable]) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        private boolean isNonNegative(int value) {
+            if (isConstant[value]) {
+                return constantValue[value] >= 0;
+            }
+            return arrayOfLength[value] >= 0 || isIncreasing(value);
+        }
+
+        private int getArrayFromLength(int value) {
+            int base = stepBase[value];
+            if (base < 0 || stepValue[value] >= 0) {
+                return -1;
+            }
+            int array = arrayOfLength[base];
+            return array >= 0 ? canonical(array) : -1;
+        }
+
+        void reject(int variable) {
+            kind[variable] = NONE;
+        }
+
+        boolean hasCandidates() {
+            return !candidates.isEmpty();
+        }
+
+        boolean isIncreasing(int variable) {
+            return kind[variable] == INCREASING;
+        }
+
+        boolean isDecreasing(int variable) {
+            return kind[variable] == DECREASING && boundingArray[variable] >= 0;
+        }
+
+        int getBoundingArray(int variable) {
+            return boundingArray[variable];
+        }
+
+        int getUpdatedVariable(int variable) {
+            return updatedVariable[variable];
+        }
+
+        private int canonical(int variable) {
+            while (copyOf[variable] >= 0) {
+                variable = copyOf[variable];
+            }
+            return variable;
+        }
+    }
+
     static class BlockBounds {
         IntArrayList addedArrayBounds = new IntArrayList();
         IntArrayList nonNegatives = new IntArrayList();
-
-        int conditionBlock;
-        int comparisonValue;
-        int comparisonVariable;
-        ComparisonMode comparisonMode;
     }
 
     enum ComparisonMode {
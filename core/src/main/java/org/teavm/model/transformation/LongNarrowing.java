@@ -0,0 +1,600 @@
+/*
+ *  Copyright 2023 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.model.transformation;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import org.teavm.model.BasicBlock;
+import org.teavm.model.Incoming;
+import org.teavm.model.Instruction;
+import org.teavm.model.Phi;
+import org.teavm.model.Program;
+import org.teavm.model.Variable;
+import org.teavm.model.instructions.AssignInstruction;
+import org.teavm.model.instructions.BinaryInstruction;
+import org.teavm.model.instructions.BinaryOperation;
+import org.teavm.model.instructions.CastNumberInstruction;
+import org.teavm.model.instructions.DoubleConstantInstruction;
+import org.teavm.model.instructions.IntegerConstantInstruction;
+import org.teavm.model.instructions.LongConstantInstruction;
+import org.teavm.model.instructions.NegateInstruction;
+import org.teavm.model.instructions.NumericOperandType;
+import org.teavm.model.util.DefinitionExtractor;
+import org.teavm.model.util.UsageExtractor;
+
+/**
+ * <p>Replaces <code>long</code> arithmetic with cheaper <code>int</code> or <code>double</code> arithmetic
+ * where this does not change observable results. This matters for backends that emulate 64-bit integers,
+ * like JavaScript, where every long operation is a function call.</p>
+ *
+ * <p>A long computation is lowered to <code>int</code> when only low 32 bits of its result are consumed
+ * (i.e. it ends in <code>(int)</code> cast and consists only of operations whose low bits depend on low bits
+ * of operands). It is lowered to <code>double</code> when bit width analysis proves that every intermediate
+ * value fits into 53 bits, and the result is either converted to a floating-point number or compared.</p>
+ *
+ * <p>Variables that flow into phis are never narrowed, so loop counters stay long.</p>
+ */
+public class LongNarrowing {
+    private static final int NONE = 0;
+    private static final int INT = 1;
+    private static final int DOUBLE = 2;
+    private static final int DOUBLE_BITS = 53;
+
+    private Program program;
+    private Instruction[] definitions;
+    private List<List<Instruction>> usages;
+    private boolean[] escaping;
+    private int[] widths;
+    private int[] kinds;
+    private Variable[] replacements;
+
+    public boolean transformProgram(Program program) {
+        this.program = program;
+        int variableCount = program.variableCount();
+        definitions = new Instruction[variableCount];
+        usages = new ArrayList<>(variableCount);
+        for (int i = 0; i < variableCount; ++i) {
+            usages.add(new ArrayList<>());
+        }
+        escaping = new boolean[variableCount];
+
+        boolean changed = false;
+        if (collect()) {
+            computeWidths();
+            if (computeKinds()) {
+                rewrite();
+                changed = true;
+            }
+        }
+
+        this.program = null;
+        definitions = null;
+        usages = null;
+        escaping = null;
+        widths = null;
+        kinds = null;
+        replacements = null;
+        return changed;
+    }
+
+    private boolean collect() {
+        DefinitionExtractor defExtractor = new DefinitionExtractor();
+        UsageExtractor useExtractor = new UsageExtractor();
+        boolean hasLongs = false;
+        for (BasicBlock block : program.getBasicBlocks()) {
+            for (Phi phi : block.getPhis()) {
+                for (Incoming incoming : phi.getIncomings()) {
+                    escaping[incoming.getValue().getIndex()] = true;
+                }
+            }
+            for (Instruction insn : block) {
+                insn.acceptVisitor(defExtractor);
+                for (Variable var : defExtractor.getDefinedVariables()) {
+                    definitions[var.getIndex()] = insn;
+                }
+                insn.acceptVisitor(useExtractor);
+                for (Variable var : useExtractor.getUsedVariables()) {
+                    usages.get(var.getIndex()).add(insn);
+                }
+                if (insn instanceof LongConstantInstruction || insn instanceof CastNumberInstruction
+                        || insn instanceof BinaryInstruction || insn instanceof NegateInstruction) {
+                    hasLongs = true;
+                }
+            }
+        }
+        return hasLongs;
+    }
+
+    private void computeWidths() {
+        widths = new int[definitions.length];
+        Arrays.fill(widths, 64);
+        for (int i = 0; i < definitions.length; ++i) {
+            if (definitions[i] != null && isTracked(definitions[i])) {
+                widths[i] = 0;
+            }
+        }
+        for (BasicBlock block : program.getBasicBlocks()) {
+            for (Phi phi : block.getPhis()) {
+                widths[phi.getReceiver().getIndex()] = 0;
+            }
+        }
+
+        boolean changed;
+        do {
+            changed = false;
+            for (BasicBlock block : program.getBasicBlocks()) {
+                for (Phi phi : block.getPhis()) {
+                    int width = 0;
+                    for (Incoming incoming : phi.getIncomings()) {
+                        width = Math.max(width, widths[incoming.getValue().getIndex()]);
+                    }
+                    changed |= updateWidth(phi.getReceiver(), width);
+                }
+                for (Instruction insn : block) {
+                    if (insn instanceof AssignInstruction) {
+                        AssignInstruction assign = (AssignInstruction) insn;
+                        changed |= updateWidth(assign.getReceiver(), widths[assign.getAssignee().getIndex()]);
+                    } else if (isTracked(insn)) {
+                        changed |= updateWidth(receiverOf(insn), computeWidth(insn));
+                    }
+                }
+            }
+        } while (changed);
+    }
+
+    private boolean updateWidth(Variable var, int width) {
+        width = Math.min(64, width);
+        if (width <= widths[var.getIndex()]) {
+            return false;
+        }
+        widths[var.getIndex()] = width;
+        return true;
+    }
+
+    private static boolean isTracked(Instruction insn) {
+        if (insn instanceof LongConstantInstruction) {
+            return true;
+        } else if (insn instanceof CastNumberInstruction) {
+            CastNumberInstruction cast = (CastNumberInstruction) insn;
+            return cast.getSourceType() == NumericOperandType.INT && cast.getTargetType() == NumericOperandType.LONG;
+        } else if (insn instanceof BinaryInstruction) {
+            BinaryInstruction binary = (BinaryInstruction) insn;
+            return binary.getOperandType() == NumericOperandType.LONG
+                    && binary.getOperation() != BinaryOperation.COMPARE;
+        } else if (insn instanceof NegateInstruction) {
+            return ((NegateInstruction) insn).getOperandType() == NumericOperandType.LONG;
+        }
+        return false;
+    }
+
+    private static Variable receiverOf(Instruction insn) {
+        if (insn instanceof LongConstantInstruction) {
+            return ((LongConstantInstruction) insn).getReceiver();
+        } else if (insn instanceof CastNumberInstruction) {
+            return ((CastNumberInstruction) insn).getReceiver();
+        } else if (insn instanceof BinaryInstruction) {
+            return ((BinaryInstruction) insn).getReceiver();
+        } else if (insn instanceof NegateInstruction) {
+            return ((NegateInstruction) insn).getReceiver();
+        }
+        return null;
+    }
+
+    private int computeWidth(Instruction insn) {
+        if (insn instanceof LongConstantInstruction) {
+            long value = ((LongConstantInstruction) insn).getConstant();
+            return 65 - Long.numberOfLeadingZeros(value < 0 ? ~value : value);
+        } else if (insn instanceof CastNumberInstruction) {
+            return 32;
+        } else if (insn instanceof NegateInstruction) {
+            return widths[((NegateInstruction) insn).getOperand().getIndex()] + 1;
+        }
+
+        BinaryInstruction binary = (BinaryInstruction) insn;
+        int a = widths[binary.getFirstOperand().getIndex()];
+        int b = widths[binary.getSecondOperand().getIndex()];
+        int shift = shiftAmount(binary);
+        switch (binary.getOperation()) {
+            case ADD:
+            case SUBTRACT:
+                return Math.max(a, b) + 1;
+            case MULTIPLY:
+                return a + b;
+            case DIVIDE:
+                return a + 1;
+            case MODULO:
+                return Math.min(a, b);
+            case AND:
+            case OR:
+            case XOR:
+                return Math.max(a, b);
+            case SHIFT_LEFT:
+                return shift >= 0 ? a + shift : 64;
+            case SHIFT_RIGHT:
+                return shift >= 0 ? Math.max(a - shift, 1) : a;
+            case SHIFT_RIGHT_UNSIGNED:
+                return shift > 0 ? 65 - shift : 64;
+            default:
+                return 64;
+        }
+    }
+
+    private int shiftAmount(BinaryInstruction insn) {
+        switch (insn.getOperation()) {
+            case SHIFT_LEFT:
+            case SHIFT_RIGHT:
+            case SHIFT_RIGHT_UNSIGNED: {
+                Instruction definition = definitions[insn.getSecondOperand().getIndex()];
+                if (definition instanceof IntegerConstantInstruction) {
+                    return ((IntegerConstantInstruction) definition).getConstant() & 63;
+                }
+                return -1;
+            }
+            default:
+                return -1;
+        }
+    }
+
+    private int candidateKinds(Instruction insn) {
+        int width = widths[receiverOf(insn).getIndex()];
+        int doubleKind = width <= DOUBLE_BITS ? DOUBLE : NONE;
+        if (insn instanceof LongConstantInstruction || insn instanceof CastNumberInstruction
+                || insn instanceof NegateInstruction) {
+            return INT | doubleKind;
+        }
+        BinaryInstruction binary = (BinaryInstruction) insn;
+        switch (binary.getOperation()) {
+            case ADD:
+            case SUBTRACT:
+            case MULTIPLY:
+                return INT | doubleKind;
+            case AND:
+            case OR:
+            case XOR:
+                return INT;
+            case SHIFT_LEFT: {
+                int shift = shiftAmount(binary);
+                return shift >= 0 && shift < 32 ? INT : NONE;
+            }
+            default:
+                return NONE;
+        }
+    }
+
+    private boolean computeKinds() {
+        kinds = new int[definitions.length];
+        int[] candidates = new int[definitions.length];
+        Deque<Integer> worklist = new ArrayDeque<>();
+        for (int i = 0; i < definitions.length; ++i) {
+            Instruction definition = definitions[i];
+            if (definition == null || escaping[i] || !isTracked(definition)) {
+                continue;
+            }
+            candidates[i] = candidateKinds(definition);
+            if ((candidates[i] & INT) != 0) {
+                kinds[i] = INT;
+            } else if ((candidates[i] & DOUBLE) != 0) {
+                kinds[i] = DOUBLE;
+            }
+            if (kinds[i] != NONE) {
+                worklist.add(i);
+            }
+        }
+
+        while (!worklist.isEmpty()) {
+            int index = worklist.remove();
+            if (kinds[index] == NONE || usagesAccept(index, kinds[index])) {
+                continue;
+            }
+            kinds[index] = kinds[index] == INT && (candidates[index] & DOUBLE) != 0 ? DOUBLE : NONE;
+            worklist.add(index);
+            for (Variable operand : operandsOf(definitions[index])) {
+                if (kinds[operand.getIndex()] != NONE) {
+                    worklist.add(operand.getIndex());
+                }
+            }
+        }
+
+        for (int kind : kinds) {
+            if (kind != NONE) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean usagesAccept(int index, int kind) {
+        List<Instruction> usageList = usages.get(index);
+        if (usageList.isEmpty()) {
+            return false;
+        }
+        for (Instruction usage : usageList) {
+            if (!usageAccepts(usage, index, kind)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean usageAccepts(Instruction usage, int index, int kind) {
+        if (usage instanceof CastNumberInstruction) {
+            CastNumberInstruction cast = (CastNumberInstruction) usage;
+            if (cast.getSourceType() != NumericOperandType.LONG) {
+                return false;
+            }
+            switch (cast.getTargetType()) {
+                case INT:
+                    return kind == INT;
+                case FLOAT:
+                case DOUBLE:
+                    return kind == DOUBLE;
+                default:
+                    return false;
+            }
+        }
+        if (usage instanceof BinaryInstruction) {
+            BinaryInstruction binary = (BinaryInstruction) usage;
+            if (binary.getOperandType() != NumericOperandType.LONG) {
+                return false;
+            }
+            if (binary.getOperation() == BinaryOperation.COMPARE) {
+                if (kind != DOUBLE) {
+                    return false;
+                }
+                Variable other = binary.getFirstOperand().getIndex() == index
+                        ? binary.getSecondOperand()
+                        : binary.getFirstOperand();
+                return widths[other.getIndex()] <= DOUBLE_BITS;
+            }
+            return kinds[binary.getReceiver().getIndex()] == kind;
+        }
+        if (usage instanceof NegateInstruction) {
+            NegateInstruction negate = (NegateInstruction) usage;
+            return negate.getOperandType() == NumericOperandType.LONG
+                    && kinds[negate.getReceiver().getIndex()] == kind;
+        }
+        return false;
+    }
+
+    private List<Variable> operandsOf(Instruction insn) {
+        List<Variable> result = new ArrayList<>(2);
+        if (insn instanceof BinaryInstruction) {
+            BinaryInstruction binary = (BinaryInstruction) insn;
+            result.add(binary.getFirstOperand());
+            if (shiftAmount(binary) < 0) {
+                result.add(binary.getSecondOperand());
+            }
+        } else if (insn instanceof NegateInstruction) {
+            result.add(((NegateInstruction) insn).getOperand());
+        }
+        return result;
+    }
+
+    private void rewrite() {
+        replacements = new Variable[definitions.length];
+        for (int i = 0; i < definitions.length; ++i) {
+            if (kinds[i] == NONE) {
+                continue;
+            }
+            if (kinds[i] == INT && definitions[i] instanceof CastNumberInstruction) {
+                replacements[i] = ((CastNumberInstruction) definitions[i]).getValue();
+            } else {
+                replacements[i] = program.createVariable();
+            }
+        }
+
+        for (BasicBlock block : program.getBasicBlocks()) {
+            List<Instruction> instructions = new ArrayList<>();
+            for (Instruction insn : block) {
+                instructions.add(insn);
+            }
+            for (Instruction insn : instructions) {
+                if (isTracked(insn) && kinds[receiverOf(insn).getIndex()] != NONE) {
+                    rewriteDefinition(insn);
+                } else if (insn instanceof CastNumberInstruction) {
+                    rewriteCast((CastNumberInstruction) insn);
+                } else if (insn instanceof BinaryInstruction) {
+                    rewriteComparison((BinaryInstruction) insn);
+                }
+            }
+        }
+    }
+
+    private void rewriteDefinition(Instruction insn) {
+        int index = receiverOf(insn).getIndex();
+        int kind = kinds[index];
+        NumericOperandType type = kind == INT ? NumericOperandType.INT : NumericOperandType.DOUBLE;
+        Variable receiver = replacements[index];
+        Instruction replacement;
+
+        if (insn instanceof LongConstantInstruction) {
+            long value = ((LongConstantInstruction) insn).getConstant();
+            if (kind == INT) {
+                IntegerConstantInstruction constant = new IntegerConstantInstruction();
+                constant.setConstant((int) value);
+                constant.setReceiver(receiver);
+                replacement = constant;
+            } else {
+                DoubleConstantInstruction constant = new DoubleConstantInstruction();
+                constant.setConstant(value);
+                constant.setReceiver(receiver);
+                replacement = constant;
+            }
+        } else if (insn instanceof CastNumberInstruction) {
+            if (kind == INT) {
+                insn.delete();
+                return;
+            }
+            CastNumberInstruction cast = new CastNumberInstruction(NumericOperandType.INT, type);
+            cast.setValue(((CastNumberInstruction) insn).getValue());
+            cast.setReceiver(receiver);
+            replacement = cast;
+        } else if (insn instanceof NegateInstruction) {
+            NegateInstruction negate = new NegateInstruction(type);
+            negate.setOperand(operand(((NegateInstruction) insn).getOperand(), kind, insn));
+            negate.setReceiver(receiver);
+            replacement = negate;
+        } else {
+            BinaryInstruction binary = (BinaryInstruction) insn;
+            BinaryInstruction newBinary = new BinaryInstruction(binary.getOperation(), type);
+            newBinary.setFirstOperand(operand(binary.getFirstOperand(), kind, insn));
+            newBinary.setSecondOperand(binary.getOperation() == BinaryOperation.SHIFT_LEFT
+                    ? binary.getSecondOperand()
+                    : operand(binary.getSecondOperand(), kind, insn));
+            newBinary.setReceiver(receiver);
+            replacement = newBinary;
+        }
+
+        replacement.setLocation(insn.getLocation());
+        insn.replace(replacement);
+    }
+
+    private void rewriteCast(CastNumberInstruction insn) {
+        if (insn.getSourceType() != NumericOperandType.LONG) {
+            return;
+        }
+        int index = insn.getValue().getIndex();
+        if (index >= kinds.length || kinds[index] == NONE) {
+            return;
+        }
+        int expectedKind = insn.getTargetType() == NumericOperandType.INT ? INT : DOUBLE;
+        if (kinds[index] != expectedKind) {
+            return;
+        }
+        Variable value = replacements[index];
+
+        Instruction replacement;
+        if (insn.getTargetType() == NumericOperandType.FLOAT) {
+            CastNumberInstruction cast = new CastNumberInstruction(NumericOperandType.DOUBLE,
+                    NumericOperandType.FLOAT);
+            cast.setValue(positiveZero(index, insn));
+            cast.setReceiver(insn.getReceiver());
+            replacement = cast;
+        } else {
+            AssignInstruction assign = new AssignInstruction();
+            assign.setAssignee(expectedKind == DOUBLE ? positiveZero(index, insn) : value);
+            assign.setReceiver(insn.getReceiver());
+            replacement = assign;
+        }
+        replacement.setLocation(insn.getLocation());
+        insn.replace(replacement);
+    }
+
+    private void rewriteComparison(BinaryInstruction insn) {
+        if (insn.getOperation() != BinaryOperation.COMPARE || insn.getOperandType() != NumericOperandType.LONG) {
+            return;
+        }
+        int first = insn.getFirstOperand().getIndex();
+        int second = insn.getSecondOperand().getIndex();
+        if (!isNarrowedTo(first, DOUBLE) && !isNarrowedTo(second, DOUBLE)) {
+            return;
+        }
+
+        BinaryInstruction comparison = new BinaryInstruction(BinaryOperation.COMPARE, NumericOperandType.DOUBLE);
+        comparison.setFirstOperand(operand(insn.getFirstOperand(), DOUBLE, insn));
+        comparison.setSecondOperand(operand(insn.getSecondOperand(), DOUBLE, insn));
+        comparison.setReceiver(insn.getReceiver());
+        comparison.setLocation(insn.getLocation());
+        insn.replace(comparison);
+    }
+
+    private boolean isNarrowedTo(int index, int kind) {
+        return index < kinds.length && kinds[index] == kind;
+    }
+
+    private Variable operand(Variable var, int kind, Instruction insn) {
+        int index = var.getIndex();
+        int currentKind = index < kinds.length ? kinds[index] : NONE;
+        if (currentKind == kind) {
+            return replacements[index];
+        }
+
+        NumericOperandType sourceType;
+        switch (currentKind) {
+            case INT:
+                sourceType = NumericOperandType.INT;
+                var = replacements[index];
+                break;
+            case DOUBLE:
+                sourceType = NumericOperandType.DOUBLE;
+                var = replacements[index];
+                break;
+            default:
+                sourceType = NumericOperandType.LONG;
+                break;
+        }
+        CastNumberInstruction cast = new CastNumberInstruction(sourceType,
+                kind == INT ? NumericOperandType.INT : NumericOperandType.DOUBLE);
+        cast.setValue(var);
+        cast.setReceiver(program.createVariable());
+        cast.setLocation(insn.getLocation());
+        insn.insertPrevious(cast);
+        return cast.getReceiver();
+    }
+
+    /*
+     * Long arithmetic has no negative zero, while double multiplication and negation may produce it.
+     * Adding positive zero turns -0.0 into 0.0 and leaves all other values intact.
+     */
+    private Variable positiveZero(int index, Instruction insn) {
+        Variable value = replacements[index];
+        if (!mayBeNegativeZero(index)) {
+            return value;
+        }
+
+        DoubleConstantInstruction zero = new DoubleConstantInstruction();
+        zero.setConstant(0);
+        zero.setReceiver(program.createVariable());
+        zero.setLocation(insn.getLocation());
+        insn.insertPrevious(zero);
+
+        BinaryInstruction add = new BinaryInstruction(BinaryOperation.ADD, NumericOperandType.DOUBLE);
+        add.setFirstOperand(value);
+        add.setSecondOperand(zero.getReceiver());
+        add.setReceiver(program.createVariable());
+        add.setLocation(insn.getLocation());
+        insn.insertPrevious(add);
+        return add.getReceiver();
+    }
+
+    private boolean mayBeNegativeZero(int index) {
+        if (!isNarrowedTo(index, DOUBLE)) {
+            return false;
+        }
+        Instruction definition = definitions[index];
+        if (definition instanceof NegateInstruction) {
+            return true;
+        }
+        if (!(definition instanceof BinaryInstruction)) {
+            return false;
+        }
+        BinaryInstruction binary = (BinaryInstruction) definition;
+        switch (binary.getOperation()) {
+            case MULTIPLY:
+                return true;
+            case ADD:
+                return mayBeNegativeZero(binary.getFirstOperand().getIndex())
+                        && mayBeNegativeZero(binary.getSecondOperand().getIndex());
+            case SUBTRACT:
+                return mayBeNegativeZero(binary.getFirstOperand().getIndex());
+            default:
+                return false;
+        }
+    }
+}
@@ -81,7 +81,7 @@ public class AsyncMethodFinder {
                 ClassReader cls = classSource.get(clsName);
                 for (MethodReader method : cls.getMethods()) {
                     if (!dependency.getReachableMethods().contains(method.getReference())
-                            || asyncMethods.contains(method.getReference()) || method.getProgram() == null) {
+                            || asyncMethods.contains(method.getReference()) || method.getProgramReader() == null) {
                         continue;
                     }
                     if (hasMonitor(method)) {
@@ -111,7 +111,7 @@ public class AsyncMethodFinder {
         loop: for (String clsName : classSource.getClassNames()) {
             ClassReader cls = classSource.get(clsName);
             for (MethodReader method : cls.getMethods()) {
-                if (!asyncMethods.contains(method.getReference()) || method.getProgram() == null) {
+                if (!asyncMethods.contains(method.getReference()) || method.getProgramReader() == null) {
                     continue;
                 }
                 if (hasMonitor(method)) {
@@ -133,7 +133,7 @@ public class AsyncMethodFinder {
         if (method.hasModifier(ElementModifier.SYNCHRONIZED)) {
             return true;
         }
-        ProgramReader program = method.getProgram();
+        ProgramReader program = method.getProgramReader();
         AsyncInstructionReader insnReader = new AsyncInstructionReader();
         for (int i = 0; i < program.basicBlockCount(); ++i) {
             program.basicBlockAt(i).readAllInstructions(insnReader);
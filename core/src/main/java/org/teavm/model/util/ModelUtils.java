@@ -28,6 +28,7 @@ import org.teavm.model.FieldHolder;
 import org.teavm.model.FieldReader;
 import org.teavm.model.MethodHolder;
 import org.teavm.model.MethodReader;
+import org.teavm.model.ProgramReader;
 
 public final class ModelUtils {
     private ModelUtils() {
@@ -71,8 +72,11 @@ public final class ModelUtils {
         MethodHolder copy = new MethodHolder(method.getDescriptor());
         copy.setLevel(method.getLevel());
         copy.getModifiers().addAll(method.readModifiers());
-        if (method.getProgram() != null && withProgram) {
-            copy.setProgram(ProgramUtils.copy(method.getProgram()));
+        if (withProgram) {
+            ProgramReader program = method.getProgramReader();
+            if (program != null) {
+                copy.setProgram(ProgramUtils.copy(program));
+            }
         }
         copyAnnotations(method.getAnnotations(), copy.getAnnotations());
         if (method.getAnnotationDefault() != null) {
@@ -20,14 +20,18 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Properties;
 import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
 import org.teavm.common.CachedFunction;
 import org.teavm.model.ClassHolder;
@@ -40,7 +44,8 @@ import org.teavm.parsing.substitution.OrderedProperties;
 import org.teavm.parsing.substitution.PrefixMapping;
 import org.teavm.vm.spi.ElementFilter;
 
-public class ClasspathResourceMapper implements Function<String, ClassHolder>, ClassDateProvider {
+public class ClasspathResourceMapper implements Function<String, ClassHolder>, ClassDateProvider,
+        ClassHashProvider {
     private static final String STRIP_PREFIX_FROM_PREFIX = "stripPrefixFrom";
     private static final String STRIP_PREFIX_FROM_PACKAGE_HIERARCHY_PREFIX =
             STRIP_PREFIX_FROM_PREFIX + "PackageHierarchyClasses";
@@ -58,6 +63,7 @@ public class ClasspathResourceMapper implements Function<String, ClassHolder>, C
     private ClassRefsRenamer renamer;
     private ClassLoader classLoader;
     private Map<String, Date> modificationDates = new HashMap<>();
+    private Map<String, Optional<String>> contentHashes = new ConcurrentHashMap<>();
     private List<ElementFilter> elementFilters = new ArrayList<>();
     private ClassMappings classMappings = new ClassMappings();
     private PrefixMapping prefixMapping = new PrefixMapping();
@@ -167,6 +173,44 @@ public class ClasspathResourceMapper implements Function<String, ClassHolder>, C
         return mdate == VOID_DATE ? null : mdate;
     }
 
+    @Override
+    public String getContentHash(String className) {
+        return contentHashes.computeIfAbsent(className,
+                k -> Optional.ofNullable(getOriginalContentHash(toUnmappedClassName(k)))).orElse(null);
+    }
+
+    private String getOriginalContentHash(String className) {
+        if (classLoader == null) {
+            return null;
+        }
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            return null;
+        }
+        try (InputStream input = classLoader.getResourceAsStream(className.replace('.', '/') + ".class")) {
+            if (input == null) {
+                return null;
+            }
+            byte[] buffer = new byte[8192];
+            while (true) {
+                int bytesRead = input.read(buffer);
+                if (bytesRead < 0) {
+                    break;
+                }
+                digest.update(buffer, 0, bytesRead);
+            }
+        } catch (IOException e) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (byte b : digest.digest()) {
+            sb.append(Character.forDigit((b >>> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
     private String toUnmappedClassName(String name) {
         if (classExclusions.apply(name)) {
             return name;
@@ -0,0 +1,92 @@
+/*
+ *  Copyright 2023 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.runtime;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <p>Collects counters of a program instrumented by {@link org.teavm.model.profile.ProfileInstrumentation}.
+ * Counters are printed to standard output by {@link #dump()}, each one in a separate line starting with
+ * {@link #OUTPUT_PREFIX}, so that the output of an application can be passed to
+ * {@link org.teavm.model.profile.ExecutionProfile#load(java.io.Reader)} as is.</p>
+ *
+ * <p>Code of the profiler is instrumented as well as the rest of class library, so the profiler ignores
+ * probes that are hit while it's updating counters.</p>
+ */
+public final class ExecutionProfiler {
+    public static final String OUTPUT_PREFIX = "teavm-profile: ";
+    private static Map<String, long[]> counters;
+    private static boolean busy;
+
+    private ExecutionProfiler() {
+    }
+
+    public static void count(String key) {
+        if (busy) {
+            return;
+        }
+        busy = true;
+        try {
+            increment(key);
+        } finally {
+            busy = false;
+        }
+    }
+
+    public static void receiver(String key, Object instance) {
+        if (busy || instance == null) {
+            return;
+        }
+        busy = true;
+        try {
+            increment(key + " " + instance.getClass().getName());
+        } finally {
+            busy = false;
+        }
+    }
+
+    private static void increment(String key) {
+        if (counters == null) {
+            counters = new HashMap<>();
+        }
+        long[] counter = counters.get(key);
+        if (counter == null) {
+            counter = new long[1];
+            counters.put(key, counter);
+        }
+        counter[0]++;
+    }
+
+    /**
+     * Prints collected counters and resets them. Instrumentation calls this method when main method
+     * of an application returns; applications that keep running after that should call it explicitly.
+     */
+    public static void dump() {
+        if (busy || counters == null) {
+            return;
+        }
+        busy = true;
+        try {
+            for (Map.Entry<String, long[]> entry : counters.entrySet()) {
+                System.out.println(OUTPUT_PREFIX + entry.getKey() + " " + entry.getValue()[0]);
+            }
+            counters.clear();
+        } finally {
+            busy = false;
+        }
+    }
+}
@@ -0,0 +1,331 @@
+/*
+ *  Copyright 2023 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.vm;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.teavm.cache.MethodNodeCache;
+import org.teavm.common.JsonUtil;
+import org.teavm.model.MethodReference;
+
+/**
+ * <p>Collects timings and counters of a single build. Pass an instance to {@link TeaVM#setMetrics(BuildMetrics)}
+ * to enable collection; TeaVM does not measure anything when metrics are not set.</p>
+ *
+ * <p>Phase allocation is measured for the thread that runs the build only, so with
+ * {@link TeaVM#setThreadCount(int)} greater than 1 it does not include allocations made by worker threads.
+ * Optimization timings are collected from all threads.</p>
+ */
+public class BuildMetrics {
+    private static final int DEFAULT_HOTSPOT_COUNT = 20;
+    private final Map<String, Phase> phases = new LinkedHashMap<>();
+    private final Map<String, Optimization> optimizations = new LinkedHashMap<>();
+    private final Map<String, Cache> caches = new LinkedHashMap<>();
+    private final Map<String, Long> counters = new LinkedHashMap<>();
+    private final Map<MethodReference, AtomicLong> methodTimes = new ConcurrentHashMap<>();
+    private Phase currentPhase;
+    private long currentPhaseStart;
+    private long currentPhaseAllocation;
+
+    void phaseStarted(String name) {
+        phaseFinished();
+        currentPhase = phases.computeIfAbsent(name, Phase::new);
+        currentPhaseAllocation = getAllocatedBytes();
+        currentPhaseStart = System.nanoTime();
+    }
+
+    void phaseFinished() {
+        if (currentPhase == null) {
+            return;
+        }
+        currentPhase.timeNanos += System.nanoTime() - currentPhaseStart;
+        long allocation = getAllocatedBytes();
+        if (allocation >= 0 && currentPhaseAllocation >= 0) {
+            currentPhase.allocatedBytes += allocation - currentPhaseAllocation;
+        }
+        currentPhase = null;
+    }
+
+    void optimizationPerformed(String name, long timeNanos, boolean changed) {
+        Optimization optimization;
+        synchronized (optimizations) {
+            optimization = optimizations.computeIfAbsent(name, Optimization::new);
+        }
+        optimization.runs.incrementAndGet();
+        optimization.timeNanos.addAndGet(timeNanos);
+        if (changed) {
+            optimization.changes.incrementAndGet();
+        }
+    }
+
+    void methodOptimized(MethodReference method, long timeNanos) {
+        methodTimes.computeIfAbsent(method, m -> new AtomicLong()).addAndGet(timeNanos);
+    }
+
+    public void cacheAccessed(String cacheName, boolean hit) {
+        Cache cache;
+        synchronized (caches) {
+            cache = caches.computeIfAbsent(cacheName, Cache::new);
+        }
+        if (hit) {
+            cache.hits.incrementAndGet();
+        } else {
+            cache.misses.incrementAndGet();
+        }
+    }
+
+    public void setCounter(String name, long value) {
+        synchronized (counters) {
+            counters.put(name, value);
+        }
+    }
+
+    /**
+     * Wraps method node cache, so that its lookups are counted under given name.
+     */
+    public MethodNodeCache meter(String cacheName, MethodNodeCache cache) {
+        return new MeteredMethodNodeCache(this, cacheName, cache);
+    }
+
+    public Collection<? extends Phase> getPhases() {
+        return new ArrayList<>(phases.values());
+    }
+
+    public Collection<? extends Optimization> getOptimizations() {
+        synchronized (optimizations) {
+            return new ArrayList<>(optimizations.values());
+        }
+    }
+
+    public Collection<? extends Cache> getCaches() {
+        synchronized (caches) {
+            return new ArrayList<>(caches.values());
+        }
+    }
+
+    public Map<String, Long> getCounters() {
+        synchronized (counters) {
+            return new LinkedHashMap<>(counters);
+        }
+    }
+
+    /**
+     * Gets methods that took longest time to optimize.
+     *
+     * @param limit maximum number of methods to return.
+     * @return methods ordered by optimization time, from the slowest one.
+     */
+    public List<MethodHotspot> getHotspots(int limit) {
+        List<MethodHotspot> result = new ArrayList<>();
+        for (var entry : methodTimes.entrySet()) {
+            result.add(new MethodHotspot(entry.getKey(), entry.getValue().get()));
+        }
+        result.sort(Comparator.comparingLong(MethodHotspot::getTimeNanos).reversed()
+                .thenComparing(hotspot -> hotspot.getMethod().toString()));
+        return result.size() > limit ? new ArrayList<>(result.subList(0, limit)) : result;
+    }
+
+    public void writeJson(Writer writer) throws IOException {
+        writer.append("{\n  \"phases\": [");
+        boolean first = true;
+        for (Phase phase : getPhases()) {
+            writer.append(first ? "\n" : ",\n");
+            first = false;
+            writer.append("    {\"name\": ");
+            appendString(writer, phase.name);
+            writer.append(", \"timeMillis\": ").append(millis(phase.timeNanos));
+            if (phase.allocatedBytes > 0) {
+                writer.append(", \"allocatedBytes\": ").append(Long.toString(phase.allocatedBytes));
+            }
+            writer.append("}");
+        }
+        writer.append(first ? "],\n" : "\n  ],\n");
+
+        writer.append("  \"optimizations\": [");
+        first = true;
+        for (Optimization optimization : getOptimizations()) {
+            writer.append(first ? "\n" : ",\n");
+            first = false;
+            writer.append("    {\"name\": ");
+            appendString(writer, optimization.name);
+            writer.append(", \"timeMillis\": ").append(millis(optimization.getTimeNanos()));
+            writer.append(", \"runs\": ").append(Long.toString(optimization.getRuns()));
+            writer.append(", \"changes\": ").append(Long.toString(optimization.getChanges())).append("}");
+        }
+        writer.append(first ? "],\n" : "\n  ],\n");
+
+        writer.append("  \"hotspots\": [");
+        first = true;
+        for (MethodHotspot hotspot : getHotspots(DEFAULT_HOTSPOT_COUNT)) {
+            writer.append(first ? "\n" : ",\n");
+            first = false;
+            writer.append("    {\"method\": ");
+            appendString(writer, hotspot.method.toString());
+            writer.append(", \"timeMillis\": ").append(millis(hotspot.timeNanos)).append("}");
+        }
+        writer.append(first ? "],\n" : "\n  ],\n");
+
+        writer.append("  \"caches\": [");
+        first = true;
+        for (Cache cache : getCaches()) {
+            writer.append(first ? "\n" : ",\n");
+            first = false;
+            writer.append("    {\"name\": ");
+            appendString(writer, cache.name);
+            writer.append(", \"hits\": ").append(Long.toString(cache.getHits()));
+            writer.append(", \"misses\": ").append(Long.toString(cache.getMisses())).append("}");
+        }
+        writer.append(first ? "],\n" : "\n  ],\n");
+
+        writer.append("  \"counters\": {");
+        first = true;
+        for (var entry : getCounters().entrySet()) {
+            writer.append(first ? "\n" : ",\n");
+            first = false;
+            writer.append("    ");
+            appendString(writer, entry.getKey());
+            writer.append(": ").append(Long.toString(entry.getValue()));
+        }
+        writer.append(first ? "}\n" : "\n  }\n");
+        writer.append("}\n");
+    }
+
+    private static void appendString(Writer writer, String string) throws IOException {
+        writer.append("\"");
+        JsonUtil.writeEscapedString(writer, string);
+        writer.append("\"");
+    }
+
+    private static String millis(long nanos) {
+        return Long.toString(nanos / 1_000_000);
+    }
+
+    private static long getAllocatedBytes() {
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        if (threadBean instanceof com.sun.management.ThreadMXBean) {
+            var extendedBean = (com.sun.management.ThreadMXBean) threadBean;
+            if (extendedBean.isThreadAllocatedMemorySupported() && extendedBean.isThreadAllocatedMemoryEnabled()) {
+                return extendedBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+
+    public static class Phase {
+        private final String name;
+        private long timeNanos;
+        private long allocatedBytes;
+
+        Phase(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getTimeNanos() {
+            return timeNanos;
+        }
+
+        /**
+         * @return bytes allocated by build thread during this phase, or 0 if JVM does not support measurement.
+         */
+        public long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+    }
+
+    public static class Optimization {
+        private final String name;
+        private final AtomicLong runs = new AtomicLong();
+        private final AtomicLong changes = new AtomicLong();
+        private final AtomicLong timeNanos = new AtomicLong();
+
+        Optimization(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getRuns() {
+            return runs.get();
+        }
+
+        /**
+         * @return how many runs reported that program was changed.
+         */
+        public long getChanges() {
+            return changes.get();
+        }
+
+        public long getTimeNanos() {
+            return timeNanos.get();
+        }
+    }
+
+    public static class Cache {
+        private final String name;
+        private final AtomicLong hits = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
+
+        Cache(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getHits() {
+            return hits.get();
+        }
+
+        public long getMisses() {
+            return misses.get();
+        }
+    }
+
+    public static class MethodHotspot {
+        private final MethodReference method;
+        private final long timeNanos;
+
+        MethodHotspot(MethodReference method, long timeNanos) {
+            this.method = method;
+            this.timeNanos = timeNanos;
+        }
+
+        public MethodReference getMethod() {
+            return method;
+        }
+
+        public long getTimeNanos() {
+            return timeNanos;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ *  Copyright 2023 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.vm;
+
+import java.util.function.Supplier;
+import org.teavm.ast.AsyncMethodNode;
+import org.teavm.cache.AstCacheEntry;
+import org.teavm.cache.CacheStatus;
+import org.teavm.cache.MethodNodeCache;
+import org.teavm.model.MethodReference;
+
+class MeteredMethodNodeCache implements MethodNodeCache {
+    private final BuildMetrics metrics;
+    private final String name;
+    private final MethodNodeCache cache;
+
+    MeteredMethodNodeCache(BuildMetrics metrics, String name, MethodNodeCache cache) {
+        this.metrics = metrics;
+        this.name = name;
+        this.cache = cache;
+    }
+
+    @Override
+    public AstCacheEntry get(MethodReference methodReference, CacheStatus cacheStatus) {
+        AstCacheEntry result = cache.get(methodReference, cacheStatus);
+        metrics.cacheAccessed(name, result != null);
+        return result;
+    }
+
+    @Override
+    public void store(MethodReference methodReference, AstCacheEntry entry, Supplier<String[]> dependencies) {
+        cache.store(methodReference, entry, dependencies);
+    }
+
+    @Override
+    public AsyncMethodNode getAsync(MethodReference methodReference, CacheStatus cacheStatus) {
+        AsyncMethodNode result = cache.getAsync(methodReference, cacheStatus);
+        metrics.cacheAccessed(name + "-async", result != null);
+        return result;
+    }
+
+    @Override
+    public void storeAsync(MethodReference methodReference, AsyncMethodNode node, Supplier<String[]> dependencies) {
+        cache.storeAsync(methodReference, node, dependencies);
+    }
+}
@@ -30,6 +30,12 @@ import java.util.Map;
 import java.util.Properties;
 import java.util.ServiceLoader;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
@@ -47,9 +53,12 @@ import org.teavm.dependency.DependencyListener;
 import org.teavm.dependency.DependencyPlugin;
 import org.teavm.dependency.Linker;
 import org.teavm.dependency.MethodDependencyInfo;
+import org.teavm.dependency.SynchronizedDependencyInfo;
 import org.teavm.diagnostics.AccumulationDiagnostics;
 import org.teavm.diagnostics.Diagnostics;
+import org.teavm.diagnostics.Problem;
 import org.teavm.diagnostics.ProblemProvider;
+import org.teavm.diagnostics.ProblemSeverity;
 import org.teavm.model.BasicBlock;
 import org.teavm.model.ClassHierarchy;
 import org.teavm.model.ClassHolder;
@@ -76,23 +85,32 @@ import org.teavm.model.analysis.ClassInitializerInfo;
 import org.teavm.model.instructions.InitClassInstruction;
 import org.teavm.model.instructions.InvokeInstruction;
 import org.teavm.model.optimization.ArrayUnwrapMotion;
+import org.teavm.model.optimization.BoxingElimination;
 import org.teavm.model.optimization.ClassInitElimination;
+import org.teavm.model.optimization.ClassInitializerEvaluation;
 import org.teavm.model.optimization.ConstantConditionElimination;
 import org.teavm.model.optimization.DefaultInliningStrategy;
 import org.teavm.model.optimization.Devirtualization;
 import org.teavm.model.optimization.GlobalValueNumbering;
 import org.teavm.model.optimization.Inlining;
+import org.teavm.model.optimization.InliningFilterFactory;
 import org.teavm.model.optimization.InliningStrategy;
+import org.teavm.model.optimization.InterproceduralPropagation;
 import org.teavm.model.optimization.LoopInvariantMotion;
+import org.teavm.model.optimization.LoopInversion;
+import org.teavm.model.optimization.LoopUnrolling;
+import org.teavm.model.optimization.LoopVersioning;
 import org.teavm.model.optimization.MethodOptimization;
 import org.teavm.model.optimization.MethodOptimizationContext;
 import org.teavm.model.optimization.RedundantJumpElimination;
 import org.teavm.model.optimization.RedundantNullCheckElimination;
 import org.teavm.model.optimization.RepeatedFieldReadElimination;
 import org.teavm.model.optimization.ScalarReplacement;
+import org.teavm.model.optimization.Specialization;
 import org.teavm.model.optimization.SystemArrayCopyOptimization;
 import org.teavm.model.optimization.UnreachableBasicBlockElimination;
 import org.teavm.model.optimization.UnusedVariableElimination;
+import org.teavm.model.profile.ExecutionProfile;
 import org.teavm.model.text.ListingBuilder;
 import org.teavm.model.transformation.ClassInitializerInsertionTransformer;
 import org.teavm.model.util.MissingItemsProcessor;
@@ -149,6 +167,8 @@ public class TeaVM implements TeaVMHost, ServiceRepository {
     private CacheStatus rawCacheStatus = AlwaysStaleCacheStatus.INSTANCE;
     private TeaVMOptimizationLevel optimizationLevel = TeaVMOptimizationLevel.SIMPLE;
     private TeaVMProgressListener progressListener;
+    private BuildMetrics metrics;
+    private ExecutionProfile executionProfile;
     private boolean cancelled;
     private ListableClassHolderSource writtenClasses;
     private TeaVMTarget target;
@@ -164,6 +184,7 @@ public class TeaVM implements TeaVMHost, ServiceRepository {
     private int compileProgressValue;
     private ClassSourcePacker classSourcePacker;
     private ClassInitializerInfo classInitializerInfo;
+    private int threadCount = 1;
 
     TeaVM(TeaVMBuilder builder) {
         target = builder.target;
@@ -264,6 +285,50 @@ public class TeaVM implements TeaVMHost, ServiceRepository {
         this.optimizationLevel = optimizationLevel;
     }
 
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * Specifies how many threads TeaVM may use for phases that process methods independently of each other.
+     * Value of 1 (default) means that everything is done sequentially in the calling thread.
+     * Output does not depend on this value.
+     *
+     * @param threadCount number of worker threads, must be positive.
+     */
+    public void setThreadCount(int threadCount) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("Thread count must be positive: " + threadCount);
+        }
+        this.threadCount = threadCount;
+    }
+
+    public BuildMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Enables collection of build metrics, like time spent in each build phase and optimization.
+     *
+     * @param metrics where to collect metrics, or {@code null} to disable collection.
+     */
+    public void setMetrics(BuildMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public ExecutionProfile getExecutionProfile() {
+        return executionProfile;
+    }
+
+    /**
+     * Sets runtime profile collected by a build instrumented with
+     * {@link org.teavm.model.profile.ProfileInstrumentation}. Devirtualization and inlining use it
+     * when optimization level is not {@link TeaVMOptimizationLevel#SIMPLE}.
+     */
+    public void setExecutionProfile(ExecutionProfile executionProfile) {
+        this.executionProfile = executionProfile;
+    }
+
     public TeaVMProgressListener getProgressListener() {
         return progressListener;
     }
@@ -363,6 +428,16 @@ public class TeaVM implements TeaVMHost, ServiceRepository {
      * @param outputName name of output file within buildTarget. Should not be null.
      */
     public void build(BuildTarget buildTarget, String outputName) {
+        try {
+            buildImpl(buildTarget, outputName);
+        } finally {
+            if (metrics != null) {
+                metrics.phaseFinished();
+            }
+        }
+    }
+
+    private void buildImpl(BuildTarget buildTarget, String outputName) {
         // Check dependencies
         reportPhase(TeaVMPhase.DEPENDENCY_ANALYSIS, lastKnownClasses);
         if (wasCancelled()) {
@@ -375,9 +450,16 @@ public class TeaVM implements TeaVMHost, ServiceRepository {
             cancelled |= progressListener.progressReached(progress) != TeaVMProgressFeedback.CONTINUE;
             return !cancelled;
         });
+        phaseStarted("dependencyAnalysis");
         target.contributeDependencies(dependencyAnalyzer);
         dependencyAnalyzer.addDependencyListener(new StdlibDependencyListener());
         dependencyAnalyzer.processDependencies();
+        if (metrics != null) {
+            metrics.setCounter("dependencyNodes", dependencyAnalyzer.getNodeCount());
+            metrics.setCounter("reachableClasses", dependencyAnalyzer.getReachableClasses().size());
+            metrics.setCounter("reachableMethods", dependencyAnalyzer.getReachableMethods().size());
+            metrics.setCounter("reachableFields", dependencyAnalyzer.getReachableFields().size());
+        }
         if (wasCancelled() || !diagnostics.getSevereProblems().isEmpty()) {
             return;
         }
@@ -415,6 +497,7 @@ public class TeaVM implements TeaVMHost, ServiceRepository {
         }
 
         // Render
+        phaseStarted("rendering");
         try {
             if (!isLazy) {
                 compileProgressReportStart = 0;
@@ -441,6 +524,7 @@ public class TeaVM implements TeaVMHost, ServiceRepository {
             compileProgressLimit *= 2;
         }
 
+        phaseStarted("linking");
         var classSet = link(dependencyAnalyzer);
         writtenClasses = classSet;
         if (wasCancelled()) {
@@ -452,7 +536,12 @@ public class TeaVM implements TeaVMHost, ServiceRepository {
             if (wasCancelled()) {
                 return null;
             }
+            specialize(classSet);
 
+            propagateInterprocedurally(classSet);
+            evaluateClassInitializers(classSet);
+
+            phaseStarted("classInitializerAnalysis");
             var classInitializerAnalysis = new ClassInitializerAnalysis(classSet,
                     dependencyAnalyzer.getClassHierarchy());
             classInitializerAnalysis.analyze(dependencyAnalyzer);
@@ -468,6 +557,7 @@ public class TeaVM implements TeaVMHost, ServiceRepository {
 
         target.setController(targetController);
 
+        phaseStarted("inlining");
         for (String className : classSet.getClassNames()) {
             ClassHolder cls = classSet.get(className);
             for (MethodHolder method : cls.getMethods()) {
@@ -486,6 +576,7 @@ public class TeaVM implements TeaVMHost, ServiceRepository {
                 new LinkedHashSet<>(dependencyAnalyzer.getReachableClasses())));
 
         // Optimize and allocate registers
+        phaseStarted("optimization");
         optimize(classSet);
         if (wasCancelled()) {
             return null;
@@ -579,6 +670,11 @@ public class TeaVM implements TeaVMHost, ServiceRepository {
             return cutClasses;
         }
 
+        if (threadCount > 1) {
+            linkConcurrently(dependency, cutClasses);
+            return cutClasses;
+        }
+
         for (String className : dependency.getReachableClasses()) {
             ClassReader clsReader = dependency.getClassSource().get(className);
             if (clsReader != null) {
@@ -595,6 +691,68 @@ public class TeaVM implements TeaVMHost, ServiceRepository {
         return cutClasses;
     }
 
+    private void linkConcurrently(DependencyAnalyzer dependency, MutableClassHolderSource cutClasses) {
+        var dependencyInfo = new SynchronizedDependencyInfo(dependency);
+        var linker = new Linker(dependencyInfo);
+        var hierarchy = ThreadLocal.withInitial(() -> new ClassHierarchy(dependencyInfo.getClassSource()));
+        var platformTags = target.getPlatformTags();
+        var pool = new ForkJoinPool(threadCount);
+        try {
+            var tasks = new ArrayList<Future<LinkedClass>>();
+            for (String className : dependency.getReachableClasses()) {
+                ClassReader clsReader = dependencyInfo.getClassSource().get(className);
+                if (clsReader == null) {
+                    tasks.add(null);
+                    continue;
+                }
+                tasks.add(pool.submit(() -> {
+                    ClassHolder cls = ModelUtils.copyClass(clsReader);
+                    var classDiagnostics = new AccumulationDiagnostics();
+                    new MissingItemsProcessor(dependencyInfo, hierarchy.get(), classDiagnostics,
+                            platformTags).processClass(cls);
+                    linker.link(cls);
+                    return new LinkedClass(cls, classDiagnostics);
+                }));
+            }
+
+            for (var task : tasks) {
+                if (task != null) {
+                    LinkedClass linkedClass = joinTask(task);
+                    cutClasses.putClassHolder(linkedClass.cls);
+                    for (Problem problem : linkedClass.diagnostics.getProblems()) {
+                        if (problem.getSeverity() == ProblemSeverity.ERROR) {
+                            diagnostics.error(problem.getLocation(), problem.getText(), problem.getParams());
+                        } else {
+                            diagnostics.warning(problem.getLocation(), problem.getText(), problem.getParams());
+                        }
+                    }
+                }
+                reportCompileProgress(++compileProgressValue);
+                if (wasCancelled()) {
+                    break;
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    static class LinkedClass {
+        final ClassHolder cls;
+        final AccumulationDiagnostics diagnostics;
+
+        LinkedClass(ClassHolder cls, AccumulationDiagnostics diagnostics) {
+            this.cls = cls;
+            this.diagnostics = diagnostics;
+        }
+    }
+
+    private void phaseStarted(String name) {
+        if (metrics != null) {
+            metrics.phaseStarted(name);
+        }
+    }
+
     private void reportPhase(TeaVMPhase phase, int progressLimit) {
         if (progressListener.phaseStarted(phase, progressLimit) == TeaVMProgressFeedback.CANCEL) {
             cancelled = true;
@@ -617,12 +775,15 @@ public class TeaVM implements TeaVMHost, ServiceRepository {
             return;
         }
 
+        phaseStarted("devirtualization");
         boolean shouldLog = System.getProperty("org.teavm.logDevirtualization", "false").equals("true");
         if (shouldLog) {
             System.out.println("Running devirtualization");
         }
 
         var devirtualization = new Devirtualization(dependencyAnalyzer, dependencyAnalyzer.getClassHierarchy());
+        devirtualization.setProfile(executionProfile);
+        devirtualization.setMaxGuardedTargets(Devirtualization.getDefaultMaxGuardedTargets(optimizationLevel));
         for (String className : classes.getClassNames()) {
             ClassHolder cls = classes.get(className);
             for (MethodHolder method : cls.getMethods()) {
@@ -636,11 +797,47 @@ public class TeaVM implements TeaVMHost, ServiceRepository {
             }
         }
         virtualMethods = devirtualization.getVirtualMethods();
+        if (metrics != null) {
+            metrics.setCounter("virtualCallSites", devirtualization.getVirtualCallSites());
+            metrics.setCounter("directCallSites", devirtualization.getDirectCallSites());
+            metrics.setCounter("guardedCallSites", devirtualization.getGuardedCallSites());
+        }
 
         if (shouldLog) {
             System.out.println("Devirtualization complete");
             System.out.println("Virtual calls: " + devirtualization.getVirtualCallSites());
             System.out.println("Direct calls: " + devirtualization.getDirectCallSites());
+            System.out.println("Guarded calls: " + devirtualization.getGuardedCallSites());
+        }
+    }
+
+    private void specialize(ListableClassHolderSource classes) {
+        phaseStarted("specialization");
+        var specialization = new Specialization(dependencyAnalyzer, classes);
+        specialization.setCodeSizeBudget(optimizationLevel == TeaVMOptimizationLevel.FULL ? 20000 : 5000);
+        specialization.apply();
+        if (metrics != null) {
+            metrics.setCounter("specializedMethods", specialization.getSpecializedMethods());
+            metrics.setCounter("specializedCallSites", specialization.getSpecializedCallSites());
+        }
+    }
+
+    private void propagateInterprocedurally(ListableClassHolderSource classes) {
+        phaseStarted("interproceduralPropagation");
+        var propagation = new InterproceduralPropagation(classes, this::isExternal);
+        propagation.apply();
+        if (metrics != null) {
+            metrics.setCounter("propagatedConstants", propagation.getPropagatedConstants());
+            metrics.setCounter("eliminatedNullChecks", propagation.getEliminatedNullChecks());
+        }
+    }
+
+    private void evaluateClassInitializers(ListableClassHolderSource classes) {
+        phaseStarted("classInitializerEvaluation");
+        var evaluation = new ClassInitializerEvaluation(classes);
+        evaluation.apply();
+        if (metrics != null) {
+            metrics.setCounter("evaluatedClassInitializers", evaluation.getEvaluatedClassCount());
         }
     }
 
@@ -649,43 +846,33 @@ public class TeaVM implements TeaVMHost, ServiceRepository {
             return;
         }
 
-        InliningStrategy inliningStrategy;
+        DefaultInliningStrategy inliningStrategy;
         if (optimizationLevel == TeaVMOptimizationLevel.FULL) {
             inliningStrategy = new DefaultInliningStrategy(20, 7, 300, false);
         } else {
             inliningStrategy = new DefaultInliningStrategy(100, 7, 300, true);
         }
+        inliningStrategy.setProfile(executionProfile);
+
+        if (threadCount > 1) {
+            inlineConcurrently(classes, inliningStrategy);
+            return;
+        }
 
         Inlining inlining = new Inlining(new ClassHierarchy(classes), dependencyAnalyzer, inliningStrategy,
                 classes, this::isExternal, optimizationLevel == TeaVMOptimizationLevel.FULL,
                 target.getInliningFilter());
-        var methodReferences = inlining.getOrder();
+        // Units are listed in an order that respects their dependencies, so processing them one by one
+        // gives the same result as inlineConcurrently
+        var units = inlining.getUnits();
         int classCount = classes.getClassNames().size();
         int initialValue = compileProgressValue;
-        for (int i = 0; i < methodReferences.size(); i++) {
-            MethodReference methodReference = methodReferences.get(i);
-            ClassHolder cls = classes.get(methodReference.getClassName());
-            if (cls == null) {
-                continue;
-            }
-            MethodHolder method = cls.getMethod(methodReference.getDescriptor());
-            if (method == null) {
-                continue;
+        for (int i = 0; i < units.size(); i++) {
+            for (var methodReference : units.get(i).getMethods()) {
+                inlineMethod(inlining, classes, methodReference);
             }
 
-            if (method.getProgram() != null) {
-                if (!inlining.hasUsages(methodReference)) {
-                    inlining.removeUsages(method.getProgram());
-                    method.setProgram(null);
-                } else {
-                    Program program = method.getProgram();
-                    var context = new MethodOptimizationContextImpl(method);
-                    inlining.apply(program, method.getReference());
-                    new UnusedVariableElimination().optimize(context, program);
-                }
-            }
-
-            int newProgress = initialValue + classCount * i / methodReferences.size();
+            int newProgress = initialValue + classCount * i / units.size();
             if (newProgress > compileProgressValue) {
                 compileProgressValue = newProgress;
                 reportCompileProgress(++compileProgressValue);
@@ -696,7 +883,101 @@ public class TeaVM implements TeaVMHost, ServiceRepository {
         }
     }
 
+    private void inlineMethod(Inlining inlining, ListableClassHolderSource classes,
+            MethodReference methodReference) {
+        ClassHolder cls = classes.get(methodReference.getClassName());
+        if (cls == null) {
+            return;
+        }
+        MethodHolder method = cls.getMethod(methodReference.getDescriptor());
+        if (method == null || method.getProgram() == null) {
+            return;
+        }
+
+        if (!inlining.hasUsages(methodReference)) {
+            inlining.removeUsages(method.getProgram());
+            method.setProgram(null);
+        } else {
+            Program program = method.getProgram();
+            inlining.apply(program, method.getReference());
+            new UnusedVariableElimination().optimize(method, program);
+        }
+    }
+
+    /*
+     * Inlining of a method reads programs of methods it calls and updates their usage counts, so methods
+     * are grouped into units (see Inlining.getUnits) and each unit is scheduled as soon as all units
+     * it depends on are done.
+     */
+    private void inlineConcurrently(ListableClassHolderSource classes, InliningStrategy inliningStrategy) {
+        var filterFactory = target.getInliningFilter();
+        InliningFilterFactory synchronizedFilterFactory = methodRef -> {
+            synchronized (filterFactory) {
+                var filter = filterFactory.createFilter(methodRef);
+                return calledMethod -> {
+                    synchronized (filterFactory) {
+                        return filter.apply(calledMethod);
+                    }
+                };
+            }
+        };
+        Inlining inlining = new Inlining(new ClassHierarchy(classes), new SynchronizedDependencyInfo(
+                dependencyAnalyzer), inliningStrategy, classes, this::isExternal,
+                optimizationLevel == TeaVMOptimizationLevel.FULL, synchronizedFilterFactory);
+        var units = inlining.getUnits();
+
+        int classCount = classes.getClassNames().size();
+        int initialValue = compileProgressValue;
+        var stopped = new AtomicBoolean();
+        var pool = new ForkJoinPool(threadCount);
+        try {
+            var futures = new ArrayList<CompletableFuture<Void>>(units.size());
+            for (var unit : units) {
+                var dependencies = unit.getDependencies().stream()
+                        .map(dependency -> futures.get(dependency.getIndex()))
+                        .toArray(CompletableFuture<?>[]::new);
+                futures.add(CompletableFuture.allOf(dependencies).thenRunAsync(() -> {
+                    if (stopped.get()) {
+                        return;
+                    }
+                    for (var methodReference : unit.getMethods()) {
+                        inlineMethod(inlining, classes, methodReference);
+                    }
+                }, pool));
+            }
+
+            for (int i = 0; i < futures.size(); ++i) {
+                try {
+                    futures.get(i).join();
+                } catch (CompletionException e) {
+                    stopped.set(true);
+                    if (e.getCause() instanceof RuntimeException) {
+                        throw (RuntimeException) e.getCause();
+                    } else if (e.getCause() instanceof Error) {
+                        throw (Error) e.getCause();
+                    }
+                    throw e;
+                }
+                int newProgress = initialValue + classCount * i / units.size();
+                if (newProgress > compileProgressValue) {
+                    compileProgressValue = newProgress;
+                    reportCompileProgress(++compileProgressValue);
+                    if (wasCancelled()) {
+                        stopped.set(true);
+                        break;
+                    }
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
     private void optimize(ListableClassHolderSource classSource) {
+        if (threadCount > 1) {
+            optimizeConcurrently(classSource);
+            return;
+        }
         for (String className : classSource.getClassNames()) {
             ClassHolder cls = classSource.get(className);
             for (MethodHolder method : cls.getMethods()) {
@@ -709,14 +990,124 @@ public class TeaVM implements TeaVMHost, ServiceRepository {
         }
     }
 
+    /*
+     * Runs the same steps as optimizeMethod, but runs optimization passes and register allocation on a pool
+     * of worker threads. Everything that touches target, program cache or cache status is done in the calling
+     * thread, so these don't need to be thread-safe. Workers access dependency information through a
+     * synchronized view and each worker has its own class hierarchy, since ClassHierarchy caches lookups.
+     */
+    private void optimizeConcurrently(ListableClassHolderSource classSource) {
+        var classTasks = new ArrayList<List<MethodOptimizationTask>>();
+        for (String className : classSource.getClassNames()) {
+            ClassHolder cls = classSource.get(className);
+            var tasks = new ArrayList<MethodOptimizationTask>();
+            for (MethodHolder method : cls.getMethods()) {
+                if (method.getProgram() == null) {
+                    continue;
+                }
+                Program cachedProgram = getCachedProgram(method);
+                if (cachedProgram != null) {
+                    method.setProgram(cachedProgram);
+                } else {
+                    Program program = ProgramUtils.copy(method.getProgram());
+                    target.beforeOptimizations(program, method);
+                    tasks.add(new MethodOptimizationTask(method, program));
+                }
+            }
+            classTasks.add(tasks);
+        }
+
+        var dependencyInfo = new SynchronizedDependencyInfo(dependencyAnalyzer);
+        var hierarchy = ThreadLocal.withInitial(() -> new ClassHierarchy(dependencyInfo.getClassSource()));
+        var platformTags = target.getPlatformTags();
+        var pool = new ForkJoinPool(threadCount);
+        try {
+            for (var tasks : classTasks) {
+                for (var task : tasks) {
+                    if (task.program.basicBlockCount() > 0) {
+                        task.future = pool.submit(() -> runOptimizations(new MethodOptimizationContextImpl(
+                                task.method, dependencyInfo, hierarchy.get()), task.program));
+                    }
+                }
+            }
+            for (var tasks : classTasks) {
+                for (var task : tasks) {
+                    task.join();
+                }
+                reportCompileProgress(++compileProgressValue);
+                if (wasCancelled()) {
+                    return;
+                }
+            }
+
+            for (var tasks : classTasks) {
+                for (var task : tasks) {
+                    if (task.program.basicBlockCount() > 0) {
+                        target.afterOptimizations(task.program, task.method);
+                        if (target.requiresRegisterAllocation()) {
+                            task.future = pool.submit(() -> allocateRegisters(task.method, task.program));
+                        }
+                    }
+                }
+            }
+            for (var tasks : classTasks) {
+                for (var task : tasks) {
+                    task.join();
+                    Program finalProgram = task.program;
+                    programCache.store(task.method.getReference(), finalProgram,
+                            () -> programDependencyExtractor.extractDependencies(finalProgram));
+                    task.method.setProgram(finalProgram);
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    static class MethodOptimizationTask {
+        final MethodHolder method;
+        final Program program;
+        Future<?> future;
+
+        MethodOptimizationTask(MethodHolder method, Program program) {
+            this.method = method;
+            this.program = program;
+        }
+
+        void join() {
+            if (future == null) {
+                return;
+            }
+            try {
+                joinTask(future);
+            } finally {
+                future = null;
+            }
+        }
+    }
+
+    private static <T> T joinTask(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            } else if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
     private void optimizeMethod(MethodHolder method) {
         if (method.getProgram() == null) {
             return;
         }
 
-        Program optimizedProgram = !cacheStatus.isStaleMethod(method.getReference())
-                ? programCache.get(method.getReference(), cacheStatus)
-                : null;
+        Program optimizedProgram = getCachedProgram(method);
         if (optimizedProgram == null) {
             optimizedProgram = optimizeMethodCacheMiss(method, ProgramUtils.copy(method.getProgram()));
             Program finalProgram = optimizedProgram;
@@ -726,48 +1117,111 @@ public class TeaVM implements TeaVMHost, ServiceRepository {
         method.setProgram(optimizedProgram);
     }
 
+    private Program getCachedProgram(MethodReader method) {
+        if (cacheStatus.isStaleMethod(method.getReference())) {
+            return null;
+        }
+        Program program = programCache.get(method.getReference(), cacheStatus);
+        if (metrics != null) {
+            metrics.cacheAccessed("program", program != null);
+        }
+        return program;
+    }
+
     private Program optimizeMethodCacheMiss(MethodHolder method, Program optimizedProgram) {
         target.beforeOptimizations(optimizedProgram, method);
 
         if (optimizedProgram.basicBlockCount() > 0) {
-            var context = new MethodOptimizationContextImpl(method);
-            boolean changed;
-            do {
-                changed = false;
-                for (MethodOptimization optimization : getOptimizations()) {
-                    try {
-                        changed |= optimization.optimize(context, optimizedProgram);
-                    } catch (Exception | AssertionError e) {
-                        ListingBuilder listingBuilder = new ListingBuilder();
-                        try {
-                            String listing = listingBuilder.buildListing(optimizedProgram, "");
-                            System.err.println("Error optimizing program for method " + method.getReference()
-                                    + ":\n" + listing);
-                        } catch (RuntimeException e2) {
-                            System.err.println("Error optimizing program for method " + method.getReference());
-                            // do nothing
-                        }
-                        throw new RuntimeException(e);
-                    }
-                }
-            } while (changed);
-
+            runOptimizations(new MethodOptimizationContextImpl(method), optimizedProgram);
             target.afterOptimizations(optimizedProgram, method);
             if (target.requiresRegisterAllocation()) {
-                RegisterAllocator allocator = new RegisterAllocator();
-                allocator.allocateRegisters(method.getReference(), optimizedProgram,
-                        optimizationLevel == TeaVMOptimizationLevel.SIMPLE);
+                allocateRegisters(method, optimizedProgram);
             }
         }
 
         return optimizedProgram;
     }
 
+    private void runOptimizations(MethodOptimizationContext context, Program optimizedProgram) {
+        long methodStart = metrics != null ? System.nanoTime() : 0;
+        runOptimizationsUntilFixedPoint(context, optimizedProgram);
+        if (runLoopOptimizations(context, optimizedProgram)) {
+            runOptimizationsUntilFixedPoint(context, optimizedProgram);
+        }
+        if (metrics != null) {
+            metrics.methodOptimized(context.getMethod().getReference(), System.nanoTime() - methodStart);
+        }
+    }
+
+    private void runOptimizationsUntilFixedPoint(MethodOptimizationContext context, Program optimizedProgram) {
+        boolean changed;
+        do {
+            changed = false;
+            for (MethodOptimization optimization : getOptimizations()) {
+                changed |= applyOptimization(optimization, context, optimizedProgram);
+            }
+        } while (changed);
+    }
+
+    /**
+     * Runs optimizations that duplicate loops. Unlike {@link #getOptimizations()}, they are not idempotent
+     * and thus are applied once, after the program reached fixed point.
+     */
+    private boolean runLoopOptimizations(MethodOptimizationContext context, Program optimizedProgram) {
+        if (optimizationLevel.ordinal() < TeaVMOptimizationLevel.ADVANCED.ordinal()) {
+            return false;
+        }
+        boolean changed = false;
+        changed |= applyOptimization(new LoopVersioning(), context, optimizedProgram);
+        changed |= applyOptimization(new LoopUnrolling(), context, optimizedProgram);
+        return changed;
+    }
+
+    private boolean applyOptimization(MethodOptimization optimization, MethodOptimizationContext context,
+            Program optimizedProgram) {
+        try {
+            if (metrics != null) {
+                long start = System.nanoTime();
+                boolean optimizationChanged = optimization.optimize(context, optimizedProgram);
+                metrics.optimizationPerformed(optimization.getClass().getSimpleName(),
+                        System.nanoTime() - start, optimizationChanged);
+                return optimizationChanged;
+            } else {
+                return optimization.optimize(context, optimizedProgram);
+            }
+        } catch (Exception | AssertionError e) {
+            ListingBuilder listingBuilder = new ListingBuilder();
+            MethodReference methodRef = context.getMethod().getReference();
+            try {
+                String listing = listingBuilder.buildListing(optimizedProgram, "");
+                System.err.println("Error optimizing program for method " + methodRef + ":\n" + listing);
+            } catch (RuntimeException e2) {
+                System.err.println("Error optimizing program for method " + methodRef);
+                // do nothing
+            }
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void allocateRegisters(MethodHolder method, Program program) {
+        RegisterAllocator allocator = new RegisterAllocator();
+        allocator.allocateRegisters(method.getReference(), program,
+                optimizationLevel == TeaVMOptimizationLevel.SIMPLE);
+    }
+
     class MethodOptimizationContextImpl implements MethodOptimizationContext {
         private MethodReader method;
+        private DependencyInfo dependencyInfo;
+        private ClassHierarchy hierarchy;
 
         MethodOptimizationContextImpl(MethodReader method) {
+            this(method, dependencyAnalyzer, dependencyAnalyzer.getClassHierarchy());
+        }
+
+        MethodOptimizationContextImpl(MethodReader method, DependencyInfo dependencyInfo, ClassHierarchy hierarchy) {
             this.method = method;
+            this.dependencyInfo = dependencyInfo;
+            this.hierarchy = hierarchy;
         }
 
         @Override
@@ -777,17 +1231,17 @@ public class TeaVM implements TeaVMHost, ServiceRepository {
 
         @Override
         public DependencyInfo getDependencyInfo() {
-            return dependencyAnalyzer;
+            return dependencyInfo;
         }
 
         @Override
         public ClassReaderSource getClassSource() {
-            return dependencyAnalyzer.getClassSource();
+            return dependencyInfo.getClassSource();
         }
 
         @Override
         public ClassHierarchy getHierarchy() {
-            return dependencyAnalyzer.getClassHierarchy();
+            return hierarchy;
         }
     }
 
@@ -796,8 +1250,9 @@ public class TeaVM implements TeaVMHost, ServiceRepository {
         optimizations.add(new RedundantJumpElimination());
         optimizations.add(new ArrayUnwrapMotion());
         if (optimizationLevel.ordinal() >= TeaVMOptimizationLevel.ADVANCED.ordinal()) {
+            optimizations.add(new BoxingElimination());
             optimizations.add(new ScalarReplacement());
-            //optimizations.add(new LoopInversion());
+            optimizations.add(new LoopInversion());
             optimizations.add(new LoopInvariantMotion());
         }
         if (optimizationLevel.ordinal() >= TeaVMOptimizationLevel.ADVANCED.ordinal()) {
@@ -932,6 +1387,11 @@ public class TeaVM implements TeaVMHost, ServiceRepository {
             return optimizationLevel == TeaVMOptimizationLevel.SIMPLE;
         }
 
+        @Override
+        public int getThreadCount() {
+            return threadCount;
+        }
+
         @Override
         public boolean isVirtual(MethodReference method) {
             return TeaVM.this.isVirtual(method);
@@ -989,9 +1449,7 @@ public class TeaVM implements TeaVMHost, ServiceRepository {
                 }
 
                 Function<MethodHolder, Program> programSupplier = method -> {
-                    Program program = !cacheStatus.isStaleMethod(method.getReference())
-                            ? programCache.get(method.getReference(), cacheStatus)
-                            : null;
+                    Program program = getCachedProgram(method);
                     if (program == null) {
                         program = ProgramUtils.copy(classReader.getMethod(method.getDescriptor()).getProgram());
                         missingItemsProcessor.processMethod(method.getReference(), program);
@@ -48,6 +48,12 @@ public interface TeaVMTargetController {
 
     boolean isFriendlyToDebugger();
 
+    /**
+     * Number of threads the target may use to process methods independently of each other.
+     * Target should produce the same output regardless of this value.
+     */
+    int getThreadCount();
+
     Map<? extends String, ? extends TeaVMEntryPoint> getEntryPoints();
 
     Set<? extends String> getPreservedClasses();
@@ -0,0 +1,73 @@
+/*
+ *  Copyright 2023 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+"use strict";
+
+var $rt_chunkBaseUrl = typeof document !== "undefined" && document.currentScript
+    ? document.currentScript.src
+    : typeof location !== "undefined" ? location.href : "";
+var $rt_chunkStates = [];
+
+function $rt_chunkLoaded(chunk) {
+    return $rt_chunkStates[chunk] === true;
+}
+function $rt_loadChunk(chunk, callback) {
+    var state = $rt_chunkStates[chunk];
+    if (state === true) {
+        callback(null);
+        return;
+    }
+    if (state) {
+        state.push(callback);
+        return;
+    }
+    var file = $rt_chunkFiles[chunk];
+    if (!file) {
+        $rt_chunkStates[chunk] = true;
+        callback(null);
+        return;
+    }
+
+    var callbacks = [callback];
+    $rt_chunkStates[chunk] = callbacks;
+    var url;
+    var loading;
+    if ($rt_chunkModules !== null) {
+        url = file;
+        loading = $rt_chunkModules[chunk]();
+    } else {
+        url = $rt_chunkBaseUrl ? new URL(file, $rt_chunkBaseUrl).href : file;
+        loading = fetch(url).then(function(response) {
+            if (!response.ok) {
+                throw new Error("HTTP status " + response.status);
+            }
+            return response.text();
+        }).then(function(text) {
+            $rt_evalChunk(text);
+        });
+    }
+    loading.then(function() {
+        $rt_chunkStates[chunk] = true;
+        for (var i = 0; i < callbacks.length; ++i) {
+            callbacks[i](null);
+        }
+    }, function(e) {
+        $rt_chunkStates[chunk] = void 0;
+        var error = $rt_exception($rt_createException($rt_str("Could not load chunk " + url + ": " + e)));
+        for (var i = 0; i < callbacks.length; ++i) {
+            callbacks[i](error);
+        }
+    });
+}
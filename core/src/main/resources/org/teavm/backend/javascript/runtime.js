@@ -585,12 +585,12 @@ function $rt_threadStarter(f) {
     return function() {
         var args = Array.prototype.slice.apply(arguments);
         $rt_startThread(function() {
-            f.apply(this, args);
+            return f.apply(this, args);
         });
     }
 }
 function $rt_mainStarter(f) {
-    return function(args, callback) {
+    var starter = function(args, callback) {
         if (!args) {
             args = [];
         }
@@ -598,8 +598,10 @@ function $rt_mainStarter(f) {
         for (var i = 0; i < args.length; ++i) {
             javaArgs.data[i] = $rt_str(args[i]);
         }
-        $rt_startThread(function() { f.call(null, javaArgs); }, callback);
-    }
+        $rt_startThread(function() { return f.call(null, javaArgs); }, callback);
+    };
+    starter.javaException = $rt_javaException;
+    return starter;
 }
 var $rt_stringPool_instance;
 function $rt_stringPool(strings) {
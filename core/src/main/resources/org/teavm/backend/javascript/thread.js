@@ -20,6 +20,7 @@ function TeaVMThread(runner) {
     this.stack = [];
     this.suspendCallback = null;
     this.runner = runner;
+    this.generator = null;
     this.attribute = null;
     this.completeCallback = null;
 }
@@ -70,8 +71,21 @@ TeaVMThread.prototype.run = function() {
     $rt_currentNativeThread = this;
     var result;
     try {
-        result = this.runner();
+        if (this.generator === null) {
+            result = this.runner();
+            if ($rt_isGenerator(result)) {
+                this.generator = result;
+            }
+        }
+        if (this.generator !== null) {
+            var step = this.generator.next();
+            if (step.done) {
+                this.generator = null;
+            }
+            result = step.value;
+        }
     } catch (e) {
+        this.generator = null;
         result = e;
     } finally {
         $rt_currentNativeThread = null;
@@ -107,6 +121,11 @@ function $rt_startThread(runner, callback) {
     new TeaVMThread(runner).start(callback);
 }
 var $rt_currentNativeThread = null;
+var $rt_generatorPrototype = null;
+function $rt_isGenerator(value) {
+    return $rt_generatorPrototype !== null && typeof value === "object" && value !== null
+        && $rt_generatorPrototype.isPrototypeOf(value);
+}
 function $rt_nativeThread() {
     return $rt_currentNativeThread;
 }
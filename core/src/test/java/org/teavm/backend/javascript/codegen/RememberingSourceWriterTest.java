@@ -0,0 +1,108 @@
+/*
+ *  Copyright 2023 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.backend.javascript.codegen;
+
+import static org.junit.Assert.assertEquals;
+import java.io.IOException;
+import org.junit.Test;
+import org.teavm.model.MethodDescriptor;
+import org.teavm.model.ValueType;
+
+public class RememberingSourceWriterTest {
+    private static final MethodDescriptor FOO = new MethodDescriptor("foo", ValueType.INTEGER);
+    private static final MethodDescriptor BAR = new MethodDescriptor("bar", ValueType.VOID);
+
+    @Test
+    public void replaysSameOutput() throws IOException {
+        var expected = new StringBuilder();
+        writeFirst(createWriter(expected, false));
+
+        var actual = new StringBuilder();
+        var remembering = new RememberingSourceWriter();
+        writeFirst(remembering);
+        remembering.replay(createWriter(actual, false));
+
+        assertEquals(expected.toString(), actual.toString());
+    }
+
+    @Test
+    public void resolvesNamesInReplayOrder() throws IOException {
+        var expected = new StringBuilder();
+        var writer = createWriter(expected, true);
+        writeSecond(writer);
+        writeFirst(writer);
+
+        var actual = new StringBuilder();
+        var first = new RememberingSourceWriter();
+        var second = new RememberingSourceWriter();
+        writeFirst(first);
+        writeSecond(second);
+        writer = createWriter(actual, true);
+        second.replay(writer);
+        first.replay(writer);
+
+        assertEquals(expected.toString(), actual.toString());
+    }
+
+    @Test
+    public void breaksLinesAtReplayColumn() throws IOException {
+        var expected = new StringBuilder();
+        var writer = createWriter(expected, true);
+        writer.append("prefix;");
+        writeFirst(writer);
+
+        var actual = new StringBuilder();
+        var remembering = new RememberingSourceWriter();
+        writeFirst(remembering);
+        writer = createWriter(actual, true);
+        writer.append("prefix;");
+        remembering.replay(writer);
+
+        assertEquals(expected.toString(), actual.toString());
+    }
+
+    @Test
+    public void runsCommandsInOrder() throws IOException {
+        var log = new StringBuilder();
+        var remembering = new RememberingSourceWriter();
+        remembering.append("a").runInOrder(w -> log.append("1")).append("b").runInOrder(w -> log.append("2"));
+        assertEquals("", log.toString());
+
+        var output = new StringBuilder();
+        remembering.replay(createWriter(output, false));
+        assertEquals("12", log.toString());
+        assertEquals("ab", output.toString());
+    }
+
+    private static void writeFirst(SourceWriter writer) throws IOException {
+        writer.append("function").ws().appendFunction("$rt_first").append("()").appendBlockStart();
+        writer.append("return ").appendClass("Foo").append(".").appendMethod(FOO).append("(1,").ws()
+                .append('2').append(");").softNewLine();
+        writer.appendBlockEnd().newLine();
+    }
+
+    private static void writeSecond(SourceWriter writer) throws IOException {
+        writer.append("x.").appendMethod(BAR).append("();").tokenBoundary().appendClass("Bar")
+                .append("\nfoo();").softNewLine();
+    }
+
+    private static SourceWriter createWriter(StringBuilder sb, boolean minified) {
+        var builder = new SourceWriterBuilder(new DefaultNamingStrategy(new MinifyingAliasProvider(1000), null));
+        builder.setMinified(minified);
+        builder.setLineWidth(10);
+        return builder.build(sb);
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ *  Copyright 2023 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.backend.javascript.splitting;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import org.teavm.ast.AssignmentStatement;
+import org.teavm.ast.AsyncMethodNode;
+import org.teavm.ast.AsyncMethodPart;
+import org.teavm.ast.ConstantExpr;
+import org.teavm.ast.Expr;
+import org.teavm.ast.InvocationExpr;
+import org.teavm.ast.RegularMethodNode;
+import org.teavm.ast.SequentialStatement;
+import org.teavm.ast.Statement;
+import org.teavm.model.MethodReference;
+import org.teavm.model.ValueType;
+
+public class ChunkLoaderCallUpdaterTest {
+    private static final MethodReference SPLIT_POINT = new MethodReference("A", "split", ValueType.VOID);
+    private static final MethodReference OTHER = new MethodReference("A", "other", ValueType.INTEGER,
+            ValueType.VOID);
+
+    @Test
+    public void replacesSharedArgument() {
+        Expr sharedVariable = Expr.var(1);
+        InvocationExpr loadCall = Expr.invokeStatic(SplitPointTransformer.LOAD_METHOD,
+                new Expr[] { sharedVariable });
+        InvocationExpr otherCall = Expr.invokeStatic(OTHER, new Expr[] { sharedVariable });
+        SequentialStatement body = new SequentialStatement();
+        body.getSequence().add(Statement.assign(null, loadCall));
+        body.getSequence().add(Statement.assign(null, otherCall));
+        RegularMethodNode node = new RegularMethodNode(SPLIT_POINT);
+        node.setBody(body);
+
+        new ChunkLoaderCallUpdater().update(node, 3);
+
+        assertChunk(3, loadCall);
+        assertSame(sharedVariable, otherCall.getArguments().get(0));
+    }
+
+    @Test
+    public void updatesAsyncMethod() {
+        InvocationExpr loadCall = Expr.invokeStatic(SplitPointTransformer.LOAD_METHOD,
+                new Expr[] { Expr.constant(-1) });
+        AsyncMethodNode node = new AsyncMethodNode(SPLIT_POINT);
+        AsyncMethodPart firstPart = new AsyncMethodPart();
+        firstPart.setStatement(Statement.assign(null, loadCall));
+        node.getBody().add(firstPart);
+        AsyncMethodPart secondPart = new AsyncMethodPart();
+        AssignmentStatement exit = Statement.assign(null, Expr.invokeStatic(OTHER,
+                new Expr[] { Expr.constant(-1) }));
+        secondPart.setStatement(exit);
+        node.getBody().add(secondPart);
+
+        new ChunkLoaderCallUpdater().update(node, 0);
+
+        assertChunk(0, loadCall);
+        assertEquals(-1, ((ConstantExpr) ((InvocationExpr) exit.getRightValue()).getArguments().get(0)).getValue());
+    }
+
+    private static void assertChunk(int expected, InvocationExpr loadCall) {
+        Expr argument = loadCall.getArguments().get(0);
+        assertTrue(argument instanceof ConstantExpr);
+        assertEquals(expected, ((ConstantExpr) argument).getValue());
+    }
+}
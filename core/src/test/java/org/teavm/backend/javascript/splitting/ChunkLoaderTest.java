@@ -0,0 +1,215 @@
+/*
+ *  Copyright 2023 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.backend.javascript.splitting;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ScriptableObject;
+
+public class ChunkLoaderTest {
+    private static final String PRELUDE = ""
+            + "var fetched = [];\n"
+            + "var responses = {};\n"
+            + "var pendingResponses = [];\n"
+            + "var evaluated = [];\n"
+            + "var results = [];\n"
+            + "function fetch(url) {\n"
+            + "    fetched.push(url);\n"
+            + "    return new Promise(function(resolve, reject) {\n"
+            + "        pendingResponses.push(function() {\n"
+            + "            var response = responses[url];\n"
+            + "            if (!response) {\n"
+            + "                reject(new Error('network error'));\n"
+            + "                return;\n"
+            + "            }\n"
+            + "            resolve({\n"
+            + "                ok: response.status === 200,\n"
+            + "                status: response.status,\n"
+            + "                text: function() { return Promise.resolve(response.text); }\n"
+            + "            });\n"
+            + "        });\n"
+            + "    });\n"
+            + "}\n"
+            + "function respond() {\n"
+            + "    var responses = pendingResponses;\n"
+            + "    pendingResponses = [];\n"
+            + "    for (var i = 0; i < responses.length; ++i) {\n"
+            + "        responses[i]();\n"
+            + "    }\n"
+            + "}\n"
+            + "function callback(name) {\n"
+            + "    return function(e) { results.push(name + ': ' + (e === null ? 'ok' : e.message)); };\n"
+            + "}\n"
+            + "function $rt_str(s) { return s; }\n"
+            + "function $rt_createException(message) { return { message: message }; }\n"
+            + "function $rt_exception(e) { return e; }\n"
+            + "var $rt_chunkFiles = ['classes-0.js', null];\n"
+            + "var $rt_chunkModules = null;\n"
+            + "function importModule(url) {\n"
+            + "    return fetch(url).then(function(response) {\n"
+            + "        if (!response.ok) {\n"
+            + "            throw new Error('cannot import ' + url);\n"
+            + "        }\n"
+            + "        return response.text();\n"
+            + "    }).then(function(text) {\n"
+            + "        evaluated.push('module ' + text);\n"
+            + "    });\n"
+            + "}\n"
+            + "function $rt_evalChunk() { eval(arguments[0]); }\n";
+    private Context context;
+    private ScriptableObject scope;
+
+    @Before
+    public void setUp() throws IOException {
+        context = Context.enter();
+        context.setOptimizationLevel(-1);
+        context.setLanguageVersion(Context.VERSION_ES6);
+        scope = context.initStandardObjects();
+        eval(PRELUDE);
+        try (InputStream input = ChunkLoaderTest.class.getClassLoader().getResourceAsStream(
+                "org/teavm/backend/javascript/chunk.js");
+                Reader reader = new InputStreamReader(input, StandardCharsets.UTF_8)) {
+            context.evaluateReader(scope, reader, "chunk.js", 1, null);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        Context.exit();
+    }
+
+    @Test
+    public void loadsChunkOnFirstCall() {
+        eval("responses['classes-0.js'] = { status: 200, text: 'evaluated.push(0);' };");
+
+        eval("$rt_loadChunk(0, callback('first'));");
+        assertEquals("classes-0.js", eval("fetched.join()"));
+        assertEquals("", eval("results.join()"));
+        assertFalse(isLoaded(0));
+
+        respond();
+        assertEquals("first: ok", eval("results.join()"));
+        assertEquals("0", eval("evaluated.join()"));
+        assertTrue(isLoaded(0));
+
+        eval("$rt_loadChunk(0, callback('second'));");
+        assertEquals("first: ok,second: ok", eval("results.join()"));
+        assertEquals("classes-0.js", eval("fetched.join()"));
+        assertEquals("0", eval("evaluated.join()"));
+    }
+
+    @Test
+    public void concurrentFirstCallsShareSingleLoad() {
+        eval("responses['classes-0.js'] = { status: 200, text: 'evaluated.push(0);' };");
+
+        eval("$rt_loadChunk(0, callback('first'));");
+        eval("$rt_loadChunk(0, callback('second'));");
+        assertEquals("classes-0.js", eval("fetched.join()"));
+        assertEquals("", eval("results.join()"));
+
+        respond();
+        assertEquals("first: ok,second: ok", eval("results.join()"));
+        assertEquals("0", eval("evaluated.join()"));
+    }
+
+    @Test
+    public void failedFetchSurfacesError() {
+        eval("responses['classes-0.js'] = { status: 404, text: '' };");
+
+        eval("$rt_loadChunk(0, callback('first'));");
+        eval("$rt_loadChunk(0, callback('second'));");
+        respond();
+        assertEquals("first: Could not load chunk classes-0.js: Error: HTTP status 404,"
+                + "second: Could not load chunk classes-0.js: Error: HTTP status 404", eval("results.join()"));
+        assertEquals("", eval("evaluated.join()"));
+        assertFalse(isLoaded(0));
+
+        eval("responses['classes-0.js'] = { status: 200, text: 'evaluated.push(0);' };");
+        eval("results = [];");
+        eval("$rt_loadChunk(0, callback('retry'));");
+        respond();
+        assertEquals("retry: ok", eval("results.join()"));
+        assertEquals("classes-0.js,classes-0.js", eval("fetched.join()"));
+        assertTrue(isLoaded(0));
+    }
+
+    @Test
+    public void networkErrorSurfacesError() {
+        eval("$rt_loadChunk(0, callback('first'));");
+        respond();
+        assertEquals("first: Could not load chunk classes-0.js: Error: network error", eval("results.join()"));
+        assertFalse(isLoaded(0));
+    }
+
+    @Test
+    public void emptyChunkIsNotFetched() {
+        eval("$rt_loadChunk(1, callback('first'));");
+        assertEquals("first: ok", eval("results.join()"));
+        assertEquals("", eval("fetched.join()"));
+        assertTrue(isLoaded(1));
+    }
+
+    @Test
+    public void loadsModuleChunkWithoutEval() {
+        eval("$rt_chunkModules = [function() { return importModule('./classes-0.js'); }, null];");
+        eval("$rt_evalChunk = function() { throw new Error('eval called'); };");
+        eval("responses['./classes-0.js'] = { status: 200, text: 'chunk' };");
+
+        eval("$rt_loadChunk(0, callback('first'));");
+        eval("$rt_loadChunk(0, callback('second'));");
+        assertEquals("./classes-0.js", eval("fetched.join()"));
+        respond();
+        assertEquals("first: ok,second: ok", eval("results.join()"));
+        assertEquals("module chunk", eval("evaluated.join()"));
+        assertTrue(isLoaded(0));
+    }
+
+    @Test
+    public void failedModuleImportSurfacesError() {
+        eval("$rt_chunkModules = [function() { return importModule('./classes-0.js'); }, null];");
+
+        eval("$rt_loadChunk(0, callback('first'));");
+        respond();
+        assertEquals("first: Could not load chunk classes-0.js: Error: network error", eval("results.join()"));
+        assertFalse(isLoaded(0));
+    }
+
+    private boolean isLoaded(int chunk) {
+        return Boolean.TRUE.equals(context.evaluateString(scope, "$rt_chunkLoaded(" + chunk + ")", "test", 1,
+                null));
+    }
+
+    private void respond() {
+        eval("respond();");
+        context.processMicrotasks();
+    }
+
+    private String eval(String script) {
+        Object result = context.evaluateString(scope, script, "test", 1, null);
+        context.processMicrotasks();
+        return Context.toString(result);
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ *  Copyright 2023 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.backend.javascript.splitting;
+
+import static org.junit.Assert.assertEquals;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import org.junit.Test;
+
+public class ChunkModuleTest {
+    private static final Set<String> MAIN_NAMES = Set.of("a", "b", "c", "d", "e", "f", "g", "$rt_s", "main");
+
+    @Test
+    public void importsNamesOfMainModule() {
+        ChunkModule module = createModule("function f(x) {\n    return a(x) + $rt_s(1) + y;\n}\n", "f");
+
+        assertEquals(Set.of("a", "$rt_s"), module.getImportedNames());
+    }
+
+    @Test
+    public void skipsPropertiesStringsAndComments() {
+        ChunkModule module = createModule("function f(x) {\n"
+                + "    // b\n"
+                + "    /* c */\n"
+                + "    x.d = \"e\" + 'f\\' g' + x. c;\n"
+                + "    return a;\n"
+                + "}\n", "f");
+
+        assertEquals(Set.of("a"), module.getImportedNames());
+    }
+
+    @Test
+    public void skipsRegularExpressions() {
+        ChunkModule module = createModule("function f(x) {\n"
+                + "    var r = /b'[/]c/g;\n"
+                + "    return x / a / d;\n"
+                + "}\n", "f");
+
+        assertEquals(Set.of("a", "d"), module.getImportedNames());
+    }
+
+    @Test
+    public void writesModule() throws IOException {
+        ChunkModule module = createModule("function f() {\n    return main() + a;\n}\nfunction h() {}\n", "f", "h");
+        StringBuilder sb = new StringBuilder();
+        module.write(sb, "./classes.js", name -> name.equals("main") ? "$rt_chunk_main" : name);
+
+        assertEquals("import { a, $rt_chunk_main as main } from \"./classes.js\";\n"
+                + "function f() {\n    return main() + a;\n}\nfunction h() {}\n"
+                + "export { f, h };\n", sb.toString());
+    }
+
+    private static ChunkModule createModule(String code, String... functions) {
+        List<String> functionList = Arrays.asList(functions);
+        return new ChunkModule(code, functionList, MAIN_NAMES::contains);
+    }
+}
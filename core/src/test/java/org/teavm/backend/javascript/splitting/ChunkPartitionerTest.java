@@ -0,0 +1,141 @@
+/*
+ *  Copyright 2023 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.backend.javascript.splitting;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Test;
+import org.teavm.common.ServiceRepository;
+import org.teavm.dependency.DependencyAnalyzer;
+import org.teavm.dependency.MethodDependency;
+import org.teavm.dependency.PreciseDependencyAnalyzer;
+import org.teavm.diagnostics.AccumulationDiagnostics;
+import org.teavm.model.AccessLevel;
+import org.teavm.model.ClassHolder;
+import org.teavm.model.ElementModifier;
+import org.teavm.model.ListingParseUtils;
+import org.teavm.model.MethodDescriptor;
+import org.teavm.model.MethodHolder;
+import org.teavm.model.MethodReference;
+import org.teavm.model.MutableClassHolderSource;
+import org.teavm.model.ReferenceCache;
+import org.teavm.model.ValueType;
+
+public class ChunkPartitionerTest {
+    private static final String PREFIX = "backend/javascript/splitting/";
+    private static final ValueType[] MAIN_SIGNATURE = {
+            ValueType.arrayOf(ValueType.object("java.lang.String")), ValueType.VOID };
+    private MutableClassHolderSource classes = new MutableClassHolderSource();
+    private Map<MethodReference, Integer> chunks;
+
+    @Before
+    public void setUp() {
+        ClassHolder objectClass = createClass("java.lang.Object", null);
+        addMethod(objectClass, "<init>", "empty", false);
+
+        ClassHolder main = createClass("Main", "java.lang.Object");
+        addMethod(main, "main", "main", true, MAIN_SIGNATURE);
+        addMethod(main, "first", "first", true);
+        addMethod(main, "second", "second", true);
+        addMethod(main, "firstHelper", "firstHelper", true);
+        addMethod(main, "firstNested", "empty", true);
+        addMethod(main, "secondHelper", "empty", true);
+        addMethod(main, "common", "empty", true);
+        addMethod(main, "shared", "shared", true);
+        addMethod(main, "sharedNested", "empty", true);
+
+        DependencyAnalyzer dependencyAnalyzer = analyze();
+        ChunkPartitioner partitioner = new ChunkPartitioner(classes, dependencyAnalyzer.getCallGraph());
+        partitioner.exclude(new MethodReference("Main", "main", MAIN_SIGNATURE));
+
+        Map<MethodReference, Integer> splitPoints = new LinkedHashMap<>();
+        splitPoints.put(method("first"), 0);
+        splitPoints.put(method("second"), 1);
+        chunks = partitioner.partition(splitPoints);
+    }
+
+    @Test
+    public void methodsReachableOnlyFromSplitPointGoToItsChunk() {
+        assertEquals(Integer.valueOf(0), chunks.get(method("firstHelper")));
+        assertEquals(Integer.valueOf(0), chunks.get(method("firstNested")));
+        assertEquals(Integer.valueOf(1), chunks.get(method("secondHelper")));
+    }
+
+    @Test
+    public void splitPointsStayInMainOutput() {
+        assertFalse(chunks.containsKey(method("first")));
+        assertFalse(chunks.containsKey(method("second")));
+    }
+
+    @Test
+    public void methodSharedWithMainOutputStaysThere() {
+        assertFalse(chunks.containsKey(method("common")));
+    }
+
+    @Test
+    public void methodSharedBetweenSplitPointsStaysInMainOutput() {
+        assertFalse(chunks.containsKey(method("shared")));
+        assertFalse(chunks.containsKey(method("sharedNested")));
+    }
+
+    private DependencyAnalyzer analyze() {
+        ServiceRepository services = new ServiceRepository() {
+            @Override
+            public <T> T getService(Class<T> type) {
+                return null;
+            }
+        };
+        DependencyAnalyzer analyzer = new PreciseDependencyAnalyzer(classes, getClass().getClassLoader(),
+                services, new AccumulationDiagnostics(), new ReferenceCache());
+        MethodDependency mainMethod = analyzer.linkMethod(new MethodReference("Main", "main", MAIN_SIGNATURE));
+        analyzer.defer(() -> {
+            analyzer.linkClass("Main").initClass(null);
+            mainMethod.getVariable(1).propagate(analyzer.getType("[Ljava/lang/String;"));
+            mainMethod.use();
+        });
+        analyzer.processDependencies();
+        return analyzer;
+    }
+
+    private static MethodReference method(String name) {
+        return new MethodReference("Main", name, ValueType.VOID);
+    }
+
+    private ClassHolder createClass(String name, String parent) {
+        ClassHolder cls = new ClassHolder(name);
+        cls.setParent(parent);
+        cls.setLevel(AccessLevel.PUBLIC);
+        classes.putClassHolder(cls);
+        return cls;
+    }
+
+    private static void addMethod(ClassHolder cls, String name, String body, boolean isStatic,
+            ValueType... signature) {
+        if (signature.length == 0) {
+            signature = new ValueType[] { ValueType.VOID };
+        }
+        MethodHolder method = new MethodHolder(new MethodDescriptor(name, signature));
+        method.setLevel(AccessLevel.PUBLIC);
+        if (isStatic) {
+            method.getModifiers().add(ElementModifier.STATIC);
+        }
+        method.setProgram(ListingParseUtils.parseFromResource(PREFIX + body + ".txt"));
+        cls.addMethod(method);
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ *  Copyright 2023 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.cache;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.teavm.model.BasicBlock;
+import org.teavm.model.MethodReference;
+import org.teavm.model.Program;
+import org.teavm.model.ReferenceCache;
+import org.teavm.model.ValueType;
+import org.teavm.model.instructions.ExitInstruction;
+import org.teavm.model.instructions.StringConstantInstruction;
+
+public class BuildCacheBackendTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    private HttpServer server;
+    private Map<String, byte[]> serverData = new ConcurrentHashMap<>();
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/cache/", exchange -> {
+            String key = exchange.getRequestURI().getPath().substring("/cache/".length());
+            byte[] body;
+            try (InputStream input = exchange.getRequestBody()) {
+                body = input.readAllBytes();
+            }
+            switch (exchange.getRequestMethod()) {
+                case "GET": {
+                    byte[] data = serverData.get(key);
+                    if (data == null) {
+                        exchange.sendResponseHeaders(404, -1);
+                    } else {
+                        exchange.sendResponseHeaders(200, data.length);
+                        try (OutputStream output = exchange.getResponseBody()) {
+                            output.write(data);
+                        }
+                    }
+                    break;
+                }
+                case "PUT":
+                    serverData.put(key, body);
+                    exchange.sendResponseHeaders(201, -1);
+                    break;
+                default:
+                    exchange.sendResponseHeaders(405, -1);
+                    break;
+            }
+            exchange.close();
+        });
+        server.start();
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    public void directoryBackend() throws IOException {
+        checkBackend(new DirectoryBuildCacheBackend(folder.getRoot()));
+    }
+
+    @Test
+    public void httpBackend() throws IOException {
+        checkBackend(new HttpBuildCacheBackend(getServerUrl()));
+        assertThat(serverData.size(), is(1));
+    }
+
+    private void checkBackend(BuildCacheBackend backend) throws IOException {
+        assertThat(backend.get("0123abcd"), nullValue());
+        backend.put("0123abcd", bytes("foo"));
+        assertThat(new String(backend.get("0123abcd"), StandardCharsets.UTF_8), is("foo"));
+        backend.put("0123abcd", bytes("bar"));
+        assertThat(new String(backend.get("0123abcd"), StandardCharsets.UTF_8), is("bar"));
+    }
+
+    @Test
+    public void programSharedBetweenBuilds() throws IOException {
+        Map<String, String> hashes = new HashMap<>();
+        hashes.put("Foo", "1");
+        hashes.put("Bar", "2");
+        MethodReference method = new MethodReference("Foo", "get", ValueType.object("java.lang.String"));
+
+        SharedProgramCache firstCache = new SharedProgramCache(EmptyProgramCache.INSTANCE,
+                new HttpBuildCacheBackend(getServerUrl()), hashes::get, new ReferenceCache(), "test");
+        firstCache.store(method, createProgram(), () -> new String[] { "Bar" });
+        firstCache.flush();
+
+        SharedProgramCache secondCache = new SharedProgramCache(EmptyProgramCache.INSTANCE,
+                new HttpBuildCacheBackend(getServerUrl()), hashes::get, new ReferenceCache(), "test");
+        Program program = secondCache.get(method, AlwaysStaleCacheStatus.INSTANCE);
+        assertThat(program.basicBlockAt(0).getFirstInstruction(), instanceOf(StringConstantInstruction.class));
+        StringConstantInstruction insn = (StringConstantInstruction) program.basicBlockAt(0).getFirstInstruction();
+        assertThat(insn.getConstant(), is("foo"));
+
+        hashes.put("Bar", "3");
+        secondCache = new SharedProgramCache(EmptyProgramCache.INSTANCE, new HttpBuildCacheBackend(getServerUrl()),
+                hashes::get, new ReferenceCache(), "test");
+        assertThat(secondCache.get(method, AlwaysStaleCacheStatus.INSTANCE), nullValue());
+
+        hashes.put("Bar", "2");
+        secondCache = new SharedProgramCache(EmptyProgramCache.INSTANCE, new HttpBuildCacheBackend(getServerUrl()),
+                hashes::get, new ReferenceCache(), "other");
+        assertThat(secondCache.get(method, AlwaysStaleCacheStatus.INSTANCE), nullValue());
+    }
+
+    @Test
+    public void unreachableServerDisablesBackend() throws IOException {
+        String url;
+        try (ServerSocket socket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            url = "http://" + socket.getInetAddress().getHostAddress() + ":" + socket.getLocalPort() + "/cache/";
+        }
+        HttpBuildCacheBackend backend = new HttpBuildCacheBackend(url);
+        assertBuildCompletesPromptly(backend);
+    }
+
+    @Test
+    public void unresponsiveServerTimesOutOnce() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0, 200, InetAddress.getLoopbackAddress())) {
+            String url = "http://" + socket.getInetAddress().getHostAddress() + ":" + socket.getLocalPort()
+                    + "/cache/";
+            assertBuildCompletesPromptly(new HttpBuildCacheBackend(url, 500));
+        }
+    }
+
+    private void assertBuildCompletesPromptly(HttpBuildCacheBackend backend) {
+        Map<String, String> hashes = new HashMap<>();
+        hashes.put("Foo", "1");
+        SharedProgramCache cache = new SharedProgramCache(EmptyProgramCache.INSTANCE, backend, hashes::get,
+                new ReferenceCache(), "test");
+
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < 50; ++i) {
+            MethodReference method = new MethodReference("Foo", "get" + i, ValueType.object("java.lang.String"));
+            assertThat(cache.get(method, AlwaysStaleCacheStatus.INSTANCE), nullValue());
+            cache.store(method, createProgram(), () -> new String[0]);
+        }
+        try {
+            cache.flush();
+        } catch (IOException e) {
+            // expected, server is not available
+        }
+        long duration = System.currentTimeMillis() - start;
+
+        assertThat(backend.getFailure(), notNullValue());
+        assertTrue("Build took " + duration + " ms", duration < 5000);
+    }
+
+    private static Program createProgram() {
+        Program program = new Program();
+        BasicBlock block = program.createBasicBlock();
+        StringConstantInstruction constant = new StringConstantInstruction();
+        constant.setReceiver(program.createVariable());
+        constant.setConstant("foo");
+        block.add(constant);
+        ExitInstruction exit = new ExitInstruction();
+        exit.setValueToReturn(constant.getReceiver());
+        block.add(exit);
+        return program;
+    }
+
+    private String getServerUrl() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/cache/";
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ *  Copyright 2023 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.cache;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.teavm.model.ClassHolder;
+import org.teavm.model.ReferenceCache;
+import org.teavm.parsing.ClasspathResourceMapper;
+
+public class DiskCachedClassReaderSourceTest {
+    private static final String CLASS_NAME = "foo.A";
+    private static final long TIMESTAMP = 1_600_000_000_000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File classesDirectory;
+    private File cacheDirectory;
+    private ReferenceCache referenceCache = new ReferenceCache();
+    private SymbolTable symbolTable = new InMemorySymbolTable();
+    private SymbolTable fileTable = new InMemorySymbolTable();
+    private SymbolTable variableTable = new InMemorySymbolTable();
+
+    @Before
+    public void setUp() throws IOException {
+        classesDirectory = new File(folder.getRoot(), "classes");
+        cacheDirectory = new File(folder.getRoot(), "cache");
+        cacheDirectory.mkdirs();
+    }
+
+    @Test
+    public void sameTimestampDifferentContent() throws IOException {
+        writeClassFile("v1", TIMESTAMP);
+        build(true);
+
+        writeClassFile("v2", TIMESTAMP);
+        assertTrue(build(true).isStaleClass(CLASS_NAME));
+    }
+
+    @Test
+    public void differentTimestampSameContent() throws IOException {
+        writeClassFile("v1", TIMESTAMP);
+        build(true);
+
+        writeClassFile("v1", System.currentTimeMillis() + 60_000);
+        assertFalse(build(true).isStaleClass(CLASS_NAME));
+    }
+
+    @Test
+    public void differentTimestampSameContentWithoutHashes() throws IOException {
+        writeClassFile("v1", TIMESTAMP);
+        build(false);
+
+        writeClassFile("v1", System.currentTimeMillis() + 60_000);
+        assertTrue(build(false).isStaleClass(CLASS_NAME));
+    }
+
+    private DiskCachedClassReaderSource build(boolean byContent) throws IOException {
+        URLClassLoader classLoader = new URLClassLoader(new URL[] { classesDirectory.toURI().toURL() }, null);
+        ClasspathResourceMapper mapper = new ClasspathResourceMapper(classLoader, referenceCache, name -> null);
+        DiskCachedClassReaderSource source = new DiskCachedClassReaderSource(cacheDirectory, referenceCache,
+                symbolTable, fileTable, variableTable, name -> {
+                    ClassHolder cls = new ClassHolder(name);
+                    cls.setParent("java.lang.Object");
+                    return cls;
+                }, mapper);
+        if (byContent) {
+            source.setClassHashProvider(mapper);
+        }
+        assertNotNull(source.get(CLASS_NAME));
+        source.flush();
+        return source;
+    }
+
+    private void writeClassFile(String content, long timestamp) throws IOException {
+        File file = new File(classesDirectory, CLASS_NAME.replace('.', '/') + ".class");
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        file.setLastModified(timestamp);
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ *  Copyright 2023 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.teavm.model.ClassHolder;
+import org.teavm.model.ReferenceCache;
+
+public class MemoryCachedClassReaderSourceTest {
+    private MemoryCachedClassReaderSource source;
+    private List<String> providedClasses = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        source = new MemoryCachedClassReaderSource(new ReferenceCache(), new InMemorySymbolTable(),
+                new InMemorySymbolTable(), new InMemorySymbolTable());
+        source.setProvider(name -> {
+            providedClasses.add(name);
+            if (name.equals("Missing")) {
+                return null;
+            }
+            ClassHolder cls = new ClassHolder(name);
+            cls.setParent("java.lang.Object");
+            return cls;
+        });
+    }
+
+    @Test
+    public void changeOfUnusedClassDoesNotAffectBuild() {
+        build();
+
+        assertFalse(source.isAnyRequested(Arrays.asList("Unused", "AnotherUnused")));
+        source.evict(Arrays.asList("Unused", "AnotherUnused"));
+
+        assertFalse(source.isStaleClass("A"));
+        assertFalse(source.isStaleClass("B"));
+        assertNotNull(source.get("A"));
+        assertNotNull(source.get("B"));
+        assertEquals(Arrays.asList("A", "B", "Missing"), providedClasses);
+    }
+
+    @Test
+    public void changeOfUsedClassAffectsBuild() {
+        build();
+
+        assertTrue(source.isAnyRequested(Arrays.asList("Unused", "B")));
+        source.evict(Arrays.asList("Unused", "B"));
+
+        assertFalse(source.isStaleClass("A"));
+        assertTrue(source.isStaleClass("B"));
+        assertNotNull(source.get("B"));
+        assertEquals(Arrays.asList("A", "B", "Missing", "B"), providedClasses);
+    }
+
+    @Test
+    public void appearanceOfMissingClassAffectsBuild() {
+        build();
+
+        assertTrue(source.isAnyRequested(Arrays.asList("Missing")));
+    }
+
+    private void build() {
+        assertNotNull(source.get("A"));
+        assertNotNull(source.get("B"));
+        assertNull(source.get("Missing"));
+        source.commit();
+    }
+}
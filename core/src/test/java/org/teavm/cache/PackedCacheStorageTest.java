@@ -0,0 +1,181 @@
+/*
+ *  Copyright 2023 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.cache;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.teavm.model.MethodReference;
+
+public class PackedCacheStorageTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void readsStoredEntries() throws IOException {
+        PackedCacheStorage storage = new PackedCacheStorage(folder.getRoot(), "test");
+        storage.store("a", new String[] { "A" }, bytes("foo"));
+        storage.store("b", new String[] { "B" }, bytes("bar"));
+        storage.flush();
+
+        storage = new PackedCacheStorage(folder.getRoot(), "test");
+        CacheStatus status = new TestCacheStatus();
+        assertThat(read(storage.get("a", status)), is("foo"));
+        assertThat(read(storage.get("b", status)), is("bar"));
+        assertThat(storage.get("c", status), nullValue());
+    }
+
+    @Test
+    public void appendsAndReplacesEntries() throws IOException {
+        PackedCacheStorage storage = new PackedCacheStorage(folder.getRoot(), "test");
+        storage.store("a", new String[0], bytes("foo"));
+        storage.store("b", new String[0], bytes("bar"));
+        storage.flush();
+
+        storage = new PackedCacheStorage(folder.getRoot(), "test");
+        storage.store("b", new String[0], bytes("baz"));
+        storage.store("c", new String[0], bytes("qux"));
+        storage.flush();
+
+        storage = new PackedCacheStorage(folder.getRoot(), "test");
+        CacheStatus status = new TestCacheStatus();
+        assertThat(read(storage.get("a", status)), is("foo"));
+        assertThat(read(storage.get("b", status)), is("baz"));
+        assertThat(read(storage.get("c", status)), is("qux"));
+    }
+
+    @Test
+    public void skipsEntriesWithStaleDependencies() throws IOException {
+        PackedCacheStorage storage = new PackedCacheStorage(folder.getRoot(), "test");
+        storage.store("a", new String[] { "A", "B" }, bytes("foo"));
+        storage.store("b", new String[] { "C" }, bytes("bar"));
+        storage.flush();
+
+        storage = new PackedCacheStorage(folder.getRoot(), "test");
+        CacheStatus status = new TestCacheStatus("B");
+        assertThat(storage.get("a", status), nullValue());
+        assertThat(read(storage.get("b", status)), is("bar"));
+    }
+
+    @Test
+    public void ignoresUncommittedData() throws IOException {
+        PackedCacheStorage storage = new PackedCacheStorage(folder.getRoot(), "test");
+        storage.store("a", new String[0], bytes("foo"));
+        storage.flush();
+
+        try (FileOutputStream output = new FileOutputStream(new File(folder.getRoot(), "test-0.teavm-pack"),
+                true)) {
+            output.write(bytes("garbage"));
+        }
+
+        storage = new PackedCacheStorage(folder.getRoot(), "test");
+        storage.store("b", new String[0], bytes("bar"));
+        storage.flush();
+
+        storage = new PackedCacheStorage(folder.getRoot(), "test");
+        CacheStatus status = new TestCacheStatus();
+        assertThat(read(storage.get("a", status)), is("foo"));
+        assertThat(read(storage.get("b", status)), is("bar"));
+    }
+
+    @Test
+    public void compactsPackFile() throws IOException {
+        byte[] largeData = new byte[600 * 1024];
+        Arrays.fill(largeData, (byte) 'x');
+
+        PackedCacheStorage storage = new PackedCacheStorage(folder.getRoot(), "test");
+        storage.store("a", new String[0], bytes("foo"));
+        storage.store("b", new String[0], largeData);
+        storage.flush();
+        storage.store("b", new String[0], largeData);
+        storage.flush();
+        storage.store("b", new String[0], bytes("bar"));
+        storage.flush();
+
+        assertThat(new File(folder.getRoot(), "test-0.teavm-pack").exists(), is(false));
+        assertThat(new File(folder.getRoot(), "test-1.teavm-pack").length(), is(6L));
+
+        storage = new PackedCacheStorage(folder.getRoot(), "test");
+        CacheStatus status = new TestCacheStatus();
+        assertThat(read(storage.get("a", status)), is("foo"));
+        assertThat(read(storage.get("b", status)), is("bar"));
+    }
+
+    @Test
+    public void readsPackLargerThanSegment() throws IOException {
+        String[] values = { "0123456789", "abc", "defghij", "klmnopqrstuvwxyz0123456789", "", "ABCDEFGH" };
+
+        PackedCacheStorage storage = new PackedCacheStorage(folder.getRoot(), "test", 8);
+        for (int i = 0; i < values.length; ++i) {
+            storage.store("k" + i, new String[0], bytes(values[i]));
+            storage.flush();
+        }
+        assertThat(new File(folder.getRoot(), "test-0.teavm-pack").length(), is(54L));
+
+        CacheStatus status = new TestCacheStatus();
+        for (int i = 0; i < values.length; ++i) {
+            assertThat(read(storage.get("k" + i, status)), is(values[i]));
+        }
+
+        storage = new PackedCacheStorage(folder.getRoot(), "test", 8);
+        for (int i = values.length - 1; i >= 0; --i) {
+            assertThat(read(storage.get("k" + i, status)), is(values[i]));
+        }
+    }
+
+    @Test
+    public void missingIndex() throws IOException {
+        PackedCacheStorage storage = new PackedCacheStorage(folder.getRoot(), "test");
+        assertThat(storage.get("a", new TestCacheStatus()), nullValue());
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String read(InputStream input) throws IOException {
+        return new String(input.readAllBytes(), StandardCharsets.UTF_8);
+    }
+
+    static class TestCacheStatus implements CacheStatus {
+        private Set<String> staleClasses;
+
+        TestCacheStatus(String... staleClasses) {
+            this.staleClasses = new HashSet<>(Arrays.asList(staleClasses));
+        }
+
+        @Override
+        public boolean isStaleClass(String className) {
+            return staleClasses.contains(className);
+        }
+
+        @Override
+        public boolean isStaleMethod(MethodReference method) {
+            return isStaleClass(method.getClassName());
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ *  Copyright 2023 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.dependency;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import org.junit.Test;
+import org.teavm.common.ServiceRepository;
+import org.teavm.diagnostics.AccumulationDiagnostics;
+import org.teavm.model.ClassHolder;
+import org.teavm.model.MutableClassHolderSource;
+import org.teavm.model.ReferenceCache;
+
+public class DomainMergeTest {
+    private final DependencyAnalyzer analyzer;
+
+    public DomainMergeTest() {
+        MutableClassHolderSource classes = new MutableClassHolderSource();
+        classes.putClassHolder(new ClassHolder("java.lang.Object"));
+        for (String name : new String[] { "A", "B", "C" }) {
+            ClassHolder cls = new ClassHolder(name);
+            cls.setParent("java.lang.Object");
+            classes.putClassHolder(cls);
+        }
+        ServiceRepository services = new ServiceRepository() {
+            @Override
+            public <T> T getService(Class<T> type) {
+                return null;
+            }
+        };
+        analyzer = new PreciseDependencyAnalyzer(classes, getClass().getClassLoader(), services,
+                new AccumulationDiagnostics(), new ReferenceCache());
+    }
+
+    @Test
+    public void chainedMergesIntoSameDomain() {
+        DependencyNode source = analyzer.createNode();
+        DependencyNode middle = analyzer.createNode();
+        DependencyNode last = analyzer.createNode();
+        source.connect(middle);
+        middle.connect(last);
+
+        source.propagate(new DependencyType[] { analyzer.getType("A"), analyzer.getType("B") });
+        analyzer.processDependencies();
+
+        assertSame(source.typeSet, middle.typeSet);
+        assertSame(source.typeSet, last.typeSet);
+        assertDomainsConsistent(source, middle, last);
+        assertTypes(last, "A", "B");
+    }
+
+    @Test
+    public void mergesReachingSameNodeTwice() {
+        DependencyNode source = analyzer.createNode();
+        DependencyNode left = analyzer.createNode();
+        DependencyNode right = analyzer.createNode();
+        DependencyNode last = analyzer.createNode();
+        source.connect(left);
+        source.connect(right);
+        left.connect(last);
+        right.connect(last);
+        source.connect(last);
+
+        source.propagate(new DependencyType[] { analyzer.getType("A"), analyzer.getType("B") });
+        analyzer.processDependencies();
+        source.propagate(analyzer.getType("C"));
+        analyzer.processDependencies();
+
+        assertSame(source.typeSet, last.typeSet);
+        assertDomainsConsistent(source, left, right, last);
+        assertTypes(last, "A", "B", "C");
+    }
+
+    @Test
+    public void mergeAfterDomainWasSplit() {
+        DependencyNode first = analyzer.createNode();
+        DependencyNode second = analyzer.createNode();
+        DependencyNode target = analyzer.createNode();
+        DependencyNode next = analyzer.createNode();
+        first.connect(second);
+        second.connect(target);
+        first.connect(target);
+        target.connect(next);
+        first.propagate(new DependencyType[] { analyzer.getType("A"), analyzer.getType("B") });
+        analyzer.processDependencies();
+
+        second.propagate(analyzer.getType("C"));
+        first.propagate(analyzer.getType("C"));
+        analyzer.processDependencies();
+
+        assertDomainsConsistent(first, second, target, next);
+        assertTypes(next, "A", "B", "C");
+    }
+
+    private static void assertDomainsConsistent(DependencyNode... nodes) {
+        for (DependencyNode node : nodes) {
+            assertTrue(node.typeSet.domain.contains(node));
+            Set<DependencyNode> distinct = new HashSet<>(node.typeSet.domain);
+            assertEquals("Domain contains duplicates", distinct.size(), node.typeSet.domain.size());
+            for (DependencyNode member : node.typeSet.domain) {
+                assertSame(node.typeSet, member.typeSet);
+            }
+        }
+    }
+
+    private static void assertTypes(DependencyNode node, String... expected) {
+        String[] actual = node.getTypes();
+        Arrays.sort(actual);
+        assertEquals(Arrays.asList(expected), Arrays.asList(actual));
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ *  Copyright 2023 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.model;
+
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+import org.teavm.model.text.ListingBuilder;
+
+public class CompactProgramTest {
+    @Test
+    public void simple() {
+        doTest("simple");
+    }
+
+    @Test
+    public void conditional() {
+        doTest("conditional");
+    }
+
+    @Test
+    public void phi() {
+        doTest("phi");
+    }
+
+    @Test
+    public void constant() {
+        doTest("constant");
+    }
+
+    @Test
+    public void invocation() {
+        doTest("invocation");
+    }
+
+    @Test
+    public void operations() {
+        doTest("operations");
+    }
+
+    @Test
+    public void create() {
+        doTest("create");
+    }
+
+    @Test
+    public void fields() {
+        doTest("fields");
+    }
+
+    @Test
+    public void exceptions() {
+        doTest("exceptions");
+    }
+
+    @Test
+    public void keepsProgramCompactUntilModified() {
+        MethodHolder method = new MethodHolder(new MethodDescriptor("foo", ValueType.VOID));
+        method.setProgram(ListingParseUtils.parseFromResource("model/text/simple.txt"));
+        method.compactProgram();
+
+        assertEquals(CompactProgram.class, method.getProgramReader().getClass());
+        assertEquals(Program.class, method.getProgram().getClass());
+        assertEquals(Program.class, method.getProgramReader().getClass());
+    }
+
+    private void doTest(String name) {
+        Program program = ListingParseUtils.parseFromResource("model/text/" + name + ".txt");
+        String expected = new ListingBuilder().buildListing(program, "");
+
+        CompactProgram compactProgram = CompactProgram.from(program);
+        assertEquals(expected, new ListingBuilder().buildListing(compactProgram, ""));
+        assertEquals(expected, new ListingBuilder().buildListing(compactProgram.expand(), ""));
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ *  Copyright 2023 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.model.optimization.test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import org.junit.Test;
+import org.teavm.model.ClassHolder;
+import org.teavm.model.ElementModifier;
+import org.teavm.model.FieldHolder;
+import org.teavm.model.ListingParseUtils;
+import org.teavm.model.MethodDescriptor;
+import org.teavm.model.MethodHolder;
+import org.teavm.model.MutableClassHolderSource;
+import org.teavm.model.Program;
+import org.teavm.model.ValueType;
+import org.teavm.model.optimization.ClassInitializerEvaluation;
+import org.teavm.model.text.ListingBuilder;
+
+public class ClassInitializerEvaluationTest {
+    private static final String PREFIX = "model/optimization/class-initializer-evaluation/";
+    private static final MethodDescriptor CLINIT = new MethodDescriptor("<clinit>", void.class);
+    private MutableClassHolderSource classes = new MutableClassHolderSource();
+
+    public ClassInitializerEvaluationTest() {
+        ClassHolder objectClass = new ClassHolder("java.lang.Object");
+        objectClass.setParent(null);
+        classes.putClassHolder(objectClass);
+    }
+
+    @Test
+    public void loop() {
+        ClassHolder cls = createClass("A", "loop");
+        addField(cls, "x", ValueType.INTEGER, false);
+        addField(cls, "s", ValueType.object("java.lang.String"), false);
+
+        evaluate(1);
+
+        assertThat(cls.getMethod(CLINIT), nullValue());
+        assertThat(cls.getField("x").getInitialValue(), is(90));
+        assertThat(cls.getField("s").getInitialValue(), is("foo"));
+    }
+
+    @Test
+    public void objectCreation() {
+        ClassHolder cls = createClass("A", "objectCreation");
+        addField(cls, "o", ValueType.object("java.lang.Object"), false);
+
+        evaluate(0);
+
+        assertThat(cls.getMethod(CLINIT), notNullValue());
+    }
+
+    @Test
+    public void readsEvaluatedClass() {
+        ClassHolder first = createClass("A", "readsEvaluatedClass");
+        addField(first, "x", ValueType.INTEGER, true);
+        ClassHolder second = createClass("B", "readsEvaluatedClass-B");
+        addField(second, "y", ValueType.INTEGER, false);
+
+        evaluate(2);
+
+        assertThat(second.getMethod(CLINIT), nullValue());
+        assertThat(second.getField("y").getInitialValue(), is(6));
+    }
+
+    @Test
+    public void readsNonFinalField() {
+        ClassHolder first = createClass("A", "readsNonFinalField");
+        addField(first, "y", ValueType.INTEGER, false);
+        ClassHolder second = createClass("B", "readsNonFinalField-B");
+        addField(second, "y", ValueType.INTEGER, false);
+
+        evaluate(1);
+
+        assertThat(first.getMethod(CLINIT), nullValue());
+        assertThat(second.getMethod(CLINIT), notNullValue());
+    }
+
+    @Test
+    public void exception() {
+        ClassHolder cls = createClass("A", "exception");
+        addField(cls, "x", ValueType.INTEGER, false);
+
+        evaluate(0);
+
+        assertThat(cls.getMethod(CLINIT), notNullValue());
+    }
+
+    @Test
+    public void arrays() {
+        ClassHolder cls = createClass("A", "arrays");
+        addField(cls, "table", ValueType.arrayOf(ValueType.INTEGER), false);
+        addField(cls, "sameTable", ValueType.arrayOf(ValueType.INTEGER), false);
+        addField(cls, "names", ValueType.arrayOf(ValueType.object("java.lang.String")), false);
+        addField(cls, "matrix", ValueType.arrayOf(ValueType.arrayOf(ValueType.INTEGER)), false);
+        addField(cls, "x", ValueType.INTEGER, false);
+
+        evaluate(1);
+
+        assertThat(cls.getField("x").getInitialValue(), is(4));
+        assertThat(cls.getField("table").getInitialValue(), nullValue());
+        assertThat(cls.getMethod(CLINIT), notNullValue());
+        Program expected = ListingParseUtils.parseFromResource(PREFIX + "arrays-expected.txt");
+        assertEquals(new ListingBuilder().buildListing(expected, ""),
+                new ListingBuilder().buildListing(cls.getMethod(CLINIT).getProgram(), ""));
+    }
+
+    @Test
+    public void readsArrayOfOtherClass() {
+        ClassHolder first = createClass("A", "readsArrayOfOtherClass");
+        addField(first, "array", ValueType.arrayOf(ValueType.INTEGER), true);
+        ClassHolder second = createClass("B", "readsArrayOfOtherClass-B");
+        addField(second, "array", ValueType.arrayOf(ValueType.INTEGER), false);
+
+        evaluate(1);
+
+        assertThat(first.getMethod(CLINIT), notNullValue());
+        assertThat(second.getMethod(CLINIT), notNullValue());
+        assertThat(second.getMethod(CLINIT).getProgram().basicBlockCount(), is(1));
+        assertThat(second.getMethod(CLINIT).getProgram().basicBlockAt(0).instructionCount(), is(3));
+    }
+
+    @Test
+    public void tooLargeArray() {
+        ClassHolder cls = createClass("A", "tooLargeArray");
+        addField(cls, "array", ValueType.arrayOf(ValueType.INTEGER), false);
+
+        evaluate(0);
+
+        assertThat(cls.getMethod(CLINIT).getProgram().basicBlockCount(), is(4));
+    }
+
+    private void evaluate(int expectedCount) {
+        ClassInitializerEvaluation evaluation = new ClassInitializerEvaluation(classes);
+        evaluation.apply();
+        assertThat(evaluation.getEvaluatedClassCount(), is(expectedCount));
+    }
+
+    private ClassHolder createClass(String name, String initializer) {
+        ClassHolder cls = new ClassHolder(name);
+        MethodHolder clinit = new MethodHolder(CLINIT);
+        clinit.getModifiers().add(ElementModifier.STATIC);
+        clinit.setProgram(ListingParseUtils.parseFromResource(PREFIX + initializer + ".txt"));
+        cls.addMethod(clinit);
+        classes.putClassHolder(cls);
+        return cls;
+    }
+
+    private static void addField(ClassHolder cls, String name, ValueType type, boolean isFinal) {
+        FieldHolder field = new FieldHolder(name);
+        field.setType(type);
+        field.getModifiers().add(ElementModifier.STATIC);
+        if (isFinal) {
+            field.getModifiers().add(ElementModifier.FINAL);
+        }
+        cls.addField(field);
+    }
+}
@@ -0,0 +1,318 @@
+/*
+ *  Copyright 2023 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.model.optimization.test;
+
+import static org.junit.Assert.assertEquals;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+import org.teavm.callgraph.CallGraph;
+import org.teavm.dependency.ClassDependencyInfo;
+import org.teavm.dependency.DependencyInfo;
+import org.teavm.dependency.FieldDependencyInfo;
+import org.teavm.dependency.MethodDependencyInfo;
+import org.teavm.dependency.ValueDependencyInfo;
+import org.teavm.model.ClassHierarchy;
+import org.teavm.model.ClassHolder;
+import org.teavm.model.ClassReader;
+import org.teavm.model.ClassReaderSource;
+import org.teavm.model.FieldReference;
+import org.teavm.model.ListingParseUtils;
+import org.teavm.model.MethodDescriptor;
+import org.teavm.model.MethodHolder;
+import org.teavm.model.MethodReference;
+import org.teavm.model.MutableClassHolderSource;
+import org.teavm.model.Program;
+import org.teavm.model.ValueType;
+import org.teavm.model.optimization.Devirtualization;
+import org.teavm.model.text.ListingBuilder;
+import org.teavm.vm.TeaVMOptimizationLevel;
+
+public class DevirtualizationTest {
+    private static final String PREFIX = "model/optimization/devirtualization/";
+    private static final MethodDescriptor FOO = new MethodDescriptor("foo", ValueType.INTEGER, ValueType.INTEGER);
+    @Rule
+    public TestName name = new TestName();
+    private MutableClassHolderSource classes = new MutableClassHolderSource();
+    private Map<String, String[]> variableTypes = new HashMap<>();
+
+    public DevirtualizationTest() {
+        addClass("java.lang.Object", null, false);
+        addClass("A", "java.lang.Object", true);
+        addClass("B", "A", true);
+        addClass("C", "A", true);
+        addClass("D", "B", true);
+        addClass("E", "A", true);
+    }
+
+    @Test
+    public void twoImplementations() {
+        variableTypes.put("a", new String[] { "B", "C" });
+        doTest(TeaVMOptimizationLevel.ADVANCED);
+    }
+
+    @Test
+    public void threeImplementationsAdvanced() {
+        variableTypes.put("a", new String[] { "B", "C", "E" });
+        doTest(TeaVMOptimizationLevel.ADVANCED);
+    }
+
+    @Test
+    public void threeImplementationsFull() {
+        variableTypes.put("a", new String[] { "B", "C", "E" });
+        doTest(TeaVMOptimizationLevel.FULL);
+    }
+
+    @Test
+    public void subtypeOrder() {
+        variableTypes.put("a", new String[] { "B", "D" });
+        doTest(TeaVMOptimizationLevel.ADVANCED);
+    }
+
+    @Test
+    public void noResult() {
+        variableTypes.put("a", new String[] { "B", "C" });
+        doTest(TeaVMOptimizationLevel.ADVANCED);
+    }
+
+    @Test
+    public void phiReceiver() {
+        variableTypes.put("a", new String[] { "B", "C" });
+        variableTypes.put("b", new String[] { "B" });
+        variableTypes.put("c", new String[] { "C" });
+        doTest(TeaVMOptimizationLevel.ADVANCED);
+    }
+
+    @Test
+    public void tryCatch() {
+        variableTypes.put("a", new String[] { "B", "C" });
+        doTest(TeaVMOptimizationLevel.FULL);
+    }
+
+    @Test
+    public void defaultThresholds() {
+        assertEquals(0, Devirtualization.getDefaultMaxGuardedTargets(TeaVMOptimizationLevel.SIMPLE));
+        assertEquals(2, Devirtualization.getDefaultMaxGuardedTargets(TeaVMOptimizationLevel.ADVANCED));
+        assertEquals(3, Devirtualization.getDefaultMaxGuardedTargets(TeaVMOptimizationLevel.FULL));
+    }
+
+    private void doTest(TeaVMOptimizationLevel level) {
+        String originalPath = PREFIX + name.getMethodName() + ".original.txt";
+        String expectedPath = PREFIX + name.getMethodName() + ".expected.txt";
+        Program original = ListingParseUtils.parseFromResource(originalPath);
+        Program expected = ListingParseUtils.parseFromResource(expectedPath);
+
+        ClassHolder testClass = new ClassHolder("Test");
+        MethodHolder testMethod = new MethodHolder("test", ValueType.INTEGER);
+        testMethod.setProgram(original);
+        testClass.addMethod(testMethod);
+
+        Devirtualization devirtualization = new Devirtualization(new TestDependencyInfo(original),
+                new ClassHierarchy(classes));
+        devirtualization.setMaxGuardedTargets(Devirtualization.getDefaultMaxGuardedTargets(level));
+        devirtualization.apply(testMethod);
+
+        String originalText = new ListingBuilder().buildListing(original, "");
+        String expectedText = new ListingBuilder().buildListing(expected, "");
+        assertEquals(expectedText, originalText);
+    }
+
+    private void addClass(String name, String parent, boolean declaresFoo) {
+        ClassHolder cls = new ClassHolder(name);
+        cls.setParent(parent);
+        if (declaresFoo) {
+            cls.addMethod(new MethodHolder(FOO));
+        }
+        classes.putClassHolder(cls);
+    }
+
+    private class TestDependencyInfo implements DependencyInfo {
+        private Program program;
+
+        TestDependencyInfo(Program program) {
+            this.program = program;
+        }
+
+        @Override
+        public ClassReaderSource getClassSource() {
+            return classes;
+        }
+
+        @Override
+        public ClassLoader getClassLoader() {
+            return DevirtualizationTest.class.getClassLoader();
+        }
+
+        @Override
+        public Collection<MethodReference> getReachableMethods() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Collection<FieldReference> getReachableFields() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Collection<String> getReachableClasses() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public FieldDependencyInfo getField(FieldReference fieldRef) {
+            return null;
+        }
+
+        @Override
+        public MethodDependencyInfo getMethod(MethodReference methodRef) {
+            ValueDependencyInfo[] variables = new ValueDependencyInfo[program.variableCount()];
+            for (int i = 0; i < variables.length; ++i) {
+                String[] types = variableTypes.get(program.variableAt(i).getLabel());
+                variables[i] = new TestValueDependencyInfo(types != null ? types : new String[0]);
+            }
+            return new TestMethodDependencyInfo(methodRef, variables);
+        }
+
+        @Override
+        public MethodDependencyInfo getMethodImplementation(MethodReference methodRef) {
+            ClassReader cls = classes.get(methodRef.getClassName());
+            while (cls != null) {
+                if (cls.getMethod(methodRef.getDescriptor()) != null) {
+                    return new TestMethodDependencyInfo(new MethodReference(cls.getName(),
+                            methodRef.getDescriptor()), new ValueDependencyInfo[0]);
+                }
+                cls = cls.getParent() != null ? classes.get(cls.getParent()) : null;
+            }
+            return null;
+        }
+
+        @Override
+        public ClassDependencyInfo getClass(String className) {
+            return null;
+        }
+
+        @Override
+        public CallGraph getCallGraph() {
+            return null;
+        }
+    }
+
+    private static class TestMethodDependencyInfo implements MethodDependencyInfo {
+        private MethodReference reference;
+        private ValueDependencyInfo[] variables;
+
+        TestMethodDependencyInfo(MethodReference reference, ValueDependencyInfo[] variables) {
+            this.reference = reference;
+            this.variables = variables;
+        }
+
+        @Override
+        public ValueDependencyInfo[] getVariables() {
+            return variables.clone();
+        }
+
+        @Override
+        public int getVariableCount() {
+            return variables.length;
+        }
+
+        @Override
+        public ValueDependencyInfo getVariable(int index) {
+            return variables[index];
+        }
+
+        @Override
+        public int getParameterCount() {
+            return reference.parameterCount() + 1;
+        }
+
+        @Override
+        public ValueDependencyInfo getResult() {
+            return null;
+        }
+
+        @Override
+        public ValueDependencyInfo getThrown() {
+            return null;
+        }
+
+        @Override
+        public MethodReference getReference() {
+            return reference;
+        }
+
+        @Override
+        public boolean isUsed() {
+            return true;
+        }
+
+        @Override
+        public boolean isCalled() {
+            return true;
+        }
+
+        @Override
+        public boolean isMissing() {
+            return false;
+        }
+    }
+
+    private static class TestValueDependencyInfo implements ValueDependencyInfo {
+        private String[] types;
+
+        TestValueDependencyInfo(String[] types) {
+            this.types = types;
+        }
+
+        @Override
+        public String[] getTypes() {
+            return types.clone();
+        }
+
+        @Override
+        public boolean hasType(String type) {
+            for (String existingType : types) {
+                if (existingType.equals(type)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public boolean hasMoreTypesThan(int limit) {
+            return types.length > limit;
+        }
+
+        @Override
+        public boolean hasArrayType() {
+            return false;
+        }
+
+        @Override
+        public ValueDependencyInfo getArrayItem() {
+            return null;
+        }
+
+        @Override
+        public ValueDependencyInfo getClassValueNode() {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ *  Copyright 2023 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.model.optimization.test;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import java.util.HashSet;
+import java.util.Set;
+import org.junit.Test;
+import org.teavm.model.BasicBlock;
+import org.teavm.model.ClassHolder;
+import org.teavm.model.ElementModifier;
+import org.teavm.model.Instruction;
+import org.teavm.model.ListingParseUtils;
+import org.teavm.model.MethodDescriptor;
+import org.teavm.model.MethodHolder;
+import org.teavm.model.MethodReference;
+import org.teavm.model.MutableClassHolderSource;
+import org.teavm.model.Program;
+import org.teavm.model.ValueType;
+import org.teavm.model.Variable;
+import org.teavm.model.instructions.AssignInstruction;
+import org.teavm.model.instructions.IntegerConstantInstruction;
+import org.teavm.model.instructions.InvokeInstruction;
+import org.teavm.model.instructions.JumpInstruction;
+import org.teavm.model.optimization.InterproceduralPropagation;
+import org.teavm.model.util.UsageExtractor;
+
+public class InterproceduralPropagationTest {
+    private static final String PREFIX = "model/optimization/interprocedural-propagation/";
+    private static final MethodDescriptor MAIN = new MethodDescriptor("main", ValueType.INTEGER);
+    private static final MethodDescriptor F = new MethodDescriptor("f", ValueType.INTEGER, ValueType.INTEGER);
+    private MutableClassHolderSource classes = new MutableClassHolderSource();
+    private Set<MethodReference> externalMethods = new HashSet<>();
+
+    @Test
+    public void constantParameter() {
+        addMethod("A", MAIN, "constantParameter-main");
+        Program program = addMethod("B", F, "constantParameter-f");
+
+        apply();
+
+        Instruction first = program.basicBlockAt(0).getFirstInstruction();
+        assertThat(first, instanceOf(IntegerConstantInstruction.class));
+        assertThat(((IntegerConstantInstruction) first).getConstant(), is(1));
+        assertThat(countUses(program, 1), is(0));
+    }
+
+    @Test
+    public void differentConstants() {
+        addMethod("A", MAIN, "differentConstants-main");
+        Program program = addMethod("B", F, "differentConstants-f");
+
+        apply();
+
+        assertThat(countUses(program, 1), is(1));
+    }
+
+    @Test
+    public void externalMethod() {
+        addMethod("A", MAIN, "constantParameter-main");
+        Program program = addMethod("B", F, "constantParameter-f");
+        externalMethods.add(new MethodReference("B", F));
+
+        apply();
+
+        assertThat(countUses(program, 1), is(1));
+    }
+
+    @Test
+    public void nonNullParameter() {
+        addMethod("A", MAIN, "nonNullParameter-main");
+        Program program = addMethod("B", new MethodDescriptor("g", ValueType.object("java.lang.String"),
+                ValueType.INTEGER), "nonNullParameter-g");
+
+        apply();
+
+        assertThat(program.basicBlockCount(), is(2));
+        Instruction first = program.basicBlockAt(0).getFirstInstruction();
+        assertThat(first, instanceOf(AssignInstruction.class));
+        assertThat(program.basicBlockAt(0).getLastInstruction(), instanceOf(JumpInstruction.class));
+    }
+
+    @Test
+    public void constantResult() {
+        Program program = addMethod("A", MAIN, "constantResult-main");
+        addMethod("B", new MethodDescriptor("h", ValueType.INTEGER), "constantResult-h");
+
+        apply();
+
+        Instruction first = program.basicBlockAt(0).getFirstInstruction();
+        assertThat(first, instanceOf(InvokeInstruction.class));
+        assertThat(((InvokeInstruction) first).getReceiver(), nullValue());
+        assertThat(first.getNext(), instanceOf(IntegerConstantInstruction.class));
+        assertThat(((IntegerConstantInstruction) first.getNext()).getConstant(), is(42));
+    }
+
+    private void apply() {
+        externalMethods.add(new MethodReference("A", MAIN));
+        new InterproceduralPropagation(classes, externalMethods::contains).apply();
+    }
+
+    private Program addMethod(String className, MethodDescriptor descriptor, String resource) {
+        ClassHolder cls = classes.get(className);
+        if (cls == null) {
+            cls = new ClassHolder(className);
+            classes.putClassHolder(cls);
+        }
+        MethodHolder method = new MethodHolder(descriptor);
+        method.getModifiers().add(ElementModifier.STATIC);
+        Program program = ListingParseUtils.parseFromResource(PREFIX + resource + ".txt");
+        method.setProgram(program);
+        cls.addMethod(method);
+        return program;
+    }
+
+    private static int countUses(Program program, int variable) {
+        UsageExtractor usageExtractor = new UsageExtractor();
+        int count = 0;
+        for (BasicBlock block : program.getBasicBlocks()) {
+            for (Instruction insn : block) {
+                insn.acceptVisitor(usageExtractor);
+                for (Variable usedVariable : usageExtractor.getUsedVariables()) {
+                    if (usedVariable.getIndex() == variable) {
+                        count++;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+}
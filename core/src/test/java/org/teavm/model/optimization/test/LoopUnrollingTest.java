@@ -0,0 +1,135 @@
+/*
+ *  Copyright 2023 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.model.optimization.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+import org.teavm.dependency.DependencyInfo;
+import org.teavm.model.BasicBlock;
+import org.teavm.model.ClassHierarchy;
+import org.teavm.model.ClassReaderSource;
+import org.teavm.model.Instruction;
+import org.teavm.model.InterpretException;
+import org.teavm.model.Interpreter;
+import org.teavm.model.ListingParseUtils;
+import org.teavm.model.MethodHolder;
+import org.teavm.model.MethodReader;
+import org.teavm.model.Program;
+import org.teavm.model.ValueType;
+import org.teavm.model.instructions.GetElementInstruction;
+import org.teavm.model.optimization.LoopUnrolling;
+import org.teavm.model.optimization.MethodOptimizationContext;
+import org.teavm.model.util.ProgramUtils;
+
+public class LoopUnrollingTest {
+    private static final String PREFIX = "model/optimization/loop-unrolling/";
+    private static final int[] DATA = { 3, -1, 4, 1, -5, 9, 2, 6, 5, 3, 5 };
+    @Rule
+    public TestName name = new TestName();
+
+    @Test
+    public void topTested() {
+        doTest(true);
+    }
+
+    @Test
+    public void bottomTested() {
+        doTest(true);
+    }
+
+    @Test
+    public void reversedComparison() {
+        doTest(true);
+    }
+
+    @Test
+    public void branchInBody() {
+        doTest(true);
+    }
+
+    @Test
+    public void stepTwo() {
+        doTest(false);
+    }
+
+    @Test
+    public void loopWithChecks() {
+        doTest(false);
+    }
+
+    private void doTest(boolean shouldUnroll) {
+        Program program = ListingParseUtils.parseFromResource(PREFIX + name.getMethodName() + ".txt");
+        Program original = ProgramUtils.copy(program);
+
+        assertEquals(shouldUnroll, new LoopUnrolling().optimize(createContext(), program));
+        if (shouldUnroll) {
+            assertTrue(countElementReads(program) > countElementReads(original));
+        }
+        for (int n = -1; n <= DATA.length; ++n) {
+            assertEquals("n = " + n, run(original, n), run(program, n));
+        }
+    }
+
+    private static int countElementReads(Program program) {
+        int count = 0;
+        for (BasicBlock block : program.getBasicBlocks()) {
+            for (Instruction insn : block) {
+                if (insn instanceof GetElementInstruction) {
+                    ++count;
+                }
+            }
+        }
+        return count;
+    }
+
+    private Object run(Program program, int n) {
+        try {
+            return new Interpreter(LoopUnrollingTest.class.getClassLoader()).interpret(program,
+                    new Object[] { null, DATA.clone(), n });
+        } catch (InterpretException e) {
+            return e.getCause().getClass();
+        }
+    }
+
+    private static MethodOptimizationContext createContext() {
+        MethodHolder method = new MethodHolder("testMethod", ValueType.arrayOf(ValueType.INTEGER),
+                ValueType.INTEGER, ValueType.INTEGER);
+        return new MethodOptimizationContext() {
+            @Override
+            public MethodReader getMethod() {
+                return method;
+            }
+
+            @Override
+            public DependencyInfo getDependencyInfo() {
+                return null;
+            }
+
+            @Override
+            public ClassReaderSource getClassSource() {
+                return null;
+            }
+
+            @Override
+            public ClassHierarchy getHierarchy() {
+                return null;
+            }
+        };
+    }
+}
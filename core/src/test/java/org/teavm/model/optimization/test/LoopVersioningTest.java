@@ -0,0 +1,129 @@
+/*
+ *  Copyright 2023 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.model.optimization.test;
+
+import static org.junit.Assert.assertEquals;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+import org.teavm.dependency.DependencyInfo;
+import org.teavm.model.BasicBlock;
+import org.teavm.model.ClassHierarchy;
+import org.teavm.model.ClassReaderSource;
+import org.teavm.model.Instruction;
+import org.teavm.model.InterpretException;
+import org.teavm.model.Interpreter;
+import org.teavm.model.ListingParseUtils;
+import org.teavm.model.MethodHolder;
+import org.teavm.model.MethodReader;
+import org.teavm.model.Program;
+import org.teavm.model.ValueType;
+import org.teavm.model.instructions.BoundCheckInstruction;
+import org.teavm.model.instructions.NullCheckInstruction;
+import org.teavm.model.optimization.LoopVersioning;
+import org.teavm.model.optimization.MethodOptimizationContext;
+import org.teavm.model.util.ProgramUtils;
+
+public class LoopVersioningTest {
+    private static final String PREFIX = "model/optimization/loop-versioning/";
+    private static final int[] DATA = { 3, -1, 4, 1, -5, 9, 2, 6, 5, 3, 5 };
+    @Rule
+    public TestName name = new TestName();
+
+    @Test
+    public void boundChecks() {
+        doTest(true, 1);
+    }
+
+    @Test
+    public void nullCheck() {
+        doTest(true, 1);
+    }
+
+    @Test
+    public void bottomTested() {
+        doTest(true, 1);
+    }
+
+    @Test
+    public void checkBeforeTest() {
+        doTest(true, 2);
+    }
+
+    @Test
+    public void variantIndex() {
+        doTest(false, 1);
+    }
+
+    private void doTest(boolean shouldVersion, int expectedChecks) {
+        Program program = ListingParseUtils.parseFromResource(PREFIX + name.getMethodName() + ".txt");
+        Program original = ProgramUtils.copy(program);
+
+        assertEquals(shouldVersion, new LoopVersioning().optimize(createContext(), program));
+        assertEquals(expectedChecks, countChecks(program));
+        for (int n = -1; n <= DATA.length + 1; ++n) {
+            assertEquals("n = " + n, run(original, DATA, n), run(program, DATA, n));
+            assertEquals("n = " + n + ", null array", run(original, null, n), run(program, null, n));
+        }
+    }
+
+    private static int countChecks(Program program) {
+        int count = 0;
+        for (BasicBlock block : program.getBasicBlocks()) {
+            for (Instruction insn : block) {
+                if (insn instanceof BoundCheckInstruction || insn instanceof NullCheckInstruction) {
+                    ++count;
+                }
+            }
+        }
+        return count;
+    }
+
+    private Object run(Program program, int[] data, int n) {
+        try {
+            return new Interpreter(LoopVersioningTest.class.getClassLoader()).interpret(program,
+                    new Object[] { null, data != null ? data.clone() : null, n });
+        } catch (InterpretException e) {
+            return e.getCause().getClass();
+        }
+    }
+
+    private static MethodOptimizationContext createContext() {
+        MethodHolder method = new MethodHolder("testMethod", ValueType.arrayOf(ValueType.INTEGER),
+                ValueType.INTEGER, ValueType.INTEGER);
+        return new MethodOptimizationContext() {
+            @Override
+            public MethodReader getMethod() {
+                return method;
+            }
+
+            @Override
+            public DependencyInfo getDependencyInfo() {
+                return null;
+            }
+
+            @Override
+            public ClassReaderSource getClassSource() {
+                return null;
+            }
+
+            @Override
+            public ClassHierarchy getHierarchy() {
+                return null;
+            }
+        };
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ *  Copyright 2023 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.model.profile;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Map;
+import org.junit.Test;
+import org.teavm.model.MethodReference;
+
+public class ExecutionProfileTest {
+    private static final MethodReference FOO = MethodReference.parse("a.Foo.foo()V");
+    private static final MethodReference BAR = MethodReference.parse("a.Foo.bar(I)I");
+    private static final MethodReference RUN = MethodReference.parse("a.Task.run()V");
+
+    @Test
+    public void readsCountersMixedWithOutput() throws IOException {
+        ExecutionProfile profile = new ExecutionProfile();
+        profile.load(new StringReader(""
+                + "Hello, world\n"
+                + "teavm-profile: m a.Foo.foo()V 10\n"
+                + "[log] teavm-profile: m a.Foo.bar(I)I 5\n"
+                + "teavm-profile: r a.Foo.foo()V 1 a.Task.run()V a.FirstTask 7\n"
+                + "teavm-profile: r a.Foo.foo()V 1 a.Task.run()V a.SecondTask 3\n"
+                + "teavm-profile: b a.Foo.bar(I)I 0 1 4\n"
+                + "teavm-profile: b a.Foo.bar(I)I 0 0 1\n"
+                + "teavm-profile: garbage\n"));
+
+        assertThat(profile.getInvocationCount(FOO), is(10L));
+        assertThat(profile.getInvocationCount(BAR), is(5L));
+
+        Map<String, Long> receivers = profile.getReceiverCounts(FOO, 1, RUN);
+        assertThat(receivers.size(), is(2));
+        assertThat(receivers.get("a.FirstTask"), is(7L));
+        assertThat(receivers.get("a.SecondTask"), is(3L));
+        assertThat(profile.getReceiverCounts(FOO, 0, RUN).isEmpty(), is(true));
+
+        long[] branch = profile.getBranchCounts(BAR, 0);
+        assertThat(branch[0], is(4L));
+        assertThat(branch[1], is(1L));
+        assertThat(profile.getBranchCounts(BAR, 1), nullValue());
+    }
+
+    @Test
+    public void sumsSeveralRuns() throws IOException {
+        ExecutionProfile profile = new ExecutionProfile();
+        profile.load(new StringReader("teavm-profile: m a.Foo.foo()V 10\n"));
+        profile.load(new StringReader("teavm-profile: m a.Foo.foo()V 15\n"));
+        assertThat(profile.getInvocationCount(FOO), is(25L));
+    }
+
+    @Test
+    public void classifiesMethods() {
+        ExecutionProfile profile = new ExecutionProfile();
+        assertThat(profile.isCold(FOO), is(false));
+
+        profile.addInvocations(FOO, 100000);
+        profile.addInvocations(BAR, 10);
+        assertThat(profile.isHot(FOO), is(true));
+        assertThat(profile.isHot(BAR), is(false));
+        assertThat(profile.isCold(BAR), is(false));
+        assertThat(profile.isCold(RUN), is(true));
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ *  Copyright 2023 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.model.transformation.test;
+
+import static org.junit.Assert.assertEquals;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+import org.teavm.model.BasicBlock;
+import org.teavm.model.Instruction;
+import org.teavm.model.ListingParseUtils;
+import org.teavm.model.MethodReference;
+import org.teavm.model.Program;
+import org.teavm.model.ValueType;
+import org.teavm.model.instructions.BoundCheckInstruction;
+import org.teavm.model.transformation.BoundCheckInsertion;
+
+public class BoundCheckInsertionTest {
+    private static final String PREFIX = "model/transformation/bound-check-insertion/";
+    @Rule
+    public TestName name = new TestName();
+
+    @Test
+    public void increasingLoop() {
+        doTest(1);
+    }
+
+    @Test
+    public void decreasingLoop() {
+        doTest(1);
+    }
+
+    @Test
+    public void foreignBound() {
+        doTest(2, "upper");
+    }
+
+    @Test
+    public void unknownInitialValue() {
+        doTest(2, "lower");
+    }
+
+    @Test
+    public void unguardedUpdate() {
+        doTest(1, "lower");
+    }
+
+    @Test
+    public void conditionAtJoin() {
+        doTest(2, "lower upper");
+    }
+
+    private void doTest(int parameterCount, String... expectedChecks) {
+        Program program = ListingParseUtils.parseFromResource(PREFIX + name.getMethodName() + ".txt");
+        ValueType[] signature = new ValueType[parameterCount + 1];
+        Arrays.fill(signature, ValueType.INTEGER);
+        signature[parameterCount] = ValueType.VOID;
+        MethodReference method = new MethodReference("Foo", "bar", signature);
+        new BoundCheckInsertion().transformProgram(program, method);
+
+        List<String> checks = new ArrayList<>();
+        for (BasicBlock block : program.getBasicBlocks()) {
+            for (Instruction instruction : block) {
+                if (instruction instanceof BoundCheckInstruction) {
+                    BoundCheckInstruction boundCheck = (BoundCheckInstruction) instruction;
+                    List<String> parts = new ArrayList<>();
+                    if (boundCheck.isLower()) {
+                        parts.add("lower");
+                    }
+                    if (boundCheck.getArray() != null) {
+                        parts.add("upper");
+                    }
+                    checks.add(String.join(" ", parts));
+                }
+            }
+        }
+        assertEquals(Arrays.asList(expectedChecks), checks);
+    }
+}
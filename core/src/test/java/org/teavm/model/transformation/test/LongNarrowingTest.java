@@ -0,0 +1,94 @@
+/*
+ *  Copyright 2023 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.model.transformation.test;
+
+import static org.junit.Assert.assertEquals;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+import org.teavm.model.BasicBlock;
+import org.teavm.model.Instruction;
+import org.teavm.model.ListingParseUtils;
+import org.teavm.model.Program;
+import org.teavm.model.instructions.BinaryInstruction;
+import org.teavm.model.instructions.CastNumberInstruction;
+import org.teavm.model.instructions.NegateInstruction;
+import org.teavm.model.transformation.LongNarrowing;
+
+public class LongNarrowingTest {
+    private static final String PREFIX = "model/transformation/long-narrowing/";
+    @Rule
+    public TestName name = new TestName();
+
+    @Test
+    public void intResult() {
+        doTest("MULTIPLY INT", "SHIFT_LEFT INT", "ADD INT", "AND INT");
+    }
+
+    @Test
+    public void doubleResult() {
+        doTest("INT to DOUBLE", "INT to DOUBLE", "MULTIPLY DOUBLE", "ADD DOUBLE");
+    }
+
+    @Test
+    public void comparison() {
+        doTest("INT to DOUBLE", "INT to DOUBLE", "SUBTRACT DOUBLE", "COMPARE DOUBLE");
+    }
+
+    @Test
+    public void negativeZero() {
+        doTest("INT to DOUBLE", "NEGATE DOUBLE", "ADD DOUBLE");
+    }
+
+    @Test
+    public void unknownWidth() {
+        doTest("MULTIPLY LONG", "LONG to DOUBLE");
+    }
+
+    @Test
+    public void wideResult() {
+        doTest("INT to LONG", "INT to LONG", "MULTIPLY LONG", "MULTIPLY LONG", "LONG to DOUBLE");
+    }
+
+    @Test
+    public void phi() {
+        doTest("INT to LONG", "COMPARE LONG", "ADD LONG", "LONG to INT");
+    }
+
+    private void doTest(String... expectedOperations) {
+        Program program = ListingParseUtils.parseFromResource(PREFIX + name.getMethodName() + ".txt");
+        new LongNarrowing().transformProgram(program);
+
+        List<String> operations = new ArrayList<>();
+        for (BasicBlock block : program.getBasicBlocks()) {
+            for (Instruction instruction : block) {
+                if (instruction instanceof BinaryInstruction) {
+                    BinaryInstruction binary = (BinaryInstruction) instruction;
+                    operations.add(binary.getOperation() + " " + binary.getOperandType());
+                } else if (instruction instanceof NegateInstruction) {
+                    operations.add("NEGATE " + ((NegateInstruction) instruction).getOperandType());
+                } else if (instruction instanceof CastNumberInstruction) {
+                    CastNumberInstruction cast = (CastNumberInstruction) instruction;
+                    operations.add(cast.getSourceType() + " to " + cast.getTargetType());
+                }
+            }
+        }
+        assertEquals(Arrays.asList(expectedOperations), operations);
+    }
+}
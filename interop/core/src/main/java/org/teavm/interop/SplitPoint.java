@@ -0,0 +1,47 @@
+/*
+ *  Copyright 2023 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.interop;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * <p>Marks a method as a split point. Code that is only reachable through the split point is emitted
+ * by JavaScript backend into a separate chunk, which is downloaded when the split point is called
+ * for the first time.</p>
+ *
+ * <p>Calling split point suspends current thread until the chunk is loaded, so split point and all of its callers
+ * become asynchronous. Other backends ignore this annotation.</p>
+ *
+ * <p>Current limitations:</p>
+ *
+ * <ul>
+ *   <li>Only static methods are moved to chunks. Classes, constructors, instance methods and class initializers
+ *   are always emitted into the main file, even when only the split point uses them.</li>
+ *   <li>With ES2015 module type, chunks are emitted as modules that import what they need from the main module,
+ *   and are loaded with {@code import()}. Imported bindings are read-only, so methods that assign static fields
+ *   always stay in the main module.</li>
+ *   <li>With other module types, chunks are downloaded with {@code fetch} and evaluated with {@code eval}
+ *   in the scope of the main file. This requires an environment that provides {@code fetch} and a content
+ *   security policy that allows {@code 'unsafe-eval'}.</li>
+ * </ul>
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface SplitPoint {
+}
@@ -138,6 +138,10 @@ public class PlatformGenerator implements Generator, Injector, DependencyPlugin
 
     private void generateNewInstance(GeneratorContext context, SourceWriter writer) throws IOException {
         String cls = context.getParameterName(1);
+        if (context.isAsync() && context.isAsyncGenerators()) {
+            generateNewInstanceGenerator(cls, writer);
+            return;
+        }
 
         writer.append("if").ws().append("($rt_resuming())").ws().append("{").indent().softNewLine();
         writer.append("var $r = $rt_nativeThread().pop();").softNewLine();
@@ -161,6 +165,21 @@ public class PlatformGenerator implements Generator, Injector, DependencyPlugin
         writer.append("return $r;").softNewLine();
     }
 
+    private void generateNewInstanceGenerator(String cls, SourceWriter writer) throws IOException {
+        writer.append("if").ws().append("(!").append(cls).append(".hasOwnProperty('$$constructor$$'))")
+                .ws().append("{").indent().softNewLine();
+        writer.append("return null;").softNewLine();
+        writer.outdent().append("}").softNewLine();
+
+        writer.append("var $r").ws().append('=').ws().append("new ").append(cls).append("();").softNewLine();
+        writer.append("var $g").ws().append('=').ws().append(cls).append(".$$constructor$$($r);").softNewLine();
+        writer.append("if").ws().append("($rt_isGenerator($g))").ws().append("{").indent().softNewLine();
+        writer.append("return (function*()").ws().append("{").ws().append("yield* $g;").ws()
+                .append("return $r;").ws().append("})();").softNewLine();
+        writer.outdent().append("}").softNewLine();
+        writer.append("return $r;").softNewLine();
+    }
+
     private void generateLookup(GeneratorContext context, SourceWriter writer) throws IOException {
         String param = context.getParameterName(1);
         writer.append("switch ($rt_ustr(" + param + ")) {").softNewLine().indent();
@@ -48,6 +48,8 @@ tasks.test {
     systemProperty("teavm.junit.optimized", providers.gradleProperty("teavm.tests.optimized").orElse("true").get())
     systemProperty("teavm.junit.js.decodeStack", providers.gradleProperty("teavm.tests.decodeStack")
             .orElse("false").get())
+    systemProperty("teavm.junit.js.asyncGenerators", providers.gradleProperty("teavm.tests.asyncGenerators")
+            .orElse("false").get())
 
     systemProperty("teavm.junit.wasm", providers.gradleProperty("teavm.tests.wasm").orElse("true").get())
     systemProperty("teavm.junit.wasm.runner", browser)
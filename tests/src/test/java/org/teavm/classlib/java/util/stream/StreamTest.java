@@ -238,6 +238,21 @@ public class StreamTest {
         assertEquals("1;11;2;12;3;13;", sb.toString());
     }
 
+    @Test
+    public void chainedStatelessOperationsWork() {
+        testIntegerStream(() -> Stream.of(1, 2, 3, 4, 5, 6).filter(n -> (n & 1) == 0).map(n -> n * 10)
+                .filter(n -> n != 40).map(n -> n + 1), 21, 61);
+
+        StringBuilder sb = new StringBuilder();
+        Stream<Integer> stream = Stream.of(1, 2, 3, 4).peek(appendNumbersTo(sb)).filter(n -> n > 2);
+        stream.map(n -> n * 2).peek(appendNumbersTo(sb)).toArray();
+        assertEquals("1;2;3;6;4;8;", sb.toString());
+
+        assertEquals(3, Stream.of(1, 2, 3).map(n -> n * 2).map(String::valueOf).count());
+        assertEquals(1, Stream.of(1, 2, 3).map(n -> n * 2).filter(n -> n > 4).count());
+        assertEquals(8, Stream.of(1, 2, 3, 4).map(n -> n * 2).filter(n -> n > 4).findFirst().get().intValue());
+    }
+
     @Test
     public void reduceWorks() {
         assertEquals(10, Stream.of(1, 2, 3, 4).reduce(0, (a, b) -> a + b).intValue());
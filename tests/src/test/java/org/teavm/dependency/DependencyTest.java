@@ -113,6 +113,11 @@ public class DependencyTest {
         doTest();
     }
 
+    @Test
+    public void chainedDomainMerge() {
+        doTest();
+    }
+
     private void doTest() {
         TeaVM vm = new TeaVMBuilder(new JavaScriptTarget())
                 .setClassLoader(DependencyTest.class.getClassLoader())
@@ -125,6 +125,19 @@ public class DependencyTestData {
         }
     }
 
+    public static void chainedDomainMerge() {
+        Object value = getI(0).foo();
+        Object first = pass(value);
+        Object second = pass(first);
+        Object viaBoth = pass(pass(value) != null ? first : second);
+        MetaAssertions.assertTypes(second, String.class, Integer.class, Class.class);
+        MetaAssertions.assertTypes(viaBoth, String.class, Integer.class, Class.class);
+    }
+
+    private static Object pass(Object value) {
+        return value;
+    }
+
     interface I {
         Object foo();
     }
@@ -0,0 +1,124 @@
+/*
+ *  Copyright 2023 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.tests;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+import org.teavm.backend.javascript.JavaScriptTarget;
+import org.teavm.common.json.JsonArrayValue;
+import org.teavm.common.json.JsonObjectValue;
+import org.teavm.common.json.JsonParser;
+import org.teavm.common.json.JsonValue;
+import org.teavm.common.json.JsonValueParserVisitor;
+import org.teavm.common.json.JsonValueProvider;
+import org.teavm.common.json.JsonVisitingConsumer;
+import org.teavm.diagnostics.Problem;
+import org.teavm.vm.BuildMetrics;
+import org.teavm.vm.TeaVM;
+import org.teavm.vm.TeaVMBuilder;
+import org.teavm.vm.TeaVMOptimizationLevel;
+
+public class BuildMetricsTest {
+    @Test
+    public void writesMetricsOfBuild() throws IOException {
+        BuildMetrics metrics = new BuildMetrics();
+        TeaVM vm = new TeaVMBuilder(new JavaScriptTarget()).build();
+        vm.setOptimizationLevel(TeaVMOptimizationLevel.ADVANCED);
+        vm.setMetrics(metrics);
+        vm.installPlugins();
+        vm.entryPoint(Sample.class.getName());
+        vm.build(fileName -> new ByteArrayOutputStream(), "classes.js");
+        List<String> problems = new ArrayList<>();
+        for (Problem problem : vm.getProblemProvider().getSevereProblems()) {
+            problems.add(problem.getText() + " " + Arrays.toString(problem.getParams()));
+        }
+        assertTrue("Code compiled with errors:\n" + String.join("\n", problems), problems.isEmpty());
+
+        StringWriter writer = new StringWriter();
+        metrics.writeJson(writer);
+        JsonObjectValue json = parse(writer.toString()).asObject();
+
+        List<String> phaseNames = new ArrayList<>();
+        for (JsonValue value : array(json, "phases")) {
+            JsonObjectValue phase = value.asObject();
+            phaseNames.add(phase.get("name").asString());
+            assertNonNegative(phase, "timeMillis");
+            if (phase.has("allocatedBytes")) {
+                assertNonNegative(phase, "allocatedBytes");
+            }
+        }
+        for (String expectedPhase : List.of("dependencyAnalysis", "linking", "optimization", "rendering")) {
+            assertTrue("Phase " + expectedPhase + " missing in " + phaseNames, phaseNames.contains(expectedPhase));
+        }
+
+        List<JsonValue> optimizations = array(json, "optimizations");
+        assertFalse(optimizations.isEmpty());
+        for (JsonValue value : optimizations) {
+            JsonObjectValue optimization = value.asObject();
+            assertNonNegative(optimization, "timeMillis");
+            assertTrue(optimization.get("runs").asIntNumber() > 0);
+            assertTrue(optimization.get("changes").asIntNumber() <= optimization.get("runs").asIntNumber());
+        }
+
+        for (JsonValue value : array(json, "hotspots")) {
+            assertNonNegative(value.asObject(), "timeMillis");
+        }
+
+        for (Map.Entry<String, JsonValue> counter : json.get("counters").asObject().entrySet()) {
+            assertTrue(counter.getKey(), counter.getValue().asIntNumber() >= 0);
+        }
+        assertTrue(json.get("counters").asObject().get("reachableClasses").asIntNumber() > 0);
+    }
+
+    private static void assertNonNegative(JsonObjectValue object, String property) {
+        assertTrue(property + " is negative", object.get(property).asIntNumber() >= 0);
+    }
+
+    private static List<JsonValue> array(JsonObjectValue object, String property) {
+        JsonArrayValue array = (JsonArrayValue) object.get(property);
+        List<JsonValue> result = new ArrayList<>();
+        for (int i = 0; i < array.size(); ++i) {
+            result.add(array.get(i));
+        }
+        return result;
+    }
+
+    private static JsonValue parse(String text) throws IOException {
+        var provider = new JsonValueProvider();
+        var parser = new JsonParser(new JsonVisitingConsumer(JsonValueParserVisitor.create(provider)));
+        parser.parse(new StringReader(text));
+        return provider.getValue();
+    }
+
+    public static class Sample {
+        public static void main(String[] args) {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < args.length + 3; ++i) {
+                sb.append(i);
+            }
+            System.out.println(sb);
+        }
+    }
+}
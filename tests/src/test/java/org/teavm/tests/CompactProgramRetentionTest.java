@@ -0,0 +1,90 @@
+/*
+ *  Copyright 2023 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import org.teavm.backend.javascript.JavaScriptTarget;
+import org.teavm.diagnostics.Problem;
+import org.teavm.model.ClassHolder;
+import org.teavm.model.CompactProgram;
+import org.teavm.model.MethodHolder;
+import org.teavm.model.PreOptimizingClassHolderSource;
+import org.teavm.model.ReferenceCache;
+import org.teavm.parsing.ClasspathClassHolderSource;
+import org.teavm.vm.TeaVM;
+import org.teavm.vm.TeaVMBuilder;
+import org.teavm.vm.TeaVMOptimizationLevel;
+
+public class CompactProgramRetentionTest {
+    @Test
+    public void parsedClassesStayCompactAfterBuild() {
+        ClassLoader classLoader = CompactProgramRetentionTest.class.getClassLoader();
+        ReferenceCache referenceCache = new ReferenceCache();
+        PreOptimizingClassHolderSource classSource = new PreOptimizingClassHolderSource(
+                new ClasspathClassHolderSource(classLoader, referenceCache));
+        TeaVM vm = new TeaVMBuilder(new JavaScriptTarget())
+                .setClassLoader(classLoader)
+                .setClassSource(classSource)
+                .setReferenceCache(referenceCache)
+                .build();
+        vm.setOptimizationLevel(TeaVMOptimizationLevel.ADVANCED);
+        vm.installPlugins();
+        vm.entryPoint(Sample.class.getName());
+        vm.build(fileName -> new ByteArrayOutputStream(), "classes.js");
+        List<String> problems = new ArrayList<>();
+        for (Problem problem : vm.getProblemProvider().getSevereProblems()) {
+            problems.add(problem.getText() + " " + Arrays.toString(problem.getParams()));
+        }
+        assertTrue("Code compiled with errors:\n" + String.join("\n", problems), problems.isEmpty());
+
+        int compactCount = 0;
+        List<String> expanded = new ArrayList<>();
+        for (String className : vm.getDependencyInfo().getReachableClasses()) {
+            ClassHolder cls = classSource.get(className);
+            if (cls == null) {
+                continue;
+            }
+            for (MethodHolder method : cls.getMethods()) {
+                if (!method.hasProgram()) {
+                    continue;
+                }
+                if (method.getProgramReader() instanceof CompactProgram) {
+                    compactCount++;
+                } else {
+                    expanded.add(method.getReference().toString());
+                }
+            }
+        }
+        assertEquals("Programs expanded during build", List.of(), expanded);
+        assertTrue(compactCount > 0);
+    }
+
+    public static class Sample {
+        public static void main(String[] args) {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < args.length + 3; ++i) {
+                sb.append(i);
+            }
+            System.out.println(sb);
+        }
+    }
+}
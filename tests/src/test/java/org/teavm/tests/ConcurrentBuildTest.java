@@ -0,0 +1,257 @@
+/*
+ *  Copyright 2023 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import org.junit.Test;
+import org.teavm.backend.javascript.JavaScriptTarget;
+import org.teavm.diagnostics.Problem;
+import org.teavm.vm.TeaVM;
+import org.teavm.vm.TeaVMBuilder;
+import org.teavm.vm.TeaVMOptimizationLevel;
+
+public class ConcurrentBuildTest {
+    @Test
+    public void fullOptimizationProducesSameOutput() {
+        checkSameOutput(Sample.class, TeaVMOptimizationLevel.FULL);
+    }
+
+    @Test
+    public void advancedOptimizationProducesSameOutput() {
+        checkSameOutput(Sample.class, TeaVMOptimizationLevel.ADVANCED);
+    }
+
+    @Test
+    public void inliningProducesSameOutput() {
+        checkSameOutput(InliningSample.class, TeaVMOptimizationLevel.FULL);
+        checkSameOutput(InliningSample.class, TeaVMOptimizationLevel.ADVANCED);
+    }
+
+    @Test
+    public void simpleOptimizationProducesSameOutput() {
+        checkSameOutput(Sample.class, TeaVMOptimizationLevel.SIMPLE);
+    }
+
+    @Test
+    public void linkingReportsSameProblems() {
+        List<String> sequentialProblems = new ArrayList<>();
+        List<String> concurrentProblems = new ArrayList<>();
+        build(MissingItemsSample.class, TeaVMOptimizationLevel.SIMPLE, 1, sequentialProblems);
+        build(MissingItemsSample.class, TeaVMOptimizationLevel.SIMPLE, 4, concurrentProblems);
+
+        assertFalse(sequentialProblems.isEmpty());
+        assertEquals(sequentialProblems, concurrentProblems);
+    }
+
+    private void checkSameOutput(Class<?> entryPoint, TeaVMOptimizationLevel optimizationLevel) {
+        List<String> problems = new ArrayList<>();
+        Map<String, String> sequentialOutput = build(entryPoint, optimizationLevel, 1, problems);
+        Map<String, String> concurrentOutput = build(entryPoint, optimizationLevel, 4, problems);
+
+        assertTrue("Code compiled with errors:\n" + String.join("\n", problems), problems.isEmpty());
+        assertFalse(sequentialOutput.isEmpty());
+        assertTrue(sequentialOutput.get("classes.js").contains(entryPoint.getSimpleName()));
+        assertEquals(sequentialOutput.keySet(), concurrentOutput.keySet());
+        for (String fileName : sequentialOutput.keySet()) {
+            assertEquals("Output differs in " + fileName, sequentialOutput.get(fileName),
+                    concurrentOutput.get(fileName));
+        }
+    }
+
+    private Map<String, String> build(Class<?> entryPoint, TeaVMOptimizationLevel optimizationLevel,
+            int threadCount, List<String> severeProblems) {
+        JavaScriptTarget target = new JavaScriptTarget();
+        target.setObfuscated(false);
+        TeaVM vm = new TeaVMBuilder(target).build();
+        vm.setOptimizationLevel(optimizationLevel);
+        vm.setThreadCount(threadCount);
+        vm.installPlugins();
+        vm.entryPoint(entryPoint.getName());
+
+        Map<String, ByteArrayOutputStream> outputs = new TreeMap<>();
+        vm.build(fileName -> outputs.computeIfAbsent(fileName, k -> new ByteArrayOutputStream()), "classes.js");
+        for (Problem problem : vm.getProblemProvider().getSevereProblems()) {
+            String location = problem.getLocation() != null
+                    ? problem.getLocation().getMethod() + " " + problem.getLocation().getSourceLocation()
+                    : "unknown location";
+            severeProblems.add(problem.getText() + " " + Arrays.toString(problem.getParams()) + " at " + location);
+        }
+
+        Map<String, String> result = new TreeMap<>();
+        for (var entry : outputs.entrySet()) {
+            result.put(entry.getKey(), new String(entry.getValue().toByteArray(), StandardCharsets.UTF_8));
+        }
+        return result;
+    }
+
+    public static class Sample {
+        public static void main(String[] args) {
+            List<Shape> shapes = new ArrayList<>();
+            for (int i = 0; i < 10; ++i) {
+                shapes.add(i % 3 == 0 ? new Square(i) : i % 3 == 1 ? new Circle(i) : new Rectangle(i, i + 1));
+            }
+
+            double totalArea = 0;
+            for (Shape shape : shapes) {
+                totalArea += shape.area();
+            }
+            System.out.println("Total area: " + totalArea);
+
+            Map<String, List<Shape>> byName = shapes.stream().collect(Collectors.groupingBy(Shape::name,
+                    LinkedHashMap::new, Collectors.toList()));
+            for (var entry : byName.entrySet()) {
+                System.out.println(entry.getKey() + ": " + entry.getValue().size());
+            }
+
+            Map<Integer, String> cache = new HashMap<>();
+            for (int i = 0; i < 20; ++i) {
+                cache.computeIfAbsent(i % 7, k -> Integer.toHexString(k * 31));
+            }
+            System.out.println(cache);
+        }
+    }
+
+    public static class InliningSample {
+        public static void main(String[] args) {
+            int value = args.length;
+            for (int i = 0; i < 5; ++i) {
+                value = Steps.first(value) + Steps.second(value) + Steps.third(value);
+                value ^= Steps.recursive(i);
+            }
+            System.out.println(value + " " + Steps.describe(value));
+        }
+    }
+
+    static class Steps {
+        static int first(int x) {
+            return square(x) + 1;
+        }
+
+        static int second(int x) {
+            return square(x + 1) - first(x);
+        }
+
+        static int third(int x) {
+            return second(x) * first(x - 1);
+        }
+
+        static int square(int x) {
+            return x * x;
+        }
+
+        static int recursive(int n) {
+            return n <= 1 ? n : recursive(n - 1) + mutual(n - 2);
+        }
+
+        static int mutual(int n) {
+            return n <= 0 ? 1 : recursive(n) * 2;
+        }
+
+        static String describe(int x) {
+            return x % 2 == 0 ? even(x) : odd(x);
+        }
+
+        static String even(int x) {
+            return "even:" + square(x % 100);
+        }
+
+        static String odd(int x) {
+            return "odd:" + first(x % 100);
+        }
+    }
+
+    public static class MissingItemsSample {
+        public static void main(String[] args) throws Exception {
+            new ProcessBuilder("ls").start();
+            System.out.println(Runtime.getRuntime().availableProcessors());
+            Thread.getAllStackTraces();
+        }
+    }
+
+    interface Shape {
+        double area();
+
+        String name();
+    }
+
+    static class Square implements Shape {
+        private int side;
+
+        Square(int side) {
+            this.side = side;
+        }
+
+        @Override
+        public double area() {
+            return side * side;
+        }
+
+        @Override
+        public String name() {
+            return "square";
+        }
+    }
+
+    static class Circle implements Shape {
+        private int radius;
+
+        Circle(int radius) {
+            this.radius = radius;
+        }
+
+        @Override
+        public double area() {
+            return Math.PI * radius * radius;
+        }
+
+        @Override
+        public String name() {
+            return "circle";
+        }
+    }
+
+    static class Rectangle implements Shape {
+        private int width;
+        private int height;
+
+        Rectangle(int width, int height) {
+            this.width = width;
+            this.height = height;
+        }
+
+        @Override
+        public double area() {
+            return width * height;
+        }
+
+        @Override
+        public String name() {
+            return "rectangle";
+        }
+    }
+}
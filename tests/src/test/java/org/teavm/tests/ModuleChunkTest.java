@@ -0,0 +1,193 @@
+/*
+ *  Copyright 2023 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.teavm.backend.javascript.JSModuleType;
+import org.teavm.backend.javascript.JavaScriptTarget;
+import org.teavm.diagnostics.Problem;
+import org.teavm.interop.SplitPoint;
+import org.teavm.vm.TeaVM;
+import org.teavm.vm.TeaVMBuilder;
+import org.teavm.vm.TeaVMOptimizationLevel;
+
+public class ModuleChunkTest {
+    private static final Pattern IMPORT = Pattern.compile("^import \\{ ([^}]*) } from \"\\./classes\\.js\";\n");
+    private static final Pattern EXPORT = Pattern.compile("export ?\\{ ?([^}]*?) ?};\n$");
+    private static final String EXPECTED_OUTPUT = "main\nab-ab-ab:9:1\n";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void chunkIsModule() {
+        Map<String, String> output = build(false);
+        String main = output.get("classes.js");
+        String chunk = output.get("classes-0.js");
+
+        assertFalse("Chunk code must not be evaluated", main.contains("eval("));
+        assertTrue(main.contains("import(\"./classes-0.js\")"));
+        assertTrue(main.contains("/*@__PURE__*/"));
+
+        assertFalse(chunk.contains("export default"));
+        List<String> chunkImports = parseList(IMPORT, chunk);
+        List<String> chunkExports = parseList(EXPORT, chunk);
+        List<String> mainExports = parseList(EXPORT, main);
+
+        assertTrue("Entry point must be exported", mainExports.stream().anyMatch(e -> e.endsWith(" as main")));
+        assertTrue(chunkImports.contains("$rt_s"));
+        for (String name : chunkImports) {
+            assertTrue("Main module does not export " + name, mainExports.contains(name));
+        }
+        assertTrue(chunkExports.stream().anyMatch(e -> e.endsWith("_repeat")));
+        assertTrue(chunkExports.stream().anyMatch(e -> e.endsWith("_square")));
+        for (String name : chunkExports) {
+            assertTrue("Chunk must declare " + name, chunk.contains("function " + name + "("));
+            assertTrue("Main module must declare " + name, main.contains("var " + name + ";"));
+            assertTrue("Main module must assign " + name, main.contains(name + " = m." + name + ";"));
+        }
+    }
+
+    @Test
+    public void staticFieldWriterStaysInMainModule() {
+        Map<String, String> output = build(false);
+
+        assertFalse(Pattern.compile("function [\\w$]+_count\\(").matcher(output.get("classes-0.js")).find());
+        assertTrue(Pattern.compile("function [\\w$]+_count\\(").matcher(output.get("classes.js")).find());
+    }
+
+    @Test
+    public void runsModule() throws IOException, InterruptedException {
+        assertEquals(EXPECTED_OUTPUT, run(build(false)));
+    }
+
+    @Test
+    public void runsMinifiedModule() throws IOException, InterruptedException {
+        assertEquals(EXPECTED_OUTPUT, run(build(true)));
+    }
+
+    private static List<String> parseList(Pattern pattern, String code) {
+        Matcher matcher = pattern.matcher(code);
+        assertTrue("Pattern " + pattern + " not found", matcher.find());
+        List<String> result = new ArrayList<>();
+        for (String item : matcher.group(1).split(",")) {
+            result.add(item.trim());
+        }
+        return result;
+    }
+
+    private String run(Map<String, String> output) throws IOException, InterruptedException {
+        File dir = temporaryFolder.newFolder();
+        for (var entry : output.entrySet()) {
+            Files.writeString(new File(dir, entry.getKey()).toPath(), entry.getValue());
+        }
+        Files.writeString(new File(dir, "package.json").toPath(), "{ \"type\": \"module\" }");
+        Files.writeString(new File(dir, "run.js").toPath(), "import { main } from \"./classes.js\";\nmain([]);\n");
+
+        Process process;
+        try {
+            process = new ProcessBuilder("node", "run.js").directory(dir).redirectErrorStream(true).start();
+        } catch (IOException e) {
+            Assume.assumeNoException("Node.js is not available", e);
+            return null;
+        }
+        assertTrue(process.waitFor(30, TimeUnit.SECONDS));
+        String result = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+        assertEquals(result, 0, process.exitValue());
+        return result;
+    }
+
+    private Map<String, String> build(boolean minified) {
+        JavaScriptTarget target = new JavaScriptTarget();
+        target.setObfuscated(minified);
+        target.setModuleType(JSModuleType.ES2015);
+        TeaVM vm = new TeaVMBuilder(target).build();
+        vm.setOptimizationLevel(TeaVMOptimizationLevel.SIMPLE);
+        vm.installPlugins();
+        vm.entryPoint(Sample.class.getName());
+
+        Map<String, ByteArrayOutputStream> outputs = new TreeMap<>();
+        vm.build(fileName -> outputs.computeIfAbsent(fileName, k -> new ByteArrayOutputStream()), "classes.js");
+        List<String> problems = new ArrayList<>();
+        for (Problem problem : vm.getProblemProvider().getSevereProblems()) {
+            problems.add(problem.getText() + " " + Arrays.toString(problem.getParams()));
+        }
+        assertTrue("Code compiled with errors:\n" + String.join("\n", problems), problems.isEmpty());
+
+        Map<String, String> result = new TreeMap<>();
+        for (var entry : outputs.entrySet()) {
+            result.put(entry.getKey(), new String(entry.getValue().toByteArray(), StandardCharsets.UTF_8));
+        }
+        assertEquals(List.of("classes-0.js", "classes.js"), new ArrayList<>(result.keySet()));
+        return result;
+    }
+
+    public static class Sample {
+        public static void main(String[] args) {
+            System.out.println("main");
+            System.out.println(Chunked.describe(args.length + 3));
+        }
+    }
+
+    static class Chunked {
+        @SplitPoint
+        static String describe(int n) {
+            return Helpers.repeat("ab", n) + ":" + Helpers.square(n) + ":" + Helpers.count();
+        }
+    }
+
+    static class Helpers {
+        static int counter;
+
+        static String repeat(String s, int n) {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < n; ++i) {
+                if (i > 0) {
+                    sb.append("-");
+                }
+                sb.append(s);
+            }
+            return sb.toString();
+        }
+
+        static long square(int n) {
+            return (long) n * n;
+        }
+
+        static int count() {
+            return ++counter;
+        }
+    }
+}
@@ -0,0 +1,274 @@
+/*
+ *  Copyright 2023 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.vm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.teavm.interop.Async;
+import org.teavm.interop.AsyncCallback;
+import org.teavm.jso.browser.Window;
+import org.teavm.junit.AsyncGeneratorsCompiled;
+import org.teavm.junit.OnlyPlatform;
+import org.teavm.junit.SkipJVM;
+import org.teavm.junit.TeaVMTestRunner;
+import org.teavm.junit.TestPlatform;
+
+@RunWith(TeaVMTestRunner.class)
+@AsyncGeneratorsCompiled
+@OnlyPlatform(TestPlatform.JAVASCRIPT)
+public class AsyncGeneratorsTest {
+    @Test
+    public void sleepPreservesLocals() throws InterruptedException {
+        assertEquals("0:1:2:3", sleepAndJoin(4));
+        assertEquals(10, sleepAndSum(1, 2, 3, 4));
+    }
+
+    private static String sleepAndJoin(int count) throws InterruptedException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; ++i) {
+            if (i > 0) {
+                sb.append(':');
+            }
+            Thread.sleep(1);
+            sb.append(i);
+        }
+        return sb.toString();
+    }
+
+    private static long sleepAndSum(int a, int b, int c, int d) throws InterruptedException {
+        long sum = a;
+        Thread.sleep(1);
+        sum += b;
+        sum += sleepAndReturn(c);
+        Thread.sleep(1);
+        return sum + d;
+    }
+
+    private static int sleepAndReturn(int value) throws InterruptedException {
+        Thread.sleep(1);
+        return value;
+    }
+
+    @Test
+    @SkipJVM
+    public void nativeAsyncMethods() {
+        assertEquals(23, getPrimitiveLater());
+        assertEquals("foo", getObjectLater("foo"));
+        assertEquals("bar", suspendAndReturn("bar"));
+        assertEquals(5, getPrimitiveLater() - getPrimitiveLater() + 5);
+    }
+
+    @Async
+    private static native int getPrimitiveLater();
+
+    private static void getPrimitiveLater(AsyncCallback<Integer> callback) {
+        Window.setTimeout(() -> callback.complete(23), 0);
+    }
+
+    @Async
+    private static native String getObjectLater(String value);
+
+    private static void getObjectLater(String value, AsyncCallback<String> callback) {
+        Window.setTimeout(() -> callback.complete(value), 0);
+    }
+
+    @Async
+    private static native <T> T suspendAndReturn(T value);
+
+    private static <T> void suspendAndReturn(T value, AsyncCallback<T> callback) {
+        callback.complete(value);
+    }
+
+    @Test
+    public void monitorHandedOffBetweenThreads() throws InterruptedException {
+        List<String> log = new ArrayList<>();
+        Object lock = new Object();
+        Thread first = new Thread(() -> {
+            synchronized (lock) {
+                log.add("first-enter");
+                new Thread(() -> {
+                    synchronized (lock) {
+                        log.add("second-enter");
+                        log.add("second-exit");
+                        lock.notifyAll();
+                    }
+                }).start();
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                log.add("first-exit");
+            }
+        });
+        first.start();
+
+        synchronized (lock) {
+            while (log.size() < 4) {
+                lock.wait();
+            }
+        }
+        assertEquals(List.of("first-enter", "first-exit", "second-enter", "second-exit"), log);
+    }
+
+    @Test
+    public void synchronizedMethodSuspends() throws InterruptedException {
+        Counter counter = new Counter();
+        Thread other = new Thread(() -> counter.increment(2));
+        other.start();
+        counter.increment(3);
+        synchronized (counter) {
+            while (counter.calls < 2) {
+                counter.wait();
+            }
+        }
+        assertEquals(5, counter.value);
+    }
+
+    private static class Counter {
+        int value;
+        int calls;
+
+        synchronized void increment(int amount) {
+            int old = value;
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            value = old + amount;
+            calls++;
+            notifyAll();
+        }
+    }
+
+    @Test
+    public void waitAndNotify() throws InterruptedException {
+        Object lock = new Object();
+        String[] result = new String[1];
+        new Thread(() -> {
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            synchronized (lock) {
+                result[0] = "notified";
+                lock.notify();
+            }
+        }).start();
+        synchronized (lock) {
+            while (result[0] == null) {
+                lock.wait();
+            }
+        }
+        assertEquals("notified", result[0]);
+    }
+
+    @Test
+    public void asyncClassInitializer() {
+        assertEquals("foo", AsyncInit.foo());
+        assertEquals("ok", AsyncInit.state);
+        assertEquals("foo", AsyncInit.foo());
+        assertEquals(1, AsyncInit.initCount);
+    }
+
+    private static class AsyncInit {
+        static int initCount;
+        static String state = "";
+
+        static {
+            initCount++;
+            try {
+                Thread.sleep(1);
+                state += "ok";
+            } catch (InterruptedException e) {
+                state += "error";
+            }
+        }
+
+        static String foo() {
+            return "foo";
+        }
+    }
+
+    @Test
+    public void newInstanceWithAsyncConstructor() throws Exception {
+        AsyncConstructed instance = AsyncConstructed.class.newInstance();
+        assertEquals(AsyncConstructed.class, instance.getClass());
+        assertEquals("created", instance.state);
+
+        AsyncConstructed direct = new AsyncConstructed();
+        assertEquals("created", direct.state);
+    }
+
+    public static class AsyncConstructed {
+        String state = "";
+
+        public AsyncConstructed() throws InterruptedException {
+            state += "crea";
+            Thread.sleep(1);
+            state += "ted";
+        }
+    }
+
+    @Test
+    public void exceptionThrownAcrossSuspension() throws InterruptedException {
+        List<String> log = new ArrayList<>();
+        try {
+            sleepAndThrow(log);
+            fail("Exception should have been thrown");
+        } catch (IllegalStateException e) {
+            Thread.sleep(1);
+            log.add("caught " + e.getMessage());
+        }
+        assertEquals(List.of("before", "finally", "caught expected"), log);
+    }
+
+    private static void sleepAndThrow(List<String> log) throws InterruptedException {
+        try {
+            log.add("before");
+            Thread.sleep(1);
+            throw new IllegalStateException("expected");
+        } finally {
+            Thread.sleep(1);
+            log.add("finally");
+        }
+    }
+
+    @Test
+    @SkipJVM
+    public void nativeAsyncError() {
+        try {
+            throwLater("expected");
+            fail("Exception should have been thrown");
+        } catch (IllegalStateException e) {
+            assertEquals("expected", e.getMessage());
+        }
+        assertEquals(23, getPrimitiveLater());
+    }
+
+    @Async
+    private static native void throwLater(String message);
+
+    private static void throwLater(String message, AsyncCallback<Void> callback) {
+        Window.setTimeout(() -> callback.error(new IllegalStateException(message)), 0);
+    }
+}
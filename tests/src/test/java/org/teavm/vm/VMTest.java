@@ -676,4 +676,58 @@ public class VMTest {
             return "q";
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    public void methodSpecializedForArgumentClass() {
+        int[] values = { 1, 2, 3 };
+        assertEquals(12, sumTransformed(values, new Doubler()));
+        assertEquals(9, sumTransformed(values, new Incrementer()));
+        assertEquals(12, sumTransformed(values, new Doubler()));
+    }
+
+    @Test
+    @SkipJVM
+    @SkipPlatform({TestPlatform.C, TestPlatform.WEBASSEMBLY, TestPlatform.WASI})
+    public void methodSpecializedForAsyncArgumentClass() {
+        int[] values = { 1, 2, 3 };
+        assertEquals(9, sumTransformed(values, new SuspendingIncrementer()));
+        assertEquals(12, sumTransformed(values, new Doubler()));
+    }
+
+    private static int sumTransformed(int[] values, Transformer transformer) {
+        int sum = 0;
+        for (int value : values) {
+            sum += transform(value, transformer);
+        }
+        return sum;
+    }
+
+    private static int transform(int value, Transformer transformer) {
+        return transformer.transform(value);
+    }
+
+    interface Transformer {
+        int transform(int value);
+    }
+
+    static class Doubler implements Transformer {
+        @Override
+        public int transform(int value) {
+            return value * 2;
+        }
+    }
+
+    static class Incrementer implements Transformer {
+        @Override
+        public int transform(int value) {
+            return value + 1;
+        }
+    }
+
+    static class SuspendingIncrementer implements Transformer {
+        @Override
+        public int transform(int value) {
+            return suspendAndReturn(value) + 1;
+        }
+    }
+}
@@ -21,7 +21,6 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.net.URLClassLoader;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -52,6 +51,7 @@ import org.teavm.tooling.TeaVMProblemRenderer;
 import org.teavm.tooling.TeaVMToolLog;
 import org.teavm.tooling.builder.SimpleBuildResult;
 import org.teavm.tooling.util.FileSystemWatcher;
+import org.teavm.tooling.util.TrackingClassLoader;
 import org.teavm.vm.IncrementalDirectoryBuildTarget;
 import org.teavm.vm.TeaVM;
 import org.teavm.vm.TeaVMBuilder;
@@ -88,6 +88,8 @@ public class IncrementalCBuilder {
     private final CNameProvider nameProvider = new CNameProvider();
 
     private int lastReachedClasses;
+    private TrackingClassLoader currentClassLoader;
+    private TrackingClassLoader lastClassLoader;
     private final Object statusLock = new Object();
     private volatile boolean cancelRequested;
     private volatile boolean stopped;
@@ -211,13 +213,17 @@ public class IncrementalCBuilder {
         try {
             initBuilder();
 
+            boolean rebuild = true;
             while (!stopped) {
-                buildOnce();
+                if (rebuild) {
+                    buildOnce();
+                }
 
                 if (stopped) {
                     break;
                 }
 
+                boolean triggeredByUser = false;
                 try {
                     synchronized (statusLock) {
                         waiting = true;
@@ -226,15 +232,17 @@ public class IncrementalCBuilder {
                     synchronized (statusLock) {
                         waiting = false;
                     }
-                    log.info("Changes detected. Recompiling.");
+                    log.info("Changes detected");
                 } catch (InterruptedException e) {
                     if (stopped) {
                         break;
                     }
                     log.info("Build triggered by user");
+                    triggeredByUser = true;
                 }
 
-                List<String> staleClasses = getChangedClasses(watcher.grabChangedFiles());
+                List<File> changedFiles = watcher.grabChangedFiles();
+                List<String> staleClasses = getChangedClasses(changedFiles);
                 if (staleClasses.size() > 15) {
                     List<String> displayedStaleClasses = staleClasses.subList(0, 10);
                     log.debug("Following classes changed (" + staleClasses.size() + "): "
@@ -244,7 +252,13 @@ public class IncrementalCBuilder {
                             + String.join(", ", staleClasses));
                 }
 
+                rebuild = triggeredByUser || isAffectedByChanges(changedFiles, staleClasses);
                 classSource.evict(staleClasses);
+                if (rebuild) {
+                    log.info("Recompiling");
+                } else {
+                    log.info("Changed classes were not used by last build, skipping recompilation");
+                }
             }
             log.info("Build process stopped");
         } catch (Throwable e) {
@@ -254,6 +268,16 @@ public class IncrementalCBuilder {
         }
     }
 
+    // Only decides whether to rebuild at all. A change in any class observed by the last build
+    // still causes full rebuild, including dependency analysis from entry points; only caches
+    // of generated programs and ASTs are invalidated per changed class.
+    private boolean isAffectedByChanges(Collection<File> changedFiles, Collection<String> staleClasses) {
+        if (lastClassLoader == null || staleClasses.size() < changedFiles.size()) {
+            return true;
+        }
+        return classSource.isAnyRequested(staleClasses) || lastClassLoader.isAnyLoaded(staleClasses);
+    }
+
     private List<String> getChangedClasses(Collection<File> changedFiles) {
         List<String> result = new ArrayList<>();
         String[] prefixes = Arrays.stream(classPath).map(s -> s.replace('\\', '/')).toArray(String[]::new);
@@ -312,7 +336,8 @@ public class IncrementalCBuilder {
         fireBuildStarted();
         reportProgress(0);
 
-        ClassLoader classLoader = initClassLoader();
+        TrackingClassLoader classLoader = initClassLoader();
+        currentClassLoader = classLoader;
         ClasspathResourceReader reader = new ClasspathResourceReader(classLoader);
         ResourceClassHolderMapper rawMapper = new ResourceClassHolderMapper(reader, referenceCache);
         Function<String, ClassHolder> classPathMapper = new ClasspathResourceMapper(classLoader, referenceCache,
@@ -359,6 +384,7 @@ public class IncrementalCBuilder {
     }
 
     private void postBuild(TeaVM vm, long startTime) {
+        lastClassLoader = null;
         needsExternalTool = false;
         boolean hasErrors = false;
         if (!vm.wasCancelled()) {
@@ -367,6 +393,7 @@ public class IncrementalCBuilder {
             if (vm.getProblemProvider().getSevereProblems().isEmpty()) {
                 log.info("Build complete successfully");
                 lastReachedClasses = vm.getDependencyInfo().getReachableClasses().size();
+                lastClassLoader = currentClassLoader;
                 classSource.commit();
                 programCache.commit();
                 astCache.commit();
@@ -461,7 +488,7 @@ public class IncrementalCBuilder {
         return packedSource;
     }
 
-    private ClassLoader initClassLoader() {
+    private TrackingClassLoader initClassLoader() {
         URL[] urls = new URL[classPath.length];
         try {
             for (int i = 0; i < classPath.length; i++) {
@@ -470,7 +497,7 @@ public class IncrementalCBuilder {
         } catch (MalformedURLException e) {
             throw new RuntimeException(e);
         }
-        return new URLClassLoader(urls, IncrementalCBuilder.class.getClassLoader());
+        return new TrackingClassLoader(urls, IncrementalCBuilder.class.getClassLoader());
     }
 
     private void reportProgress(double progress) {
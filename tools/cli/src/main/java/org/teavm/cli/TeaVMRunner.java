@@ -28,6 +28,7 @@ import org.apache.commons.cli.HelpFormatter;
 import org.apache.commons.cli.Option;
 import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
+import org.teavm.backend.javascript.JSModuleType;
 import org.teavm.backend.wasm.render.WasmBinaryVersion;
 import org.teavm.tooling.ConsoleTeaVMToolLog;
 import org.teavm.tooling.TeaVMProblemRenderer;
@@ -86,6 +87,28 @@ public final class TeaVMRunner {
                 .hasArg()
                 .argName("number")
                 .build());
+        options.addOption(Option.builder()
+                .longOpt("threads")
+                .argName("number")
+                .hasArg()
+                .desc("number of threads used to compile methods in parallel (1 by default)")
+                .build());
+        options.addOption(Option.builder()
+                .longOpt("profile")
+                .desc("write build profile (time spent in phases and optimizations, cache hit rates) "
+                        + "to teavm-profile.json in target directory")
+                .build());
+        options.addOption(Option.builder()
+                .longOpt("pgo-instrument")
+                .desc("instrument generated code to collect runtime profile, which instrumented application "
+                        + "prints to standard output when main method returns")
+                .build());
+        options.addOption(Option.builder()
+                .longOpt("pgo-profile")
+                .argName("file")
+                .hasArg()
+                .desc("use runtime profile collected by instrumented application to guide optimizations")
+                .build());
         options.addOption(Option.builder("g")
                 .desc("Generate debug information")
                 .longOpt("debug")
@@ -104,6 +127,16 @@ public final class TeaVMRunner {
                 .desc("Incremental build cache directory")
                 .longOpt("cachedir")
                 .build());
+        options.addOption(Option.builder()
+                .desc("Validate incremental build cache by digests of class files instead of modification dates")
+                .longOpt("cache-by-content")
+                .build());
+        options.addOption(Option.builder()
+                .argName("url or directory")
+                .hasArg()
+                .desc("Build cache shared between machines, used in addition to incremental build cache")
+                .longOpt("shared-cache")
+                .build());
         options.addOption(Option.builder("w")
                 .desc("Wait for command after compilation, in order to enable hot recompilation")
                 .longOpt("wait")
@@ -151,6 +184,20 @@ public final class TeaVMRunner {
                 .desc("Maximum number of names kept in top-level scope ("
                         + "other will be put in a separate object. 10000 by default.")
                 .build());
+        options.addOption(Option.builder()
+                .longOpt("js-module-type")
+                .argName("type")
+                .hasArg()
+                .desc("Module type of generated JavaScript: umd (default) or es2015")
+                .build());
+        options.addOption(Option.builder()
+                .longOpt("js-async-generators")
+                .desc("Compile async methods to JavaScript generator functions")
+                .build());
+        options.addOption(Option.builder()
+                .longOpt("js-bigint-longs")
+                .desc("Render long arithmetic as inline BigInt expressions")
+                .build());
     }
 
     private TeaVMRunner(CommandLine commandLine) {
@@ -240,6 +287,13 @@ public final class TeaVMRunner {
     private void parseGenerationOptions() {
         tool.setObfuscated(commandLine.hasOption("m"));
         tool.setStrict(commandLine.hasOption("strict"));
+        tool.setJsAsyncGenerators(commandLine.hasOption("js-async-generators"));
+        tool.setJsBigIntLongs(commandLine.hasOption("js-bigint-longs"));
+        tool.setProfilingEnabled(commandLine.hasOption("profile"));
+        tool.setProfileInstrumented(commandLine.hasOption("pgo-instrument"));
+        if (commandLine.hasOption("pgo-profile")) {
+            tool.setExecutionProfileFile(new File(commandLine.getOptionValue("pgo-profile")));
+        }
 
         if (commandLine.hasOption("max-toplevel-names")) {
             try {
@@ -249,6 +303,22 @@ public final class TeaVMRunner {
                 printUsage();
             }
         }
+
+        if (commandLine.hasOption("js-module-type")) {
+            switch (commandLine.getOptionValue("js-module-type").toLowerCase()) {
+                case "umd":
+                    tool.setJsModuleType(JSModuleType.UMD);
+                    break;
+                case "es2015":
+                case "esm":
+                    tool.setJsModuleType(JSModuleType.ES2015);
+                    break;
+                default:
+                    System.err.println("Wrong JavaScript module type, expected umd or es2015");
+                    printUsage();
+                    break;
+            }
+        }
     }
 
     private void parseDebugOptions() {
@@ -291,6 +361,20 @@ public final class TeaVMRunner {
                     printUsage();
             }
         }
+        if (commandLine.hasOption("threads")) {
+            int threadCount;
+            try {
+                threadCount = Integer.parseInt(commandLine.getOptionValue("threads"));
+            } catch (NumberFormatException e) {
+                threadCount = 0;
+            }
+            if (threadCount < 1) {
+                System.err.println("'--threads' must be positive integer number");
+                printUsage();
+                return;
+            }
+            tool.setThreadCount(threadCount);
+        }
     }
 
     private void parseIncrementalOptions() {
@@ -302,6 +386,12 @@ public final class TeaVMRunner {
         } else {
             tool.setCacheDirectory(new File(tool.getTargetDirectory(), "teavm-cache"));
         }
+        if (commandLine.hasOption("cache-by-content")) {
+            tool.setCacheValidatedByContent(true);
+        }
+        if (commandLine.hasOption("shared-cache")) {
+            tool.setSharedCacheLocation(commandLine.getOptionValue("shared-cache"));
+        }
     }
 
     private void parseClassPathOptions() {
@@ -17,10 +17,13 @@ package org.teavm.tooling;
 
 import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.Reader;
 import java.io.Writer;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
@@ -32,21 +35,29 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Properties;
 import java.util.Set;
+import java.util.TreeSet;
 import org.teavm.backend.c.CTarget;
 import org.teavm.backend.c.generate.CNameProvider;
 import org.teavm.backend.c.generate.ShorteningFileNameProvider;
 import org.teavm.backend.c.generate.SimpleFileNameProvider;
+import org.teavm.backend.javascript.JSModuleType;
 import org.teavm.backend.javascript.JavaScriptTarget;
 import org.teavm.backend.wasm.WasmRuntimeType;
 import org.teavm.backend.wasm.WasmTarget;
 import org.teavm.backend.wasm.render.WasmBinaryVersion;
 import org.teavm.cache.AlwaysStaleCacheStatus;
+import org.teavm.cache.BuildCacheBackend;
 import org.teavm.cache.CacheStatus;
+import org.teavm.cache.DirectoryBuildCacheBackend;
 import org.teavm.cache.DiskCachedClassReaderSource;
-import org.teavm.cache.DiskMethodNodeCache;
-import org.teavm.cache.DiskProgramCache;
 import org.teavm.cache.EmptyProgramCache;
 import org.teavm.cache.FileSymbolTable;
+import org.teavm.cache.HttpBuildCacheBackend;
+import org.teavm.cache.MethodNodeCache;
+import org.teavm.cache.PackedMethodNodeCache;
+import org.teavm.cache.PackedProgramCache;
+import org.teavm.cache.SharedMethodNodeCache;
+import org.teavm.cache.SharedProgramCache;
 import org.teavm.debugging.information.DebugInformation;
 import org.teavm.debugging.information.DebugInformationBuilder;
 import org.teavm.dependency.DependencyInfo;
@@ -58,10 +69,13 @@ import org.teavm.model.ClassHolderTransformer;
 import org.teavm.model.ClassReader;
 import org.teavm.model.PreOptimizingClassHolderSource;
 import org.teavm.model.ReferenceCache;
+import org.teavm.model.profile.ExecutionProfile;
+import org.teavm.model.profile.ProfileInstrumentation;
 import org.teavm.model.transformation.AssertionRemoval;
 import org.teavm.parsing.ClasspathClassHolderSource;
 import org.teavm.tooling.sources.SourceFileProvider;
 import org.teavm.tooling.sources.SourceFilesCopier;
+import org.teavm.vm.BuildMetrics;
 import org.teavm.vm.BuildTarget;
 import org.teavm.vm.DirectoryBuildTarget;
 import org.teavm.vm.TeaVM;
@@ -77,6 +91,9 @@ public class TeaVMTool {
     private boolean obfuscated = true;
     private boolean strict;
     private int maxTopLevelNames = 1000000;
+    private JSModuleType jsModuleType = JSModuleType.UMD;
+    private boolean jsAsyncGenerators;
+    private boolean jsBigIntLongs;
     private String mainClass;
     private String entryPointName = "main";
     private Properties properties = new Properties();
@@ -84,14 +101,19 @@ public class TeaVMTool {
     private boolean sourceMapsFileGenerated;
     private boolean sourceFilesCopied;
     private boolean incremental;
+    private boolean cacheValidatedByContent;
     private File cacheDirectory = new File("./teavm-cache");
     private List<String> transformers = new ArrayList<>();
     private List<String> classesToPreserve = new ArrayList<>();
     private TeaVMToolLog log = new EmptyTeaVMToolLog();
     private ClassLoader classLoader = TeaVMTool.class.getClassLoader();
     private DiskCachedClassReaderSource cachedClassSource;
-    private DiskProgramCache programCache;
-    private DiskMethodNodeCache astCache;
+    private PackedProgramCache programCache;
+    private PackedMethodNodeCache astCache;
+    private String sharedCacheLocation;
+    private BuildCacheBackend sharedCacheBackend;
+    private SharedProgramCache sharedProgramCache;
+    private SharedMethodNodeCache sharedAstCache;
     private FileSymbolTable symbolTable;
     private FileSymbolTable fileTable;
     private FileSymbolTable variableTable;
@@ -113,6 +135,11 @@ public class TeaVMTool {
     private boolean heapDump;
     private boolean shortFileNames;
     private boolean assertionsRemoved;
+    private int threadCount = 1;
+    private boolean profilingEnabled;
+    private BuildMetrics metrics;
+    private boolean profileInstrumented;
+    private File executionProfileFile;
 
     public File getTargetDirectory() {
         return targetDirectory;
@@ -138,6 +165,18 @@ public class TeaVMTool {
         this.maxTopLevelNames = maxTopLevelNames;
     }
 
+    public void setJsModuleType(JSModuleType jsModuleType) {
+        this.jsModuleType = jsModuleType;
+    }
+
+    public void setJsAsyncGenerators(boolean jsAsyncGenerators) {
+        this.jsAsyncGenerators = jsAsyncGenerators;
+    }
+
+    public void setJsBigIntLongs(boolean jsBigIntLongs) {
+        this.jsBigIntLongs = jsBigIntLongs;
+    }
+
     public boolean isIncremental() {
         return incremental;
     }
@@ -174,6 +213,33 @@ public class TeaVMTool {
         this.cacheDirectory = cacheDirectory;
     }
 
+    public boolean isCacheValidatedByContent() {
+        return cacheValidatedByContent;
+    }
+
+    /**
+     * Makes incremental build compare digests of class files with the cache instead of modification dates.
+     * Costs reading every used class file, but keeps cache valid after fresh checkout or restore of class files.
+     * Always enabled when shared cache is used.
+     */
+    public void setCacheValidatedByContent(boolean cacheValidatedByContent) {
+        this.cacheValidatedByContent = cacheValidatedByContent;
+    }
+
+    public String getSharedCacheLocation() {
+        return sharedCacheLocation;
+    }
+
+    /**
+     * Specifies build cache shared between machines, in addition to the local cache directory.
+     * Only used for incremental builds.
+     *
+     * @param sharedCacheLocation either HTTP(S) URL or path to a directory, {@code null} to disable.
+     */
+    public void setSharedCacheLocation(String sharedCacheLocation) {
+        this.sharedCacheLocation = sharedCacheLocation;
+    }
+
     public boolean isSourceMapsFileGenerated() {
         return sourceMapsFileGenerated;
     }
@@ -270,6 +336,54 @@ public class TeaVMTool {
         this.assertionsRemoved = assertionsRemoved;
     }
 
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    public void setThreadCount(int threadCount) {
+        this.threadCount = threadCount;
+    }
+
+    public boolean isProfilingEnabled() {
+        return profilingEnabled;
+    }
+
+    /**
+     * Enables collection of build metrics. When enabled, build writes JSON report to
+     * {@code teavm-profile.json} in target directory.
+     */
+    public void setProfilingEnabled(boolean profilingEnabled) {
+        this.profilingEnabled = profilingEnabled;
+    }
+
+    public BuildMetrics getMetrics() {
+        return metrics;
+    }
+
+    public boolean isProfileInstrumented() {
+        return profileInstrumented;
+    }
+
+    /**
+     * Makes build insert probes that collect runtime profile. Instrumented application prints profile
+     * to standard output when main method returns, this output can be passed to
+     * {@link #setExecutionProfileFile(File)}.
+     */
+    public void setProfileInstrumented(boolean profileInstrumented) {
+        this.profileInstrumented = profileInstrumented;
+    }
+
+    public File getExecutionProfileFile() {
+        return executionProfileFile;
+    }
+
+    /**
+     * Sets file with runtime profile collected by instrumented build, which is used to guide optimizations.
+     */
+    public void setExecutionProfileFile(File executionProfileFile) {
+        this.executionProfileFile = executionProfileFile;
+    }
+
     public void setProgressListener(TeaVMProgressListener progressListener) {
         this.progressListener = progressListener;
     }
@@ -325,6 +439,9 @@ public class TeaVMTool {
         javaScriptTarget.setObfuscated(obfuscated);
         javaScriptTarget.setStrict(strict);
         javaScriptTarget.setTopLevelNameLimit(maxTopLevelNames);
+        javaScriptTarget.setModuleType(jsModuleType);
+        javaScriptTarget.setAsyncGenerators(jsAsyncGenerators);
+        javaScriptTarget.setBigIntLongs(jsBigIntLongs);
 
         debugEmitter = debugInformationGenerated || sourceMapsFileGenerated
                 ? new DebugInformationBuilder(referenceCache) : null;
@@ -375,6 +492,7 @@ public class TeaVMTool {
             cancelled = false;
             log.info("Running TeaVM");
             referenceCache = new ReferenceCache();
+            metrics = profilingEnabled ? new BuildMetrics() : null;
             TeaVMBuilder vmBuilder = new TeaVMBuilder(prepareTarget());
             CacheStatus cacheStatus;
             vmBuilder.setReferenceCache(referenceCache);
@@ -388,12 +506,29 @@ public class TeaVMTool {
                 ClassHolderSource classSource = new PreOptimizingClassHolderSource(innerClassSource);
                 cachedClassSource = new DiskCachedClassReaderSource(cacheDirectory, referenceCache, symbolTable,
                         fileTable, variableTable, classSource, innerClassSource);
-                programCache = new DiskProgramCache(cacheDirectory, referenceCache, symbolTable, fileTable,
+                boolean sharedCacheUsed = sharedCacheLocation != null && !sharedCacheLocation.isEmpty();
+                if (cacheValidatedByContent || sharedCacheUsed) {
+                    cachedClassSource.setClassHashProvider(innerClassSource);
+                }
+                programCache = new PackedProgramCache(cacheDirectory, referenceCache, symbolTable, fileTable,
                         variableTable);
                 if (targetType == TeaVMTargetType.JAVASCRIPT) {
-                    astCache = new DiskMethodNodeCache(cacheDirectory, referenceCache, symbolTable, fileTable,
+                    astCache = new PackedMethodNodeCache(cacheDirectory, referenceCache, symbolTable, fileTable,
                             variableTable);
-                    javaScriptTarget.setAstCache(astCache);
+                    javaScriptTarget.setAstCache(meterAstCache(astCache));
+                }
+                sharedCacheBackend = null;
+                if (sharedCacheUsed) {
+                    sharedCacheBackend = createSharedCacheBackend();
+                    String namespace = getSharedCacheNamespace();
+                    cachedClassSource.setSharedCache(sharedCacheBackend, namespace);
+                    sharedProgramCache = new SharedProgramCache(programCache, sharedCacheBackend, innerClassSource,
+                            referenceCache, namespace);
+                    if (astCache != null) {
+                        sharedAstCache = new SharedMethodNodeCache(astCache, sharedCacheBackend, innerClassSource,
+                                referenceCache, namespace);
+                        javaScriptTarget.setAstCache(meterAstCache(sharedAstCache));
+                    }
                 }
                 try {
                     symbolTable.update();
@@ -426,11 +561,22 @@ public class TeaVMTool {
             }
 
             vm.setProperties(properties);
-            vm.setProgramCache(incremental ? programCache : EmptyProgramCache.INSTANCE);
+            if (!incremental) {
+                vm.setProgramCache(EmptyProgramCache.INSTANCE);
+            } else if (sharedProgramCache != null) {
+                vm.setProgramCache(sharedProgramCache);
+            } else {
+                vm.setProgramCache(programCache);
+            }
             vm.setCacheStatus(cacheStatus);
             vm.setOptimizationLevel(!fastDependencyAnalysis && !incremental
                     ? optimizationLevel
                     : TeaVMOptimizationLevel.SIMPLE);
+            vm.setThreadCount(threadCount);
+            vm.setMetrics(metrics);
+            if (executionProfileFile != null) {
+                vm.setExecutionProfile(readExecutionProfile());
+            }
             if (incremental) {
                 vm.addVirtualMethods(m -> true);
             }
@@ -439,6 +585,9 @@ public class TeaVMTool {
             for (ClassHolderTransformer transformer : resolveTransformers()) {
                 vm.add(transformer);
             }
+            if (profileInstrumented) {
+                vm.add(new ProfileInstrumentation(mainClass));
+            }
             if (mainClass != null) {
                 vm.entryPoint(mainClass, entryPointName != null ? entryPointName : "main");
             }
@@ -489,14 +638,90 @@ public class TeaVMTool {
                 fileTable.flush();
                 variableTable.flush();
                 log.info("Cache updated");
+                flushSharedCache();
             }
 
             printStats();
+            writeProfile();
         } catch (IOException e) {
             throw new TeaVMToolException("IO error occurred", e);
         }
     }
 
+    private ExecutionProfile readExecutionProfile() throws IOException {
+        ExecutionProfile profile = new ExecutionProfile();
+        try (Reader reader = new InputStreamReader(new FileInputStream(executionProfileFile),
+                StandardCharsets.UTF_8)) {
+            profile.load(reader);
+        }
+        if (profile.isEmpty()) {
+            log.warning("Execution profile " + executionProfileFile.getPath() + " contains no data");
+        }
+        return profile;
+    }
+
+    private MethodNodeCache meterAstCache(MethodNodeCache cache) {
+        return metrics != null ? metrics.meter("ast", cache) : cache;
+    }
+
+    private void writeProfile() throws IOException {
+        if (metrics == null) {
+            return;
+        }
+        File profileFile = new File(targetDirectory, "teavm-profile.json");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(profileFile), StandardCharsets.UTF_8)) {
+            metrics.writeJson(writer);
+        }
+        generatedFiles.add(profileFile);
+        log.info("Build profile written to " + profileFile.getPath());
+    }
+
+    private BuildCacheBackend createSharedCacheBackend() {
+        if (sharedCacheLocation.startsWith("http://") || sharedCacheLocation.startsWith("https://")) {
+            return new HttpBuildCacheBackend(sharedCacheLocation);
+        } else {
+            return new DirectoryBuildCacheBackend(new File(sharedCacheLocation));
+        }
+    }
+
+    private String getSharedCacheNamespace() {
+        var sb = new StringBuilder();
+        sb.append(TeaVM.class.getPackage().getImplementationVersion()).append(';')
+                .append(targetType).append(';')
+                .append(fastDependencyAnalysis).append(';')
+                .append(obfuscated).append(';')
+                .append(strict).append(';')
+                .append(assertionsRemoved).append(';')
+                .append(profileInstrumented);
+        for (String propertyName : new TreeSet<>(properties.stringPropertyNames())) {
+            sb.append(';').append(propertyName).append('=').append(properties.getProperty(propertyName));
+        }
+        return sb.toString();
+    }
+
+    private void flushSharedCache() {
+        if (sharedCacheBackend == null) {
+            return;
+        }
+        if (sharedCacheBackend.getFailure() != null) {
+            log.warning("Shared cache " + sharedCacheLocation + " is unavailable, it was not used for the rest "
+                    + "of the build", sharedCacheBackend.getFailure());
+            return;
+        }
+        try {
+            cachedClassSource.flushSharedCache();
+            if (sharedProgramCache != null) {
+                sharedProgramCache.flush();
+            }
+            if (sharedAstCache != null) {
+                sharedAstCache.flush();
+            }
+            log.info("Shared cache updated");
+        } catch (IOException e) {
+            log.warning("Could not update shared cache", e);
+        }
+    }
+
     private String getResolvedTargetFileName() {
         if (targetFileName.isEmpty()) {
             switch (targetType) {
@@ -17,6 +17,7 @@ package org.teavm.tooling.builder;
 
 import java.util.List;
 import java.util.Properties;
+import org.teavm.backend.javascript.JSModuleType;
 import org.teavm.backend.wasm.render.WasmBinaryVersion;
 import org.teavm.tooling.TeaVMTargetType;
 import org.teavm.tooling.TeaVMToolLog;
@@ -58,6 +59,12 @@ public interface BuildStrategy {
 
     void setMaxTopLevelNames(int maxTopLevelNames);
 
+    void setJsModuleType(JSModuleType jsModuleType);
+
+    void setJsAsyncGenerators(boolean jsAsyncGenerators);
+
+    void setJsBigIntLongs(boolean jsBigIntLongs);
+
     void setProperties(Properties properties);
 
     void setTransformers(String[] transformers);
@@ -84,5 +91,7 @@ public interface BuildStrategy {
 
     void setAssertionsRemoved(boolean assertionsRemoved);
 
+    void setThreadCount(int threadCount);
+
     BuildResult build() throws BuildException;
 }
@@ -26,6 +26,7 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Properties;
 import java.util.stream.Collectors;
+import org.teavm.backend.javascript.JSModuleType;
 import org.teavm.backend.wasm.render.WasmBinaryVersion;
 import org.teavm.callgraph.CallGraph;
 import org.teavm.diagnostics.ProblemProvider;
@@ -54,6 +55,9 @@ public class InProcessBuildStrategy implements BuildStrategy {
     private boolean obfuscated;
     private boolean strict;
     private int maxTopLevelNames = 1000000;
+    private JSModuleType jsModuleType = JSModuleType.UMD;
+    private boolean jsAsyncGenerators;
+    private boolean jsBigIntLongs;
     private boolean sourceMapsFileGenerated;
     private boolean debugInformationGenerated;
     private boolean sourceFilesCopied;
@@ -69,6 +73,7 @@ public class InProcessBuildStrategy implements BuildStrategy {
     private TeaVMToolLog log = new EmptyTeaVMToolLog();
     private boolean shortFileNames;
     private boolean assertionsRemoved;
+    private int threadCount = 1;
 
     @Override
     public void init() {
@@ -162,6 +167,21 @@ public class InProcessBuildStrategy implements BuildStrategy {
         this.maxTopLevelNames = maxTopLevelNames;
     }
 
+    @Override
+    public void setJsModuleType(JSModuleType jsModuleType) {
+        this.jsModuleType = jsModuleType;
+    }
+
+    @Override
+    public void setJsAsyncGenerators(boolean jsAsyncGenerators) {
+        this.jsAsyncGenerators = jsAsyncGenerators;
+    }
+
+    @Override
+    public void setJsBigIntLongs(boolean jsBigIntLongs) {
+        this.jsBigIntLongs = jsBigIntLongs;
+    }
+
     @Override
     public void setTransformers(String[] transformers) {
         this.transformers = transformers.clone();
@@ -222,6 +242,11 @@ public class InProcessBuildStrategy implements BuildStrategy {
         this.assertionsRemoved = assertionsRemoved;
     }
 
+    @Override
+    public void setThreadCount(int threadCount) {
+        this.threadCount = threadCount;
+    }
+
     @Override
     public BuildResult build() throws BuildException {
         TeaVMTool tool = new TeaVMTool();
@@ -244,6 +269,9 @@ public class InProcessBuildStrategy implements BuildStrategy {
         tool.setObfuscated(obfuscated);
         tool.setStrict(strict);
         tool.setMaxTopLevelNames(maxTopLevelNames);
+        tool.setJsModuleType(jsModuleType);
+        tool.setJsAsyncGenerators(jsAsyncGenerators);
+        tool.setJsBigIntLongs(jsBigIntLongs);
         tool.setIncremental(incremental);
         tool.getTransformers().addAll(Arrays.asList(transformers));
         tool.getClassesToPreserve().addAll(Arrays.asList(classesToPreserve));
@@ -254,6 +282,7 @@ public class InProcessBuildStrategy implements BuildStrategy {
         tool.setHeapDump(heapDump);
         tool.setShortFileNames(shortFileNames);
         tool.setAssertionsRemoved(assertionsRemoved);
+        tool.setThreadCount(threadCount);
 
         tool.getProperties().putAll(properties);
 
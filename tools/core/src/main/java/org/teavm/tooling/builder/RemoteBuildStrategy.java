@@ -20,6 +20,7 @@ import java.rmi.server.UnicastRemoteObject;
 import java.util.Collection;
 import java.util.List;
 import java.util.Properties;
+import org.teavm.backend.javascript.JSModuleType;
 import org.teavm.backend.wasm.render.WasmBinaryVersion;
 import org.teavm.callgraph.CallGraph;
 import org.teavm.diagnostics.Problem;
@@ -139,6 +140,21 @@ public class RemoteBuildStrategy implements BuildStrategy {
         request.maxTopLevelNames = maxTopLevelNames;
     }
 
+    @Override
+    public void setJsModuleType(JSModuleType jsModuleType) {
+        request.jsModuleType = jsModuleType;
+    }
+
+    @Override
+    public void setJsAsyncGenerators(boolean jsAsyncGenerators) {
+        request.jsAsyncGenerators = jsAsyncGenerators;
+    }
+
+    @Override
+    public void setJsBigIntLongs(boolean jsBigIntLongs) {
+        request.jsBigIntLongs = jsBigIntLongs;
+    }
+
     @Override
     public void setTransformers(String[] transformers) {
         request.transformers = transformers.clone();
@@ -199,6 +215,11 @@ public class RemoteBuildStrategy implements BuildStrategy {
         request.assertionsRemoved = assertionsRemoved;
     }
 
+    @Override
+    public void setThreadCount(int threadCount) {
+        request.threadCount = threadCount;
+    }
+
     @Override
     public BuildResult build() throws BuildException {
         RemoteBuildResponse response;
@@ -157,12 +157,18 @@ public class BuildDaemon extends UnicastRemoteObject implements RemoteBuildServi
         tool.setObfuscated(request.obfuscated);
         tool.setStrict(request.strict);
         tool.setMaxTopLevelNames(request.maxTopLevelNames);
+        if (request.jsModuleType != null) {
+            tool.setJsModuleType(request.jsModuleType);
+        }
+        tool.setJsAsyncGenerators(request.jsAsyncGenerators);
+        tool.setJsBigIntLongs(request.jsBigIntLongs);
         tool.setWasmVersion(request.wasmVersion);
         tool.setMinHeapSize(request.minHeapSize);
         tool.setMaxHeapSize(request.maxHeapSize);
         tool.setHeapDump(request.heapDump);
         tool.setShortFileNames(request.shortFileNames);
         tool.setAssertionsRemoved(request.assertionsRemoved);
+        tool.setThreadCount(request.threadCount);
 
         for (String sourceDirectory : request.sourceDirectories) {
             tool.addSourceFileProvider(new DirectorySourceFileProvider(new File(sourceDirectory)));
@@ -19,6 +19,7 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
+import org.teavm.backend.javascript.JSModuleType;
 import org.teavm.backend.wasm.render.WasmBinaryVersion;
 import org.teavm.tooling.TeaVMTargetType;
 import org.teavm.vm.TeaVMOptimizationLevel;
@@ -42,6 +43,9 @@ public class RemoteBuildRequest implements Serializable {
     public boolean obfuscated;
     public boolean strict;
     public int maxTopLevelNames = 1000000;
+    public JSModuleType jsModuleType = JSModuleType.UMD;
+    public boolean jsAsyncGenerators;
+    public boolean jsBigIntLongs;
     public Properties properties;
     public TeaVMOptimizationLevel optimizationLevel;
     public boolean fastDependencyAnalysis;
@@ -51,4 +55,5 @@ public class RemoteBuildRequest implements Serializable {
     public boolean heapDump;
     public boolean shortFileNames;
     public boolean assertionsRemoved;
+    public int threadCount = 1;
 }
@@ -0,0 +1,53 @@
+/*
+ *  Copyright 2023 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.tooling.util;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Class loader that remembers which classes it loaded from its own class path, i.e. which classes
+ * were executed by compile-time code (like metaprogramming) during build.
+ */
+public class TrackingClassLoader extends URLClassLoader {
+    private final Set<String> loadedClasses = ConcurrentHashMap.newKeySet();
+
+    static {
+        registerAsParallelCapable();
+    }
+
+    public TrackingClassLoader(URL[] urls, ClassLoader parent) {
+        super(urls, parent);
+    }
+
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+        loadedClasses.add(name);
+        return super.findClass(name);
+    }
+
+    public boolean isAnyLoaded(Collection<? extends String> classNames) {
+        for (String className : classNames) {
+            if (loadedClasses.contains(className)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -28,7 +28,6 @@ import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
-import java.net.URLClassLoader;
 import java.nio.channels.Channels;
 import java.nio.channels.WritableByteChannel;
 import java.nio.charset.StandardCharsets;
@@ -88,6 +87,7 @@ import org.teavm.tooling.TeaVMProblemRenderer;
 import org.teavm.tooling.TeaVMToolLog;
 import org.teavm.tooling.builder.SimpleBuildResult;
 import org.teavm.tooling.util.FileSystemWatcher;
+import org.teavm.tooling.util.TrackingClassLoader;
 import org.teavm.vm.MemoryBuildTarget;
 import org.teavm.vm.TeaVM;
 import org.teavm.vm.TeaVMBuilder;
@@ -128,6 +128,8 @@ public class CodeServlet extends HttpServlet {
     private InMemoryProgramCache programCache;
     private InMemoryMethodNodeCache astCache;
     private int lastReachedClasses;
+    private TrackingClassLoader currentClassLoader;
+    private TrackingClassLoader lastClassLoader;
     private boolean firstTime = true;
 
     private final Object contentLock = new Object();
@@ -726,13 +728,17 @@ public class CodeServlet extends HttpServlet {
         try {
             initBuilder();
 
+            boolean rebuild = true;
             while (!stopped) {
-                buildOnce();
+                if (rebuild) {
+                    buildOnce();
+                }
 
                 if (stopped) {
                     break;
                 }
 
+                boolean triggeredByUser = false;
                 try {
                     synchronized (statusLock) {
                         waiting = true;
@@ -741,15 +747,17 @@ public class CodeServlet extends HttpServlet {
                     synchronized (statusLock) {
                         waiting = false;
                     }
-                    log.info("Changes detected. Recompiling.");
+                    log.info("Changes detected");
                 } catch (InterruptedException e) {
                     if (stopped) {
                         break;
                     }
                     log.info("Build triggered by user");
+                    triggeredByUser = true;
                 }
 
-                List<String> staleClasses = getChangedClasses(watcher.grabChangedFiles());
+                List<File> changedFiles = watcher.grabChangedFiles();
+                List<String> staleClasses = getChangedClasses(changedFiles);
                 if (staleClasses.size() > 15) {
                     List<String> displayedStaleClasses = staleClasses.subList(0, 10);
                     log.debug("Following classes changed (" + staleClasses.size() + "): "
@@ -759,7 +767,13 @@ public class CodeServlet extends HttpServlet {
                             + String.join(", ", staleClasses));
                 }
 
+                rebuild = triggeredByUser || isAffectedByChanges(changedFiles, staleClasses);
                 classSource.evict(staleClasses);
+                if (rebuild) {
+                    log.info("Recompiling");
+                } else {
+                    log.info("Changed classes were not used by last build, skipping recompilation");
+                }
             }
             log.info("Build process stopped");
         } catch (Throwable e) {
@@ -805,7 +819,8 @@ public class CodeServlet extends HttpServlet {
         reportProgress(0);
 
         DebugInformationBuilder debugInformationBuilder = new DebugInformationBuilder(referenceCache);
-        ClassLoader classLoader = initClassLoader();
+        TrackingClassLoader classLoader = initClassLoader();
+        currentClassLoader = classLoader;
         ClasspathResourceReader reader = new ClasspathResourceReader(classLoader);
         ResourceClassHolderMapper rawMapper = new ResourceClassHolderMapper(reader, referenceCache);
         Function<String, ClassHolder> classPathMapper = new ClasspathResourceMapper(classLoader, referenceCache,
@@ -911,6 +926,7 @@ public class CodeServlet extends HttpServlet {
     }
 
     private void postBuild(TeaVM vm, long startTime) {
+        lastClassLoader = null;
         if (!vm.wasCancelled()) {
             log.info("Recompiled stale methods: " + programCache.getPendingItemsCount());
             fireBuildComplete(vm);
@@ -918,6 +934,7 @@ public class CodeServlet extends HttpServlet {
                 log.info("Build complete successfully");
                 saveNewResult();
                 lastReachedClasses = vm.getDependencyInfo().getReachableClasses().size();
+                lastClassLoader = currentClassLoader;
                 classSource.commit();
                 programCache.commit();
                 astCache.commit();
@@ -965,6 +982,16 @@ public class CodeServlet extends HttpServlet {
         }
     }
 
+    // Only decides whether to rebuild at all. A change in any class observed by the last build
+    // still causes full rebuild, including dependency analysis from entry points; only caches
+    // of generated programs and ASTs are invalidated per changed class.
+    private boolean isAffectedByChanges(Collection<File> changedFiles, Collection<String> staleClasses) {
+        if (lastClassLoader == null || staleClasses.size() < changedFiles.size()) {
+            return true;
+        }
+        return classSource.isAnyRequested(staleClasses) || lastClassLoader.isAnyLoaded(staleClasses);
+    }
+
     private List<String> getChangedClasses(Collection<File> changedFiles) {
         List<String> result = new ArrayList<>();
         String[] prefixes = Arrays.stream(classPath).map(s -> s.replace('\\', '/')).toArray(String[]::new);
@@ -991,7 +1018,7 @@ public class CodeServlet extends HttpServlet {
         return result;
     }
 
-    private ClassLoader initClassLoader() {
+    private TrackingClassLoader initClassLoader() {
         URL[] urls = new URL[classPath.length];
         try {
             for (int i = 0; i < classPath.length; i++) {
@@ -1000,7 +1027,7 @@ public class CodeServlet extends HttpServlet {
         } catch (MalformedURLException e) {
             throw new RuntimeException(e);
         }
-        return new URLClassLoader(urls, CodeServlet.class.getClassLoader());
+        return new TrackingClassLoader(urls, CodeServlet.class.getClassLoader());
     }
 
     private void reportProgress(double progress) {
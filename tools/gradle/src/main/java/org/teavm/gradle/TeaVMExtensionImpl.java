@@ -20,6 +20,7 @@ import java.io.File;
 import org.gradle.api.Action;
 import org.gradle.api.Project;
 import org.gradle.api.model.ObjectFactory;
+import org.teavm.gradle.api.JSModuleType;
 import org.teavm.gradle.api.OptimizationLevel;
 import org.teavm.gradle.api.TeaVMCConfiguration;
 import org.teavm.gradle.api.TeaVMCommonConfiguration;
@@ -63,6 +64,12 @@ class TeaVMExtensionImpl extends TeaVMBaseExtensionImpl implements TeaVMExtensio
         js.getSourceMap().convention(property("js.sourceMap").map(Boolean::parseBoolean).orElse(false));
         js.getStrict().convention(property("js.strict").map(Boolean::parseBoolean).orElse(false));
         js.getEntryPointName().convention("main");
+        js.getModuleType().convention(property("js.moduleType").map(JSModuleType::valueOf)
+                .orElse(JSModuleType.UMD));
+        js.getAsyncGenerators().convention(property("js.asyncGenerators").map(Boolean::parseBoolean)
+                .orElse(false));
+        js.getBigIntLongs().convention(property("js.bigIntLongs").map(Boolean::parseBoolean)
+                .orElse(false));
         js.getTargetFileName().convention(project.provider(() -> project.getName() + ".js"));
         js.getAddedToWebApp().convention(property("js.addedToWebApp").map(Boolean::parseBoolean).orElse(false));
         js.getOptimization().convention(property("js.optimization").map(OptimizationLevel::valueOf)
@@ -106,6 +113,7 @@ class TeaVMExtensionImpl extends TeaVMBaseExtensionImpl implements TeaVMExtensio
         all.getFastGlobalAnalysis().convention(property("fastGlobalAnalysis").map(Boolean::parseBoolean).orElse(false));
         all.getOutOfProcess().convention(property("outOfProcess").map(Boolean::parseBoolean).orElse(false));
         all.getProcessMemory().convention(property("processMemory").map(Integer::parseInt).orElse(512));
+        all.getThreadCount().convention(property("threadCount").map(Integer::parseInt).orElse(1));
     }
 
     @Override
@@ -193,5 +201,6 @@ class TeaVMExtensionImpl extends TeaVMBaseExtensionImpl implements TeaVMExtensio
 
         target.getOutOfProcess().convention(source.getOutOfProcess());
         target.getProcessMemory().convention(source.getProcessMemory());
+        target.getThreadCount().convention(source.getThreadCount());
     }
 }
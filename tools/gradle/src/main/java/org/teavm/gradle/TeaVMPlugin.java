@@ -113,6 +113,9 @@ public class TeaVMPlugin implements Plugin<Project> {
             task.getTargetFileName().convention(js.getTargetFileName());
             task.getStrict().convention(js.getStrict());
             task.getEntryPointName().convention(js.getEntryPointName());
+            task.getModuleType().convention(js.getModuleType());
+            task.getAsyncGenerators().convention(js.getAsyncGenerators());
+            task.getBigIntLongs().convention(js.getBigIntLongs());
         });
     }
 
@@ -195,6 +198,7 @@ public class TeaVMPlugin implements Plugin<Project> {
         task.getFastGlobalAnalysis().convention(configuration.getFastGlobalAnalysis());
         task.getOutOfProcess().convention(configuration.getOutOfProcess());
         task.getProcessMemory().convention(configuration.getProcessMemory());
+        task.getThreadCount().convention(configuration.getThreadCount());
         task.getProperties().putAll(configuration.getProperties());
         task.getDaemonClasspath().from(toolsConfiguration);
         task.getOutputDir().convention(configuration.getOutputDir().map(
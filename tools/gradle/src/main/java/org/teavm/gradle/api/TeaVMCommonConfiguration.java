@@ -37,5 +37,7 @@ public interface TeaVMCommonConfiguration {
 
     Property<Integer> getProcessMemory();
 
+    Property<Integer> getThreadCount();
+
     Property<File> getOutputDir();
 }
@@ -27,4 +27,10 @@ public interface TeaVMJSConfiguration extends TeaVMWebConfiguration {
     Property<String> getEntryPointName();
 
     Property<String> getTargetFileName();
+
+    Property<JSModuleType> getModuleType();
+
+    Property<Boolean> getAsyncGenerators();
+
+    Property<Boolean> getBigIntLongs();
 }
@@ -18,6 +18,7 @@ package org.teavm.gradle.tasks;
 import org.gradle.api.provider.Property;
 import org.gradle.api.tasks.Input;
 import org.gradle.api.tasks.Optional;
+import org.teavm.gradle.api.JSModuleType;
 import org.teavm.gradle.api.OptimizationLevel;
 import org.teavm.tooling.TeaVMTargetType;
 import org.teavm.tooling.builder.BuildStrategy;
@@ -28,6 +29,9 @@ public abstract class GenerateJavaScriptTask extends TeaVMTask {
         getStrict().convention(false);
         getSourceMap().convention(false);
         getEntryPointName().convention("main");
+        getModuleType().convention(JSModuleType.UMD);
+        getAsyncGenerators().convention(false);
+        getBigIntLongs().convention(false);
     }
 
     @Input
@@ -46,6 +50,18 @@ public abstract class GenerateJavaScriptTask extends TeaVMTask {
     @Optional
     public abstract Property<String> getEntryPointName();
 
+    @Input
+    @Optional
+    public abstract Property<JSModuleType> getModuleType();
+
+    @Input
+    @Optional
+    public abstract Property<Boolean> getAsyncGenerators();
+
+    @Input
+    @Optional
+    public abstract Property<Boolean> getBigIntLongs();
+
     @Override
     protected void setupBuilder(BuildStrategy builder) {
         builder.setTargetType(TeaVMTargetType.JAVASCRIPT);
@@ -53,6 +69,9 @@ public abstract class GenerateJavaScriptTask extends TeaVMTask {
         builder.setStrict(getStrict().get());
         builder.setSourceMapsFileGenerated(getSourceMap().get());
         builder.setEntryPointName(getEntryPointName().get());
+        builder.setJsModuleType(org.teavm.backend.javascript.JSModuleType.valueOf(getModuleType().get().name()));
+        builder.setJsAsyncGenerators(getAsyncGenerators().get());
+        builder.setJsBigIntLongs(getBigIntLongs().get());
         if (getOptimization().get() == OptimizationLevel.NONE) {
             builder.setMaxTopLevelNames(1000);
         }
@@ -59,6 +59,7 @@ public abstract class TeaVMTask extends DefaultTask {
         getFastGlobalAnalysis().convention(false);
         getOutOfProcess().convention(false);
         getProcessMemory().convention(512);
+        getThreadCount().convention(1);
     }
 
     @Classpath
@@ -102,6 +103,9 @@ public abstract class TeaVMTask extends DefaultTask {
     @Optional
     public abstract Property<Integer> getProcessMemory();
 
+    @Internal
+    public abstract Property<Integer> getThreadCount();
+
     @Classpath
     public abstract ConfigurableFileCollection getDaemonClasspath();
     
@@ -149,6 +153,7 @@ public abstract class TeaVMTask extends DefaultTask {
         builder.setTargetFileName(getTargetFileName().get());
         builder.setOptimizationLevel(map(getOptimization().get()));
         builder.setFastDependencyAnalysis(getFastGlobalAnalysis().get());
+        builder.setThreadCount(getThreadCount().get());
         builder.setTargetDirectory(getOutputDir().get().getAbsolutePath());
         builder.setClassesToPreserve(getPreservedClasses().get().toArray(new String[0]));
         if (getProperties().isPresent()) {
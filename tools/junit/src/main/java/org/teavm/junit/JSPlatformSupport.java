@@ -16,6 +16,7 @@
 package org.teavm.junit;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.teavm.junit.PropertyNames.JS_ASYNC_GENERATORS;
 import static org.teavm.junit.PropertyNames.JS_DECODE_STACK;
 import static org.teavm.junit.PropertyNames.JS_ENABLED;
 import static org.teavm.junit.PropertyNames.JS_RUNNER;
@@ -94,6 +95,16 @@ class JSPlatformSupport extends TestPlatformSupport<JavaScriptTarget> {
         return configurations;
     }
 
+    @Override
+    List<TeaVMTestConfiguration<JavaScriptTarget>> getConfigurations(Class<?> testClass) {
+        List<TeaVMTestConfiguration<JavaScriptTarget>> configurations = getConfigurations();
+        if (!configurations.isEmpty() && (Boolean.getBoolean(JS_ASYNC_GENERATORS)
+                || testClass.isAnnotationPresent(AsyncGeneratorsCompiled.class))) {
+            configurations.add(TeaVMTestConfiguration.JS_ASYNC_GENERATORS);
+        }
+        return configurations;
+    }
+
     @Override
     CompileResult compile(Consumer<TeaVM> additionalProcessing, String baseName,
             TeaVMTestConfiguration<JavaScriptTarget> configuration, File path) {
@@ -22,6 +22,7 @@ final class PropertyNames {
     static final String THREAD_COUNT = "teavm.junit.threads";
     static final String JS_ENABLED = "teavm.junit.js";
     static final String JS_DECODE_STACK = "teavm.junit.js.decodeStack";
+    static final String JS_ASYNC_GENERATORS = "teavm.junit.js.asyncGenerators";
     static final String C_ENABLED = "teavm.junit.c";
     static final String WASM_ENABLED = "teavm.junit.wasm";
     static final String WASI_ENABLED = "teavm.junit.wasi";
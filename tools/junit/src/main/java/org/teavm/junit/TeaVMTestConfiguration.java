@@ -80,6 +80,24 @@ interface TeaVMTestConfiguration<T extends TeaVMTarget> {
         }
     };
 
+    TeaVMTestConfiguration<JavaScriptTarget> JS_ASYNC_GENERATORS = new TeaVMTestConfiguration<>() {
+        @Override
+        public String getSuffix() {
+            return "asyncgen";
+        }
+
+        @Override
+        public void apply(TeaVM vm) {
+            vm.setOptimizationLevel(TeaVMOptimizationLevel.SIMPLE);
+        }
+
+        @Override
+        public void apply(JavaScriptTarget target) {
+            target.setObfuscated(false);
+            target.setAsyncGenerators(true);
+        }
+    };
+
     TeaVMTestConfiguration<WasmTarget> WASM_DEFAULT = new TeaVMTestConfiguration<>() {
         @Override
         public String getSuffix() {
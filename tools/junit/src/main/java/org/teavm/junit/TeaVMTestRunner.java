@@ -146,7 +146,7 @@ public class TeaVMTestRunner extends Runner implements Filterable {
     @Override
     public void run(RunNotifier notifier) {
         for (var platform : platforms) {
-            if (!platform.getConfigurations().isEmpty()) {
+            if (!platform.getConfigurations(testClass).isEmpty()) {
                 participatingPlatforms.add(platform);
             }
         }
@@ -227,7 +227,7 @@ public class TeaVMTestRunner extends Runner implements Filterable {
     private boolean compileClassForPlatform(TestPlatformSupport<?> platform, List<Method> children,
             Description description, RunNotifier notifier) {
         if (hasChildrenToRun(children, platform.getPlatform())) {
-            for (var configuration : platform.getConfigurations()) {
+            for (var configuration : platform.getConfigurations(testClass)) {
                 var path = getOutputPathForClass(platform);
                 var castPlatform = (TestPlatformSupport<TeaVMTarget>) platform;
                 var castConfiguration = (TeaVMTestConfiguration<TeaVMTarget>) configuration;
@@ -338,7 +338,7 @@ public class TeaVMTestRunner extends Runner implements Filterable {
             if (shouldRunChild(child, platform.getPlatform())) {
                 var outputPath = getOutputPathForClass(platform);
                 var outputPathForMethod = getOutputPath(child, platform);
-                for (var configuration : platform.getConfigurations()) {
+                for (var configuration : platform.getConfigurations(testClass)) {
                     var testPath = getOutputFile(outputPath, "classTest", configuration.getSuffix(), false,
                             platform.getExtension());
                     runs.add(createTestRun(configuration, testPath, child, platform.getPlatform(),
@@ -357,7 +357,7 @@ public class TeaVMTestRunner extends Runner implements Filterable {
             for (var platform : participatingPlatforms) {
                 if (shouldRunChild(child, platform.getPlatform())) {
                     File outputPath = getOutputPath(child, platform);
-                    for (var configuration : platform.getConfigurations()) {
+                    for (var configuration : platform.getConfigurations(testClass)) {
                         @SuppressWarnings("unchecked")
                         var castPlatform = (TestPlatformSupport<TeaVMTarget>) platform;
                         @SuppressWarnings("unchecked")
@@ -55,6 +55,10 @@ abstract class TestPlatformSupport<T extends TeaVMTarget> {
 
     abstract List<TeaVMTestConfiguration<T>> getConfigurations();
 
+    List<TeaVMTestConfiguration<T>> getConfigurations(Class<?> testClass) {
+        return getConfigurations();
+    }
+
     abstract CompileResult compile(Consumer<TeaVM> additionalProcessing, String baseName,
             TeaVMTestConfiguration<T> configuration, File path);
 
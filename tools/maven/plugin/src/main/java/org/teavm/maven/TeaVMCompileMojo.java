@@ -37,6 +37,7 @@ import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.plugins.annotations.ResolutionScope;
 import org.apache.maven.project.MavenProject;
 import org.apache.maven.repository.RepositorySystem;
+import org.teavm.backend.javascript.JSModuleType;
 import org.teavm.backend.wasm.render.WasmBinaryVersion;
 import org.teavm.tooling.TeaVMProblemRenderer;
 import org.teavm.tooling.TeaVMTargetType;
@@ -85,6 +86,15 @@ public class TeaVMCompileMojo extends AbstractMojo {
     @Parameter(property = "teavm.maxTopLevelNames", defaultValue = "10000")
     private int maxTopLevelNames = 10000;
 
+    @Parameter(property = "teavm.jsModuleType", defaultValue = "UMD")
+    private JSModuleType jsModuleType = JSModuleType.UMD;
+
+    @Parameter(property = "teavm.jsAsyncGenerators", defaultValue = "false")
+    private boolean jsAsyncGenerators;
+
+    @Parameter(property = "teavm.jsBigIntLongs", defaultValue = "false")
+    private boolean jsBigIntLongs;
+
     @Parameter
     private Properties properties;
 
@@ -160,6 +170,9 @@ public class TeaVMCompileMojo extends AbstractMojo {
     @Parameter(property = "teavm.assertionsRemoved", defaultValue = "false")
     private boolean assertionsRemoved;
 
+    @Parameter(property = "teavm.threadCount", defaultValue = "1")
+    private int threadCount = 1;
+
     private void setupBuilder(BuildStrategy builder) throws MojoExecutionException {
         builder.setLog(new MavenTeaVMToolLog(getLog()));
         try {
@@ -167,6 +180,9 @@ public class TeaVMCompileMojo extends AbstractMojo {
             builder.setObfuscated(minifying);
             builder.setStrict(strict);
             builder.setMaxTopLevelNames(maxTopLevelNames);
+            builder.setJsModuleType(jsModuleType);
+            builder.setJsAsyncGenerators(jsAsyncGenerators);
+            builder.setJsBigIntLongs(jsBigIntLongs);
             builder.setTargetDirectory(targetDirectory.getAbsolutePath());
             if (transformers != null) {
                 builder.setTransformers(transformers);
@@ -186,6 +202,7 @@ public class TeaVMCompileMojo extends AbstractMojo {
             builder.setMaxHeapSize(maxHeapSize * 1024 * 1024);
             builder.setShortFileNames(shortFileNames);
             builder.setAssertionsRemoved(assertionsRemoved);
+            builder.setThreadCount(threadCount);
         } catch (RuntimeException e) {
             throw new MojoExecutionException("Unexpected error occurred", e);
         }